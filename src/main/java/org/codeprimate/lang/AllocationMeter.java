@@ -0,0 +1,165 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.lang;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The AllocationMeter class measures the number of bytes allocated on the Java heap per operation, aggregated across
+ * all Threads taking samples.  Each Thread marks a baseline and then samples after completing one or more operations;
+ * the bytes the Thread allocated in between are attributed to those operations.  Since reading a Thread's allocated
+ * bytes is far more costly than a typical operation, a meter may read them only once every sample interval of
+ * operations sampled by a Thread, attributing the bytes to the whole batch.  Measurements rely on the HotSpot
+ * com.sun.management.ThreadMXBean; on JVMs without it, or for virtual Threads, no bytes are recorded.
+ *
+ * @author John J. Blum
+ * @see com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)
+ * @since 1.2.0
+ */
+@SuppressWarnings("unused")
+public class AllocationMeter {
+
+  private static final ThreadMXBean THREAD_MX_BEAN = resolveAllocationTrackingThreadMXBean();
+
+  private final LongAdder allocatedBytes = new LongAdder();
+  private final LongAdder operations = new LongAdder();
+
+  private final long sampleInterval;
+
+  // the allocated bytes at the Thread's baseline, or -1 without one, and the operations sampled since the baseline
+  private final ThreadLocal<long[]> baseline = new ThreadLocal<long[]>() {
+    @Override protected long[] initialValue() {
+      return new long[] { -1l, 0l };
+    }
+  };
+
+  public AllocationMeter() {
+    this(1l);
+  }
+
+  /**
+   * Constructs an AllocationMeter reading the bytes allocated by a Thread once every sample interval of operations.
+   *
+   * @param sampleInterval the number of operations sampled by a Thread between reads of its allocated bytes.
+   */
+  public AllocationMeter(final long sampleInterval) {
+    Assert.legalArgument(sampleInterval > 0, String.format("The sample interval (%1$d) must be greater than 0!",
+      sampleInterval));
+    this.sampleInterval = sampleInterval;
+  }
+
+  // @see com.sun.management.ThreadMXBean#isThreadAllocatedMemorySupported()
+  private static ThreadMXBean resolveAllocationTrackingThreadMXBean() {
+    try {
+      ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+      if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+        com.sun.management.ThreadMXBean hotspotThreadMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+
+        if (hotspotThreadMXBean.isThreadAllocatedMemorySupported()) {
+          hotspotThreadMXBean.setThreadAllocatedMemoryEnabled(true);
+          return threadMXBean;
+        }
+      }
+    }
+    catch (Throwable ignore) {
+    }
+
+    return null;
+  }
+
+  /**
+   * Determines whether the running JVM can measure the bytes allocated by a Thread.
+   *
+   * @return a boolean value indicating whether allocations can be measured.
+   */
+  public static boolean isSupported() {
+    return (THREAD_MX_BEAN != null);
+  }
+
+  /**
+   * Gets the total number of bytes allocated by the current Thread since it started.
+   *
+   * @return a long value indicating the bytes allocated by the current Thread, or -1 if unsupported.
+   */
+  public static long getCurrentThreadAllocatedBytes() {
+    return (isSupported() ? ((com.sun.management.ThreadMXBean) THREAD_MX_BEAN).getThreadAllocatedBytes(
+      Thread.currentThread().getId()) : -1l);
+  }
+
+  public long getAllocatedBytes() {
+    return allocatedBytes.sum();
+  }
+
+  public long getOperations() {
+    return operations.sum();
+  }
+
+  public long getSampleInterval() {
+    return sampleInterval;
+  }
+
+  public long getAllocatedBytesPerOperation() {
+    long operations = getOperations();
+    return (operations > 0 ? (getAllocatedBytes() / operations) : 0l);
+  }
+
+  /**
+   * Marks the current Thread's baseline, so that allocations made by the Thread before this call are not counted.
+   */
+  public void mark() {
+    long[] baseline = this.baseline.get();
+
+    baseline[0] = getCurrentThreadAllocatedBytes();
+    baseline[1] = 0l;
+  }
+
+  /**
+   * Counts the given number of operations completed by the current Thread.  Once the Thread has completed the sample
+   * interval of operations since its baseline, the bytes it allocated since the baseline are attributed to those
+   * operations and the baseline is moved forward.  The first read on a Thread without a baseline only sets the
+   * baseline.
+   *
+   * @param operations the number of operations completed since the last sample.
+   */
+  public void sample(final long operations) {
+    long[] baseline = this.baseline.get();
+
+    baseline[1] += operations;
+
+    if (baseline[1] >= sampleInterval) {
+      long currentAllocatedBytes = getCurrentThreadAllocatedBytes();
+
+      if (baseline[0] >= 0 && currentAllocatedBytes >= 0) {
+        this.allocatedBytes.add(currentAllocatedBytes - baseline[0]);
+        this.operations.add(baseline[1]);
+      }
+
+      baseline[0] = currentAllocatedBytes;
+      baseline[1] = 0l;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return (isSupported() ? String.format("(%1$d) bytes allocated per operation over (%2$d) operations",
+      getAllocatedBytesPerOperation(), getOperations()) : "allocations not measurable on this JVM");
+  }
+
+}
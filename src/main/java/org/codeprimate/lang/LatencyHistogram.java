@@ -0,0 +1,284 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.lang;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The LatencyHistogram class records non-negative long values, such as latencies in nanoseconds, into log-linear
+ * buckets: each power of two is divided into 16 linear sub-buckets, so a percentile is reported with a relative error
+ * of at most 1/16th (6.25%) using a fixed, small amount of memory regardless of the range of values recorded.
+ *
+ * Recording is lock-free and allocation-free.  The bucket counts are striped across several arrays selected by
+ * the recording Thread's ID, so Threads recording similar values do not contend for the same counter.
+ * Reading percentiles sums the stripes and is intended for reporting, not for the hot path; a reading taken while
+ * values are being recorded is not an atomic snapshot.
+ *
+ * @author John J. Blum
+ * @see java.util.concurrent.atomic.LongAdder
+ * @since 1.2.0
+ */
+@SuppressWarnings("unused")
+public class LatencyHistogram {
+
+  protected static final int SUB_BUCKET_BITS = 5;
+  protected static final int SUB_BUCKET_COUNT = (1 << SUB_BUCKET_BITS);
+  protected static final int SUB_BUCKET_HALF_COUNT = (SUB_BUCKET_COUNT / 2);
+
+  public static final int BUCKET_COUNT = (SUB_BUCKET_COUNT + (Long.SIZE - 1 - SUB_BUCKET_BITS) * SUB_BUCKET_HALF_COUNT);
+
+  protected static final int MAX_STRIPES = 8;
+
+  private final AtomicLong maxValue = new AtomicLong(0l);
+
+  private final AtomicLongArray[] stripes;
+
+  private final int stripeMask;
+
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+
+  public LatencyHistogram() {
+    int stripeCount = Math.min(MAX_STRIPES, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+    this.stripes = new AtomicLongArray[stripeCount];
+    this.stripeMask = (stripeCount - 1);
+
+    for (int index = 0; index < stripeCount; index++) {
+      stripes[index] = new AtomicLongArray(BUCKET_COUNT);
+    }
+  }
+
+  /**
+   * Determines the index of the bucket counting the given value.
+   *
+   * @param value the non-negative value.
+   * @return the index of the bucket into which the value is recorded.
+   */
+  protected static int indexOf(final long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+
+    int exponent = (Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+
+    return (SUB_BUCKET_COUNT + (exponent - 1) * SUB_BUCKET_HALF_COUNT
+      + (int) ((value >>> exponent) - SUB_BUCKET_HALF_COUNT));
+  }
+
+  /**
+   * Determines the highest value counted by the bucket at the given index.
+   *
+   * @param index the index of the bucket.
+   * @return the highest value recorded into the bucket.
+   */
+  protected static long highestValueOf(final int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+
+    int exponent = ((index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF_COUNT + 1);
+    long mantissa = ((index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT);
+
+    return (((mantissa + 1) << exponent) - 1);
+  }
+
+  /**
+   * Records the value; negative values are recorded as 0.
+   *
+   * @param value the value to record.
+   */
+  public void record(final long value) {
+    long nonNegativeValue = Math.max(value, 0l);
+
+    stripes[(int) Thread.currentThread().getId() & stripeMask].incrementAndGet(indexOf(nonNegativeValue));
+    count.increment();
+    sum.add(nonNegativeValue);
+
+    for (long currentMax = maxValue.get(); nonNegativeValue > currentMax; currentMax = maxValue.get()) {
+      if (maxValue.compareAndSet(currentMax, nonNegativeValue)) {
+        break;
+      }
+    }
+  }
+
+  /**
+   * Adds the values recorded by another LatencyHistogram to this LatencyHistogram.
+   *
+   * @param histogram the LatencyHistogram whose values are added.
+   */
+  public void add(final LatencyHistogram histogram) {
+    Assert.notNull(histogram, "The LatencyHistogram to add must not be null!");
+
+    AtomicLongArray stripe = stripes[(int) Thread.currentThread().getId() & stripeMask];
+    long[] bucketCounts = histogram.getBucketCounts();
+
+    for (int index = 0; index < bucketCounts.length; index++) {
+      if (bucketCounts[index] > 0) {
+        stripe.addAndGet(index, bucketCounts[index]);
+      }
+    }
+
+    count.add(histogram.getCount());
+    sum.add(histogram.sum.sum());
+
+    for (long currentMax = maxValue.get(); histogram.getMax() > currentMax; currentMax = maxValue.get()) {
+      if (maxValue.compareAndSet(currentMax, histogram.getMax())) {
+        break;
+      }
+    }
+  }
+
+  /**
+   * Decodes a LatencyHistogram encoded by encode(), such as one recorded in another process.
+   *
+   * @param encoded the encoded LatencyHistogram.
+   * @return a LatencyHistogram of the values recorded by the encoded LatencyHistogram.
+   * @throws IllegalArgumentException if the encoded LatencyHistogram is malformed.
+   * @see #encode()
+   */
+  public static LatencyHistogram decode(final String encoded) {
+    Assert.notNull(encoded, "The encoded LatencyHistogram must not be null!");
+
+    String[] fields = encoded.split(",");
+
+    Assert.legalArgument(fields.length >= 2, String.format("The encoded LatencyHistogram (%1$s) is malformed!",
+      encoded));
+
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    histogram.sum.add(Long.parseLong(fields[0]));
+    histogram.maxValue.set(Long.parseLong(fields[1]));
+
+    for (int fieldIndex = 2; fieldIndex < fields.length; fieldIndex++) {
+      int separatorIndex = fields[fieldIndex].indexOf(':');
+      int index = (separatorIndex > 0 ? Integer.parseInt(fields[fieldIndex].substring(0, separatorIndex)) : -1);
+      long bucketCount = (separatorIndex > 0 ? Long.parseLong(fields[fieldIndex].substring(separatorIndex + 1)) : -1l);
+
+      Assert.legalArgument(index >= 0 && index < BUCKET_COUNT && bucketCount >= 0l, String.format(
+        "The bucket (%1$s) of the encoded LatencyHistogram is malformed!", fields[fieldIndex]));
+
+      histogram.stripes[0].addAndGet(index, bucketCount);
+      histogram.count.add(bucketCount);
+    }
+
+    return histogram;
+  }
+
+  /**
+   * Encodes the values recorded by this LatencyHistogram as text without whitespace so it can be passed to another
+   * process and decoded there: the sum and the maximum of the values followed by the index and count of each
+   * non-empty bucket, as in "sum,max,index:count,index:count".
+   *
+   * @return the encoded LatencyHistogram.
+   * @see #decode(String)
+   */
+  public String encode() {
+    StringBuilder buffer = new StringBuilder().append(sum.sum()).append(',').append(getMax());
+    long[] bucketCounts = getBucketCounts();
+
+    for (int index = 0; index < bucketCounts.length; index++) {
+      if (bucketCounts[index] > 0) {
+        buffer.append(',').append(index).append(':').append(bucketCounts[index]);
+      }
+    }
+
+    return buffer.toString();
+  }
+
+  private long[] getBucketCounts() {
+    long[] bucketCounts = new long[BUCKET_COUNT];
+
+    for (AtomicLongArray stripe : stripes) {
+      for (int index = 0; index < BUCKET_COUNT; index++) {
+        bucketCounts[index] += stripe.get(index);
+      }
+    }
+
+    return bucketCounts;
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public long getMax() {
+    return maxValue.get();
+  }
+
+  public double getMean() {
+    long count = getCount();
+    return (count > 0 ? ((double) sum.sum() / count) : 0.0d);
+  }
+
+  /**
+   * Gets the value at or below which the given percentage of the recorded values fall, reported as the highest
+   * value of the bucket containing that percentile, and never more than the maximum value recorded.
+   *
+   * @param percentile the percentile between 0.0 and 100.0.
+   * @return the value at the percentile, or 0 if no values have been recorded.
+   */
+  public long getValueAtPercentile(final double percentile) {
+    Assert.legalArgument(percentile >= 0.0d && percentile <= 100.0d, String.format(
+      "The percentile (%1$s) must be between 0.0 and 100.0!", percentile));
+
+    long[] bucketCounts = getBucketCounts();
+    long total = 0l;
+
+    for (long bucketCount : bucketCounts) {
+      total += bucketCount;
+    }
+
+    long cumulativeCount = 0l;
+    long rank = Math.max(1l, (long) Math.ceil(percentile / 100.0d * total));
+
+    for (int index = 0; index < bucketCounts.length && total > 0; index++) {
+      cumulativeCount += bucketCounts[index];
+
+      if (cumulativeCount >= rank) {
+        return Math.min(highestValueOf(index), getMax());
+      }
+    }
+
+    return 0l;
+  }
+
+  /**
+   * Discards all recorded values.  Values recorded concurrently with the reset may or may not be discarded.
+   */
+  public void reset() {
+    for (AtomicLongArray stripe : stripes) {
+      for (int index = 0; index < BUCKET_COUNT; index++) {
+        stripe.set(index, 0l);
+      }
+    }
+
+    count.reset();
+    sum.reset();
+    maxValue.set(0l);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("{ count = %1$d, mean = %2$.1f, p50 = %3$d, p99 = %4$d, p99.9 = %5$d, max = %6$d }",
+      getCount(), getMean(), getValueAtPercentile(50.0d), getValueAtPercentile(99.0d), getValueAtPercentile(99.9d),
+      getMax());
+  }
+
+}
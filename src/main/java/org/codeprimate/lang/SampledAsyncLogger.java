@@ -0,0 +1,197 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.lang;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.util.IllegalFormatException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The SampledAsyncLogger class logs a sample of high-frequency events, such as individual messages, without slowing
+ * down the Threads producing them.  Only every Nth call to sample returns true, and the messages logged are queued
+ * and formatted and printed by a single daemon Thread.  When the bounded queue is full, messages are dropped rather
+ * than blocking the caller.  Since formatting is deferred, the arguments of a logged message must not be modified
+ * after it is logged.
+ *
+ * A typical usage is:
+ *
+ * <pre>
+ *   if (logger.sample()) {
+ *     logger.log("%1$s: \"%2$s\"%n", clientAddress, message);
+ *   }
+ * </pre>
+ *
+ * @author John J. Blum
+ * @see java.io.Closeable
+ * @see java.util.concurrent.ArrayBlockingQueue
+ * @since 1.2.0
+ */
+@SuppressWarnings("unused")
+public class SampledAsyncLogger implements Closeable {
+
+  public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+  private static final Object[] CLOSED = new Object[0];
+
+  private final AtomicLong droppedCount = new AtomicLong(0l);
+  private final AtomicLong loggedCount = new AtomicLong(0l);
+  private final AtomicLong sampleCount = new AtomicLong(0l);
+
+  private final BlockingQueue<Object[]> queue;
+
+  private final int sampleRate;
+
+  private final PrintStream out;
+
+  private final Thread loggerThread;
+
+  private volatile boolean closed = false;
+
+  public SampledAsyncLogger(final PrintStream out, final int sampleRate) {
+    this(out, sampleRate, DEFAULT_QUEUE_CAPACITY);
+  }
+
+  public SampledAsyncLogger(final PrintStream out, final int sampleRate, final int queueCapacity) {
+    Assert.notNull(out, "The PrintStream must not be null!");
+    Assert.legalArgument(sampleRate >= 0, String.format("The sample rate (%1$d) must be greater than or equal to 0!",
+      sampleRate));
+    Assert.legalArgument(queueCapacity > 0, String.format("The queue capacity (%1$d) must be greater than 0!",
+      queueCapacity));
+
+    this.out = out;
+    this.sampleRate = sampleRate;
+    this.queue = new ArrayBlockingQueue<Object[]>(queueCapacity);
+    this.loggerThread = (sampleRate > 0 ? newLoggerThread() : null);
+  }
+
+  // @see java.lang.Thread#setDaemon(boolean)
+  private Thread newLoggerThread() {
+    Thread loggerThread = new Thread(new Runnable() {
+      public void run() {
+        try {
+          for (Object[] entry = queue.take(); entry != CLOSED; entry = queue.take()) {
+            print(entry);
+          }
+        }
+        catch (InterruptedException ignore) {
+        }
+        finally {
+          for (Object[] entry = queue.poll(); entry != null; entry = queue.poll()) {
+            if (entry != CLOSED) {
+              print(entry);
+            }
+          }
+
+          out.flush();
+        }
+      }
+    }, "Sampled Async Logger");
+
+    loggerThread.setDaemon(true);
+    loggerThread.start();
+
+    return loggerThread;
+  }
+
+  private void print(final Object[] entry) {
+    try {
+      out.printf((String) entry[0], (Object[]) entry[1]);
+      loggedCount.incrementAndGet();
+    }
+    catch (IllegalFormatException ignore) {
+      droppedCount.incrementAndGet();
+    }
+  }
+
+  public long getDroppedCount() {
+    return droppedCount.get();
+  }
+
+  public long getLoggedCount() {
+    return loggedCount.get();
+  }
+
+  public int getSampleRate() {
+    return sampleRate;
+  }
+
+  public boolean isEnabled() {
+    return (loggerThread != null && !closed);
+  }
+
+  /**
+   * Determines whether the current event is selected for logging.  One in every sample rate calls returns true,
+   * and no calls return true when the sample rate is 0 or the logger is closed.
+   *
+   * @return a boolean value indicating whether the current event should be logged.
+   */
+  public boolean sample() {
+    return (isEnabled() && (sampleRate == 1 || sampleCount.incrementAndGet() % sampleRate == 0));
+  }
+
+  /**
+   * Queues the message to be formatted and printed by the logger Thread.  This method never blocks; the message is
+   * dropped when the queue is full or the logger is disabled.
+   *
+   * @param format the format String of the message.
+   * @param arguments the arguments referenced by the format String.
+   * @return a boolean value indicating whether the message was queued.
+   * @see java.util.Formatter
+   */
+  public boolean log(final String format, final Object... arguments) {
+    if (isEnabled()) {
+      if (queue.offer(new Object[] { format, arguments })) {
+        return true;
+      }
+    }
+
+    droppedCount.incrementAndGet();
+
+    return false;
+  }
+
+  /**
+   * Stops the logger Thread after it prints the messages already queued, waiting up to one second.
+   */
+  public void close() {
+    if (isEnabled()) {
+      closed = true;
+
+      if (!queue.offer(CLOSED)) {
+        loggerThread.interrupt();
+      }
+
+      try {
+        loggerThread.join(TimeUnit.SECONDS.toMillis(1));
+      }
+      catch (InterruptedException ignore) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("{ sampleRate = %1$d, logged = %2$d, dropped = %3$d }", getSampleRate(), getLoggedCount(),
+      getDroppedCount());
+  }
+
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.lang.concurrent;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.codeprimate.io.IOUtils;
+import org.codeprimate.lang.Assert;
+
+/**
+ * The AdmissionControlledExecutor class bounds the tasks run by a thread-per-task ExecutorService, such as one
+ * creating a virtual Thread per task, with Semaphores rather than a pool of worker Threads.  Up to the maximum number
+ * of workers tasks run at once and up to the queue size more tasks are admitted, each waiting on its own Thread for
+ * a worker permit.  A task submitted when the executor is full is blocked or rejected as it would be by
+ * a BoundedExecutor.  The SHED_OLDEST RejectionPolicy is not supported, since waiting tasks are already running on
+ * their Threads and cannot be shed.  Rejected tasks are closed when they implement Closeable rather than causing
+ * a RejectedExecutionException.
+ *
+ * @author John J. Blum
+ * @see java.util.concurrent.Semaphore
+ * @see org.codeprimate.lang.concurrent.BoundedExecutor
+ * @see org.codeprimate.lang.concurrent.VirtualThreads#newThreadPerTaskExecutor
+ * @since 1.2.0
+ */
+@SuppressWarnings("unused")
+public class AdmissionControlledExecutor extends AbstractExecutorService {
+
+  private final AtomicInteger activeCount = new AtomicInteger(0);
+  private final AtomicInteger admittedCount = new AtomicInteger(0);
+
+  private final AtomicLong completedTaskCount = new AtomicLong(0l);
+  private final AtomicLong rejectedTaskCount = new AtomicLong(0l);
+
+  private final BoundedExecutor.RejectionPolicy rejectionPolicy;
+
+  private final ExecutorService delegate;
+
+  private final int maxWorkers;
+
+  private final Semaphore admissions;
+  private final Semaphore workers;
+
+  public AdmissionControlledExecutor(final int maxWorkers, final int queueSize,
+                                     final BoundedExecutor.RejectionPolicy rejectionPolicy,
+                                     final ExecutorService delegate) {
+    Assert.legalArgument(maxWorkers > 0, String.format("The maximum number of workers (%1$d) must be greater than 0!",
+      maxWorkers));
+    Assert.legalArgument(queueSize >= 0, String.format("The queue size (%1$d) must be greater than or equal to 0!",
+      queueSize));
+    Assert.notNull(rejectionPolicy, "The RejectionPolicy must not be null!");
+    Assert.legalArgument(!BoundedExecutor.RejectionPolicy.SHED_OLDEST.equals(rejectionPolicy), String.format(
+      "The RejectionPolicy (%1$s) is not supported by an AdmissionControlledExecutor!", rejectionPolicy.name()));
+    Assert.notNull(delegate, "The ExecutorService must not be null!");
+
+    this.maxWorkers = maxWorkers;
+    this.rejectionPolicy = rejectionPolicy;
+    this.delegate = delegate;
+    this.admissions = new Semaphore(maxWorkers + queueSize);
+    this.workers = new Semaphore(maxWorkers);
+  }
+
+  public int getActiveCount() {
+    return activeCount.get();
+  }
+
+  public long getCompletedTaskCount() {
+    return completedTaskCount.get();
+  }
+
+  public int getMaxWorkers() {
+    return maxWorkers;
+  }
+
+  public int getQueueDepth() {
+    return Math.max(admittedCount.get() - activeCount.get(), 0);
+  }
+
+  public long getRejectedTaskCount() {
+    return rejectedTaskCount.get();
+  }
+
+  public BoundedExecutor.RejectionPolicy getRejectionPolicy() {
+    return rejectionPolicy;
+  }
+
+  public void execute(final Runnable task) {
+    Assert.notNull(task, "The task to execute must not be null!");
+
+    if (isShutdown() || !admit()) {
+      reject(task);
+      return;
+    }
+
+    admittedCount.incrementAndGet();
+
+    try {
+      delegate.execute(new Runnable() {
+        public void run() {
+          try {
+            workers.acquire();
+          }
+          catch (InterruptedException e) {
+            // shut down while waiting for a worker permit
+            release();
+            reject(task);
+            return;
+          }
+
+          activeCount.incrementAndGet();
+
+          try {
+            task.run();
+          }
+          finally {
+            activeCount.decrementAndGet();
+            completedTaskCount.incrementAndGet();
+            workers.release();
+            release();
+          }
+        }
+      });
+    }
+    catch (RejectedExecutionException e) {
+      release();
+      reject(task);
+    }
+  }
+
+  // waits for admission only when the RejectionPolicy blocks the submitting Thread
+  private boolean admit() {
+    if (admissions.tryAcquire()) {
+      return true;
+    }
+
+    if (BoundedExecutor.RejectionPolicy.BLOCK.equals(getRejectionPolicy())) {
+      try {
+        admissions.acquire();
+        return true;
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    return false;
+  }
+
+  private void release() {
+    admittedCount.decrementAndGet();
+    admissions.release();
+  }
+
+  // @see java.io.Closeable
+  protected void reject(final Runnable task) {
+    rejectedTaskCount.incrementAndGet();
+
+    if (task instanceof Closeable) {
+      IOUtils.close((Closeable) task);
+    }
+  }
+
+  public void shutdown() {
+    delegate.shutdown();
+  }
+
+  public List<Runnable> shutdownNow() {
+    return delegate.shutdownNow();
+  }
+
+  public boolean isShutdown() {
+    return delegate.isShutdown();
+  }
+
+  public boolean isTerminated() {
+    return delegate.isTerminated();
+  }
+
+  public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+    return delegate.awaitTermination(timeout, unit);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("{ maxWorkers = %1$d, activeWorkers = %2$d, queueDepth = %3$d, rejectionPolicy = %4$s"
+      + ", completedTasks = %5$d, rejectedTasks = %6$d }", getMaxWorkers(), getActiveCount(), getQueueDepth(),
+        getRejectionPolicy(), getCompletedTaskCount(), getRejectedTaskCount());
+  }
+
+}
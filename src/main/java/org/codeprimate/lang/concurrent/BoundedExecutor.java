@@ -0,0 +1,291 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.lang.concurrent;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.codeprimate.io.IOUtils;
+import org.codeprimate.lang.Assert;
+
+/**
+ * The BoundedExecutor class is a ThreadPoolExecutor with a fixed upper bound on both the number of worker Threads
+ * and the number of queued tasks.  When both are exhausted, the configured RejectionPolicy decides whether the
+ * submitted task is rejected, the submitting Thread blocks, or the oldest queued task is shed.  Tasks that are
+ * discarded by the policy are closed when they implement Closeable, which lets a server release the client Socket
+ * held by a rejected request rather than leaking it.
+ *
+ * The executor records the number of rejected and shed tasks along with the time tasks spent waiting in the queue.
+ *
+ * @author John J. Blum
+ * @see java.util.concurrent.ThreadPoolExecutor
+ * @see org.codeprimate.lang.concurrent.BoundedExecutor.RejectionPolicy
+ * @since 1.2.0
+ */
+@SuppressWarnings("unused")
+public class BoundedExecutor extends ThreadPoolExecutor {
+
+  protected static final long DEFAULT_KEEP_ALIVE_SECONDS = 60l;
+
+  private final AtomicLong maxQueueWaitTime = new AtomicLong(0l);
+  private final AtomicLong rejectedTaskCount = new AtomicLong(0l);
+  private final AtomicLong shedTaskCount = new AtomicLong(0l);
+  private final AtomicLong startedTaskCount = new AtomicLong(0l);
+  private final AtomicLong totalQueueWaitTime = new AtomicLong(0l);
+
+  private final RejectionPolicy rejectionPolicy;
+
+  public BoundedExecutor(final int maxWorkers, final int queueSize, final RejectionPolicy rejectionPolicy,
+                         final ThreadFactory threadFactory) {
+    super(maxWorkers, maxWorkers, DEFAULT_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, newWorkQueue(queueSize),
+      threadFactory);
+
+    Assert.notNull(rejectionPolicy, "The RejectionPolicy must not be null!");
+
+    this.rejectionPolicy = rejectionPolicy;
+
+    allowCoreThreadTimeOut(true);
+    setRejectedExecutionHandler(new RejectionHandler());
+  }
+
+  private static BlockingQueue<Runnable> newWorkQueue(final int queueSize) {
+    Assert.legalArgument(queueSize >= 0, String.format("The queue size (%1$d) must be greater than or equal to 0!",
+      queueSize));
+
+    return (queueSize > 0 ? new ArrayBlockingQueue<Runnable>(queueSize) : new SynchronousQueue<Runnable>());
+  }
+
+  public int getMaxWorkers() {
+    return getMaximumPoolSize();
+  }
+
+  /**
+   * Gets the maximum time a task waited in the queue before a worker Thread started running the task.
+   *
+   * @param timeUnit the TimeUnit in which the wait time is returned.
+   * @return a long value indicating the maximum queue wait time in the given TimeUnit.
+   */
+  public long getMaxQueueWaitTime(final TimeUnit timeUnit) {
+    return timeUnit.convert(maxQueueWaitTime.get(), TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Gets the average time tasks waited in the queue before a worker Thread started running them.
+   *
+   * @param timeUnit the TimeUnit in which the wait time is returned.
+   * @return a long value indicating the average queue wait time in the given TimeUnit.
+   */
+  public long getAverageQueueWaitTime(final TimeUnit timeUnit) {
+    long startedTaskCount = this.startedTaskCount.get();
+    return (startedTaskCount > 0 ? timeUnit.convert(totalQueueWaitTime.get() / startedTaskCount, TimeUnit.NANOSECONDS)
+      : 0l);
+  }
+
+  public int getQueueDepth() {
+    return getQueue().size();
+  }
+
+  public long getRejectedTaskCount() {
+    return rejectedTaskCount.get();
+  }
+
+  public RejectionPolicy getRejectionPolicy() {
+    return rejectionPolicy;
+  }
+
+  public long getShedTaskCount() {
+    return shedTaskCount.get();
+  }
+
+  @Override
+  public void execute(final Runnable task) {
+    Assert.notNull(task, "The task to execute must not be null!");
+    super.execute(task instanceof QueuedTask ? task : new QueuedTask(task));
+  }
+
+  @Override
+  protected void beforeExecute(final Thread thread, final Runnable task) {
+    if (task instanceof QueuedTask) {
+      long waitTime = (System.nanoTime() - ((QueuedTask) task).queuedTime);
+
+      startedTaskCount.incrementAndGet();
+      totalQueueWaitTime.addAndGet(waitTime);
+
+      for (long maxWaitTime = maxQueueWaitTime.get(); waitTime > maxWaitTime;
+           maxWaitTime = maxQueueWaitTime.get()) {
+        if (maxQueueWaitTime.compareAndSet(maxWaitTime, waitTime)) {
+          break;
+        }
+      }
+    }
+
+    super.beforeExecute(thread, task);
+  }
+
+  protected void reject(final Runnable task) {
+    rejectedTaskCount.incrementAndGet();
+    discard(task);
+  }
+
+  protected void shed(final Runnable task) {
+    shedTaskCount.incrementAndGet();
+    discard(task);
+  }
+
+  // @see java.io.Closeable
+  private void discard(final Runnable task) {
+    if (task instanceof Closeable) {
+      IOUtils.close((Closeable) task);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("{ maxWorkers = %1$d, activeWorkers = %2$d, queueDepth = %3$d, rejectionPolicy = %4$s"
+      + ", completedTasks = %5$d, rejectedTasks = %6$d, shedTasks = %7$d, averageQueueWaitTime = %8$d ms"
+      + ", maxQueueWaitTime = %9$d ms }", getMaxWorkers(), getActiveCount(), getQueueDepth(), getRejectionPolicy(),
+        getCompletedTaskCount(), getRejectedTaskCount(), getShedTaskCount(),
+          getAverageQueueWaitTime(TimeUnit.MILLISECONDS), getMaxQueueWaitTime(TimeUnit.MILLISECONDS));
+  }
+
+  /**
+   * The RejectionPolicy enum defines the strategies applied to a task when all worker Threads are busy
+   * and the queue is full.
+   */
+  public static enum RejectionPolicy {
+    REJECT_WITH_CLOSE("close", "Reject the Task, Closing it when Closeable"),
+    BLOCK("block", "Block the Submitting Thread until the Queue has Room"),
+    SHED_OLDEST("shed", "Discard the Oldest Queued Task in favor of the New Task");
+
+    private final String code;
+    private final String description;
+
+    RejectionPolicy(final String code, final String description) {
+      this.code = code;
+      this.description = description;
+    }
+
+    public static RejectionPolicy findBy(final String code) {
+      for (RejectionPolicy policy : values()) {
+        if (policy.getCode().equalsIgnoreCase(code)) {
+          return policy;
+        }
+      }
+
+      throw new IllegalArgumentException("(" + code + ") is not a valid RejectionPolicy code!");
+    }
+
+    public String getCode() {
+      return code;
+    }
+
+    public String getDescription() {
+      return description;
+    }
+
+    @Override
+    public String toString() {
+      return getCode();
+    }
+  }
+
+  /**
+   * The QueuedTask class wraps a submitted task to record when the task was queued.  The QueuedTask is Closeable
+   * when the wrapped task is Closeable.
+   */
+  protected static final class QueuedTask implements Closeable, Runnable {
+
+    private final long queuedTime = System.nanoTime();
+
+    private final Runnable delegate;
+
+    protected QueuedTask(final Runnable delegate) {
+      this.delegate = delegate;
+    }
+
+    public void close() throws IOException {
+      if (delegate instanceof Closeable) {
+        ((Closeable) delegate).close();
+      }
+    }
+
+    public void run() {
+      delegate.run();
+    }
+  }
+
+  /**
+   * The RejectionHandler class applies the RejectionPolicy of this executor to tasks the executor could not accept.
+   */
+  protected class RejectionHandler implements RejectedExecutionHandler {
+
+    public void rejectedExecution(final Runnable task, final ThreadPoolExecutor executor) {
+      if (isShutdown()) {
+        reject(task);
+      }
+      else {
+        switch (getRejectionPolicy()) {
+          case BLOCK:
+            block(task);
+            break;
+          case SHED_OLDEST:
+            Runnable oldestTask = getQueue().poll();
+
+            if (oldestTask != null) {
+              shed(oldestTask);
+              execute(task);
+            }
+            else {
+              reject(task);
+            }
+
+            break;
+          default:
+            reject(task);
+        }
+      }
+    }
+
+    private void block(final Runnable task) {
+      try {
+        getQueue().put(task);
+
+        // the workers may have timed out and exited while the submitting Thread was blocked
+        if (getPoolSize() == 0) {
+          prestartCoreThread();
+        }
+
+        if (isShutdown() && remove(task)) {
+          reject(task);
+        }
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        reject(task);
+      }
+    }
+  }
+
+}
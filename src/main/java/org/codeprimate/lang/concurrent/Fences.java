@@ -0,0 +1,60 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.lang.concurrent;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The Fences class is an abstract utility class for memory fences ordering plain reads and writes, such as those of
+ * a ByteBuffer shared between Threads or processes.  This is the Java 8 baseline version of the class, which has no
+ * public fence API; it obtains the fences from accesses to an AtomicInteger, for which the JVM emits the same
+ * barriers: a volatile read is an acquire fence, an ordered (lazy) write is a release fence and an atomic
+ * read-modify-write is a full fence.  The Multi-Release JAR contains a Java 21 version of this class
+ * (in META-INF/versions/21) using the VarHandle fences instead.
+ *
+ * @author John J. Blum
+ * @see java.util.concurrent.atomic.AtomicInteger
+ * @since 1.2.0
+ */
+@SuppressWarnings("unused")
+public abstract class Fences {
+
+  // accessed only for the barriers around the accesses; its value is meaningless
+  private static final AtomicInteger BARRIER = new AtomicInteger(0);
+
+  /**
+   * Ensures that reads and writes before the fence are not reordered with reads and writes after the fence.
+   */
+  public static void fullFence() {
+    BARRIER.getAndAdd(0);
+  }
+
+  /**
+   * Ensures that reads before the fence are not reordered with reads and writes after the fence (an acquire fence).
+   */
+  public static void loadFence() {
+    BARRIER.get();
+  }
+
+  /**
+   * Ensures that reads and writes before the fence are not reordered with writes after the fence (a release fence).
+   */
+  public static void storeFence() {
+    BARRIER.lazySet(0);
+  }
+
+}
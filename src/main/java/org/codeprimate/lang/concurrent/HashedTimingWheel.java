@@ -0,0 +1,423 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.lang.concurrent;
+
+import java.io.Closeable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+import org.codeprimate.lang.Assert;
+
+/**
+ * The HashedTimingWheel class is a hierarchical hashed timing wheel scheduling large numbers of timeouts, such as
+ * connection idle timeouts and request deadlines, at a fixed tick granularity with constant cost to schedule, cancel
+ * and expire each timeout regardless of how many are pending.
+ *
+ * Time is divided into ticks of the tick duration.  The wheel has 4 levels of 64 buckets each; a timeout due within
+ * 64 ticks is hashed into a bucket of the first level by its deadline, a timeout due within 64^2 ticks into a bucket
+ * of the second level, and so on.  Each time the first level completes a revolution, the timeouts in the next bucket
+ * of the second level are redistributed to the first level, and likewise up the levels, so a timeout is moved at most
+ * once per level before it expires.  Timeouts due beyond the range of the top level (64^4 ticks) are parked in its
+ * furthest bucket and redistributed until due.
+ *
+ * A single ticker Thread owns the buckets.  Threads schedule a timeout by adding it to a lock-free queue, and cancel
+ * one with a single compare-and-set, queueing it to be unlinked from its bucket; the ticker drains both queues once
+ * per tick.  A timeout never expires before its deadline, but may expire up to a tick late.  Expired tasks run on the
+ * ticker Thread and so must be short; longer work should be handed off to an Executor.
+ *
+ * @author John J. Blum
+ * @see java.util.concurrent.ConcurrentLinkedQueue
+ * @see org.codeprimate.lang.concurrent.HashedTimingWheel.Timeout
+ * @since 1.2.0
+ */
+@SuppressWarnings("unused")
+public class HashedTimingWheel implements Closeable {
+
+  public static final long DEFAULT_TICK_DURATION = 10L;
+
+  protected static final int LEVELS = 4;
+  protected static final int WHEEL_BITS = 6;
+  protected static final int WHEEL_SIZE = (1 << WHEEL_BITS);
+  protected static final int WHEEL_MASK = (WHEEL_SIZE - 1);
+
+  protected static final long MAX_TICKS = (1L << (WHEEL_BITS * LEVELS));
+
+  private final AtomicInteger pendingCount = new AtomicInteger(0);
+
+  private volatile boolean closed = false;
+
+  private boolean shared = false;
+
+  private long currentTick = 0L;
+
+  private final long startTime;
+  private final long tickDuration;
+
+  private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<Timeout>();
+  private final Queue<Timeout> scheduledTimeouts = new ConcurrentLinkedQueue<Timeout>();
+
+  private final Thread ticker;
+
+  // the head of the doubly-linked list of timeouts in each bucket, by level; owned by the ticker Thread
+  private final Timeout[][] buckets = new Timeout[LEVELS][WHEEL_SIZE];
+
+  public HashedTimingWheel(final String name) {
+    this(name, DEFAULT_TICK_DURATION, TimeUnit.MILLISECONDS);
+  }
+
+  public HashedTimingWheel(final String name, final long tickDuration, final TimeUnit timeUnit) {
+    Assert.notNull(timeUnit, "The TimeUnit of the tick duration must not be null!");
+    Assert.legalArgument(tickDuration > 0, String.format("The tick duration (%1$d) must be greater than 0!",
+      tickDuration));
+
+    this.tickDuration = timeUnit.toNanos(tickDuration);
+    this.startTime = System.nanoTime();
+    this.ticker = new Thread(new Ticker(), String.valueOf(name));
+    this.ticker.setDaemon(true);
+    this.ticker.start();
+  }
+
+  /**
+   * Gets the HashedTimingWheel shared by this JVM, ticking every 10 milliseconds, which is started on first use and
+   * runs until the JVM exits; closing the shared timing wheel has no effect.
+   *
+   * @return the HashedTimingWheel shared by this JVM.
+   */
+  public static HashedTimingWheel getDefault() {
+    return DefaultTimingWheelHolder.INSTANCE;
+  }
+
+  public boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   * Gets the number of timeouts that have been scheduled and have neither expired nor been cancelled.
+   *
+   * @return the number of pending timeouts.
+   */
+  public int getPendingCount() {
+    return pendingCount.get();
+  }
+
+  public long getTickDuration(final TimeUnit timeUnit) {
+    return timeUnit.convert(tickDuration, TimeUnit.NANOSECONDS);
+  }
+
+  // the time elapsed since this timing wheel was created, in nanoseconds
+  private long elapsedTime() {
+    return (System.nanoTime() - startTime);
+  }
+
+  /**
+   * Schedules the task to run on the ticker Thread once the delay has elapsed.
+   *
+   * @param task the Runnable to run when the timeout expires.
+   * @param delay the delay after which the timeout expires.
+   * @param timeUnit the TimeUnit of the delay.
+   * @return the Timeout, which may be cancelled before it expires.
+   * @throws IllegalStateException if this timing wheel is closed.
+   */
+  public Timeout schedule(final Runnable task, final long delay, final TimeUnit timeUnit) {
+    Assert.notNull(task, "The task to run on timeout must not be null!");
+    Assert.notNull(timeUnit, "The TimeUnit of the delay must not be null!");
+    Assert.legalState(!isClosed(), "The timing wheel is closed!");
+
+    long delayNanos = Math.min(Math.max(timeUnit.toNanos(delay), 0L), Long.MAX_VALUE / 2);
+    long deadline = (elapsedTime() + delayNanos);
+
+    // round up so that the timeout never expires before its deadline
+    Timeout timeout = new Timeout(this, task, (deadline + tickDuration - 1) / tickDuration);
+
+    pendingCount.incrementAndGet();
+    scheduledTimeouts.offer(timeout);
+
+    return timeout;
+  }
+
+  /**
+   * Stops the ticker Thread; pending timeouts never expire.
+   */
+  public void close() {
+    if (!shared) {
+      closed = true;
+      LockSupport.unpark(ticker);
+    }
+  }
+
+  /**
+   * Adds the timeout to the bucket covering its deadline at the lowest level whose range reaches the deadline,
+   * or expires it immediately when it is already due.
+   */
+  private void add(final Timeout timeout) {
+    long ticks = (timeout.deadlineTick - currentTick);
+
+    if (ticks <= 0) {
+      expire(timeout);
+    }
+    else {
+      ticks = Math.min(ticks, MAX_TICKS - 1);
+
+      int level = 0;
+
+      while (ticks >= (1L << (WHEEL_BITS * (level + 1)))) {
+        level++;
+      }
+
+      int slot = (int) (((currentTick + ticks) >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+
+      Timeout head = buckets[level][slot];
+
+      timeout.level = level;
+      timeout.slot = slot;
+      timeout.previous = null;
+      timeout.next = head;
+
+      if (head != null) {
+        head.previous = timeout;
+      }
+
+      buckets[level][slot] = timeout;
+    }
+  }
+
+  private void unlink(final Timeout timeout) {
+    if (timeout.level >= 0) {
+      if (timeout.previous != null) {
+        timeout.previous.next = timeout.next;
+      }
+      else {
+        buckets[timeout.level][timeout.slot] = timeout.next;
+      }
+
+      if (timeout.next != null) {
+        timeout.next.previous = timeout.previous;
+      }
+
+      timeout.level = -1;
+      timeout.next = null;
+      timeout.previous = null;
+    }
+  }
+
+  // detaches the list of timeouts in the bucket
+  private Timeout removeAll(final int level, final int slot) {
+    Timeout head = buckets[level][slot];
+
+    buckets[level][slot] = null;
+
+    for (Timeout timeout = head; timeout != null; timeout = timeout.next) {
+      timeout.level = -1;
+    }
+
+    return head;
+  }
+
+  private void transferScheduledTimeouts() {
+    for (Timeout timeout = scheduledTimeouts.poll(); timeout != null; timeout = scheduledTimeouts.poll()) {
+      if (timeout.isPending()) {
+        add(timeout);
+      }
+    }
+  }
+
+  // a timeout cancelled before it was transferred is not in a bucket and is dropped when transferred
+  private void removeCancelledTimeouts() {
+    for (Timeout timeout = cancelledTimeouts.poll(); timeout != null; timeout = cancelledTimeouts.poll()) {
+      unlink(timeout);
+    }
+  }
+
+  /**
+   * Advances the wheel by one tick, redistributing the timeouts of the higher levels whose bucket is now current,
+   * then expiring the timeouts in the current bucket of the first level.
+   */
+  private void advance() {
+    currentTick++;
+
+    for (int level = 1; level < LEVELS && (currentTick & ((1L << (WHEEL_BITS * level)) - 1)) == 0; level++) {
+      Timeout timeout = removeAll(level, (int) ((currentTick >>> (WHEEL_BITS * level)) & WHEEL_MASK));
+
+      while (timeout != null) {
+        Timeout next = timeout.next;
+
+        if (timeout.isPending()) {
+          add(timeout);
+        }
+
+        timeout = next;
+      }
+    }
+
+    Timeout timeout = removeAll(0, (int) (currentTick & WHEEL_MASK));
+
+    while (timeout != null) {
+      Timeout next = timeout.next;
+
+      timeout.next = null;
+      timeout.previous = null;
+
+      // timeouts beyond the range of the top level are not yet due when their bucket comes around
+      if (timeout.isPending()) {
+        add(timeout);
+      }
+
+      timeout = next;
+    }
+  }
+
+  private void expire(final Timeout timeout) {
+    if (timeout.expire()) {
+      pendingCount.decrementAndGet();
+
+      try {
+        timeout.task.run();
+      }
+      catch (RuntimeException e) {
+        e.printStackTrace(System.err);
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("{ name = %1$s, tickDuration = %2$d ns, currentTick = %3$d, pending = %4$d, closed = %5$s }",
+      ticker.getName(), tickDuration, currentTick, getPendingCount(), isClosed());
+  }
+
+  /**
+   * The DefaultTimingWheelHolder class lazily creates the HashedTimingWheel shared by this JVM.
+   */
+  private static final class DefaultTimingWheelHolder {
+    private static final HashedTimingWheel INSTANCE = newSharedTimingWheel();
+
+    private static HashedTimingWheel newSharedTimingWheel() {
+      HashedTimingWheel timingWheel = new HashedTimingWheel("Default Timing Wheel Ticker");
+      timingWheel.shared = true;
+      return timingWheel;
+    }
+  }
+
+  /**
+   * The Ticker class is the Runnable advancing the wheel once per tick, catching up on the ticks it missed when
+   * it was descheduled.
+   */
+  private final class Ticker implements Runnable {
+
+    public void run() {
+      while (!isClosed()) {
+        long waitTime = ((currentTick + 1) * tickDuration - elapsedTime());
+
+        if (waitTime > 0) {
+          LockSupport.parkNanos(this, waitTime);
+        }
+        else {
+          transferScheduledTimeouts();
+          removeCancelledTimeouts();
+
+          for (long dueTick = (elapsedTime() / tickDuration); currentTick < dueTick && !isClosed(); ) {
+            advance();
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * The Timeout class is a handle to a task scheduled with the HashedTimingWheel.
+   */
+  public static final class Timeout {
+
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    private static final AtomicIntegerFieldUpdater<Timeout> STATE =
+      AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+    private volatile int state = PENDING;
+
+    private final HashedTimingWheel timingWheel;
+
+    private final long deadlineTick;
+
+    private final Runnable task;
+
+    // the bucket and its list links are owned by the ticker Thread
+    private int level = -1;
+    private int slot;
+
+    private Timeout next;
+    private Timeout previous;
+
+    private Timeout(final HashedTimingWheel timingWheel, final Runnable task, final long deadlineTick) {
+      this.timingWheel = timingWheel;
+      this.task = task;
+      this.deadlineTick = deadlineTick;
+    }
+
+    public Runnable getTask() {
+      return task;
+    }
+
+    public HashedTimingWheel getTimingWheel() {
+      return timingWheel;
+    }
+
+    public boolean isCancelled() {
+      return (state == CANCELLED);
+    }
+
+    public boolean isExpired() {
+      return (state == EXPIRED);
+    }
+
+    boolean isPending() {
+      return (state == PENDING);
+    }
+
+    /**
+     * Cancels this timeout so that its task never runs.  This method may be called from any Thread.
+     *
+     * @return a boolean value indicating whether this timeout was cancelled before it expired.
+     */
+    public boolean cancel() {
+      if (STATE.compareAndSet(this, PENDING, CANCELLED)) {
+        timingWheel.pendingCount.decrementAndGet();
+        timingWheel.cancelledTimeouts.offer(this);
+        return true;
+      }
+
+      return false;
+    }
+
+    private boolean expire() {
+      return STATE.compareAndSet(this, PENDING, EXPIRED);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("{ deadlineTick = %1$d, cancelled = %2$s, expired = %3$s }", deadlineTick, isCancelled(),
+        isExpired());
+    }
+  }
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.lang.concurrent;
+
+import java.lang.Thread.UncaughtExceptionHandler;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The VirtualThreads class is an abstract utility class for creating virtual Threads.  This is the Java 8 baseline
+ * version of the class, which reports virtual Threads as unsupported.  The Multi-Release JAR contains a Java 21
+ * version of this class (in META-INF/versions/21) that creates virtual Threads.
+ *
+ * @author John J. Blum
+ * @see java.lang.Thread
+ * @see java.util.concurrent.ThreadFactory
+ * @since 1.2.0
+ */
+@SuppressWarnings("unused")
+public abstract class VirtualThreads {
+
+  protected static final String UNSUPPORTED_MESSAGE = "Virtual Threads require Java 21 or later; Java (%1$s) is running";
+
+  /**
+   * Determines whether the running JVM supports virtual Threads.
+   *
+   * @return a boolean value indicating whether virtual Threads are supported by the running JVM.
+   */
+  public static boolean isSupported() {
+    return false;
+  }
+
+  /**
+   * Enables diagnostics reporting when a virtual Thread blocks while pinned to its carrier Thread.
+   */
+  public static void enablePinningDiagnostics() {
+  }
+
+  public static Thread newThread(final String name, final Runnable task, final UncaughtExceptionHandler handler) {
+    throw new UnsupportedOperationException(String.format(UNSUPPORTED_MESSAGE, System.getProperty("java.version")));
+  }
+
+  public static ThreadFactory newThreadFactory(final String basename, final UncaughtExceptionHandler handler) {
+    throw new UnsupportedOperationException(String.format(UNSUPPORTED_MESSAGE, System.getProperty("java.version")));
+  }
+
+  public static ExecutorService newThreadPerTaskExecutor(final String basename,
+                                                         final UncaughtExceptionHandler handler) {
+    throw new UnsupportedOperationException(String.format(UNSUPPORTED_MESSAGE, System.getProperty("java.version")));
+  }
+
+}
@@ -25,18 +25,29 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
 import java.util.Scanner;
-import java.util.concurrent.Executor;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.codeprimate.lang.Assert;
+import org.codeprimate.lang.concurrent.AdmissionControlledExecutor;
+import org.codeprimate.lang.concurrent.BoundedExecutor;
+import org.codeprimate.lang.concurrent.VirtualThreads;
+import org.codeprimate.net.shm.LoopbackServerEngine;
+import org.codeprimate.net.shm.SharedMemoryServerEngine;
+import org.codeprimate.net.shm.SharedMemorySocket;
+import org.codeprimate.net.shm.WaitStrategy;
 
 /**
  * The AbstractClientServerSupport class is a base class for supporting the creation of both Client and Server programs
@@ -46,10 +57,12 @@ import org.codeprimate.lang.Assert;
  * @see java.lang.Thread
  * @see java.net.ServerSocket
  * @see java.net.Socket
- * @see java.util.concurrent.Executor
- * @see java.util.concurrent.Executors
- * @see java.util.concurrent.ExecutorService
  * @see java.util.concurrent.ThreadFactory
+ * @see org.codeprimate.lang.concurrent.BoundedExecutor
+ * @see org.codeprimate.lang.concurrent.VirtualThreads
+ * @see org.codeprimate.net.BlockingServerEngine
+ * @see org.codeprimate.net.NioServerEngine
+ * @see org.codeprimate.net.shm.SharedMemoryServerEngine
  * @since 1.0.0
  */
 @SuppressWarnings("unused")
@@ -61,12 +74,38 @@ public abstract class AbstractClientServerSupport {
   private static boolean debug = DEFAULT_DEBUG;
   private static volatile boolean running = DEFAULT_RUNNING;
 
+  protected static final int DEFAULT_MAX_WORKERS = 1024;
   protected static final int DEFAULT_PORT = 10235;
+  protected static final int DEFAULT_QUEUE_SIZE = 1024;
 
+  protected static final long METRICS_REPORT_INTERVAL = TimeUnit.SECONDS.toMillis(5);
+
+  private static int acceptors = BlockingServerEngine.DEFAULT_ACCEPTORS;
+  private static int eventLoops = NioServerEngine.DEFAULT_EVENT_LOOPS;
+  private static int maxWorkers = DEFAULT_MAX_WORKERS;
+  private static int maxWriteBatchSize = NioServerEngine.DEFAULT_MAX_WRITE_BATCH_SIZE;
   private static int port = DEFAULT_PORT;
+  private static int queueSize = DEFAULT_QUEUE_SIZE;
+  private static int ringCapacity = SharedMemorySocket.DEFAULT_RING_CAPACITY;
+
+  private static long connectionIdleTimeout = 0l;
+  private static long drainTimeout = BlockingServerEngine.DEFAULT_DRAIN_TIMEOUT;
+  private static long writeCoalescingDelay = 0l;
+
+  private static BoundedExecutor.RejectionPolicy rejectionPolicy = BoundedExecutor.RejectionPolicy.REJECT_WITH_CLOSE;
 
   private static InetAddress serverAddress;
 
+  private static ServerEngineType serverEngineType = ServerEngineType.BLOCKING;
+
+  private static volatile ServerMetrics serverMetrics = new ServerMetrics();
+
+  private static ThreadMode threadMode = ThreadMode.PLATFORM;
+
+  private static WaitStrategy waitStrategy = WaitStrategy.BACKOFF;
+
+  private static final Collection<ServerEngine> serverEngines = new CopyOnWriteArrayList<ServerEngine>();
+
   protected static final ThreadGroup mainThreadGroup = new ThreadGroup("Main Thread Group") {
     @Override public void uncaughtException(final Thread thread, final Throwable t) {
       System.err.printf("Uncaught Exception in Thread (%1$s):%n", thread.getName());
@@ -89,24 +128,128 @@ public abstract class AbstractClientServerSupport {
     return new DataOutputStream(socket.getOutputStream());
   }
 
+  protected static int getAcceptors() {
+    return acceptors;
+  }
+
+  protected static long getConnectionIdleTimeout() {
+    return connectionIdleTimeout;
+  }
+
+  protected static int getMaxWriteBatchSize() {
+    return maxWriteBatchSize;
+  }
+
+  protected static long getWriteCoalescingDelay() {
+    return writeCoalescingDelay;
+  }
+
+  protected static long getDrainTimeout() {
+    return drainTimeout;
+  }
+
+  protected static int getEventLoops() {
+    return eventLoops;
+  }
+
+  protected static int getMaxWorkers() {
+    return maxWorkers;
+  }
+
   protected static int getPort() {
     return port;
   }
 
+  protected static int getQueueSize() {
+    return queueSize;
+  }
+
+  protected static int getRingCapacity() {
+    return ringCapacity;
+  }
+
+  protected static BoundedExecutor.RejectionPolicy getRejectionPolicy() {
+    return rejectionPolicy;
+  }
+
   protected static boolean isRunning() {
     return running;
   }
 
   protected static void setRunning(final boolean running) {
     AbstractClientServerSupport.running = running;
+
+    if (!running) {
+      for (ServerEngine serverEngine : serverEngines) {
+        serverEngine.stop();
+      }
+
+      serverEngines.clear();
+    }
   }
 
   protected static InetAddress getServerAddress() {
     return serverAddress;
   }
 
+  /**
+   * Resolves the address a client connects to: the server address option, or else the local host's address, which
+   * is the address the servers started by this class bind to.
+   *
+   * @return the InetAddress of the server.
+   * @throws UnknownHostException if no server address was given and the local host's name cannot be resolved.
+   */
+  protected static InetAddress resolveServerAddress() throws UnknownHostException {
+    return (serverAddress != null ? serverAddress : InetAddress.getLocalHost());
+  }
+
+  protected static ServerEngineType getServerEngineType() {
+    return serverEngineType;
+  }
+
+  /**
+   * Gets the ServerMetrics of the server most recently started by this process, into which blocking SocketHandlers
+   * record the read, handle and write phases of each request.
+   *
+   * @return the ServerMetrics of the running server.
+   */
+  protected static ServerMetrics getServerMetrics() {
+    return serverMetrics;
+  }
+
+  // the ServerMetrics are registered as an MBean once the server engine has started
+  private static ServerMetrics newServerMetrics() {
+    serverMetrics = new ServerMetrics();
+    return serverMetrics;
+  }
+
+  protected static ThreadMode getThreadMode() {
+    return threadMode;
+  }
+
+  protected static WaitStrategy getWaitStrategy() {
+    return waitStrategy;
+  }
+
+  /**
+   * Creates an ExecutorService to run client requests, limited to the configured maximum number of workers and queue
+   * size so that a burst of connections degrades service rather than exhausting the JVM of Threads.  Platform Threads
+   * are pooled by a BoundedExecutor, whereas virtual Threads, being cheap to create, are started per request and
+   * admitted by the Semaphores of an AdmissionControlledExecutor.
+   *
+   * @param threadName a String indicating the basename of the worker Threads.
+   * @param daemon a boolean value indicating whether platform worker Threads are daemon Threads.
+   * @return an ExecutorService for running client requests.
+   * @see org.codeprimate.lang.concurrent.AdmissionControlledExecutor
+   * @see org.codeprimate.lang.concurrent.BoundedExecutor
+   */
   protected static ExecutorService createExecutor(final String threadName, final boolean daemon) {
-    return Executors.newCachedThreadPool(new ThreadFactory() {
+    if (ThreadMode.VIRTUAL.equals(getThreadMode())) {
+      return new AdmissionControlledExecutor(getMaxWorkers(), getQueueSize(), getRejectionPolicy(),
+        VirtualThreads.newThreadPerTaskExecutor(threadName, mainThreadGroup));
+    }
+
+    return new BoundedExecutor(getMaxWorkers(), getQueueSize(), getRejectionPolicy(), new ThreadFactory() {
       AtomicLong threadNumber = new AtomicLong(0);
       public Thread newThread(final Runnable command) {
         Thread thread = new Thread(mainThreadGroup, command, String.format("%1$s %2$d", threadName,
@@ -135,15 +278,61 @@ public abstract class AbstractClientServerSupport {
     return serverSocket;
   }
 
+  /**
+   * Connects to a server started with the shared memory server engine on the same host, identified by the port.
+   *
+   * @return a SharedMemorySocket connected to the server.
+   * @throws IOException if no server accepts the connection.
+   * @see org.codeprimate.net.shm.SharedMemorySocket#connect(java.io.File, int, WaitStrategy, long)
+   */
+  protected static Socket openSharedMemorySocket() throws IOException {
+    return SharedMemorySocket.connect(SharedMemoryServerEngine.getDefaultDirectory(getPort()), getRingCapacity(),
+      getWaitStrategy(), SharedMemorySocket.DEFAULT_CONNECT_TIMEOUT);
+  }
+
+  /**
+   * Connects to a server started in this JVM with startLoopbackServer, identified by the port.
+   *
+   * @return a LoopbackSocket connected to the server.
+   * @throws IOException if no loopback server is running on the port.
+   * @see org.codeprimate.net.shm.LoopbackServerEngine#connect(int)
+   */
+  protected static Socket openLoopbackSocket() throws IOException {
+    return LoopbackServerEngine.connect(getPort());
+  }
+
   protected static Socket openSocket(final InetAddress address, final int port, final boolean tcpNoDelay)
     throws IOException
   {
     Socket socket = new Socket();
     socket.setTcpNoDelay(tcpNoDelay);
-    socket.connect(new InetSocketAddress(address, port));
+    socket.connect(new InetSocketAddress(address != null ? address : resolveServerAddress(), port));
     return socket;
   }
 
+  /**
+   * Determines the number of values following the specified command line argument when the argument is one of the
+   * common command line arguments parsed by this class.
+   *
+   * @param argument the command line argument.
+   * @return the number of values following the common command line argument, or -1 if the argument is not common.
+   */
+  protected static int getCommonCommandLineArgumentArity(final String argument) {
+    if ("debug".equals(argument)) {
+      return 0;
+    }
+    else if ("server".equals(argument) || "port".equals(argument) || "engine".equals(argument)
+        || "eventLoops".equals(argument) || "threadMode".equals(argument) || "maxWorkers".equals(argument)
+        || "queueSize".equals(argument) || "rejectionPolicy".equals(argument) || "acceptors".equals(argument)
+        || "drainTimeout".equals(argument) || "ringCapacity".equals(argument)
+        || "waitStrategy".equals(argument) || "connectionIdleTimeout".equals(argument)
+        || "writeCoalescingDelay".equals(argument) || "maxWriteBatchSize".equals(argument)) {
+      return 1;
+    }
+
+    return -1;
+  }
+
   protected static void parseCommandLineArguments(final String... args) throws Exception {
     parseCommandLineArguments(false, args);
   }
@@ -161,12 +350,71 @@ public abstract class AbstractClientServerSupport {
       else if ("debug".equals(args[index])) {
         debug = true;
       }
+      else if ("engine".equals(args[index])) {
+        serverEngineType = ServerEngineType.findBy(args[++index]);
+      }
+      else if ("eventLoops".equals(args[index])) {
+        eventLoops = Integer.parseInt(args[++index]);
+      }
+      else if ("threadMode".equals(args[index])) {
+        threadMode = ThreadMode.findBy(args[++index]);
+      }
+      else if ("maxWorkers".equals(args[index])) {
+        maxWorkers = Integer.parseInt(args[++index]);
+      }
+      else if ("queueSize".equals(args[index])) {
+        queueSize = Integer.parseInt(args[++index]);
+      }
+      else if ("rejectionPolicy".equals(args[index])) {
+        rejectionPolicy = BoundedExecutor.RejectionPolicy.findBy(args[++index]);
+      }
+      else if ("acceptors".equals(args[index])) {
+        acceptors = Integer.parseInt(args[++index]);
+      }
+      else if ("drainTimeout".equals(args[index])) {
+        drainTimeout = Long.parseLong(args[++index]);
+      }
+      else if ("connectionIdleTimeout".equals(args[index])) {
+        connectionIdleTimeout = Long.parseLong(args[++index]);
+      }
+      else if ("writeCoalescingDelay".equals(args[index])) {
+        writeCoalescingDelay = Long.parseLong(args[++index]);
+      }
+      else if ("maxWriteBatchSize".equals(args[index])) {
+        maxWriteBatchSize = Integer.parseInt(args[++index]);
+      }
+      else if ("ringCapacity".equals(args[index])) {
+        ringCapacity = Integer.parseInt(args[++index]);
+      }
+      else if ("waitStrategy".equals(args[index])) {
+        waitStrategy = WaitStrategy.findBy(args[++index]);
+      }
       else {
         if (!ignoreUnknownCommands) {
           System.err.printf("Unknown command line argument (%1$s)!%n", args[index]);
         }
       }
     }
+
+    if (ThreadMode.VIRTUAL.equals(threadMode)) {
+      if (VirtualThreads.isSupported()) {
+        if (isDebug()) {
+          VirtualThreads.enablePinningDiagnostics();
+        }
+      }
+      else {
+        System.err.printf("Virtual Threads are not supported by Java (%1$s); using platform Threads!%n",
+          System.getProperty("java.version"));
+        threadMode = ThreadMode.PLATFORM;
+      }
+    }
+
+    // tasks admitted for virtual Threads are already running on their Threads and cannot be shed
+    if (ThreadMode.VIRTUAL.equals(threadMode) && BoundedExecutor.RejectionPolicy.SHED_OLDEST.equals(rejectionPolicy)) {
+      System.err.printf("The (%1$s) rejection policy is not supported with virtual Threads; rejecting requests!%n",
+        rejectionPolicy.getCode());
+      rejectionPolicy = BoundedExecutor.RejectionPolicy.REJECT_WITH_CLOSE;
+    }
   }
 
   protected static boolean pause(final int milliseconds) {
@@ -179,45 +427,213 @@ public abstract class AbstractClientServerSupport {
     }
   }
 
-  protected static void startServer(final String serverName, final ClientRequestHandler handler) {
-    Runnable serverRunnable = new Runnable() {
+  protected static void startServer(final String serverName, final ClientRequestHandler handler) throws IOException {
+    final ExecutorService executor = createExecutor("Client Request Handler Thread", true);
 
-      private Executor executor = createExecutor("Client Request Handler Thread", true);
+    SocketHandler meteredHandler = new SocketHandler() {
+      private volatile long lastMetricsReportTime = System.currentTimeMillis();
 
-      private ServerSocket serverSocket;
+      public Runnable service(final Socket clientSocket) {
+        if (isDebug() && System.currentTimeMillis() - lastMetricsReportTime >= METRICS_REPORT_INTERVAL) {
+          System.out.printf("%1$s executor metrics %2$s%n", serverName, executor);
+          lastMetricsReportTime = System.currentTimeMillis();
+        }
 
-      public void run() {
-        try {
-          serverSocket = openServerSocket(InetAddress.getLocalHost(), getPort(), true, 500);
+        return handler.service(clientSocket);
+      }
+    };
 
-          System.out.printf("Started %1$s listening on port (%2$d) bound to address (%3$s)...%n", serverName, getPort(),
-            serverSocket.getInetAddress().toString());
+    if (ServerEngineType.SHARED_MEMORY.equals(getServerEngineType())) {
+      startSharedMemoryServer(serverName, executor, meteredHandler);
+      return;
+    }
 
-          while (isRunning()) {
-            try {
-              Socket clientSocket = serverSocket.accept();
-              clientSocket.setTcpNoDelay(true);
-              executor.execute(handler.service(clientSocket));
-            }
-            catch (SocketTimeoutException ignore) {
-            }
-          }
-        }
-        catch (IOException e) {
-          e.printStackTrace(System.err);
-          setRunning(false);
-        }
-        finally {
-          SocketUtils.close(serverSocket);
-          System.out.printf("%1$s listening on port (%2$d) bound to address (%3$s) stopped.%n", serverName, getPort(),
-            serverSocket.getInetAddress().toString());
+    BlockingServerEngine serverEngine = new BlockingServerEngine(serverName,
+      new InetSocketAddress(InetAddress.getLocalHost(), getPort()), getAcceptors(), executor, meteredHandler) {
+
+      @Override protected Thread newThread(final Runnable acceptor, final String threadName) {
+        Thread thread = new Thread(mainThreadGroup, acceptor, threadName);
+        thread.setDaemon(false);
+        thread.setPriority(Thread.NORM_PRIORITY);
+        return thread;
+      }
+
+      @Override public void stop() {
+        InetSocketAddress boundAddress = getBoundAddress();
+
+        super.stop();
+
+        getMetrics().unregister();
+
+        System.out.printf("%1$s listening on port (%2$d) bound to address (%3$s) stopped; executor metrics %4$s;"
+          + " server metrics %5$s.%n", serverName, boundAddress.getPort(), boundAddress.getAddress().toString(),
+            executor, getMetrics());
+      }
+    };
+
+    serverEngine.setDrainTimeout(getDrainTimeout());
+    serverEngine.setMetrics(newServerMetrics());
+    serverEngine.start();
+    serverEngine.getMetrics().register(serverName);
+    serverEngines.add(serverEngine);
+
+    System.out.printf("Started %1$s listening on port (%2$d) bound to address (%3$s) using (%4$s) Threads"
+      + " with (%5$d) acceptors%6$s...%n", serverName, getPort(), serverEngine.getBoundAddress().getAddress().toString(),
+        getThreadMode().getCode(), serverEngine.getAcceptorCount(), (serverEngine.isReusePort() ? " (SO_REUSEPORT)" : ""));
+  }
+
+  private static void startSharedMemoryServer(final String serverName, final ExecutorService executor,
+                                              final SocketHandler handler) throws IOException {
+
+    SharedMemoryServerEngine serverEngine = new SharedMemoryServerEngine(serverName,
+      SharedMemoryServerEngine.getDefaultDirectory(getPort()), getWaitStrategy(), executor, handler) {
+
+      @Override protected Thread newThread(final Runnable acceptor, final String threadName) {
+        Thread thread = new Thread(mainThreadGroup, acceptor, threadName);
+        thread.setDaemon(false);
+        thread.setPriority(Thread.NORM_PRIORITY);
+        return thread;
+      }
+
+      @Override public void stop() {
+        super.stop();
+
+        getMetrics().unregister();
+
+        System.out.printf("%1$s in directory (%2$s) stopped; executor metrics %3$s; server metrics %4$s.%n",
+          serverName, getDirectory(), executor, getMetrics());
+      }
+    };
+
+    serverEngine.setDrainTimeout(getDrainTimeout());
+    serverEngine.setMetrics(newServerMetrics());
+    serverEngine.start();
+    serverEngine.getMetrics().register(serverName);
+    serverEngines.add(serverEngine);
+
+    System.out.printf("Started %1$s accepting shared memory connections in directory (%2$s) using (%3$s) Threads"
+      + " with the (%4$s) wait strategy...%n", serverName, serverEngine.getDirectory(), getThreadMode().getCode(),
+        getWaitStrategy().getCode());
+  }
+
+  /**
+   * Starts a server in this JVM servicing LoopbackSocket connections with the handler, so a client running in the same
+   * JVM measures the cost of the protocol and handler logic without the kernel.  The server is stopped with the other
+   * server engines by setRunning(false).
+   *
+   * @param serverName a String indicating the name of the server.
+   * @param handler the ClientRequestHandler servicing each client connection.
+   * @throws IOException if another loopback server is running on the port.
+   * @see #openLoopbackSocket()
+   */
+  protected static void startLoopbackServer(final String serverName, final ClientRequestHandler handler)
+    throws IOException
+  {
+    final ExecutorService executor = createExecutor("Client Request Handler Thread", true);
+
+    LoopbackServerEngine serverEngine = new LoopbackServerEngine(serverName, getPort(), getRingCapacity(),
+      getWaitStrategy(), executor, handler) {
+
+      @Override public void stop() {
+        super.stop();
+
+        getMetrics().unregister();
+
+        System.out.printf("%1$s on loopback port (%2$d) stopped; executor metrics %3$s; server metrics %4$s.%n",
+          serverName, getPort(), executor, getMetrics());
+      }
+    };
+
+    serverEngine.setDrainTimeout(getDrainTimeout());
+    serverEngine.setMetrics(newServerMetrics());
+    serverEngine.start();
+    serverEngine.getMetrics().register(serverName);
+    serverEngines.add(serverEngine);
+
+    System.out.printf("Started %1$s accepting loopback connections on port (%2$d) using (%3$s) Threads"
+      + " with the (%4$s) wait strategy...%n", serverName, getPort(), getThreadMode().getCode(),
+        getWaitStrategy().getCode());
+  }
+
+  protected static void startServer(final String serverName, final ChannelHandler handler) throws IOException {
+    NioServerEngine serverEngine = new NioServerEngine(serverName,
+      new InetSocketAddress(InetAddress.getLocalHost(), getPort()), getEventLoops(), handler) {
+
+      @Override protected Thread newThread(final Runnable eventLoop, final String threadName) {
+        Thread thread = new Thread(mainThreadGroup, eventLoop, threadName);
+        thread.setDaemon(false);
+        thread.setPriority(Thread.NORM_PRIORITY);
+        return thread;
+      }
+
+      @Override public synchronized void stop() {
+        boolean running = isRunning();
+
+        super.stop();
+
+        if (running) {
+          getMetrics().unregister();
+          System.out.printf("%1$s stopped; server metrics %2$s.%n", serverName, getMetrics());
         }
       }
     };
 
-    final Thread serverThread = new Thread(mainThreadGroup, serverRunnable, serverName + " Thread");
-    serverThread.setDaemon(false);
-    serverThread.start();
+    serverEngine.setIdleTimeout(getConnectionIdleTimeout());
+    serverEngine.setMaxWriteBatchSize(getMaxWriteBatchSize());
+    serverEngine.setWriteCoalescingDelay(getWriteCoalescingDelay());
+    serverEngine.setMetrics(newServerMetrics());
+    serverEngine.start();
+    serverEngine.getMetrics().register(serverName);
+    serverEngines.add(serverEngine);
+
+    System.out.printf("Started %1$s listening on port (%2$d) bound to address (%3$s) using (%4$d) event loops...%n",
+      serverName, getPort(), serverEngine.getBoundAddress().getAddress().toString(), serverEngine.getEventLoopCount());
+  }
+
+  /**
+   * Creates a server servicing client connections with the ChannelHandler on a NioServerEngine configured with the
+   * common command line arguments.  Unlike startServer, the server is neither started nor stopped by this class and
+   * is bound to the given address rather than the configured port, so that any number of servers can run in one JVM;
+   * bind to port 0 for an ephemeral port.
+   *
+   * @param serverName a String indicating the name of the server.
+   * @param address the InetSocketAddress to bind the server to.
+   * @param handler the ChannelHandler servicing each client connection.
+   * @return an un-started ServerHandle of the server.
+   * @see org.codeprimate.net.ServerHandle
+   */
+  protected static ServerHandle newServer(final String serverName, final InetSocketAddress address,
+                                          final ChannelHandler handler) {
+    NioServerEngine serverEngine = new NioServerEngine(serverName, address, getEventLoops(), handler);
+
+    serverEngine.setIdleTimeout(getConnectionIdleTimeout());
+    serverEngine.setMaxWriteBatchSize(getMaxWriteBatchSize());
+    serverEngine.setWriteCoalescingDelay(getWriteCoalescingDelay());
+
+    return new ServerHandle(serverName, serverEngine, serverEngine.getMetrics());
+  }
+
+  /**
+   * Creates a server servicing each client connection with the handler on a Thread of its own executor, configured
+   * with the common command line arguments, which is neither started nor stopped by this class.  The handler records
+   * the phases of each request in the given ServerMetrics, which are the metrics of the server returned.
+   *
+   * @param serverName a String indicating the name of the server.
+   * @param address the InetSocketAddress to bind the server to.
+   * @param metrics the ServerMetrics of the server, into which the handler records each request.
+   * @param handler the ClientRequestHandler servicing each client connection.
+   * @return an un-started ServerHandle of the server.
+   * @see org.codeprimate.net.ServerHandle
+   */
+  protected static ServerHandle newServer(final String serverName, final InetSocketAddress address,
+                                          final ServerMetrics metrics, final ClientRequestHandler handler) {
+    BlockingServerEngine serverEngine = new BlockingServerEngine(serverName, address, getAcceptors(),
+      createExecutor(serverName + " Client Request Handler Thread", true), handler);
+
+    serverEngine.setDrainTimeout(getDrainTimeout());
+    serverEngine.setMetrics(metrics);
+
+    return new ServerHandle(serverName, serverEngine, metrics);
   }
 
   protected static void waitForUserInput(final String input, final String message) {
@@ -228,14 +644,103 @@ public abstract class AbstractClientServerSupport {
     }
   }
 
-  protected static interface ClientRequestHandler {
-    Runnable service(Socket clientSocket);
+  protected static interface ClientRequestHandler extends SocketHandler {
+  }
+
+  protected static enum ThreadMode {
+    PLATFORM("platform"),
+    VIRTUAL("virtual");
+
+    private final String code;
+
+    ThreadMode(final String code) {
+      this.code = code;
+    }
+
+    public static ThreadMode findBy(final String code) {
+      for (ThreadMode mode : values()) {
+        if (mode.getCode().equalsIgnoreCase(code)) {
+          return mode;
+        }
+      }
+
+      throw new IllegalArgumentException("(" + code + ") is not a valid ThreadMode code!");
+    }
+
+    public String getCode() {
+      return code;
+    }
+  }
+
+  protected static enum ServerEngineType {
+    BLOCKING(1, "blocking", "Service Each Client Connection with a Thread"),
+    NIO(2, "nio", "Multiplex Client Connections over Selector Event Loops"),
+    SHARED_MEMORY(3, "shm", "Service Each Client Connection over Shared Memory Ring Buffers with a Thread");
+
+    private final int id;
+
+    private final String code;
+    private final String description;
+
+    ServerEngineType(final int id, final String code, final String description) {
+      this.id = id;
+      this.code = code;
+      this.description = description;
+    }
+
+    public static ServerEngineType findBy(final int id) {
+      for (ServerEngineType type : values()) {
+        if (type.getId() == id) {
+          return type;
+        }
+      }
+
+      throw new IllegalArgumentException("(" + id + ") is not a valid ServerEngineType ID!");
+    }
+
+    public static ServerEngineType findBy(final String code) {
+      for (ServerEngineType type : values()) {
+        if (type.getCode().equalsIgnoreCase(code)) {
+          return type;
+        }
+      }
+
+      throw new IllegalArgumentException("(" + code + ") is not a valid ServerEngineType code!");
+    }
+
+    public String getCode() {
+      return code;
+    }
+
+    public String getDescription() {
+      return description;
+    }
+
+    public int getId() {
+      return id;
+    }
+
+    @Override
+    public String toString() {
+      return getDescription();
+    }
   }
 
   protected static final class ThreadCollection {
 
     private final Collection<Thread> threads = new LinkedList<Thread>();
 
+    private final Queue<Throwable> failures = new ConcurrentLinkedQueue<Throwable>();
+
+    // records the failure of a Thread so the caller joining the Threads learns its work was not done
+    private final Thread.UncaughtExceptionHandler failureHandler = new Thread.UncaughtExceptionHandler() {
+      public void uncaughtException(final Thread thread, final Throwable t) {
+        failures.add(t);
+        System.err.printf("Uncaught Exception in Thread (%1$s):%n", thread.getName());
+        t.printStackTrace(System.err);
+      }
+    };
+
     private ThreadCollection() {
     }
 
@@ -258,17 +763,53 @@ public abstract class AbstractClientServerSupport {
 
     private Thread createThread(final Runnable runnable, final String threadBasename) {
       Assert.notNull(threadBasename, "The basename of the Thread cannot be null!");
-      Thread thread = new Thread(runnable, threadBasename.trim() + " " + threads.size());
+
+      String threadName = (threadBasename.trim() + " " + threads.size());
+
+      if (ThreadMode.VIRTUAL.equals(getThreadMode())) {
+        return VirtualThreads.newThread(threadName, runnable, failureHandler);
+      }
+
+      Thread thread = new Thread(runnable, threadName);
       thread.setDaemon(false);
       thread.setPriority(Thread.NORM_PRIORITY);
+      thread.setUncaughtExceptionHandler(failureHandler);
       return thread;
     }
 
+    /**
+     * Gets the exceptions that terminated any of the Threads.
+     *
+     * @return a List of the Throwables uncaught by the Threads, empty if no Thread failed.
+     */
+    public List<Throwable> getFailures() {
+      return new ArrayList<Throwable>(failures);
+    }
+
+    public boolean isFailed() {
+      return !failures.isEmpty();
+    }
+
     public void join() throws InterruptedException {
       for (Thread thread : threads) {
         thread.join();
       }
     }
+
+    /**
+     * Waits for all Threads to finish, then fails if any Thread was terminated by an uncaught exception.
+     *
+     * @throws IOException caused by the first failure if any Thread failed.
+     * @throws InterruptedException if the calling Thread is interrupted while waiting.
+     */
+    public void joinOrFail() throws IOException, InterruptedException {
+      join();
+
+      if (isFailed()) {
+        throw new IOException(String.format("(%1$d) of (%2$d) Threads failed!", failures.size(), threads.size()),
+          failures.peek());
+      }
+    }
   }
 
 }
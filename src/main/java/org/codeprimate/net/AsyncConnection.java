@@ -0,0 +1,305 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.codeprimate.lang.Assert;
+
+/**
+ * The AsyncConnection class is a client connection over an AsynchronousSocketChannel whose reads and writes return
+ * CompletableFutures rather than blocking the calling Thread.  Many AsyncConnections sharing an
+ * AsynchronousChannelGroup are serviced by the group's small pool of Threads, so a single JVM can drive thousands
+ * of concurrent connections without a Thread per connection.
+ *
+ * Reads and writes complete only once the buffers are entirely read or written, resuming partial transfers from the
+ * completion handler.  At most one read and one write may be pending at a time; the next read or write is typically
+ * started by a dependent of the previous one's CompletableFuture, which runs on the completing group Thread.
+ *
+ * @author John J. Blum
+ * @see java.nio.channels.AsynchronousSocketChannel
+ * @see java.util.concurrent.CompletableFuture
+ * @since 1.2.0
+ */
+@SuppressWarnings("unused")
+public class AsyncConnection implements Closeable {
+
+  private final AsynchronousSocketChannel channel;
+
+  private final ReadHandler readHandler = new ReadHandler();
+
+  private final WriteHandler writeHandler = new WriteHandler();
+
+  public AsyncConnection(final AsynchronousSocketChannel channel) {
+    Assert.notNull(channel, "The AsynchronousSocketChannel must not be null!");
+    this.channel = channel;
+  }
+
+  /**
+   * Opens an AsyncConnection to the server in the AsynchronousChannelGroup.
+   *
+   * @param group the AsynchronousChannelGroup whose Threads service the connection.
+   * @param address the SocketAddress of the server.
+   * @return a CompletableFuture completed with the AsyncConnection once connected, or exceptionally if the
+   * connection could not be opened.
+   */
+  public static CompletableFuture<AsyncConnection> connect(final AsynchronousChannelGroup group,
+                                                           final SocketAddress address) {
+    final CompletableFuture<AsyncConnection> future = new CompletableFuture<AsyncConnection>();
+
+    try {
+      final AsynchronousSocketChannel channel = AsynchronousSocketChannel.open(group);
+
+      try {
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        channel.connect(address, null, new CompletionHandler<Void, Void>() {
+          public void completed(final Void result, final Void attachment) {
+            future.complete(new AsyncConnection(channel));
+          }
+
+          public void failed(final Throwable cause, final Void attachment) {
+            close(channel);
+            future.completeExceptionally(cause);
+          }
+        });
+      }
+      catch (IOException e) {
+        close(channel);
+        throw e;
+      }
+      catch (RuntimeException e) {
+        close(channel);
+        throw e;
+      }
+    }
+    catch (IOException e) {
+      future.completeExceptionally(e);
+    }
+    catch (RuntimeException e) {
+      future.completeExceptionally(e);
+    }
+
+    return future;
+  }
+
+  // @see java.io.Closeable#close()
+  private static void close(final AsynchronousSocketChannel channel) {
+    try {
+      channel.close();
+    }
+    catch (IOException ignore) {
+    }
+  }
+
+  public AsynchronousSocketChannel getChannel() {
+    return channel;
+  }
+
+  public boolean isOpen() {
+    return channel.isOpen();
+  }
+
+  /**
+   * Reads from the connection until the ByteBuffer is full.
+   *
+   * @param buffer the ByteBuffer, in write mode, into which bytes are read up to its limit.
+   * @return a CompletableFuture completed with the ByteBuffer once full, or exceptionally with an EOFException
+   * if the server closes the connection first.
+   * @throws IllegalStateException if a read is already pending.
+   */
+  public CompletableFuture<ByteBuffer> readFully(final ByteBuffer buffer) {
+    return readHandler.start(buffer);
+  }
+
+  /**
+   * Writes the ByteBuffers to the connection with gathering writes until none have bytes remaining.
+   *
+   * @param buffers the ByteBuffers, in read mode, to write in order.
+   * @return a CompletableFuture completed once all bytes are written.
+   * @throws IllegalStateException if a write is already pending.
+   */
+  public CompletableFuture<Void> write(final ByteBuffer... buffers) {
+    return writeHandler.start(buffers);
+  }
+
+  /**
+   * Closes the connection; pending reads and writes complete exceptionally with an AsynchronousCloseException.
+   */
+  public void close() {
+    close(channel);
+  }
+
+  @Override
+  public String toString() {
+    try {
+      return String.format("{ local = %1$s, remote = %2$s }", channel.getLocalAddress(), channel.getRemoteAddress());
+    }
+    catch (IOException ignore) {
+      return "{ closed }";
+    }
+  }
+
+  /**
+   * The ReadHandler class continues a pending read until its ByteBuffer is full.
+   */
+  protected final class ReadHandler implements CompletionHandler<Integer, Void> {
+
+    private ByteBuffer buffer;
+
+    private volatile CompletableFuture<ByteBuffer> future;
+
+    protected CompletableFuture<ByteBuffer> start(final ByteBuffer buffer) {
+      Assert.notNull(buffer, "The ByteBuffer to read into must not be null!");
+      Assert.legalState(future == null, "A read is already pending on this connection!");
+
+      CompletableFuture<ByteBuffer> future = new CompletableFuture<ByteBuffer>();
+
+      this.buffer = buffer;
+      this.future = future;
+
+      if (buffer.hasRemaining()) {
+        read();
+      }
+      else {
+        complete(null);
+      }
+
+      return future;
+    }
+
+    private void read() {
+      try {
+        channel.read(buffer, null, this);
+      }
+      catch (RuntimeException e) {
+        complete(e);
+      }
+    }
+
+    // the future is cleared before it is completed, so that its dependents may start the next read
+    private void complete(final Throwable cause) {
+      CompletableFuture<ByteBuffer> future = this.future;
+      ByteBuffer buffer = this.buffer;
+
+      this.buffer = null;
+      this.future = null;
+
+      if (cause != null) {
+        future.completeExceptionally(cause);
+      }
+      else {
+        future.complete(buffer);
+      }
+    }
+
+    public void completed(final Integer bytesRead, final Void attachment) {
+      if (bytesRead < 0) {
+        complete(new EOFException(String.format("The server closed the connection with (%1$d) bytes left to read!",
+          buffer.remaining())));
+      }
+      else if (buffer.hasRemaining()) {
+        read();
+      }
+      else {
+        complete(null);
+      }
+    }
+
+    public void failed(final Throwable cause, final Void attachment) {
+      complete(cause);
+    }
+  }
+
+  /**
+   * The WriteHandler class continues a pending gathering write until all its ByteBuffers are drained.
+   */
+  protected final class WriteHandler implements CompletionHandler<Long, Void> {
+
+    private ByteBuffer[] buffers;
+
+    private volatile CompletableFuture<Void> future;
+
+    private int offset;
+
+    protected CompletableFuture<Void> start(final ByteBuffer... buffers) {
+      Assert.notNull(buffers, "The ByteBuffers to write must not be null!");
+      Assert.legalState(future == null, "A write is already pending on this connection!");
+
+      CompletableFuture<Void> future = new CompletableFuture<Void>();
+
+      this.buffers = buffers;
+      this.future = future;
+      this.offset = 0;
+
+      write();
+
+      return future;
+    }
+
+    private void write() {
+      while (offset < buffers.length && !buffers[offset].hasRemaining()) {
+        offset++;
+      }
+
+      if (offset < buffers.length) {
+        try {
+          channel.write(buffers, offset, (buffers.length - offset), 0l, TimeUnit.MILLISECONDS, null, this);
+        }
+        catch (RuntimeException e) {
+          complete(e);
+        }
+      }
+      else {
+        complete(null);
+      }
+    }
+
+    // the future is cleared before it is completed, so that its dependents may start the next write
+    private void complete(final Throwable cause) {
+      CompletableFuture<Void> future = this.future;
+
+      this.buffers = null;
+      this.future = null;
+
+      if (cause != null) {
+        future.completeExceptionally(cause);
+      }
+      else {
+        future.complete(null);
+      }
+    }
+
+    public void completed(final Long bytesWritten, final Void attachment) {
+      write();
+    }
+
+    public void failed(final Throwable cause, final Void attachment) {
+      complete(cause);
+    }
+  }
+
+}
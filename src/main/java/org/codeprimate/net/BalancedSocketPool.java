@@ -0,0 +1,589 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.codeprimate.lang.Assert;
+
+/**
+ * The BalancedSocketPool class spreads the requests of a client across several servers offering the same service.
+ * Each server, or endpoint, has its own SocketPool; every borrow selects an endpoint with the BalancePolicy and lends
+ * a Socket from that endpoint's pool.  A request is the time from borrowing a Socket until it is released, from which
+ * the pool tracks the number of outstanding requests of each endpoint along with an exponentially weighted moving
+ * average (EWMA) of its request latency.
+ *
+ * An endpoint failing a number of consecutive requests, either because a connection could not be opened or because
+ * the borrower invalidated the Socket, is ejected for the ejection time, after which it is tried again; a single
+ * further failure ejects it once more.  When every endpoint has been ejected, the pool selects among all endpoints
+ * rather than failing outright.
+ *
+ * @author John J. Blum
+ * @see org.codeprimate.net.SocketPool
+ * @since 1.2.0
+ */
+@SuppressWarnings("unused")
+public class BalancedSocketPool implements Closeable {
+
+  public static final int DEFAULT_MAX_FAILURES = 3;
+
+  public static final long DEFAULT_EJECTION_TIME = TimeUnit.SECONDS.toMillis(10);
+
+  // the weight of each new latency sample in the moving average of an endpoint's latency
+  protected static final double LATENCY_EWMA_WEIGHT = 0.2d;
+
+  private final AtomicInteger nextIndex = new AtomicInteger(0);
+
+  private volatile boolean closed;
+
+  private final BalancePolicy balancePolicy;
+
+  private final ConcurrentMap<Socket, Lease> leases = new ConcurrentHashMap<Socket, Lease>();
+
+  private volatile int maxFailures = DEFAULT_MAX_FAILURES;
+
+  private final List<Endpoint> endpoints;
+
+  private volatile long ejectionTime = DEFAULT_EJECTION_TIME;
+
+  /**
+   * Constructs a BalancedSocketPool over the servers listening on the addresses.
+   *
+   * @param addresses the InetSocketAddresses of the servers.
+   * @param balancePolicy the BalancePolicy selecting the server of each borrowed Socket.
+   * @param minSize the minimum number of connections kept open to each server.
+   * @param maxSize the maximum number of connections open to each server.
+   */
+  public BalancedSocketPool(final Collection<InetSocketAddress> addresses, final BalancePolicy balancePolicy,
+                            final int minSize, final int maxSize) {
+    Assert.legalArgument(addresses != null && !addresses.isEmpty(), "At least one server address is required!");
+    Assert.notNull(balancePolicy, "The BalancePolicy must not be null!");
+
+    List<Endpoint> endpoints = new ArrayList<Endpoint>(addresses.size());
+
+    for (final InetSocketAddress address : addresses) {
+      endpoints.add(new Endpoint(address, new SocketPool(new SocketPool.Connector() {
+        public Socket connect() throws IOException {
+          try {
+            return BalancedSocketPool.this.connect(address);
+          }
+          catch (IOException e) {
+            throw new ConnectFailure(e);
+          }
+        }
+      }, minSize, maxSize)));
+    }
+
+    this.endpoints = Collections.unmodifiableList(endpoints);
+    this.balancePolicy = balancePolicy;
+  }
+
+  public BalancePolicy getBalancePolicy() {
+    return balancePolicy;
+  }
+
+  public long getEjectionTime() {
+    return ejectionTime;
+  }
+
+  /**
+   * Sets the time in milliseconds for which a failing endpoint receives no requests.
+   *
+   * @param ejectionTime the ejection time in milliseconds.
+   */
+  public void setEjectionTime(final long ejectionTime) {
+    Assert.legalArgument(ejectionTime >= 0, String.format("The ejection time (%1$d) must be greater than or equal"
+      + " to 0!", ejectionTime));
+    this.ejectionTime = ejectionTime;
+  }
+
+  public boolean isClosed() {
+    return closed;
+  }
+
+  public List<Endpoint> getEndpoints() {
+    return endpoints;
+  }
+
+  public int getMaxFailures() {
+    return maxFailures;
+  }
+
+  /**
+   * Sets the number of consecutive failed requests after which an endpoint is ejected.
+   *
+   * @param maxFailures the number of consecutive failures ejecting an endpoint.
+   */
+  public void setMaxFailures(final int maxFailures) {
+    Assert.legalArgument(maxFailures > 0, String.format("The maximum number of failures (%1$d) must be greater"
+      + " than 0!", maxFailures));
+    this.maxFailures = maxFailures;
+  }
+
+  /**
+   * Sets the borrow timeout of the SocketPool of every endpoint.
+   *
+   * @param borrowTimeout the borrow timeout in milliseconds.
+   * @see org.codeprimate.net.SocketPool#setBorrowTimeout(long)
+   */
+  public void setBorrowTimeout(final long borrowTimeout) {
+    for (Endpoint endpoint : endpoints) {
+      endpoint.socketPool.setBorrowTimeout(borrowTimeout);
+    }
+  }
+
+  /**
+   * Sets the idle timeout of the SocketPool of every endpoint.
+   *
+   * @param idleTimeout the idle timeout in milliseconds.
+   * @see org.codeprimate.net.SocketPool#setIdleTimeout(long)
+   */
+  public void setIdleTimeout(final long idleTimeout) {
+    for (Endpoint endpoint : endpoints) {
+      endpoint.socketPool.setIdleTimeout(idleTimeout);
+    }
+  }
+
+  /**
+   * Opens a new connection to the server at the address.  Subclasses may override this method to configure the
+   * Socket or to connect through a different transport.
+   *
+   * @param address the InetSocketAddress of the server.
+   * @return a Socket connected to the server.
+   * @throws IOException if the connection could not be opened.
+   */
+  protected Socket connect(final InetSocketAddress address) throws IOException {
+    Socket socket = new Socket();
+    socket.setTcpNoDelay(true);
+    socket.connect(address);
+    return socket;
+  }
+
+  /**
+   * Borrows a Socket connected to the endpoint selected by the BalancePolicy.  When the selected endpoint has no
+   * connection to spare or fails to connect, the other endpoints that have not been ejected are tried in turn without
+   * waiting.  Only when every endpoint tried has all its connections borrowed does the borrower wait, up to the borrow
+   * timeout, for a connection of the first of them to be released.  A failure to connect is recorded against its
+   * endpoint; an endpoint merely having all its connections borrowed is not failing.
+   *
+   * @return a Socket connected to one of the servers.
+   * @throws java.net.SocketTimeoutException if no connection was released within the borrow timeout.
+   * @throws IOException if no endpoint could lend a Socket.
+   */
+  public Socket borrow() throws IOException {
+    long now = System.nanoTime();
+
+    Endpoint selected = select();
+    Endpoint exhausted = null;
+
+    IOException failure = null;
+
+    // the selected endpoint is only unavailable when all endpoints are, in which case all are tried
+    boolean skipEjected = selected.isAvailable(now);
+
+    int start = endpoints.indexOf(selected);
+
+    for (int offset = 0; offset < endpoints.size(); offset++) {
+      Endpoint endpoint = endpoints.get((start + offset) % endpoints.size());
+
+      if (offset == 0 || !skipEjected || endpoint.isAvailable(now)) {
+        try {
+          Socket socket = borrow(endpoint, false);
+
+          if (socket != null) {
+            return socket;
+          }
+
+          exhausted = (exhausted != null ? exhausted : endpoint);
+        }
+        catch (ConnectFailure e) {
+          failure = (IOException) e.getCause();
+        }
+      }
+    }
+
+    if (exhausted == null) {
+      throw failure;
+    }
+
+    try {
+      return borrow(exhausted, true);
+    }
+    catch (ConnectFailure e) {
+      throw (IOException) e.getCause();
+    }
+  }
+
+  // borrows a Socket from the endpoint's pool, waiting up to the borrow timeout or returning null rather than waiting
+  // when all its connections are borrowed; only a failure to connect counts against the endpoint
+  private Socket borrow(final Endpoint endpoint, final boolean wait) throws IOException {
+    endpoint.outstandingCount.incrementAndGet();
+
+    try {
+      Socket socket = (wait ? endpoint.socketPool.borrow() : endpoint.socketPool.tryBorrow());
+
+      if (socket != null) {
+        leases.put(socket, new Lease(endpoint, System.nanoTime()));
+        return socket;
+      }
+    }
+    catch (ConnectFailure e) {
+      endpoint.failed(this);
+      throw e;
+    }
+    catch (IOException e) {
+      endpoint.outstandingCount.decrementAndGet();
+      throw e;
+    }
+
+    endpoint.outstandingCount.decrementAndGet();
+
+    return null;
+  }
+
+  /**
+   * Returns the Socket, after a successful request, to the pool of its endpoint, recording the request's latency.
+   *
+   * @param socket the Socket borrowed from this pool.
+   */
+  public void release(final Socket socket) {
+    Lease lease = leases.remove(socket);
+
+    if (lease != null) {
+      lease.endpoint.completed(System.nanoTime() - lease.borrowTime);
+      lease.endpoint.socketPool.release(socket);
+    }
+    else {
+      SocketUtils.close(socket);
+    }
+  }
+
+  /**
+   * Closes the Socket, after a failed request, counting the failure against its endpoint.
+   *
+   * @param socket the Socket borrowed from this pool.
+   */
+  public void invalidate(final Socket socket) {
+    Lease lease = leases.remove(socket);
+
+    if (lease != null) {
+      lease.endpoint.failed(this);
+      lease.endpoint.socketPool.invalidate(socket);
+    }
+    else {
+      SocketUtils.close(socket);
+    }
+  }
+
+  /**
+   * Selects the endpoint of the next request with the BalancePolicy, among the endpoints that are not ejected.
+   *
+   * @return the selected Endpoint.
+   */
+  protected Endpoint select() {
+    long now = System.nanoTime();
+
+    switch (balancePolicy) {
+      case LEAST_OUTSTANDING:
+        return selectLeastOutstanding(now);
+      case POWER_OF_TWO_CHOICES:
+        return selectPowerOfTwoChoices(now);
+      case ROUND_ROBIN:
+      default:
+        return selectRoundRobin(now);
+    }
+  }
+
+  // the next available endpoint in turn, or the next endpoint if all have been ejected; the turn rotates over the
+  // available endpoints only so that an ejected endpoint's share is spread evenly rather than falling to its neighbour
+  private Endpoint selectRoundRobin(final long now) {
+    int availableCount = 0;
+
+    for (int index = 0; index < endpoints.size(); index++) {
+      if (endpoints.get(index).isAvailable(now)) {
+        availableCount++;
+      }
+    }
+
+    if (availableCount == 0) {
+      return endpoints.get(nextIndex(endpoints.size()));
+    }
+
+    int turn = nextIndex(availableCount);
+
+    for (int index = 0; index < endpoints.size(); index++) {
+      Endpoint endpoint = endpoints.get(index);
+
+      if (endpoint.isAvailable(now) && turn-- == 0) {
+        return endpoint;
+      }
+    }
+
+    // an endpoint was ejected by another Thread between the scans
+    return endpoints.get(nextIndex(endpoints.size()));
+  }
+
+  // ties are broken in turn so that idle endpoints share the requests
+  private Endpoint selectLeastOutstanding(final long now) {
+    int start = nextIndex();
+
+    Endpoint selected = null;
+
+    for (int offset = 0; offset < endpoints.size(); offset++) {
+      Endpoint endpoint = endpoints.get((start + offset) % endpoints.size());
+
+      if (endpoint.isAvailable(now) && (selected == null || endpoint.getOutstandingCount()
+          < selected.getOutstandingCount())) {
+        selected = endpoint;
+      }
+    }
+
+    return (selected != null ? selected : endpoints.get(start));
+  }
+
+  // samples two endpoints at random and selects the one expected to complete a request sooner
+  private Endpoint selectPowerOfTwoChoices(final long now) {
+    if (endpoints.size() == 1) {
+      return endpoints.get(0);
+    }
+
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+
+    int first = random.nextInt(endpoints.size());
+    int second = (first + 1 + random.nextInt(endpoints.size() - 1)) % endpoints.size();
+
+    Endpoint one = endpoints.get(first);
+    Endpoint two = endpoints.get(second);
+
+    if (!one.isAvailable(now) || !two.isAvailable(now)) {
+      return (one.isAvailable(now) ? one : (two.isAvailable(now) ? two : selectRoundRobin(now)));
+    }
+
+    return (two.getLoadScore() < one.getLoadScore() ? two : one);
+  }
+
+  private int nextIndex() {
+    return nextIndex(endpoints.size());
+  }
+
+  private int nextIndex(final int bound) {
+    return Math.abs(nextIndex.getAndIncrement() % bound);
+  }
+
+  /**
+   * Closes the SocketPools of all endpoints.
+   */
+  public void close() {
+    closed = true;
+
+    for (Endpoint endpoint : endpoints) {
+      endpoint.socketPool.close();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("{ balancePolicy = %1$s, endpoints = %2$s }", balancePolicy.getCode(), endpoints);
+  }
+
+  /**
+   * The Endpoint class is a server of a BalancedSocketPool along with its SocketPool and the traffic, latency and
+   * failures recorded for it.
+   */
+  public static final class Endpoint {
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger(0);
+    private final AtomicInteger outstandingCount = new AtomicInteger(0);
+
+    // 0 when never ejected
+    private volatile long ejectedUntil;
+
+    // updated without synchronization; a lost update only drops one latency sample
+    private volatile double latencyEwma;
+
+    private final InetSocketAddress address;
+
+    private final LongAdder ejectionCount = new LongAdder();
+    private final LongAdder failureCount = new LongAdder();
+    private final LongAdder requestCount = new LongAdder();
+
+    private final SocketPool socketPool;
+
+    private Endpoint(final InetSocketAddress address, final SocketPool socketPool) {
+      this.address = address;
+      this.socketPool = socketPool;
+    }
+
+    public InetSocketAddress getAddress() {
+      return address;
+    }
+
+    public long getEjectionCount() {
+      return ejectionCount.sum();
+    }
+
+    public long getFailureCount() {
+      return failureCount.sum();
+    }
+
+    /**
+     * Gets the moving average of the latency of the requests completed by this endpoint.
+     *
+     * @param timeUnit the TimeUnit of the latency returned.
+     * @return the average request latency, or 0 if no request has completed.
+     */
+    public double getLatency(final TimeUnit timeUnit) {
+      return (latencyEwma / timeUnit.toNanos(1));
+    }
+
+    // the expected time for a new request to complete behind the outstanding requests
+    double getLoadScore() {
+      return ((latencyEwma + 1.0d) * (getOutstandingCount() + 1));
+    }
+
+    public int getOutstandingCount() {
+      return outstandingCount.get();
+    }
+
+    public long getRequestCount() {
+      return requestCount.sum();
+    }
+
+    public SocketPool getSocketPool() {
+      return socketPool;
+    }
+
+    boolean isAvailable(final long now) {
+      long ejectedUntil = this.ejectedUntil;
+      return (ejectedUntil == 0 || now - ejectedUntil >= 0);
+    }
+
+    public boolean isEjected() {
+      return !isAvailable(System.nanoTime());
+    }
+
+    private void completed(final long latency) {
+      outstandingCount.decrementAndGet();
+      requestCount.increment();
+      consecutiveFailures.set(0);
+
+      double latencyEwma = this.latencyEwma;
+
+      this.latencyEwma = (latencyEwma == 0.0d ? latency
+        : latencyEwma + LATENCY_EWMA_WEIGHT * (latency - latencyEwma));
+    }
+
+    private void failed(final BalancedSocketPool pool) {
+      outstandingCount.decrementAndGet();
+      failureCount.increment();
+
+      long now = System.nanoTime();
+
+      if (consecutiveFailures.incrementAndGet() >= pool.getMaxFailures() && isAvailable(now)) {
+        ejectedUntil = (now + TimeUnit.MILLISECONDS.toNanos(pool.getEjectionTime()));
+        ejectionCount.increment();
+      }
+    }
+
+    @Override
+    public String toString() {
+      return String.format("{ address = %1$s, requests = %2$d, failures = %3$d, ejections = %4$d, ejected = %5$s,"
+        + " outstanding = %6$d, latency = %7$.1f us }", address, getRequestCount(), getFailureCount(),
+          getEjectionCount(), isEjected(), getOutstandingCount(), getLatency(TimeUnit.MICROSECONDS));
+    }
+  }
+
+  /**
+   * The BalancePolicy enum defines how a BalancedSocketPool selects the endpoint of each request.
+   */
+  public static enum BalancePolicy {
+    ROUND_ROBIN("roundrobin", "Select the Endpoints in Turn"),
+    LEAST_OUTSTANDING("leastoutstanding", "Select the Endpoint with the Fewest Outstanding Requests"),
+    POWER_OF_TWO_CHOICES("p2c", "Select the Less Loaded of Two Random Endpoints by Latency and Outstanding Requests");
+
+    private final String code;
+    private final String description;
+
+    BalancePolicy(final String code, final String description) {
+      this.code = code;
+      this.description = description;
+    }
+
+    public static BalancePolicy findBy(final String code) {
+      for (BalancePolicy policy : values()) {
+        if (policy.getCode().equalsIgnoreCase(code)) {
+          return policy;
+        }
+      }
+
+      throw new IllegalArgumentException("(" + code + ") is not a valid BalancePolicy code!");
+    }
+
+    public String getCode() {
+      return code;
+    }
+
+    public String getDescription() {
+      return description;
+    }
+
+    @Override
+    public String toString() {
+      return getDescription();
+    }
+  }
+
+  /**
+   * The ConnectFailure class marks the failure of an endpoint's SocketPool to open a new connection, which, unlike
+   * the pool having all its connections borrowed or being closed, counts against the endpoint.
+   */
+  private static final class ConnectFailure extends IOException {
+
+    private ConnectFailure(final IOException cause) {
+      super(cause.getMessage(), cause);
+    }
+  }
+
+  /**
+   * The Lease class records the endpoint of a borrowed Socket and when it was borrowed.
+   */
+  private static final class Lease {
+
+    private final Endpoint endpoint;
+
+    private final long borrowTime;
+
+    private Lease(final Endpoint endpoint, final long borrowTime) {
+      this.endpoint = endpoint;
+      this.borrowTime = borrowTime;
+    }
+  }
+
+}
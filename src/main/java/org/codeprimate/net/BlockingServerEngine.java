@@ -0,0 +1,388 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.codeprimate.lang.Assert;
+import org.codeprimate.lang.concurrent.ThreadUtils;
+
+/**
+ * The BlockingServerEngine class is a ServerEngine servicing each client connection with blocking I/O on a worker
+ * Thread of an ExecutorService.  Connections are accepted by multiple acceptor Threads.  Where the platform supports
+ * SO_REUSEPORT (Java 9+ on Linux and BSD), each acceptor owns a ServerSocket bound to the same address and the kernel
+ * balances incoming connections across them; otherwise, the acceptors share a single ServerSocket.
+ *
+ * Stopping the engine closes the ServerSocket(s) immediately, which unblocks the acceptors, then drains the in-flight
+ * client requests, waiting up to the drain timeout before closing the client connections that remain open.
+ *
+ * @author John J. Blum
+ * @see java.net.ServerSocket
+ * @see java.util.concurrent.ExecutorService
+ * @see org.codeprimate.net.ServerEngine
+ * @see org.codeprimate.net.SocketHandler
+ * @since 1.2.0
+ */
+@SuppressWarnings("unused")
+public class BlockingServerEngine implements ServerEngine {
+
+  public static final int DEFAULT_ACCEPTORS = Math.min(4, Runtime.getRuntime().availableProcessors());
+  public static final int DEFAULT_BACKLOG = 1024;
+
+  public static final long DEFAULT_DRAIN_TIMEOUT = TimeUnit.SECONDS.toMillis(5);
+
+  protected static final long ACCEPT_ERROR_BACKOFF = 50L;
+
+  private static final SocketOption<Boolean> SO_REUSEPORT = resolveReusePortOption();
+
+  private volatile boolean running;
+
+  private boolean reusePort;
+
+  private final ExecutorService executor;
+
+  private final InetSocketAddress address;
+
+  private final int acceptorCount;
+
+  private long drainTimeout = DEFAULT_DRAIN_TIMEOUT;
+
+  private List<ServerSocket> serverSockets = Collections.emptyList();
+
+  private ServerMetrics metrics = new ServerMetrics();
+
+  private final Set<ConnectionTask> connections = Collections.newSetFromMap(
+    new ConcurrentHashMap<ConnectionTask, Boolean>());
+
+  private final SocketHandler handler;
+
+  private final String name;
+
+  public BlockingServerEngine(final String name, final InetSocketAddress address, final int acceptorCount,
+                              final ExecutorService executor, final SocketHandler handler) {
+    Assert.notNull(address, "The address to bind the server to must not be null!");
+    Assert.legalArgument(acceptorCount > 0, String.format("The number of acceptors (%1$d) must be greater than 0!",
+      acceptorCount));
+    Assert.notNull(executor, "The ExecutorService must not be null!");
+    Assert.notNull(handler, "The SocketHandler must not be null!");
+
+    this.name = name;
+    this.address = address;
+    this.acceptorCount = acceptorCount;
+    this.executor = executor;
+    this.handler = handler;
+  }
+
+  // @see java.net.StandardSocketOptions#SO_REUSEPORT (Java 9+)
+  @SuppressWarnings("unchecked")
+  private static SocketOption<Boolean> resolveReusePortOption() {
+    try {
+      return (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+    }
+    catch (Exception ignore) {
+      return null;
+    }
+  }
+
+  public int getAcceptorCount() {
+    return acceptorCount;
+  }
+
+  public InetSocketAddress getBoundAddress() {
+    List<ServerSocket> serverSockets = this.serverSockets;
+    return (serverSockets.isEmpty() ? null : (InetSocketAddress) serverSockets.get(0).getLocalSocketAddress());
+  }
+
+  public int getConnectionCount() {
+    return connections.size();
+  }
+
+  public long getDrainTimeout() {
+    return drainTimeout;
+  }
+
+  public void setDrainTimeout(final long drainTimeout) {
+    Assert.legalArgument(drainTimeout >= 0, String.format("The drain timeout (%1$d) must be greater than or equal to 0!",
+      drainTimeout));
+    this.drainTimeout = drainTimeout;
+  }
+
+  public ExecutorService getExecutor() {
+    return executor;
+  }
+
+  public SocketHandler getHandler() {
+    return handler;
+  }
+
+  /**
+   * Gets the ServerMetrics counting the client connections accepted and closed by this server engine.
+   *
+   * @return the ServerMetrics of this server engine.
+   */
+  public ServerMetrics getMetrics() {
+    return metrics;
+  }
+
+  public void setMetrics(final ServerMetrics metrics) {
+    Assert.notNull(metrics, "The ServerMetrics must not be null!");
+    Assert.legalState(!isRunning(), "The ServerMetrics cannot be changed while the server engine is running!");
+    this.metrics = metrics;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Determines whether each acceptor Thread owns a ServerSocket bound with SO_REUSEPORT, or whether the acceptors
+   * share a single ServerSocket.
+   *
+   * @return a boolean value indicating whether the acceptors use SO_REUSEPORT.
+   */
+  public boolean isReusePort() {
+    return reusePort;
+  }
+
+  public boolean isRunning() {
+    return running;
+  }
+
+  /**
+   * Creates the Thread on which an acceptor runs.  Subclasses may override this method to customize the Thread,
+   * such as setting the ThreadGroup.
+   *
+   * @param acceptor the Runnable acceptor.
+   * @param threadName a String indicating the name of the Thread.
+   * @return a new, un-started Thread to run the acceptor.
+   */
+  protected Thread newThread(final Runnable acceptor, final String threadName) {
+    Thread thread = new Thread(acceptor, threadName);
+    thread.setDaemon(false);
+    thread.setPriority(Thread.NORM_PRIORITY);
+    return thread;
+  }
+
+  protected ServerSocket newServerSocket(final boolean reusePort) throws IOException {
+    ServerSocket serverSocket = new ServerSocket();
+    serverSocket.setReuseAddress(true);
+
+    if (reusePort && !enableReusePort(serverSocket)) {
+      serverSocket.close();
+      throw new IOException("SO_REUSEPORT is not supported!");
+    }
+
+    return serverSocket;
+  }
+
+  // @see java.net.ServerSocket#setOption(java.net.SocketOption, Object) (Java 9+)
+  private static boolean enableReusePort(final ServerSocket serverSocket) {
+    if (SO_REUSEPORT != null) {
+      try {
+        if (((Set<?>) ServerSocket.class.getMethod("supportedOptions").invoke(serverSocket)).contains(SO_REUSEPORT)) {
+          ServerSocket.class.getMethod("setOption", SocketOption.class, Object.class).invoke(serverSocket,
+            SO_REUSEPORT, Boolean.TRUE);
+          return true;
+        }
+      }
+      catch (Exception ignore) {
+      }
+    }
+
+    return false;
+  }
+
+  public synchronized void start() throws IOException {
+    Assert.legalState(!isRunning(), String.format("%1$s is already running!", getName()));
+
+    List<ServerSocket> serverSockets = new ArrayList<ServerSocket>(acceptorCount);
+
+    try {
+      ServerSocket serverSocket = newServerSocket(false);
+
+      serverSockets.add(serverSocket);
+
+      boolean reusePort = (acceptorCount > 1 && enableReusePort(serverSocket));
+
+      serverSocket.bind(address, DEFAULT_BACKLOG);
+
+      // bind the remaining acceptors to the resolved port in case the configured port was ephemeral
+      InetSocketAddress boundAddress = new InetSocketAddress(address.getAddress(), serverSocket.getLocalPort());
+
+      for (int count = 1; reusePort && count < acceptorCount; count++) {
+        serverSocket = newServerSocket(true);
+        serverSockets.add(serverSocket);
+        serverSocket.bind(boundAddress, DEFAULT_BACKLOG);
+      }
+
+      this.reusePort = reusePort;
+    }
+    catch (IOException e) {
+      for (ServerSocket serverSocket : serverSockets) {
+        SocketUtils.close(serverSocket);
+      }
+
+      throw e;
+    }
+
+    this.serverSockets = Collections.unmodifiableList(serverSockets);
+    this.metrics.setExecutor(executor);
+    this.running = true;
+
+    for (int index = 0; index < acceptorCount; index++) {
+      newThread(new Acceptor(serverSockets.get(reusePort ? index : 0)), String.format("%1$s Acceptor %2$d",
+        getName(), index)).start();
+    }
+  }
+
+  /**
+   * Stops accepting client connections immediately, then waits up to the drain timeout for in-flight client requests
+   * to complete before closing the remaining client connections and interrupting the worker Threads.
+   */
+  public void stop() {
+    synchronized (this) {
+      if (!isRunning()) {
+        return;
+      }
+
+      running = false;
+
+      for (ServerSocket serverSocket : serverSockets) {
+        SocketUtils.close(serverSocket);
+      }
+    }
+
+    executor.shutdown();
+
+    try {
+      executor.awaitTermination(getDrainTimeout(), TimeUnit.MILLISECONDS);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    for (ConnectionTask connection : connections) {
+      connection.close();
+    }
+
+    executor.shutdownNow();
+  }
+
+  protected void dispatch(final Socket clientSocket) {
+    ConnectionTask connection = new ConnectionTask(clientSocket, handler.service(clientSocket));
+
+    connections.add(connection);
+    metrics.connectionOpened();
+
+    // the BoundedExecutor and AdmissionControlledExecutor close a rejected ConnectionTask themselves, whereas other
+    // ExecutorServices throw a RejectedExecutionException
+    try {
+      executor.execute(connection);
+    }
+    catch (RejectedExecutionException e) {
+      connection.close();
+    }
+  }
+
+  /**
+   * The Acceptor class is a Runnable that blocks accepting client connections on a ServerSocket, dispatching each
+   * connection to the ExecutorService, until the ServerSocket is closed.
+   */
+  protected class Acceptor implements Runnable {
+
+    private final ServerSocket serverSocket;
+
+    protected Acceptor(final ServerSocket serverSocket) {
+      this.serverSocket = serverSocket;
+    }
+
+    public void run() {
+      while (isRunning() && !serverSocket.isClosed()) {
+        Socket clientSocket = null;
+
+        try {
+          clientSocket = serverSocket.accept();
+          clientSocket.setTcpNoDelay(true);
+          dispatch(clientSocket);
+        }
+        catch (IOException e) {
+          SocketUtils.close(clientSocket);
+
+          if (isRunning() && !serverSocket.isClosed()) {
+            e.printStackTrace(System.err);
+            // back off when accept fails persistently, such as when the process runs out of file descriptors
+            ThreadUtils.sleep(ACCEPT_ERROR_BACKOFF);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * The ConnectionTask class pairs the Runnable servicing a client with the client's Socket so that the Socket
+   * is closed when the ExecutorService rejects or discards the request, either by closing the Closeable task or by
+   * throwing a RejectedExecutionException, or when the drain timeout expires.
+   */
+  protected final class ConnectionTask implements Closeable, Runnable {
+
+    private final Runnable delegate;
+
+    private final Socket clientSocket;
+
+    protected ConnectionTask(final Socket clientSocket, final Runnable delegate) {
+      Assert.notNull(delegate, "The Runnable servicing the client cannot be null!");
+      this.clientSocket = clientSocket;
+      this.delegate = delegate;
+    }
+
+    public void close() {
+      remove();
+      SocketUtils.close(clientSocket);
+    }
+
+    // a connection closed on drain may also complete, so it is only counted as closed once
+    private void remove() {
+      if (connections.remove(this)) {
+        metrics.connectionClosed();
+      }
+    }
+
+    public void run() {
+      try {
+        delegate.run();
+      }
+      finally {
+        remove();
+      }
+    }
+  }
+
+}
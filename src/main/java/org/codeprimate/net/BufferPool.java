@@ -0,0 +1,141 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.codeprimate.lang.Assert;
+
+/**
+ * The BufferPool class is a Thread-safe pool of equally sized ByteBuffers.  Direct ByteBuffers are expensive
+ * to allocate and are reclaimed only by the garbage collector, so pooling them avoids both the allocation cost
+ * and the native memory churn of per-connection or per-request buffers.  Buffers released to a full pool,
+ * or buffers not of the pool's size, are simply dropped.
+ *
+ * @author John J. Blum
+ * @see java.nio.ByteBuffer
+ * @since 1.2.0
+ */
+@SuppressWarnings("unused")
+public class BufferPool {
+
+  public static final int DEFAULT_BUFFER_SIZE = 8192;
+  public static final int DEFAULT_MAX_POOLED_BUFFERS = 1024;
+
+  private final AtomicInteger pooledCount = new AtomicInteger(0);
+
+  private final boolean direct;
+
+  private final int bufferSize;
+  private final int maxPooledBuffers;
+
+  private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+
+  public BufferPool() {
+    this(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_POOLED_BUFFERS, true);
+  }
+
+  public BufferPool(final int bufferSize, final int maxPooledBuffers, final boolean direct) {
+    Assert.legalArgument(bufferSize > 0, String.format("The buffer size (%1$d) must be greater than 0!", bufferSize));
+    Assert.legalArgument(maxPooledBuffers >= 0, String.format(
+      "The maximum number of pooled buffers (%1$d) must be greater than or equal to 0!", maxPooledBuffers));
+
+    this.bufferSize = bufferSize;
+    this.maxPooledBuffers = maxPooledBuffers;
+    this.direct = direct;
+  }
+
+  public int getBufferSize() {
+    return bufferSize;
+  }
+
+  public boolean isDirect() {
+    return direct;
+  }
+
+  public int getMaxPooledBuffers() {
+    return maxPooledBuffers;
+  }
+
+  public int getPooledCount() {
+    return pooledCount.get();
+  }
+
+  protected ByteBuffer allocate(final int capacity) {
+    return (isDirect() ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity));
+  }
+
+  /**
+   * Acquires a cleared ByteBuffer of the pool's buffer size, allocating a new ByteBuffer when the pool is empty.
+   *
+   * @return a cleared ByteBuffer of the pool's buffer size.
+   */
+  public ByteBuffer acquire() {
+    ByteBuffer buffer = buffers.poll();
+
+    if (buffer != null) {
+      pooledCount.decrementAndGet();
+      return buffer;
+    }
+
+    return allocate(getBufferSize());
+  }
+
+  /**
+   * Acquires a cleared ByteBuffer with at least the given capacity.  Requests larger than the pool's buffer size
+   * are satisfied with a new, un-pooled ByteBuffer.
+   *
+   * @param capacity the minimum capacity of the ByteBuffer.
+   * @return a cleared ByteBuffer with at least the given capacity.
+   */
+  public ByteBuffer acquire(final int capacity) {
+    return (capacity <= getBufferSize() ? acquire() : allocate(capacity));
+  }
+
+  /**
+   * Returns the ByteBuffer to the pool.  The caller must not use the ByteBuffer after releasing it.
+   *
+   * @param buffer the ByteBuffer to return to the pool.
+   * @return a boolean value indicating whether the ByteBuffer was pooled.
+   */
+  public boolean release(final ByteBuffer buffer) {
+    if (buffer != null && buffer.capacity() == getBufferSize() && buffer.isDirect() == isDirect()
+        && !buffer.isReadOnly()) {
+
+      if (pooledCount.incrementAndGet() <= getMaxPooledBuffers()) {
+        ((Buffer) buffer).clear();
+        buffers.offer(buffer);
+        return true;
+      }
+
+      pooledCount.decrementAndGet();
+    }
+
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("{ bufferSize = %1$d, direct = %2$s, pooled = %3$d, maxPooled = %4$d }", getBufferSize(),
+      isDirect(), getPooledCount(), getMaxPooledBuffers());
+  }
+
+}
@@ -0,0 +1,572 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.codeprimate.io.IOUtils;
+import org.codeprimate.lang.Assert;
+import org.codeprimate.lang.concurrent.HashedTimingWheel;
+
+/**
+ * The ChannelConnection class represents a single client connection serviced by an event loop of the NioServerEngine.
+ * The connection owns the inbound ByteBuffer passed to the ChannelHandler, acquired from the engine's BufferPool
+ * and returned to the pool when the connection closes, along with a queue of outbound ByteBuffers that are written
+ * to the SocketChannel as the channel becomes writable.  FileRegions may be queued between the ByteBuffers and are
+ * transferred from the file to the SocketChannel by the operating system, without copying through the Java heap.
+ * A SharedBuffer written to many connections is queued as a read-only slice per connection, and the connection
+ * releases its reference to the SharedBuffer once the slice has been written.
+ *
+ * Writes are coalesced: those issued while the ChannelHandler processes a read are flushed with one gathering write
+ * once the handler returns.  When the engine has a write coalescing delay, the flush is deferred until the delay has
+ * passed since the first unflushed write, or until the maximum write batch size is queued, so that the writes of
+ * several reads share a write system call.
+ *
+ * When the engine has an idle timeout, the connection keeps a single timeout pending on the HashedTimingWheel.
+ * Reads and writes only record the time of the last activity; when the timeout expires, the connection is closed if
+ * it has been idle for the whole idle timeout, or the timeout is rescheduled for the remainder otherwise.  So the
+ * timing wheel is touched at most once per idle timeout rather than on every read.
+ *
+ * Note, ByteBuffers are flipped and positioned through the Buffer supertype so that classes compiled by Java 9+
+ * (where ByteBuffer overrides these methods with covariant return types) still link on the Java 8 baseline.
+ *
+ * @author John J. Blum
+ * @see java.nio.channels.SocketChannel
+ * @see org.codeprimate.net.BufferPool
+ * @see org.codeprimate.net.ChannelHandler
+ * @see org.codeprimate.net.FileRegion
+ * @see org.codeprimate.net.NioServerEngine
+ * @see org.codeprimate.net.SharedBuffer
+ * @since 1.2.0
+ */
+@SuppressWarnings("unused")
+public class ChannelConnection {
+
+  private final AtomicBoolean closed = new AtomicBoolean(false);
+
+  // counts writes from the time they are issued on any Thread until they are written or discarded
+  private final AtomicInteger pendingWriteCount = new AtomicInteger(0);
+
+  private final BufferPool bufferPool;
+
+  private boolean flushDeferred;
+  private boolean reading;
+
+  private ByteBuffer readBuffer;
+
+  private final ChannelHandler handler;
+
+  // ByteBuffers, SharedSlices and FileRegions in the order they are written
+  private final Deque<Object> writeQueue = new ArrayDeque<Object>();
+
+  private final int maxReadBufferSize;
+
+  private int maxWriteBatchSize;
+
+  private long flushDeadline;
+  private long idleTimeout;
+  private long unflushedBytes;
+  private long writeCoalescingDelay;
+
+  private volatile long lastActivityTime;
+
+  private final NioServerEngine.EventLoop eventLoop;
+
+  private volatile Object attachment;
+
+  private SelectionKey selectionKey;
+
+  private final ServerMetrics metrics;
+
+  private final SocketAddress remoteAddress;
+
+  private final SocketChannel channel;
+
+  private HashedTimingWheel timingWheel;
+
+  private volatile HashedTimingWheel.Timeout idleTimeoutHandle;
+
+  private final Runnable idleCheck = new Runnable() {
+    public void run() {
+      checkIdle();
+    }
+  };
+
+  ChannelConnection(final NioServerEngine.EventLoop eventLoop, final SocketChannel channel,
+                    final ChannelHandler handler, final BufferPool bufferPool, final int maxReadBufferSize,
+                    final ServerMetrics metrics) {
+    this.eventLoop = eventLoop;
+    this.channel = channel;
+    this.remoteAddress = channel.socket().getRemoteSocketAddress();
+    this.handler = handler;
+    this.bufferPool = bufferPool;
+    this.readBuffer = bufferPool.acquire();
+    this.maxReadBufferSize = Math.max(readBuffer.capacity(), maxReadBufferSize);
+    this.metrics = metrics;
+  }
+
+  public Object getAttachment() {
+    return attachment;
+  }
+
+  public void setAttachment(final Object attachment) {
+    this.attachment = attachment;
+  }
+
+  public SocketChannel getChannel() {
+    return channel;
+  }
+
+  public boolean isOpen() {
+    return !closed.get();
+  }
+
+  /**
+   * Gets the number of ByteBuffers, SharedBuffers and FileRegions written to this connection that have not yet been
+   * completely written to the SocketChannel, including writes issued on other Threads that the event loop has not
+   * yet queued.  Publishers use the count to bound the outbound queue of a slow client.
+   *
+   * @return the number of writes pending on this connection.
+   */
+  public int getPendingWriteCount() {
+    return pendingWriteCount.get();
+  }
+
+  public SocketAddress getRemoteAddress() {
+    return remoteAddress;
+  }
+
+  /**
+   * Determines whether the calling Thread is the event loop Thread owning this connection.
+   *
+   * @return a boolean value indicating whether the calling Thread is the event loop Thread of this connection.
+   */
+  public boolean inEventLoop() {
+    return eventLoop.inEventLoop();
+  }
+
+  void register(final SelectionKey selectionKey) {
+    this.selectionKey = selectionKey;
+  }
+
+  /**
+   * Starts timing out this connection once it has been idle for the idle timeout; called on the event loop when
+   * the connection is registered.
+   */
+  void startIdleTimeout(final HashedTimingWheel timingWheel, final long idleTimeout) {
+    this.timingWheel = timingWheel;
+    this.idleTimeout = TimeUnit.MILLISECONDS.toNanos(idleTimeout);
+    this.lastActivityTime = System.nanoTime();
+    scheduleIdleTimeout(this.idleTimeout);
+  }
+
+  /**
+   * Defers the flush of this connection's writes for up to the delay, or until the maximum write batch size is
+   * queued; called on the event loop when the connection is registered.
+   */
+  void startWriteCoalescing(final long writeCoalescingDelay, final int maxWriteBatchSize) {
+    this.writeCoalescingDelay = TimeUnit.MICROSECONDS.toNanos(writeCoalescingDelay);
+    this.maxWriteBatchSize = maxWriteBatchSize;
+  }
+
+  long getFlushDeadline() {
+    return flushDeadline;
+  }
+
+  private void scheduleIdleTimeout(final long delay) {
+    idleTimeoutHandle = timingWheel.schedule(idleCheck, delay, TimeUnit.NANOSECONDS);
+  }
+
+  // runs on the timing wheel's ticker Thread
+  private void checkIdle() {
+    if (isOpen()) {
+      long idleTime = (System.nanoTime() - lastActivityTime);
+
+      if (idleTime >= idleTimeout) {
+        close();
+      }
+      else {
+        scheduleIdleTimeout(idleTimeout - idleTime);
+      }
+    }
+  }
+
+  /**
+   * Executes the given task on the event loop Thread owning this connection.
+   *
+   * @param task the Runnable to execute on the event loop.
+   */
+  public void execute(final Runnable task) {
+    eventLoop.execute(task);
+  }
+
+  /**
+   * Closes this connection, discarding any outbound ByteBuffers, SharedBuffers and FileRegions that have not yet
+   * been written.
+   * The ChannelHandler is notified exactly once.  This method may be called from any Thread.
+   */
+  public void close() {
+    if (closed.compareAndSet(false, true)) {
+      if (selectionKey != null) {
+        selectionKey.cancel();
+      }
+
+      IOUtils.close(channel);
+
+      if (inEventLoop()) {
+        closed();
+      }
+      else {
+        execute(new Runnable() {
+          public void run() {
+            closed();
+          }
+        });
+      }
+    }
+  }
+
+  // the read buffer is released on the event loop so it is never returned to the pool while a read is in progress
+  private void closed() {
+    HashedTimingWheel.Timeout idleTimeoutHandle = this.idleTimeoutHandle;
+
+    if (idleTimeoutHandle != null) {
+      idleTimeoutHandle.cancel();
+    }
+
+    for (Object pendingWrite = writeQueue.pollFirst(); pendingWrite != null; pendingWrite = writeQueue.pollFirst()) {
+      discard(pendingWrite);
+    }
+
+    try {
+      metrics.connectionClosed();
+      handler.onClose(this);
+    }
+    finally {
+      if (!reading) {
+        releaseReadBuffer();
+      }
+    }
+  }
+
+  // releases the resources held by a pending write that will never be written
+  private void discard(final Object pendingWrite) {
+    if (pendingWrite instanceof FileRegion) {
+      ((FileRegion) pendingWrite).close();
+    }
+    else if (pendingWrite instanceof SharedSlice) {
+      ((SharedSlice) pendingWrite).release();
+    }
+
+    pendingWriteCount.decrementAndGet();
+  }
+
+  private void releaseReadBuffer() {
+    bufferPool.release(readBuffer);
+    readBuffer = null;
+  }
+
+  /**
+   * Queues the ByteBuffer to be written to the client.  Ownership of the ByteBuffer passes to this connection;
+   * the caller must not modify the buffer afterwards.  Writes issued while the ChannelHandler is processing
+   * inbound bytes are flushed together once the handler returns.  This method may be called from any Thread.
+   *
+   * @param buffer the ByteBuffer to write.
+   */
+  public void write(final ByteBuffer buffer) {
+    Assert.notNull(buffer, "The ByteBuffer to write must not be null!");
+    enqueue(buffer);
+  }
+
+  /**
+   * Queues the FileRegion to be transferred to the client after the bytes already queued.  Ownership of the FileRegion
+   * passes to this connection, which closes the region once it has been transferred or when the connection closes.
+   * This method may be called from any Thread.
+   *
+   * @param region the FileRegion to transfer.
+   */
+  public void write(final FileRegion region) {
+    Assert.notNull(region, "The FileRegion to write must not be null!");
+    enqueue(region);
+  }
+
+  /**
+   * Queues a read-only slice of the SharedBuffer to be written to the client after the bytes already queued.
+   * The caller passes one reference to the SharedBuffer to this connection, which releases the reference once the
+   * slice has been written or when the connection closes; a caller writing the same SharedBuffer to many connections
+   * retains a reference for each write.  This method may be called from any Thread.
+   *
+   * @param buffer the SharedBuffer to write.
+   */
+  public void write(final SharedBuffer buffer) {
+    Assert.notNull(buffer, "The SharedBuffer to write must not be null!");
+    enqueue(new SharedSlice(buffer));
+  }
+
+  private void enqueue(final Object pendingWrite) {
+    pendingWriteCount.incrementAndGet();
+
+    if (inEventLoop()) {
+      if (isOpen()) {
+        queue(pendingWrite);
+
+        if (!reading) {
+          flushOrDefer();
+        }
+      }
+      else {
+        discard(pendingWrite);
+      }
+    }
+    else {
+      execute(new Runnable() {
+        public void run() {
+          if (isOpen()) {
+            queue(pendingWrite);
+            flushOrDefer();
+          }
+          else {
+            discard(pendingWrite);
+          }
+        }
+      });
+    }
+  }
+
+  private void queue(final Object pendingWrite) {
+    writeQueue.addLast(pendingWrite);
+
+    if (pendingWrite instanceof ByteBuffer) {
+      unflushedBytes += ((ByteBuffer) pendingWrite).remaining();
+    }
+    else if (pendingWrite instanceof SharedSlice) {
+      unflushedBytes += ((SharedSlice) pendingWrite).slice.remaining();
+    }
+    else {
+      unflushedBytes += ((FileRegion) pendingWrite).getRemaining();
+    }
+  }
+
+  // flushes now, unless the engine coalesces writes and the batch is not yet full
+  private void flushOrDefer() {
+    if (writeCoalescingDelay == 0 || unflushedBytes >= maxWriteBatchSize) {
+      flush();
+    }
+    else if (!flushDeferred && !writeQueue.isEmpty()) {
+      flushDeferred = true;
+      flushDeadline = (System.nanoTime() + writeCoalescingDelay);
+      eventLoop.deferFlush(this);
+    }
+  }
+
+  // called by the event loop at the flush deadline
+  void deferredFlush() {
+    flushDeferred = false;
+    flush();
+  }
+
+  void handleRead() {
+    try {
+      long readStartTime = System.nanoTime();
+      int bytesRead = channel.read(readBuffer);
+
+      if (bytesRead < 0) {
+        close();
+      }
+      else if (bytesRead > 0) {
+        long handleStartTime = System.nanoTime();
+
+        lastActivityTime = handleStartTime;
+        metrics.recordRead(bytesRead, handleStartTime - readStartTime);
+        ((Buffer) readBuffer).flip();
+        reading = true;
+
+        try {
+          handler.onRead(this, readBuffer);
+        }
+        finally {
+          reading = false;
+          metrics.recordHandle(System.nanoTime() - handleStartTime);
+        }
+
+        if (isOpen()) {
+          readBuffer.compact();
+
+          if (!readBuffer.hasRemaining()) {
+            growReadBuffer();
+          }
+
+          flushOrDefer();
+        }
+        else {
+          releaseReadBuffer();
+        }
+      }
+    }
+    catch (IOException e) {
+      close();
+    }
+  }
+
+  private void growReadBuffer() throws IOException {
+    if (readBuffer.capacity() >= maxReadBufferSize) {
+      throw new IOException(String.format("Inbound buffer exceeded the maximum size of (%1$d) bytes!",
+        maxReadBufferSize));
+    }
+
+    ByteBuffer newReadBuffer = bufferPool.acquire(Math.min(readBuffer.capacity() * 2, maxReadBufferSize));
+
+    ((Buffer) readBuffer).flip();
+    newReadBuffer.put(readBuffer);
+    bufferPool.release(readBuffer);
+    readBuffer = newReadBuffer;
+  }
+
+  void handleWrite() {
+    flush();
+  }
+
+  /**
+   * Writes the queued ByteBuffers with gathering writes and transfers the queued FileRegions, in order, until the
+   * queue is empty or the SocketChannel's send buffer is full, in which case the rest is written once the channel
+   * becomes writable.
+   */
+  void flush() {
+    unflushedBytes = 0;
+
+    try {
+      if (isOpen() && !writeQueue.isEmpty()) {
+        for (boolean writable = true; writable && isOpen() && !writeQueue.isEmpty(); ) {
+          long writeStartTime = System.nanoTime();
+          long bytesWritten;
+
+          if (writeQueue.peekFirst() instanceof FileRegion) {
+            FileRegion region = (FileRegion) writeQueue.peekFirst();
+
+            bytesWritten = region.transferTo(channel);
+            writable = region.isComplete();
+
+            if (writable) {
+              writeQueue.removeFirst();
+              pendingWriteCount.decrementAndGet();
+              region.close();
+            }
+          }
+          else {
+            ByteBuffer[] buffers = leadingBuffers();
+
+            metrics.recordWriteBatch(buffers.length);
+            bytesWritten = channel.write(buffers);
+            writable = !buffers[buffers.length - 1].hasRemaining();
+
+            for (ByteBuffer buffer : buffers) {
+              if (buffer.hasRemaining()) {
+                break;
+              }
+
+              Object pendingWrite = writeQueue.removeFirst();
+
+              if (pendingWrite instanceof SharedSlice) {
+                ((SharedSlice) pendingWrite).release();
+              }
+
+              pendingWriteCount.decrementAndGet();
+            }
+          }
+
+          long writeEndTime = System.nanoTime();
+
+          lastActivityTime = writeEndTime;
+          metrics.recordWrite(bytesWritten, writeEndTime - writeStartTime);
+        }
+
+        if (isOpen()) {
+          int interestOps = selectionKey.interestOps();
+
+          selectionKey.interestOps(writeQueue.isEmpty() ? interestOps & ~SelectionKey.OP_WRITE
+            : interestOps | SelectionKey.OP_WRITE);
+        }
+      }
+    }
+    catch (IOException e) {
+      close();
+    }
+  }
+
+  // the ByteBuffers and shared slices at the head of the write queue, up to the first FileRegion
+  private ByteBuffer[] leadingBuffers() {
+    int count = 0;
+
+    for (Object pendingWrite : writeQueue) {
+      if (pendingWrite instanceof FileRegion) {
+        break;
+      }
+
+      count++;
+    }
+
+    ByteBuffer[] buffers = new ByteBuffer[count];
+    Iterator<Object> pendingWrites = writeQueue.iterator();
+
+    for (int index = 0; index < count; index++) {
+      Object pendingWrite = pendingWrites.next();
+
+      buffers[index] = (pendingWrite instanceof SharedSlice ? ((SharedSlice) pendingWrite).slice
+        : (ByteBuffer) pendingWrite);
+    }
+
+    return buffers;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("{ remoteAddress = %1$s, open = %2$s, pendingWrites = %3$d }", getRemoteAddress(), isOpen(),
+      getPendingWriteCount());
+  }
+
+  /**
+   * The SharedSlice class is this connection's read-only view of a SharedBuffer along with the reference to the
+   * SharedBuffer held until the view has been written.
+   */
+  private static final class SharedSlice {
+
+    private final SharedBuffer buffer;
+
+    private final ByteBuffer slice;
+
+    private SharedSlice(final SharedBuffer buffer) {
+      this.buffer = buffer;
+      this.slice = buffer.slice();
+    }
+
+    private void release() {
+      buffer.release();
+    }
+  }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The ChannelHandler interface is the non-blocking counterpart to the ClientRequestHandler used by the
+ * NioServerEngine to service client connections.  All callbacks for a given ChannelConnection are invoked
+ * on the event loop Thread owning the connection, therefore implementations must never block.  A single
+ * ChannelHandler is shared by all connections; per-connection state should be kept in the connection's attachment.
+ *
+ * @author John J. Blum
+ * @see org.codeprimate.net.ChannelConnection
+ * @see org.codeprimate.net.NioServerEngine
+ * @since 1.2.0
+ */
+public interface ChannelHandler {
+
+  /**
+   * Callback invoked when a client connection is accepted and registered with an event loop.
+   *
+   * @param connection the ChannelConnection that was opened.
+   * @throws IOException if the handler fails to initialize the connection, in which case the connection is closed.
+   */
+  void onOpen(ChannelConnection connection) throws IOException;
+
+  /**
+   * Callback invoked when bytes have been read from the client connection.  The ByteBuffer is in read mode
+   * and contains all bytes received but not yet consumed.  The handler consumes as many bytes as it can by
+   * advancing the buffer's position; any remaining bytes are retained and presented again, along with any newly
+   * received bytes, on the next callback.  The ByteBuffer is owned by the connection and must not be retained.
+   *
+   * @param connection the ChannelConnection from which the bytes were read.
+   * @param buffer the ByteBuffer containing the unconsumed bytes received from the client.
+   * @throws IOException if the handler fails to process the bytes, in which case the connection is closed.
+   */
+  void onRead(ChannelConnection connection, ByteBuffer buffer) throws IOException;
+
+  /**
+   * Callback invoked exactly once after the client connection has been closed, either by the client, the handler
+   * or the server engine.
+   *
+   * @param connection the ChannelConnection that was closed.
+   */
+  void onClose(ChannelConnection connection);
+
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+import org.codeprimate.io.IOUtils;
+import org.codeprimate.lang.Assert;
+
+/**
+ * The FileRegion class is a range of a file written to a channel with FileChannel.transferTo, which the operating
+ * system performs without copying the bytes into the Java heap, with sendfile on Linux, when the target is a
+ * SocketChannel.  A FileRegion may be written in several steps to a non-blocking SocketChannel, as the channel
+ * becomes writable, or in one call to a blocking channel with transferFully.
+ *
+ * The FileRegion owns its FileChannel, which is closed with the region.  A FileRegion constructed with a File opens
+ * the file only when the region is first transferred, so that regions queued on a connection behind other writes do
+ * not hold a file descriptor until they reach the head of the queue.
+ *
+ * @author John J. Blum
+ * @see java.nio.channels.FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)
+ * @see org.codeprimate.net.ChannelConnection#write(FileRegion)
+ * @since 1.2.0
+ */
+@SuppressWarnings("unused")
+public class FileRegion implements Closeable {
+
+  private FileChannel fileChannel;
+
+  private final File file;
+
+  private final long count;
+  private final long position;
+
+  private long completeTime;
+  private long startTime;
+  private long transferred;
+
+  public FileRegion(final FileChannel fileChannel, final long position, final long count) {
+    Assert.notNull(fileChannel, "The FileChannel must not be null!");
+    Assert.legalArgument(position >= 0, String.format("The position (%1$d) must be greater than or equal to 0!",
+      position));
+    Assert.legalArgument(count >= 0, String.format("The count (%1$d) must be greater than or equal to 0!", count));
+
+    this.fileChannel = fileChannel;
+    this.file = null;
+    this.position = position;
+    this.count = count;
+  }
+
+  /**
+   * Constructs a FileRegion of count bytes of the file starting at position, which opens the file for reading when
+   * the region is first transferred.
+   *
+   * @param file the File to read.
+   * @param position the offset of the region in the file.
+   * @param count the number of bytes in the region.
+   */
+  public FileRegion(final File file, final long position, final long count) {
+    Assert.notNull(file, "The File must not be null!");
+    Assert.legalArgument(position >= 0, String.format("The position (%1$d) must be greater than or equal to 0!",
+      position));
+    Assert.legalArgument(count >= 0, String.format("The count (%1$d) must be greater than or equal to 0!", count));
+
+    this.file = file;
+    this.position = position;
+    this.count = count;
+  }
+
+  /**
+   * Opens the file for reading as a FileRegion of count bytes starting at position.
+   *
+   * @param file the File to read.
+   * @param position the offset of the region in the file.
+   * @param count the number of bytes in the region.
+   * @return the FileRegion of the file.
+   * @throws IOException if the file cannot be opened.
+   */
+  public static FileRegion open(final File file, final long position, final long count) throws IOException {
+    Assert.notNull(file, "The File must not be null!");
+    return new FileRegion(FileChannel.open(file.toPath(), StandardOpenOption.READ), position, count);
+  }
+
+  /**
+   * Gets the FileChannel of this region, which is null until a region constructed with a File is first transferred.
+   *
+   * @return the FileChannel from which the region is transferred.
+   */
+  public FileChannel getFileChannel() {
+    return fileChannel;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public long getPosition() {
+    return position;
+  }
+
+  public long getRemaining() {
+    return (count - transferred);
+  }
+
+  public long getTransferred() {
+    return transferred;
+  }
+
+  /**
+   * Gets the time from the first transfer of this region until the region was completely transferred.
+   *
+   * @param timeUnit the TimeUnit of the time returned.
+   * @return the time taken to transfer this region, or 0 if the region has not been completely transferred.
+   */
+  public long getTransferTime(final TimeUnit timeUnit) {
+    return (isComplete() ? timeUnit.convert(completeTime - startTime, TimeUnit.NANOSECONDS) : 0l);
+  }
+
+  public boolean isComplete() {
+    return (transferred == count);
+  }
+
+  /**
+   * Transfers as many of the remaining bytes of this region to the channel as the channel accepts, which may be none
+   * when the target is a non-blocking SocketChannel whose send buffer is full.
+   *
+   * @param target the WritableByteChannel to which the bytes are transferred.
+   * @return the number of bytes transferred.
+   * @throws EOFException if the file was truncated before the end of the region.
+   * @throws IOException if the file cannot be opened or an I/O error occurs reading the file or writing to
+   * the channel.
+   */
+  public long transferTo(final WritableByteChannel target) throws IOException {
+    if (startTime == 0) {
+      startTime = System.nanoTime();
+    }
+
+    if (fileChannel == null) {
+      fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    }
+
+    long bytesTransferred = 0;
+
+    if (!isComplete()) {
+      long offset = (position + transferred);
+
+      bytesTransferred = fileChannel.transferTo(offset, getRemaining(), target);
+
+      if (bytesTransferred == 0 && offset >= fileChannel.size()) {
+        throw new EOFException(String.format("The file ended at (%1$d) before the end of the region (%2$d)!",
+          fileChannel.size(), position + count));
+      }
+
+      transferred += bytesTransferred;
+    }
+
+    if (isComplete() && completeTime == 0) {
+      completeTime = System.nanoTime();
+      onComplete();
+    }
+
+    return bytesTransferred;
+  }
+
+  /**
+   * Transfers all the remaining bytes of this region to a blocking channel.
+   *
+   * @param target the blocking WritableByteChannel to which the bytes are transferred.
+   * @return the number of bytes transferred.
+   * @throws IOException if an I/O error occurs reading the file or writing to the channel.
+   */
+  public long transferFully(final WritableByteChannel target) throws IOException {
+    long bytesTransferred = 0;
+
+    do {
+      bytesTransferred += transferTo(target);
+    }
+    while (!isComplete());
+
+    return bytesTransferred;
+  }
+
+  /**
+   * Called once when the last byte of this region has been transferred.  Subclasses may override this method to
+   * record the transfer.
+   */
+  protected void onComplete() {
+  }
+
+  /**
+   * Closes the FileChannel of this region, if the region has opened it.
+   */
+  public void close() {
+    IOUtils.close(fileChannel);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("{ position = %1$d, count = %2$d, transferred = %3$d }", position, count, transferred);
+  }
+
+}
@@ -0,0 +1,339 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.codeprimate.lang.Assert;
+
+/**
+ * The FileTransferHandler class serves ranges of the files in a directory to clients, transferring the bytes from the
+ * file to the connection with FileChannel.transferTo so that the file contents never pass through the Java heap.
+ * The handler services connections of the NioServerEngine as a ChannelHandler, queueing each range on the
+ * ChannelConnection as a FileRegion, and connections of the blocking server engines as a SocketHandler.  The transfer
+ * is zero-copy whenever the connection has a SocketChannel, which is always the case with the NioServerEngine; for
+ * other Sockets, such as those accepted by the BlockingServerEngine, the bytes are copied through the Socket's
+ * OutputStream.
+ *
+ * A client requests a range with a frame whose payload is the offset (8 bytes) and length (8 bytes) of the range,
+ * followed by the path of the file relative to the directory in UTF-8.  A negative length requests the rest of the
+ * file, and a range extending past the end of the file is truncated.  The handler responds with a frame whose payload
+ * is the status (1 byte), offset (8 bytes) and length (8 bytes) of the range served, followed by the length bytes of
+ * the range, un-framed.  A client may pipeline requests on a connection.
+ *
+ * The handler records the number of ranges and bytes served along with the time taken to transfer them.
+ *
+ * @author John J. Blum
+ * @see java.nio.channels.FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)
+ * @see org.codeprimate.net.ChannelConnection#write(FileRegion)
+ * @see org.codeprimate.net.FileRegion
+ * @see org.codeprimate.net.FrameChannelHandler
+ * @see org.codeprimate.net.SocketHandler
+ * @since 1.2.0
+ */
+@SuppressWarnings("unused")
+public class FileTransferHandler extends FrameChannelHandler implements SocketHandler {
+
+  public static final int REQUEST_HEADER_SIZE = 16;
+  public static final int RESPONSE_SIZE = 17;
+
+  protected static final Charset PATH_CHARSET = Charset.forName("UTF-8");
+
+  private final BufferPool bufferPool;
+
+  private final File directory;
+
+  private final LongAdder bytesTransferred = new LongAdder();
+  private final LongAdder failedRequestCount = new LongAdder();
+  private final LongAdder transferCount = new LongAdder();
+  private final LongAdder transferTime = new LongAdder();
+
+  public FileTransferHandler(final File directory) throws IOException {
+    this(directory, new FrameCodec(), new BufferPool(BufferPool.DEFAULT_BUFFER_SIZE,
+      BufferPool.DEFAULT_MAX_POOLED_BUFFERS, false));
+  }
+
+  /**
+   * Constructs a FileTransferHandler serving the files in the directory.
+   *
+   * @param directory the directory containing the files served.
+   * @param codec the FrameCodec of request and response frames.
+   * @param bufferPool the BufferPool from which blocking connections acquire their frame buffers.
+   * @throws IOException if the canonical path of the directory cannot be resolved.
+   */
+  public FileTransferHandler(final File directory, final FrameCodec codec, final BufferPool bufferPool)
+    throws IOException
+  {
+    super(codec);
+
+    Assert.notNull(directory, "The directory must not be null!");
+    Assert.legalArgument(directory.isDirectory(), String.format("(%1$s) is not a directory!", directory));
+    Assert.notNull(bufferPool, "The BufferPool must not be null!");
+
+    this.directory = directory.getCanonicalFile();
+    this.bufferPool = bufferPool;
+  }
+
+  /**
+   * Creates the payload of a request frame for the range of the file.
+   *
+   * @param path the path of the file relative to the directory served.
+   * @param offset the offset of the range in the file.
+   * @param length the length of the range, or a negative value for the rest of the file.
+   * @return a ByteBuffer containing the payload of the request frame.
+   */
+  public static ByteBuffer newRequest(final String path, final long offset, final long length) {
+    Assert.notNull(path, "The path must not be null!");
+
+    byte[] pathBytes = path.getBytes(PATH_CHARSET);
+
+    ByteBuffer request = ByteBuffer.allocate(REQUEST_HEADER_SIZE + pathBytes.length);
+
+    request.putLong(offset).putLong(length).put(pathBytes);
+    ((Buffer) request).flip();
+
+    return request;
+  }
+
+  public File getDirectory() {
+    return directory;
+  }
+
+  public long getBytesTransferred() {
+    return bytesTransferred.sum();
+  }
+
+  public long getFailedRequestCount() {
+    return failedRequestCount.sum();
+  }
+
+  public long getTransferCount() {
+    return transferCount.sum();
+  }
+
+  /**
+   * Gets the mean rate at which ranges were transferred, from the first byte of each range to its last, which
+   * excludes the time connections spent idle between requests.
+   *
+   * @return the mean throughput in bytes per second.
+   */
+  public double getThroughput() {
+    long transferTime = this.transferTime.sum();
+    return (transferTime > 0 ? getBytesTransferred() * (double) TimeUnit.SECONDS.toNanos(1) / transferTime : 0.0d);
+  }
+
+  /**
+   * Resolves the range requested by the payload of a request frame, writing the response into the ByteBuffer.
+   *
+   * @param request the payload of the request frame.
+   * @param response the ByteBuffer into which the response payload is written.
+   * @return the FileRegion of the range to transfer, or null if the request failed.
+   * @throws IOException if the canonical path of the requested file cannot be resolved.
+   */
+  protected FileRegion openRegion(final ByteBuffer request, final ByteBuffer response) throws IOException {
+    Status status = Status.OK;
+
+    long offset = 0;
+    long length = 0;
+
+    File file = null;
+
+    if (request.remaining() < REQUEST_HEADER_SIZE) {
+      status = Status.BAD_REQUEST;
+    }
+    else {
+      offset = request.getLong();
+      length = request.getLong();
+      file = resolve(PATH_CHARSET.decode(request).toString());
+
+      if (file == null) {
+        status = Status.NOT_FOUND;
+      }
+      else if (offset < 0 || offset > file.length()) {
+        status = Status.INVALID_RANGE;
+      }
+      else {
+        length = (length < 0 ? file.length() - offset : Math.min(length, file.length() - offset));
+      }
+    }
+
+    if (!Status.OK.equals(status)) {
+      failedRequestCount.increment();
+      length = 0;
+    }
+
+    ((Buffer) response).clear();
+    response.put(status.getId()).putLong(offset).putLong(length);
+    ((Buffer) response).flip();
+
+    return (Status.OK.equals(status) ? newRegion(file, offset, length) : null);
+  }
+
+  // resolves the path within the directory, refusing paths that escape it
+  private File resolve(final String path) throws IOException {
+    File file = new File(directory, path).getCanonicalFile();
+
+    boolean inDirectory = file.getPath().startsWith(directory.getPath() + File.separator);
+
+    return (inDirectory && file.isFile() && file.canRead() ? file : null);
+  }
+
+  // the file is opened when the region reaches the head of the connection's write queue, so pipelined requests
+  // do not each hold an open file
+  private FileRegion newRegion(final File file, final long offset, final long length) {
+    return new FileRegion(file, offset, length) {
+      @Override protected void onComplete() {
+        bytesTransferred.add(getCount());
+        transferCount.increment();
+        transferTime.add(getTransferTime(TimeUnit.NANOSECONDS));
+      }
+    };
+  }
+
+  /**
+   * Serves a request received by a ChannelConnection of the NioServerEngine; the response frame and the range are
+   * queued on the connection and written once the handler returns.
+   */
+  @Override
+  protected void onFrame(final ChannelConnection connection, final ByteBuffer payload) throws IOException {
+    ByteBuffer response = ByteBuffer.allocate(RESPONSE_SIZE);
+    FileRegion region = openRegion(payload, response);
+
+    writeFrame(connection, response);
+
+    if (region != null) {
+      connection.write(region);
+    }
+  }
+
+  /**
+   * Creates the Runnable serving the requests of a client Socket accepted by a blocking server engine.
+   */
+  public Runnable service(final Socket clientSocket) {
+    return new Runnable() {
+      public void run() {
+        FrameStream frameStream = null;
+
+        try {
+          frameStream = new FrameStream(clientSocket, getCodec(), bufferPool);
+
+          ByteBuffer response = ByteBuffer.allocate(RESPONSE_SIZE);
+
+          WritableByteChannel target = (clientSocket.getChannel() != null ? clientSocket.getChannel()
+            : Channels.newChannel(clientSocket.getOutputStream()));
+
+          for (ByteBuffer request = frameStream.readFrame(); request != null; request = frameStream.readFrame()) {
+            FileRegion region = openRegion(request, response);
+
+            frameStream.writeFrame(response);
+
+            // the response frame must reach the Socket ahead of the range, which bypasses the FrameStream
+            if (region != null || !frameStream.isFrameBuffered()) {
+              frameStream.flush();
+            }
+
+            if (region != null) {
+              try {
+                region.transferFully(target);
+              }
+              finally {
+                region.close();
+              }
+            }
+          }
+
+        }
+        catch (IOException ignore) {
+          // the client closed the connection or the file could not be read; the connection is closed
+        }
+        finally {
+          if (frameStream != null) {
+            frameStream.close();
+          }
+          else {
+            SocketUtils.close(clientSocket);
+          }
+        }
+      }
+    };
+  }
+
+  @Override
+  public String toString() {
+    return String.format("{ directory = %1$s, transfers = %2$d, bytesTransferred = %3$d, failedRequests = %4$d,"
+      + " throughput = %5$.1f MB/s }", directory, getTransferCount(), getBytesTransferred(), getFailedRequestCount(),
+        getThroughput() / (1024 * 1024));
+  }
+
+  /**
+   * The Status enum enumerates the outcomes of a request reported in the response.
+   */
+  public static enum Status {
+    OK((byte) 0, "ok", "The Range Follows the Response"),
+    BAD_REQUEST((byte) 1, "bad", "The Request is Malformed"),
+    NOT_FOUND((byte) 2, "missing", "The File does not Exist or is not Readable"),
+    INVALID_RANGE((byte) 3, "range", "The Offset is Outside the File");
+
+    private final byte id;
+
+    private final String code;
+    private final String description;
+
+    Status(final byte id, final String code, final String description) {
+      this.id = id;
+      this.code = code;
+      this.description = description;
+    }
+
+    public static Status findBy(final byte id) {
+      for (Status status : values()) {
+        if (status.getId() == id) {
+          return status;
+        }
+      }
+
+      throw new IllegalArgumentException("(" + id + ") is not a valid Status id!");
+    }
+
+    public byte getId() {
+      return id;
+    }
+
+    public String getCode() {
+      return code;
+    }
+
+    public String getDescription() {
+      return description;
+    }
+
+    @Override
+    public String toString() {
+      return getDescription();
+    }
+  }
+
+}
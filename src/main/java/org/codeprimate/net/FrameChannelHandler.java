@@ -0,0 +1,100 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.codeprimate.lang.Assert;
+
+/**
+ * The FrameChannelHandler class is an abstract ChannelHandler that decodes length-prefixed frames from the bytes
+ * received by a ChannelConnection of the NioServerEngine.  Each complete frame is passed to onFrame as a slice of
+ * the connection's pooled, direct read buffer; the slice is only valid for the duration of the onFrame call.
+ * Partial frames remain buffered by the connection until the remaining bytes arrive.
+ *
+ * @author John J. Blum
+ * @see org.codeprimate.net.ChannelHandler
+ * @see org.codeprimate.net.FrameCodec
+ * @since 1.2.0
+ */
+@SuppressWarnings("unused")
+public abstract class FrameChannelHandler implements ChannelHandler {
+
+  private final FrameCodec codec;
+
+  protected FrameChannelHandler(final FrameCodec codec) {
+    Assert.notNull(codec, "The FrameCodec must not be null!");
+    this.codec = codec;
+  }
+
+  public FrameCodec getCodec() {
+    return codec;
+  }
+
+  public void onOpen(final ChannelConnection connection) throws IOException {
+  }
+
+  public final void onRead(final ChannelConnection connection, final ByteBuffer buffer) throws IOException {
+    int frameCount = 0;
+
+    for (ByteBuffer payload = codec.decode(buffer); payload != null; payload = codec.decode(buffer)) {
+      onFrame(connection, payload);
+      frameCount++;
+    }
+
+    onReadComplete(connection, frameCount);
+  }
+
+  /**
+   * Processes a frame received from the client.
+   *
+   * @param connection the ChannelConnection on which the frame was received.
+   * @param payload a ByteBuffer slice containing the payload of the frame.
+   * @throws IOException if the frame cannot be processed; the connection is closed.
+   */
+  protected abstract void onFrame(ChannelConnection connection, ByteBuffer payload) throws IOException;
+
+  /**
+   * Called after all complete frames in the bytes received by a single read have been processed, allowing responses
+   * to be batched.
+   *
+   * @param connection the ChannelConnection on which the frames were received.
+   * @param frameCount the number of frames processed from the read; may be 0 when only a partial frame was received.
+   * @throws IOException if the responses cannot be written; the connection is closed.
+   */
+  protected void onReadComplete(final ChannelConnection connection, final int frameCount) throws IOException {
+  }
+
+  public void onClose(final ChannelConnection connection) {
+  }
+
+  /**
+   * Writes the payload to the client as a frame.  The header and payload are queued separately and written
+   * with a single gathering write.
+   *
+   * @param connection the ChannelConnection to which the frame is written.
+   * @param payload the ByteBuffer containing the payload; ownership passes to the connection.
+   * @throws IOException if the payload exceeds the maximum frame size.
+   */
+  protected void writeFrame(final ChannelConnection connection, final ByteBuffer payload) throws IOException {
+    for (ByteBuffer buffer : codec.encode(payload)) {
+      connection.write(buffer);
+    }
+  }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net;
+
+import java.net.ProtocolException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+import org.codeprimate.lang.Assert;
+
+/**
+ * The FrameCodec class encodes and decodes length-prefixed frames, where each frame is a 4-byte, big-endian payload
+ * length followed by the payload bytes.  Decoded payloads are slices of the ByteBuffer the frame was decoded from,
+ * so no payload bytes are copied; a payload is only valid until the source ByteBuffer is compacted or reused.
+ * Encoded frames are returned as a header and payload pair suitable for a gathering write.
+ *
+ * @author John J. Blum
+ * @see java.nio.ByteBuffer
+ * @see java.nio.channels.GatheringByteChannel
+ * @see org.codeprimate.net.FrameChannelHandler
+ * @see org.codeprimate.net.FrameStream
+ * @since 1.2.0
+ */
+@SuppressWarnings("unused")
+public class FrameCodec {
+
+  public static final int DEFAULT_MAX_FRAME_SIZE = 16777212;
+  public static final int HEADER_SIZE = 4;
+
+  private final int maxFrameSize;
+
+  public FrameCodec() {
+    this(DEFAULT_MAX_FRAME_SIZE);
+  }
+
+  public FrameCodec(final int maxFrameSize) {
+    Assert.legalArgument(maxFrameSize >= 0, String.format(
+      "The maximum frame size (%1$d) must be greater than or equal to 0!", maxFrameSize));
+    this.maxFrameSize = maxFrameSize;
+  }
+
+  public int getMaxFrameSize() {
+    return maxFrameSize;
+  }
+
+  /**
+   * Determines the number of bytes the next frame in the ByteBuffer occupies, including the header, without
+   * consuming any bytes.
+   *
+   * @param buffer the ByteBuffer, in read mode, containing the encoded frame.
+   * @return the length of the next frame including the header, or -1 if the header has not been fully received.
+   * @throws ProtocolException if the frame length is negative or exceeds the maximum frame size.
+   */
+  public int peekFrameLength(final ByteBuffer buffer) throws ProtocolException {
+    return (buffer.remaining() < HEADER_SIZE ? -1 : (HEADER_SIZE + validate(buffer.getInt(buffer.position()))));
+  }
+
+  /**
+   * Decodes the next frame from the ByteBuffer.  When a complete frame is available, the buffer's position advances
+   * past the frame and the payload is returned as a slice of the buffer; otherwise the buffer is left untouched.
+   *
+   * @param buffer the ByteBuffer, in read mode, containing the encoded frame.
+   * @return a ByteBuffer slice containing the payload, or null if the frame has not been fully received.
+   * @throws ProtocolException if the frame length is negative or exceeds the maximum frame size.
+   */
+  public ByteBuffer decode(final ByteBuffer buffer) throws ProtocolException {
+    int frameLength = peekFrameLength(buffer);
+
+    if (frameLength < 0 || buffer.remaining() < frameLength) {
+      return null;
+    }
+
+    int payloadPosition = (buffer.position() + HEADER_SIZE);
+    int frameLimit = (buffer.position() + frameLength);
+
+    ByteBuffer payload = buffer.duplicate();
+
+    ((Buffer) payload).limit(frameLimit);
+    ((Buffer) payload).position(payloadPosition);
+    ((Buffer) buffer).position(frameLimit);
+
+    return payload.slice();
+  }
+
+  /**
+   * Encodes the payload as a frame, returning the header and payload for a gathering write.  The payload's position
+   * and limit are not modified.
+   *
+   * @param payload the ByteBuffer containing the payload, from its position to its limit.
+   * @return an array of ByteBuffers containing the frame header followed by the payload.
+   * @throws ProtocolException if the payload exceeds the maximum frame size.
+   */
+  public ByteBuffer[] encode(final ByteBuffer payload) throws ProtocolException {
+    Assert.notNull(payload, "The payload to encode must not be null!");
+
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+    header.putInt(validate(payload.remaining()));
+    ((Buffer) header).flip();
+
+    return new ByteBuffer[] { header, payload.duplicate() };
+  }
+
+  /**
+   * Writes the frame header for a payload of the given length into the ByteBuffer.
+   *
+   * @param buffer the ByteBuffer, in write mode, to which the header is written.
+   * @param payloadLength the length of the payload following the header.
+   * @throws ProtocolException if the payload length exceeds the maximum frame size.
+   */
+  public void encodeHeader(final ByteBuffer buffer, final int payloadLength) throws ProtocolException {
+    buffer.putInt(validate(payloadLength));
+  }
+
+  protected int validate(final int payloadLength) throws ProtocolException {
+    if (payloadLength < 0 || payloadLength > getMaxFrameSize()) {
+      throw new ProtocolException(String.format("The frame length (%1$d) must be between 0 and (%2$d) bytes!",
+        payloadLength, getMaxFrameSize()));
+    }
+
+    return payloadLength;
+  }
+
+}
@@ -0,0 +1,340 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+
+import org.codeprimate.lang.Assert;
+
+/**
+ * The FrameStream class reads and writes length-prefixed frames over a blocking Socket using ByteBuffers acquired
+ * from a BufferPool.  Reads fill the buffer with as many bytes as the Socket has available, so a single system call
+ * typically yields several frames, and each decoded payload is a slice of the read buffer rather than a copy.
+ * A payload returned by readFrame is only valid until the next read from this stream.
+ *
+ * Writes are buffered until flush is called.  When the Socket was opened from a SocketChannel, buffered bytes and
+ * large payloads are written together with a gathering write.  Socket streams are read and written directly through
+ * the backing array of heap ByteBuffers, so a heap BufferPool should be used for Sockets without a SocketChannel.
+ *
+ * @author John J. Blum
+ * @see java.net.Socket
+ * @see org.codeprimate.net.BufferPool
+ * @see org.codeprimate.net.FrameCodec
+ * @since 1.2.0
+ */
+@SuppressWarnings("unused")
+public class FrameStream implements Closeable {
+
+  private final BufferPool bufferPool;
+
+  private ByteBuffer readBuffer;
+  private ByteBuffer writeBuffer;
+
+  private final FrameCodec codec;
+
+  private final InputStream in;
+
+  private final OutputStream out;
+
+  private final Socket socket;
+
+  private final SocketChannel channel;
+
+  public FrameStream(final Socket socket, final FrameCodec codec, final BufferPool bufferPool) throws IOException {
+    Assert.notNull(socket, "The Socket must not be null!");
+    Assert.notNull(codec, "The FrameCodec must not be null!");
+    Assert.notNull(bufferPool, "The BufferPool must not be null!");
+
+    this.socket = socket;
+    this.channel = socket.getChannel();
+    this.in = (channel != null ? null : socket.getInputStream());
+    this.out = (channel != null ? null : socket.getOutputStream());
+    this.codec = codec;
+    this.bufferPool = bufferPool;
+    this.readBuffer = bufferPool.acquire();
+    this.writeBuffer = bufferPool.acquire();
+
+    ((Buffer) readBuffer).flip();
+  }
+
+  public FrameCodec getCodec() {
+    return codec;
+  }
+
+  public Socket getSocket() {
+    return socket;
+  }
+
+  /**
+   * Reads the next frame from the Socket, blocking until the frame has been fully received.
+   *
+   * @return a ByteBuffer slice containing the payload of the frame, or null if the Socket reached end-of-stream
+   * between frames.
+   * @throws EOFException if the Socket reached end-of-stream in the middle of a frame.
+   * @throws java.net.ProtocolException if the frame length is invalid.
+   * @throws IOException if an I/O error occurs reading from the Socket.
+   */
+  public ByteBuffer readFrame() throws IOException {
+    ByteBuffer payload;
+
+    while ((payload = codec.decode(readBuffer)) == null) {
+      ensureReadCapacity(codec.peekFrameLength(readBuffer));
+
+      if (fill() < 0) {
+        if (readBuffer.hasRemaining()) {
+          throw new EOFException(String.format("End-of-stream reached after (%1$d) bytes of an incomplete frame!",
+            readBuffer.remaining()));
+        }
+
+        return null;
+      }
+    }
+
+    return payload;
+  }
+
+  /**
+   * Determines the length of the next frame, including the header, blocking until the header has been received.
+   * No bytes of the frame are consumed.
+   *
+   * @return the length of the next frame including the header, or -1 if the Socket reached end-of-stream between
+   * frames.
+   * @throws EOFException if the Socket reached end-of-stream in the middle of a frame header.
+   * @throws java.net.ProtocolException if the frame length is invalid.
+   * @throws IOException if an I/O error occurs reading from the Socket.
+   */
+  public int peekFrameLength() throws IOException {
+    while (readBuffer.remaining() < FrameCodec.HEADER_SIZE) {
+      if (fill() < 0) {
+        if (readBuffer.hasRemaining()) {
+          throw new EOFException(String.format("End-of-stream reached after (%1$d) bytes of an incomplete frame!",
+            readBuffer.remaining()));
+        }
+
+        return -1;
+      }
+    }
+
+    return codec.peekFrameLength(readBuffer);
+  }
+
+  /**
+   * Reads and discards the next frame from the Socket.  The payload is consumed through the read buffer in chunks,
+   * so the buffer never grows to hold a large payload and no payload bytes are retained.
+   *
+   * @return the length of the skipped payload, or -1 if the Socket reached end-of-stream between frames.
+   * @throws EOFException if the Socket reached end-of-stream in the middle of a frame.
+   * @throws java.net.ProtocolException if the frame length is invalid.
+   * @throws IOException if an I/O error occurs reading from the Socket.
+   */
+  public int skipFrame() throws IOException {
+    int frameLength = peekFrameLength();
+
+    if (frameLength < 0) {
+      return -1;
+    }
+
+    int payloadLength = (frameLength - FrameCodec.HEADER_SIZE);
+
+    ((Buffer) readBuffer).position(readBuffer.position() + FrameCodec.HEADER_SIZE);
+
+    for (int remaining = payloadLength; remaining > 0; ) {
+      if (!readBuffer.hasRemaining() && fill() < 0) {
+        throw new EOFException(String.format("End-of-stream reached with (%1$d) bytes of the payload remaining!",
+          remaining));
+      }
+
+      int length = Math.min(remaining, readBuffer.remaining());
+
+      ((Buffer) readBuffer).position(readBuffer.position() + length);
+      remaining -= length;
+    }
+
+    return payloadLength;
+  }
+
+  /**
+   * Determines whether a complete frame has already been received and buffered, in which case the next call
+   * to readFrame will not block.  Callers use this to batch responses until the buffered frames are consumed.
+   *
+   * @return a boolean value indicating whether a complete frame is buffered.
+   * @throws java.net.ProtocolException if the length of the buffered frame is invalid.
+   */
+  public boolean isFrameBuffered() throws IOException {
+    int frameLength = codec.peekFrameLength(readBuffer);
+    return (frameLength >= 0 && readBuffer.remaining() >= frameLength);
+  }
+
+  /**
+   * Reads a single, un-framed byte from the Socket.
+   *
+   * @return the unsigned byte value, or -1 if the Socket reached end-of-stream.
+   * @throws IOException if an I/O error occurs reading from the Socket.
+   */
+  public int readByte() throws IOException {
+    while (!readBuffer.hasRemaining()) {
+      if (fill() < 0) {
+        return -1;
+      }
+    }
+
+    return (readBuffer.get() & 0xFF);
+  }
+
+  private void ensureReadCapacity(final int frameLength) {
+    if (frameLength > readBuffer.capacity()) {
+      ByteBuffer newReadBuffer = bufferPool.acquire(frameLength);
+
+      newReadBuffer.put(readBuffer);
+      ((Buffer) newReadBuffer).flip();
+      bufferPool.release(readBuffer);
+      readBuffer = newReadBuffer;
+    }
+  }
+
+  private int fill() throws IOException {
+    readBuffer.compact();
+
+    try {
+      int bytesRead;
+
+      if (channel != null) {
+        bytesRead = channel.read(readBuffer);
+      }
+      else if (readBuffer.hasArray()) {
+        bytesRead = in.read(readBuffer.array(), readBuffer.arrayOffset() + readBuffer.position(),
+          readBuffer.remaining());
+
+        if (bytesRead > 0) {
+          ((Buffer) readBuffer).position(readBuffer.position() + bytesRead);
+        }
+      }
+      else {
+        bytesRead = Channels.newChannel(in).read(readBuffer);
+      }
+
+      return bytesRead;
+    }
+    finally {
+      ((Buffer) readBuffer).flip();
+    }
+  }
+
+  /**
+   * Buffers the payload as a frame to be written to the Socket.  Payloads larger than the write buffer are written
+   * immediately along with any previously buffered bytes.  The payload's position and limit are not modified.
+   *
+   * @param payload the ByteBuffer containing the payload, from its position to its limit.
+   * @throws java.net.ProtocolException if the payload exceeds the maximum frame size.
+   * @throws IOException if an I/O error occurs writing to the Socket.
+   */
+  public void writeFrame(final ByteBuffer payload) throws IOException {
+    Assert.notNull(payload, "The payload to write must not be null!");
+
+    if (writeBuffer.remaining() < FrameCodec.HEADER_SIZE) {
+      flush();
+    }
+
+    codec.encodeHeader(writeBuffer, payload.remaining());
+
+    if (payload.remaining() <= writeBuffer.remaining()) {
+      writeBuffer.put(payload.duplicate());
+    }
+    else {
+      ((Buffer) writeBuffer).flip();
+      write(writeBuffer, payload.duplicate());
+      ((Buffer) writeBuffer).clear();
+    }
+  }
+
+  /**
+   * Buffers a single, un-framed byte to be written to the Socket.
+   *
+   * @param value the byte value to write.
+   * @throws IOException if an I/O error occurs writing to the Socket.
+   */
+  public void writeByte(final int value) throws IOException {
+    if (!writeBuffer.hasRemaining()) {
+      flush();
+    }
+
+    writeBuffer.put((byte) value);
+  }
+
+  /**
+   * Writes all buffered bytes to the Socket.
+   *
+   * @throws IOException if an I/O error occurs writing to the Socket.
+   */
+  public void flush() throws IOException {
+    if (writeBuffer.position() > 0) {
+      ((Buffer) writeBuffer).flip();
+      write(writeBuffer);
+      ((Buffer) writeBuffer).clear();
+    }
+  }
+
+  private void write(final ByteBuffer... buffers) throws IOException {
+    if (channel != null) {
+      ByteBuffer lastBuffer = buffers[buffers.length - 1];
+
+      while (lastBuffer.hasRemaining()) {
+        channel.write(buffers);
+      }
+    }
+    else {
+      for (ByteBuffer buffer : buffers) {
+        if (buffer.hasArray()) {
+          out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+          ((Buffer) buffer).position(buffer.limit());
+        }
+        else {
+          Channels.newChannel(out).write(buffer);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the ByteBuffers of this stream to the BufferPool without closing the Socket.  Bytes buffered but not
+   * yet flushed are discarded, and the stream must not be used afterwards.
+   */
+  public void release() {
+    bufferPool.release(readBuffer);
+    bufferPool.release(writeBuffer);
+    readBuffer = null;
+    writeBuffer = null;
+  }
+
+  /**
+   * Releases the ByteBuffers of this stream and closes the Socket.
+   */
+  public void close() {
+    release();
+    SocketUtils.close(socket);
+  }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net;
+
+import java.net.ProtocolException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.codeprimate.lang.Assert;
+
+/**
+ * The LineCodec class decodes lines terminated by a line feed ('\n'), optionally preceded by a carriage return,
+ * and converts them to and from Strings in a Charset, UTF-8 by default.  Lines are located by scanning for the line
+ * feed byte, which never occurs inside a multi-byte UTF-8 character, so a line is only converted to a String once all
+ * of its bytes have been received.  Decoded lines are slices of the ByteBuffer the line was decoded from.
+ *
+ * @author John J. Blum
+ * @see java.nio.ByteBuffer
+ * @see java.nio.charset.Charset
+ * @see org.codeprimate.net.LineStream
+ * @since 1.2.0
+ */
+@SuppressWarnings("unused")
+public class LineCodec {
+
+  public static final byte CARRIAGE_RETURN = '\r';
+  public static final byte LINE_FEED = '\n';
+
+  public static final int DEFAULT_MAX_LINE_LENGTH = 65536;
+
+  public static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final Charset charset;
+
+  private final int maxLineLength;
+
+  public LineCodec() {
+    this(UTF_8, DEFAULT_MAX_LINE_LENGTH);
+  }
+
+  public LineCodec(final Charset charset, final int maxLineLength) {
+    Assert.notNull(charset, "The Charset must not be null!");
+    Assert.legalArgument(maxLineLength > 0, String.format("The maximum line length (%1$d) must be greater than 0!",
+      maxLineLength));
+    Assert.legalArgument(Arrays.equals(new byte[] { LINE_FEED }, "\n".getBytes(charset)), String.format(
+      "The Charset (%1$s) must encode a line feed as a single byte!", charset.name()));
+
+    this.charset = charset;
+    this.maxLineLength = maxLineLength;
+  }
+
+  public Charset getCharset() {
+    return charset;
+  }
+
+  public int getMaxLineLength() {
+    return maxLineLength;
+  }
+
+  /**
+   * Determines the number of bytes the next line in the ByteBuffer occupies, including the line terminator,
+   * without consuming any bytes.
+   *
+   * @param buffer the ByteBuffer, in read mode, containing the line.
+   * @return the length of the next line including the terminator, or -1 if the line has not been fully received.
+   * @throws ProtocolException if the line exceeds the maximum line length.
+   */
+  public int peekLineLength(final ByteBuffer buffer) throws ProtocolException {
+    int limit = Math.min(buffer.limit(), buffer.position() + getMaxLineLength() + 1);
+
+    for (int index = buffer.position(); index < limit; index++) {
+      if (buffer.get(index) == LINE_FEED) {
+        return (index - buffer.position() + 1);
+      }
+    }
+
+    if (buffer.remaining() > getMaxLineLength()) {
+      throw new ProtocolException(String.format("The line length exceeds the maximum of (%1$d) bytes!",
+        getMaxLineLength()));
+    }
+
+    return -1;
+  }
+
+  /**
+   * Decodes the next line from the ByteBuffer.  When a complete line is available, the buffer's position advances
+   * past the line terminator and the line, without its terminator, is returned as a slice of the buffer; otherwise
+   * the buffer is left untouched.
+   *
+   * @param buffer the ByteBuffer, in read mode, containing the line.
+   * @return a ByteBuffer slice containing the bytes of the line, or null if the line has not been fully received.
+   * @throws ProtocolException if the line exceeds the maximum line length.
+   */
+  public ByteBuffer decode(final ByteBuffer buffer) throws ProtocolException {
+    int lineLength = peekLineLength(buffer);
+
+    if (lineLength < 0) {
+      return null;
+    }
+
+    int lineLimit = (buffer.position() + lineLength);
+    int contentLimit = (lineLimit - 1);
+
+    if (contentLimit > buffer.position() && buffer.get(contentLimit - 1) == CARRIAGE_RETURN) {
+      contentLimit--;
+    }
+
+    ByteBuffer line = buffer.duplicate();
+
+    ((Buffer) line).limit(contentLimit);
+    ((Buffer) buffer).position(lineLimit);
+
+    return line.slice();
+  }
+
+  /**
+   * Encodes the line in this codec's Charset followed by a line feed.
+   *
+   * @param line the String to encode.
+   * @return a ByteBuffer, in read mode, containing the encoded line and its terminator.
+   */
+  public ByteBuffer encode(final String line) {
+    Assert.notNull(line, "The line to encode must not be null!");
+
+    byte[] content = line.getBytes(getCharset());
+    ByteBuffer buffer = ByteBuffer.allocate(content.length + 1);
+
+    buffer.put(content).put(LINE_FEED);
+    ((Buffer) buffer).flip();
+
+    return buffer;
+  }
+
+  /**
+   * Converts the bytes of a decoded line to a String in this codec's Charset; malformed input is replaced.
+   * The line's position and limit are not modified.
+   *
+   * @param line the ByteBuffer containing the bytes of the line, from its position to its limit.
+   * @return a String containing the characters of the line.
+   */
+  public String toString(final ByteBuffer line) {
+    return (line.hasArray() ? new String(line.array(), line.arrayOffset() + line.position(), line.remaining(),
+      getCharset()) : getCharset().decode(line.duplicate()).toString());
+  }
+
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.net.Socket;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+import org.codeprimate.lang.Assert;
+
+/**
+ * The LineStream class reads and writes lines over a blocking Socket using ByteBuffers acquired from a BufferPool.
+ * Reads fill the buffer with as many bytes as the Socket has available, so a single system call typically yields
+ * several lines.  Writes are buffered and flushed automatically just before the stream blocks waiting for more input,
+ * that is, once every line already received has been read.  A client sending many lines back-to-back therefore
+ * receives its responses coalesced into a few large writes, while a client waiting on each response still gets it
+ * without delay.  Socket streams are read and written directly through the backing array of heap ByteBuffers,
+ * so a heap BufferPool should be used for Sockets without a SocketChannel.
+ *
+ * @author John J. Blum
+ * @see java.net.Socket
+ * @see org.codeprimate.net.BufferPool
+ * @see org.codeprimate.net.FrameStream
+ * @see org.codeprimate.net.LineCodec
+ * @since 1.2.0
+ */
+@SuppressWarnings("unused")
+public class LineStream implements Closeable {
+
+  private final BufferPool bufferPool;
+
+  private ByteBuffer readBuffer;
+  private ByteBuffer writeBuffer;
+
+  private final CharsetEncoder encoder;
+
+  private final InputStream in;
+
+  private final LineCodec codec;
+
+  private final OutputStream out;
+
+  private final Socket socket;
+
+  private final SocketChannel channel;
+
+  public LineStream(final Socket socket, final LineCodec codec, final BufferPool bufferPool) throws IOException {
+    Assert.notNull(socket, "The Socket must not be null!");
+    Assert.notNull(codec, "The LineCodec must not be null!");
+    Assert.notNull(bufferPool, "The BufferPool must not be null!");
+
+    this.socket = socket;
+    this.channel = socket.getChannel();
+    this.in = (channel != null ? null : socket.getInputStream());
+    this.out = (channel != null ? null : socket.getOutputStream());
+    this.codec = codec;
+    this.encoder = codec.getCharset().newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+      .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    this.bufferPool = bufferPool;
+    this.readBuffer = bufferPool.acquire();
+    this.writeBuffer = bufferPool.acquire();
+
+    ((Buffer) readBuffer).flip();
+  }
+
+  public LineCodec getCodec() {
+    return codec;
+  }
+
+  public Socket getSocket() {
+    return socket;
+  }
+
+  /**
+   * Reads the next line from the Socket, blocking until the line has been fully received.
+   *
+   * @return a String containing the line without its terminator, or null if the Socket reached end-of-stream
+   * and no bytes remain.
+   * @throws ProtocolException if the line exceeds the maximum line length.
+   * @throws IOException if an I/O error occurs reading from the Socket.
+   * @see #readLineBuffer()
+   */
+  public String readLine() throws IOException {
+    ByteBuffer line = readLineBuffer();
+    return (line != null ? codec.toString(line) : null);
+  }
+
+  /**
+   * Reads the next line from the Socket, blocking until the line has been fully received.  Bytes following
+   * the last line terminator when the Socket reaches end-of-stream are returned as a final line.
+   *
+   * @return a ByteBuffer slice containing the bytes of the line without its terminator, or null if the Socket
+   * reached end-of-stream and no bytes remain; the slice is only valid until the next read from this stream.
+   * @throws ProtocolException if the line exceeds the maximum line length.
+   * @throws IOException if an I/O error occurs reading from the Socket.
+   */
+  public ByteBuffer readLineBuffer() throws IOException {
+    ByteBuffer line;
+
+    while ((line = codec.decode(readBuffer)) == null) {
+      ensureReadCapacity();
+
+      if (fill() < 0) {
+        if (readBuffer.hasRemaining()) {
+          line = readBuffer.slice();
+          ((Buffer) readBuffer).position(readBuffer.limit());
+        }
+
+        return line;
+      }
+    }
+
+    return line;
+  }
+
+  /**
+   * Determines whether a complete line has already been received and buffered, in which case the next call
+   * to readLine will not block.
+   *
+   * @return a boolean value indicating whether a complete line is buffered.
+   * @throws ProtocolException if the buffered line exceeds the maximum line length.
+   */
+  public boolean isLineBuffered() throws IOException {
+    return (codec.peekLineLength(readBuffer) >= 0);
+  }
+
+  private void ensureReadCapacity() {
+    if (readBuffer.position() == 0 && readBuffer.limit() == readBuffer.capacity()) {
+      ByteBuffer newReadBuffer = bufferPool.acquire(Math.min(readBuffer.capacity() * 2,
+        codec.getMaxLineLength() + 1));
+
+      newReadBuffer.put(readBuffer);
+      ((Buffer) newReadBuffer).flip();
+      bufferPool.release(readBuffer);
+      readBuffer = newReadBuffer;
+    }
+  }
+
+  private int fill() throws IOException {
+    if (in == null || in.available() == 0) {
+      flush();
+    }
+
+    readBuffer.compact();
+
+    try {
+      int bytesRead;
+
+      if (channel != null) {
+        bytesRead = channel.read(readBuffer);
+      }
+      else if (readBuffer.hasArray()) {
+        bytesRead = in.read(readBuffer.array(), readBuffer.arrayOffset() + readBuffer.position(),
+          readBuffer.remaining());
+
+        if (bytesRead > 0) {
+          ((Buffer) readBuffer).position(readBuffer.position() + bytesRead);
+        }
+      }
+      else {
+        bytesRead = Channels.newChannel(in).read(readBuffer);
+      }
+
+      return bytesRead;
+    }
+    finally {
+      ((Buffer) readBuffer).flip();
+    }
+  }
+
+  /**
+   * Buffers the line, encoded in the codec's Charset and followed by a line feed, to be written to the Socket.
+   *
+   * @param line the CharSequence to write.
+   * @throws IOException if an I/O error occurs writing to the Socket.
+   */
+  public void writeLine(final CharSequence line) throws IOException {
+    Assert.notNull(line, "The line to write must not be null!");
+
+    CharBuffer chars = CharBuffer.wrap(line);
+
+    encoder.reset();
+
+    for (CoderResult result = encoder.encode(chars, writeBuffer, true); result.isOverflow();
+         result = encoder.encode(chars, writeBuffer, true)) {
+      flush();
+    }
+
+    while (encoder.flush(writeBuffer).isOverflow()) {
+      flush();
+    }
+
+    writeLineFeed();
+  }
+
+  /**
+   * Buffers the bytes of the line followed by a line feed to be written to the Socket.  Lines larger than the write
+   * buffer are written immediately along with any previously buffered bytes.  The line's position and limit are not
+   * modified.
+   *
+   * @param line the ByteBuffer containing the bytes of the line, from its position to its limit.
+   * @throws IOException if an I/O error occurs writing to the Socket.
+   */
+  public void writeLine(final ByteBuffer line) throws IOException {
+    Assert.notNull(line, "The line to write must not be null!");
+
+    if (line.remaining() <= writeBuffer.remaining()) {
+      writeBuffer.put(line.duplicate());
+    }
+    else {
+      ((Buffer) writeBuffer).flip();
+      write(writeBuffer, line.duplicate());
+      ((Buffer) writeBuffer).clear();
+    }
+
+    writeLineFeed();
+  }
+
+  private void writeLineFeed() throws IOException {
+    if (!writeBuffer.hasRemaining()) {
+      flush();
+    }
+
+    writeBuffer.put(LineCodec.LINE_FEED);
+  }
+
+  /**
+   * Writes all buffered bytes to the Socket.
+   *
+   * @throws IOException if an I/O error occurs writing to the Socket.
+   */
+  public void flush() throws IOException {
+    if (writeBuffer.position() > 0) {
+      ((Buffer) writeBuffer).flip();
+      write(writeBuffer);
+      ((Buffer) writeBuffer).clear();
+    }
+  }
+
+  private void write(final ByteBuffer... buffers) throws IOException {
+    if (channel != null) {
+      ByteBuffer lastBuffer = buffers[buffers.length - 1];
+
+      while (lastBuffer.hasRemaining()) {
+        channel.write(buffers);
+      }
+    }
+    else {
+      for (ByteBuffer buffer : buffers) {
+        if (buffer.hasArray()) {
+          out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+          ((Buffer) buffer).position(buffer.limit());
+        }
+        else {
+          Channels.newChannel(out).write(buffer);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the ByteBuffers of this stream to the BufferPool without closing the Socket.  Bytes buffered but not
+   * yet flushed are discarded, and the stream must not be used afterwards.
+   */
+  public void release() {
+    bufferPool.release(readBuffer);
+    bufferPool.release(writeBuffer);
+    readBuffer = null;
+    writeBuffer = null;
+  }
+
+  /**
+   * Releases the ByteBuffers of this stream and closes the Socket.
+   */
+  public void close() {
+    release();
+    SocketUtils.close(socket);
+  }
+
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ProtocolException;
+import java.net.SocketException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The MultiplexedStream class is a bidirectional, flow-controlled logical stream carried over the connection of a
+ * StreamMultiplexer.  Data written is split into frames, copied into pooled buffers and queued for the multiplexer's
+ * writer Thread; a write blocks only while the remote side has granted no credit, that is, while the remote
+ * application has not read the data already sent.  Data received is queued until read, and credit is granted back
+ * to the sender once half the window has been read, coalescing the window updates.
+ *
+ * Closing a stream ends its data in the outbound direction after the queued data has been written; the stream is
+ * removed from the multiplexer once both sides have closed it.
+ *
+ * @author John J. Blum
+ * @see org.codeprimate.net.StreamMultiplexer
+ * @since 1.2.0
+ */
+@SuppressWarnings("unused")
+public class MultiplexedStream implements Closeable {
+
+  private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+  private boolean closeRequested;
+  private boolean closeSent;
+  private boolean remotelyClosed;
+
+  private final int id;
+  private final int initialWindow;
+
+  private int pendingCredit;
+  private int receiveWindow;
+  private int sendWindow;
+  private int unacknowledgedBytes;
+
+  private IOException failure;
+
+  private final Queue<ByteBuffer> inbound = new ArrayDeque<ByteBuffer>();
+  private final Queue<ByteBuffer> outbound = new ArrayDeque<ByteBuffer>();
+
+  private final StreamMultiplexer multiplexer;
+
+  MultiplexedStream(final StreamMultiplexer multiplexer, final int id, final int initialWindow) {
+    this.multiplexer = multiplexer;
+    this.id = id;
+    this.initialWindow = initialWindow;
+    this.receiveWindow = initialWindow;
+    this.sendWindow = initialWindow;
+  }
+
+  public int getId() {
+    return id;
+  }
+
+  public StreamMultiplexer getMultiplexer() {
+    return multiplexer;
+  }
+
+  /**
+   * Gets the number of bytes that may be written before the remote side grants more credit.
+   *
+   * @return the remaining send window of this stream.
+   */
+  public synchronized int getSendWindow() {
+    return sendWindow;
+  }
+
+  /**
+   * Writes the bytes of the ByteBuffer from its position to its limit, blocking while the send window is exhausted.
+   * The data is copied, so the ByteBuffer may be reused as soon as this method returns.
+   *
+   * @param source the ByteBuffer containing the data to write.
+   * @throws SocketException if this stream has been closed.
+   * @throws IOException if the connection has failed.
+   * @throws InterruptedIOException if the calling Thread is interrupted while waiting for credit.
+   */
+  public void write(final ByteBuffer source) throws IOException {
+    int maxDataLength = multiplexer.getMaxDataLength();
+
+    while (source.hasRemaining()) {
+      synchronized (this) {
+        while (sendWindow == 0 && failure == null && !closeRequested) {
+          await();
+        }
+
+        if (failure != null) {
+          throw newFailure();
+        }
+
+        if (closeRequested) {
+          throw new SocketException(String.format("Stream (%1$d) is closed!", id));
+        }
+
+        int length = Math.min(source.remaining(), Math.min(sendWindow, maxDataLength));
+
+        ByteBuffer data = source.duplicate();
+        ByteBuffer frame = multiplexer.newFrame(id, StreamMultiplexer.DATA);
+
+        ((Buffer) data).limit(data.position() + length);
+        frame.put(data);
+        ((Buffer) frame).flip();
+        ((Buffer) source).position(source.position() + length);
+
+        outbound.add(frame);
+        sendWindow -= length;
+      }
+
+      multiplexer.schedule(this);
+    }
+  }
+
+  /**
+   * Reads received data into the ByteBuffer, blocking until data is available.
+   *
+   * @param destination the ByteBuffer into which data is read up to its limit.
+   * @return the number of bytes read, or -1 if the remote side has closed the stream and all data has been read.
+   * @throws IOException if the connection failed before the remote side closed the stream.
+   * @throws InterruptedIOException if the calling Thread is interrupted while waiting for data.
+   */
+  public int read(final ByteBuffer destination) throws IOException {
+    int bytesRead = 0;
+    boolean grantCredit = false;
+
+    synchronized (this) {
+      while (inbound.isEmpty() && !remotelyClosed && failure == null) {
+        await();
+      }
+
+      if (inbound.isEmpty()) {
+        if (remotelyClosed) {
+          return -1;
+        }
+
+        throw newFailure();
+      }
+
+      while (destination.hasRemaining() && !inbound.isEmpty()) {
+        ByteBuffer data = inbound.peek();
+        int length = Math.min(data.remaining(), destination.remaining());
+
+        ByteBuffer chunk = data.duplicate();
+
+        ((Buffer) chunk).limit(chunk.position() + length);
+        destination.put(chunk);
+        ((Buffer) data).position(data.position() + length);
+        bytesRead += length;
+
+        if (!data.hasRemaining()) {
+          multiplexer.getBufferPool().release(inbound.poll());
+        }
+      }
+
+      unacknowledgedBytes += bytesRead;
+
+      if (unacknowledgedBytes >= initialWindow / 2 && !remotelyClosed) {
+        pendingCredit += unacknowledgedBytes;
+        receiveWindow += unacknowledgedBytes;
+        unacknowledgedBytes = 0;
+        grantCredit = true;
+      }
+    }
+
+    if (grantCredit) {
+      multiplexer.schedule(this);
+    }
+
+    return bytesRead;
+  }
+
+  private IOException newFailure() {
+    return new IOException(String.format("Stream (%1$d) failed!", id), failure);
+  }
+
+  // @see java.lang.Object#wait()
+  private void await() throws InterruptedIOException {
+    try {
+      wait();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(String.format("Interrupted while waiting on stream (%1$d)!", id));
+    }
+  }
+
+  /**
+   * Ends the data of this stream in the outbound direction once the data already written has been sent.
+   */
+  public void close() {
+    synchronized (this) {
+      if (closeRequested) {
+        return;
+      }
+
+      closeRequested = true;
+      notifyAll();
+    }
+
+    multiplexer.schedule(this);
+  }
+
+  boolean markScheduled() {
+    return scheduled.compareAndSet(false, true);
+  }
+
+  void clearScheduled() {
+    scheduled.set(false);
+  }
+
+  /**
+   * Writes the pending window update, at most one data frame and, once all data has been written, the close of
+   * this stream; called by the multiplexer's writer Thread.
+   *
+   * @return a boolean value indicating whether this stream has more to write.
+   */
+  boolean writeNext(final FrameStream out, final ByteBuffer controlFrame) throws IOException {
+    int credit;
+
+    boolean removable = false;
+    boolean sendClose;
+
+    ByteBuffer data;
+
+    synchronized (this) {
+      credit = pendingCredit;
+      data = outbound.poll();
+      pendingCredit = 0;
+      sendClose = (data == null && closeRequested && !closeSent && failure == null);
+      closeSent |= sendClose;
+      removable = (sendClose && remotelyClosed);
+    }
+
+    if (credit > 0) {
+      multiplexer.writeControlFrame(out, controlFrame, id, StreamMultiplexer.WINDOW_UPDATE, credit);
+    }
+
+    if (data != null) {
+      try {
+        out.writeFrame(data);
+      }
+      finally {
+        multiplexer.getBufferPool().release(data);
+      }
+    }
+
+    if (sendClose) {
+      multiplexer.writeControlFrame(out, controlFrame, id, StreamMultiplexer.CLOSE, 0);
+    }
+
+    if (removable) {
+      multiplexer.remove(this);
+    }
+
+    synchronized (this) {
+      return (pendingCredit > 0 || (failure == null && (!outbound.isEmpty() || (closeRequested && !closeSent))));
+    }
+  }
+
+  /**
+   * Queues a copy of the data received for this stream; called by the multiplexer's reader Thread.
+   */
+  void received(final ByteBuffer data) throws ProtocolException {
+    ByteBuffer copy = multiplexer.getBufferPool().acquire(data.remaining());
+
+    copy.put(data);
+    ((Buffer) copy).flip();
+
+    synchronized (this) {
+      receiveWindow -= copy.remaining();
+
+      if (receiveWindow < 0 || remotelyClosed) {
+        multiplexer.getBufferPool().release(copy);
+        throw new ProtocolException(String.format("Stream (%1$d) received data %2$s!", id, (remotelyClosed
+          ? "after it was closed" : "exceeding its flow-control window")));
+      }
+
+      inbound.add(copy);
+      notifyAll();
+    }
+  }
+
+  synchronized void windowUpdated(final int credit) throws ProtocolException {
+    if (credit <= 0 || sendWindow + credit < 0) {
+      throw new ProtocolException(String.format("Stream (%1$d) received an invalid window update (%2$d)!", id,
+        credit));
+    }
+
+    sendWindow += credit;
+    notifyAll();
+  }
+
+  void remotelyClosed() {
+    boolean removable;
+
+    synchronized (this) {
+      remotelyClosed = true;
+      removable = closeSent;
+      notifyAll();
+    }
+
+    if (removable) {
+      multiplexer.remove(this);
+    }
+  }
+
+  void failed(final IOException cause) {
+    synchronized (this) {
+      if (failure == null) {
+        failure = (cause != null ? cause : new SocketException("The multiplexed connection is closed!"));
+      }
+
+      for (ByteBuffer frame = outbound.poll(); frame != null; frame = outbound.poll()) {
+        multiplexer.getBufferPool().release(frame);
+      }
+
+      notifyAll();
+    }
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("{ id = %1$d, sendWindow = %2$d, receiveWindow = %3$d, inbound = %4$d, outbound = %5$d,"
+      + " closed = %6$s, remotelyClosed = %7$s }", id, sendWindow, receiveWindow, inbound.size(), outbound.size(),
+        closeRequested, remotelyClosed);
+  }
+
+}
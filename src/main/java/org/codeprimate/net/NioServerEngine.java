@@ -0,0 +1,564 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.codeprimate.io.IOUtils;
+import org.codeprimate.lang.Assert;
+import org.codeprimate.lang.concurrent.HashedTimingWheel;
+
+/**
+ * The NioServerEngine class is a non-blocking ServerEngine built on a ServerSocketChannel and Selectors.  Client
+ * connections are distributed round-robin across a fixed number of event loop Threads, each owning a Selector,
+ * so that tens of thousands of connections can be serviced by a handful of Threads.  Connections are serviced by
+ * a ChannelHandler, which must never block the event loop.  Connection read buffers are drawn from a BufferPool
+ * of direct ByteBuffers shared by all event loops.  Connections idle for longer than the idle timeout, if set,
+ * are closed by a HashedTimingWheel.
+ *
+ * The responses written by a ChannelHandler while it processes a read are always coalesced and written with one
+ * gathering write once the handler returns.  With a write coalescing delay, a connection's writes are held for up to
+ * the delay, or until the maximum write batch size is queued, and coalesced with the writes of the reads that follow,
+ * trading latency for fewer write system calls.  Since the Selector times its waits in milliseconds, a deferred
+ * flush may run up to a millisecond after its deadline.
+ *
+ * @author John J. Blum
+ * @see java.nio.channels.Selector
+ * @see org.codeprimate.net.BufferPool
+ * @see java.nio.channels.ServerSocketChannel
+ * @see org.codeprimate.net.ChannelConnection
+ * @see org.codeprimate.net.ChannelHandler
+ * @see org.codeprimate.net.ServerEngine
+ * @see org.codeprimate.lang.concurrent.HashedTimingWheel
+ * @since 1.2.0
+ */
+@SuppressWarnings("unused")
+public class NioServerEngine implements ServerEngine {
+
+  public static final int DEFAULT_BACKLOG = 1024;
+  public static final int DEFAULT_EVENT_LOOPS = Runtime.getRuntime().availableProcessors();
+  public static final int DEFAULT_MAX_READ_BUFFER_SIZE = 16777216;
+  public static final int DEFAULT_MAX_WRITE_BATCH_SIZE = 65536;
+  public static final int DEFAULT_READ_BUFFER_SIZE = 8192;
+
+  public static final long DEFAULT_STOP_TIMEOUT = TimeUnit.SECONDS.toMillis(5);
+
+  private final AtomicInteger nextEventLoopIndex = new AtomicInteger(0);
+
+  private volatile boolean running;
+
+  private BufferPool bufferPool;
+
+  private final ChannelHandler handler;
+
+  private EventLoop[] eventLoops;
+
+  private final InetSocketAddress address;
+
+  private final int eventLoopCount;
+
+  private long idleTimeout = 0L;
+  private long writeCoalescingDelay = 0L;
+
+  private HashedTimingWheel timingWheel;
+
+  private int maxReadBufferSize = DEFAULT_MAX_READ_BUFFER_SIZE;
+  private int maxWriteBatchSize = DEFAULT_MAX_WRITE_BATCH_SIZE;
+  private int readBufferSize = DEFAULT_READ_BUFFER_SIZE;
+
+  private ServerMetrics metrics = new ServerMetrics();
+
+  private ServerSocketChannel serverChannel;
+
+  private final String name;
+
+  public NioServerEngine(final String name, final InetSocketAddress address, final int eventLoopCount,
+                         final ChannelHandler handler) {
+    Assert.notNull(address, "The address to bind the server to must not be null!");
+    Assert.legalArgument(eventLoopCount > 0, String.format("The number of event loops (%1$d) must be greater than 0!",
+      eventLoopCount));
+    Assert.notNull(handler, "The ChannelHandler must not be null!");
+
+    this.name = name;
+    this.address = address;
+    this.eventLoopCount = eventLoopCount;
+    this.handler = handler;
+  }
+
+  /**
+   * Gets the BufferPool from which connection read buffers are acquired.  Unless set, the pool is created on start
+   * with buffers of the read buffer size.
+   *
+   * @return the BufferPool supplying connection read buffers.
+   */
+  public BufferPool getBufferPool() {
+    return bufferPool;
+  }
+
+  public void setBufferPool(final BufferPool bufferPool) {
+    Assert.legalState(!isRunning(), "The BufferPool cannot be changed while the server engine is running!");
+    this.bufferPool = bufferPool;
+  }
+
+  public InetSocketAddress getBoundAddress() {
+    return (serverChannel != null ? (InetSocketAddress) serverChannel.socket().getLocalSocketAddress() : null);
+  }
+
+  public int getEventLoopCount() {
+    return eventLoopCount;
+  }
+
+  public ChannelHandler getHandler() {
+    return handler;
+  }
+
+  public long getIdleTimeout() {
+    return idleTimeout;
+  }
+
+  /**
+   * Sets the time in milliseconds after which a connection that has neither read nor written any bytes is closed;
+   * 0 never closes idle connections.
+   *
+   * @param idleTimeout the idle timeout in milliseconds.
+   */
+  public void setIdleTimeout(final long idleTimeout) {
+    Assert.legalArgument(idleTimeout >= 0, String.format("The idle timeout (%1$d) must be greater than or equal to 0!",
+      idleTimeout));
+    Assert.legalState(!isRunning(), "The idle timeout cannot be changed while the server engine is running!");
+    this.idleTimeout = idleTimeout;
+  }
+
+  /**
+   * Gets the ServerMetrics recording the connections of this server engine along with the bytes and time spent in
+   * the read, handle and write phases of each read event.
+   *
+   * @return the ServerMetrics of this server engine.
+   */
+  public ServerMetrics getMetrics() {
+    return metrics;
+  }
+
+  public void setMetrics(final ServerMetrics metrics) {
+    Assert.notNull(metrics, "The ServerMetrics must not be null!");
+    Assert.legalState(!isRunning(), "The ServerMetrics cannot be changed while the server engine is running!");
+    this.metrics = metrics;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Gets the HashedTimingWheel timing out idle connections.  Unless set, the timing wheel shared by the JVM is used.
+   *
+   * @return the HashedTimingWheel timing out idle connections.
+   */
+  public HashedTimingWheel getTimingWheel() {
+    return (timingWheel != null ? timingWheel : HashedTimingWheel.getDefault());
+  }
+
+  public void setTimingWheel(final HashedTimingWheel timingWheel) {
+    Assert.legalState(!isRunning(), "The HashedTimingWheel cannot be changed while the server engine is running!");
+    this.timingWheel = timingWheel;
+  }
+
+  public int getReadBufferSize() {
+    return readBufferSize;
+  }
+
+  public void setReadBufferSize(final int readBufferSize) {
+    Assert.legalArgument(readBufferSize > 0, String.format("The read buffer size (%1$d) must be greater than 0!",
+      readBufferSize));
+    this.readBufferSize = readBufferSize;
+  }
+
+  public int getMaxReadBufferSize() {
+    return maxReadBufferSize;
+  }
+
+  public void setMaxReadBufferSize(final int maxReadBufferSize) {
+    Assert.legalArgument(maxReadBufferSize > 0, String.format(
+      "The maximum read buffer size (%1$d) must be greater than 0!", maxReadBufferSize));
+    this.maxReadBufferSize = maxReadBufferSize;
+  }
+
+  public int getMaxWriteBatchSize() {
+    return maxWriteBatchSize;
+  }
+
+  /**
+   * Sets the number of bytes queued on a connection at which the coalesced writes are flushed without waiting for
+   * the rest of the write coalescing delay.
+   *
+   * @param maxWriteBatchSize the maximum number of bytes coalesced into a batch.
+   */
+  public void setMaxWriteBatchSize(final int maxWriteBatchSize) {
+    Assert.legalArgument(maxWriteBatchSize > 0, String.format("The maximum write batch size (%1$d) must be greater"
+      + " than 0!", maxWriteBatchSize));
+    Assert.legalState(!isRunning(),
+      "The maximum write batch size cannot be changed while the server engine is running!");
+    this.maxWriteBatchSize = maxWriteBatchSize;
+  }
+
+  public long getWriteCoalescingDelay() {
+    return writeCoalescingDelay;
+  }
+
+  /**
+   * Sets the time in microseconds a connection holds its writes to coalesce them with later writes; 0 flushes the
+   * writes at the end of every read.  The writes may be held up to a millisecond longer than the delay.
+   *
+   * @param writeCoalescingDelay the write coalescing delay in microseconds.
+   */
+  public void setWriteCoalescingDelay(final long writeCoalescingDelay) {
+    Assert.legalArgument(writeCoalescingDelay >= 0, String.format("The write coalescing delay (%1$d) must be greater"
+      + " than or equal to 0!", writeCoalescingDelay));
+    Assert.legalState(!isRunning(), "The write coalescing delay cannot be changed while the server engine is running!");
+    this.writeCoalescingDelay = writeCoalescingDelay;
+  }
+
+  public boolean isRunning() {
+    return running;
+  }
+
+  /**
+   * Creates the Thread on which an event loop runs.  Subclasses may override this method to customize the Thread,
+   * such as setting the ThreadGroup.
+   *
+   * @param eventLoop the Runnable event loop.
+   * @param threadName a String indicating the name of the Thread.
+   * @return a new, un-started Thread to run the event loop.
+   */
+  protected Thread newThread(final Runnable eventLoop, final String threadName) {
+    Thread thread = new Thread(eventLoop, threadName);
+    thread.setDaemon(false);
+    thread.setPriority(Thread.NORM_PRIORITY);
+    return thread;
+  }
+
+  protected EventLoop nextEventLoop() {
+    return eventLoops[Math.abs(nextEventLoopIndex.getAndIncrement() % eventLoops.length)];
+  }
+
+  public synchronized void start() throws IOException {
+    Assert.legalState(!isRunning(), String.format("%1$s is already running!", getName()));
+
+    EventLoop[] eventLoops = new EventLoop[eventLoopCount];
+
+    if (bufferPool == null) {
+      bufferPool = new BufferPool(getReadBufferSize(), BufferPool.DEFAULT_MAX_POOLED_BUFFERS, true);
+    }
+
+    try {
+      for (int index = 0; index < eventLoops.length; index++) {
+        eventLoops[index] = new EventLoop(Selector.open());
+      }
+
+      serverChannel = ServerSocketChannel.open();
+      serverChannel.socket().setReuseAddress(true);
+      serverChannel.socket().bind(address, DEFAULT_BACKLOG);
+      serverChannel.configureBlocking(false);
+      serverChannel.register(eventLoops[0].selector, SelectionKey.OP_ACCEPT);
+    }
+    catch (IOException e) {
+      IOUtils.close(serverChannel);
+
+      for (EventLoop eventLoop : eventLoops) {
+        if (eventLoop != null) {
+          IOUtils.close(eventLoop.selector);
+        }
+      }
+
+      throw e;
+    }
+
+    this.eventLoops = eventLoops;
+    this.running = true;
+
+    for (int index = 0; index < eventLoops.length; index++) {
+      eventLoops[index].thread = newThread(eventLoops[index], String.format("%1$s Event Loop %2$d", getName(), index));
+      eventLoops[index].thread.start();
+    }
+  }
+
+  /**
+   * Stops accepting connections and waits up to the DEFAULT_STOP_TIMEOUT for the event loops to close their
+   * connections and exit.
+   */
+  public void stop() {
+    EventLoop[] eventLoops;
+
+    synchronized (this) {
+      if (!isRunning()) {
+        return;
+      }
+
+      running = false;
+      IOUtils.close(serverChannel);
+      eventLoops = this.eventLoops;
+
+      for (EventLoop eventLoop : eventLoops) {
+        eventLoop.selector.wakeup();
+      }
+    }
+
+    long deadline = (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DEFAULT_STOP_TIMEOUT));
+
+    try {
+      for (EventLoop eventLoop : eventLoops) {
+        long timeout = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+
+        // an event loop stopping the engine cannot wait for itself
+        if (!eventLoop.inEventLoop() && timeout > 0) {
+          eventLoop.thread.join(timeout);
+        }
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  void accept() {
+    try {
+      for (SocketChannel clientChannel = serverChannel.accept(); clientChannel != null;
+           clientChannel = serverChannel.accept()) {
+
+        clientChannel.configureBlocking(false);
+        clientChannel.socket().setTcpNoDelay(true);
+        nextEventLoop().register(clientChannel);
+      }
+    }
+    catch (IOException e) {
+      if (isRunning()) {
+        e.printStackTrace(System.err);
+      }
+    }
+  }
+
+  /**
+   * The EventLoop class is a Runnable that multiplexes the I/O of all client connections registered with its Selector
+   * and runs tasks submitted to the event loop from other Threads.
+   */
+  protected class EventLoop implements Runnable {
+
+    private final AtomicBoolean wakeupPending = new AtomicBoolean(false);
+
+    // connections holding coalesced writes, in the order of their flush deadlines since the delay is fixed
+    private final Deque<ChannelConnection> deferredFlushes = new ArrayDeque<ChannelConnection>();
+
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+    private final Selector selector;
+
+    // set before the exiting event loop runs its tasks for the last time
+    private volatile boolean exited;
+
+    private volatile Thread thread;
+
+    protected EventLoop(final Selector selector) {
+      this.selector = selector;
+    }
+
+    public boolean inEventLoop() {
+      return (Thread.currentThread() == thread);
+    }
+
+    public void execute(final Runnable task) {
+      tasks.add(task);
+
+      if (!inEventLoop() && wakeupPending.compareAndSet(false, true)) {
+        selector.wakeup();
+      }
+    }
+
+    void register(final SocketChannel clientChannel) {
+      Runnable registration = new Runnable() {
+        public void run() {
+          // a connection accepted as the engine stopped is closed rather than left open by an exiting event loop
+          if (!isRunning()) {
+            IOUtils.close(clientChannel);
+            return;
+          }
+
+          ChannelConnection connection = new ChannelConnection(EventLoop.this, clientChannel, getHandler(),
+            getBufferPool(), getMaxReadBufferSize(), getMetrics());
+
+          getMetrics().connectionOpened();
+
+          try {
+            connection.register(clientChannel.register(selector, SelectionKey.OP_READ, connection));
+
+            if (getWriteCoalescingDelay() > 0) {
+              connection.startWriteCoalescing(getWriteCoalescingDelay(), getMaxWriteBatchSize());
+            }
+
+            if (getIdleTimeout() > 0) {
+              connection.startIdleTimeout(getTimingWheel(), getIdleTimeout());
+            }
+
+            getHandler().onOpen(connection);
+          }
+          catch (IOException e) {
+            connection.close();
+          }
+        }
+      };
+
+      execute(registration);
+
+      // the event loop may have exited after running its tasks for the last time
+      if (exited && tasks.remove(registration)) {
+        IOUtils.close(clientChannel);
+      }
+    }
+
+    /**
+     * Flushes the connection's coalesced writes at its flush deadline; called on the event loop.
+     */
+    void deferFlush(final ChannelConnection connection) {
+      deferredFlushes.addLast(connection);
+    }
+
+    public void run() {
+      try {
+        while (isRunning()) {
+          select();
+          wakeupPending.set(false);
+          processSelectedKeys();
+          runTasks();
+          runDeferredFlushes();
+        }
+      }
+      catch (IOException e) {
+        e.printStackTrace(System.err);
+      }
+      finally {
+        // the tasks run first so that the connections they register are closed with the others
+        exited = true;
+        runTasks();
+        closeConnections();
+        runTasks();
+        IOUtils.close(selector);
+      }
+    }
+
+    // selects until the next flush deadline, rounded up to the millisecond so that the loop never spins on a deadline
+    // less than a millisecond away, flushing up to a millisecond late instead; polls once the deadline has passed
+    private void select() throws IOException {
+      ChannelConnection nextFlush = deferredFlushes.peekFirst();
+
+      if (nextFlush == null) {
+        selector.select();
+      }
+      else {
+        long delay = (nextFlush.getFlushDeadline() - System.nanoTime());
+
+        if (delay > 0) {
+          selector.select(TimeUnit.NANOSECONDS.toMillis(delay + TimeUnit.MILLISECONDS.toNanos(1) - 1));
+        }
+        else {
+          selector.selectNow();
+        }
+      }
+    }
+
+    private void runDeferredFlushes() {
+      long now = System.nanoTime();
+
+      for (ChannelConnection connection = deferredFlushes.peekFirst();
+           connection != null && connection.getFlushDeadline() - now <= 0; connection = deferredFlushes.peekFirst()) {
+
+        deferredFlushes.removeFirst();
+        connection.deferredFlush();
+      }
+    }
+
+    private void processSelectedKeys() {
+      for (Iterator<SelectionKey> keys = selector.selectedKeys().iterator(); keys.hasNext(); ) {
+        SelectionKey key = keys.next();
+
+        keys.remove();
+
+        if (key.isValid()) {
+          if (key.isAcceptable()) {
+            accept();
+          }
+          else {
+            ChannelConnection connection = (ChannelConnection) key.attachment();
+
+            try {
+              if (key.isReadable()) {
+                connection.handleRead();
+              }
+
+              if (key.isValid() && key.isWritable()) {
+                connection.handleWrite();
+              }
+            }
+            catch (RuntimeException e) {
+              e.printStackTrace(System.err);
+              connection.close();
+            }
+          }
+        }
+      }
+    }
+
+    private void runTasks() {
+      for (Runnable task = tasks.poll(); task != null; task = tasks.poll()) {
+        try {
+          task.run();
+        }
+        catch (RuntimeException e) {
+          e.printStackTrace(System.err);
+        }
+      }
+    }
+
+    private void closeConnections() {
+      List<ChannelConnection> connections = new ArrayList<ChannelConnection>();
+
+      for (SelectionKey key : selector.keys()) {
+        if (key.attachment() instanceof ChannelConnection) {
+          connections.add((ChannelConnection) key.attachment());
+        }
+      }
+
+      for (ChannelConnection connection : connections) {
+        connection.close();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+/**
+ * The ServerEngine interface defines a contract for components that accept client connections on a server socket
+ * and dispatch those connections to a handler for servicing.
+ *
+ * @author John J. Blum
+ * @see org.codeprimate.net.BlockingServerEngine
+ * @see org.codeprimate.net.NioServerEngine
+ * @since 1.2.0
+ */
+public interface ServerEngine {
+
+  /**
+   * Gets the local address to which this server engine is bound, or null if the engine has not been started.
+   *
+   * @return the InetSocketAddress to which this server engine is bound.
+   * @see java.net.InetSocketAddress
+   */
+  InetSocketAddress getBoundAddress();
+
+  /**
+   * Determines whether this server engine is currently accepting and servicing client connections.
+   *
+   * @return a boolean value indicating whether this server engine is running.
+   */
+  boolean isRunning();
+
+  /**
+   * Binds this server engine to its configured address and starts accepting client connections.
+   *
+   * @throws IOException if the server engine could not be bound to the configured address.
+   */
+  void start() throws IOException;
+
+  /**
+   * Stops accepting client connections and closes all client connections serviced by this server engine.
+   */
+  void stop();
+
+}
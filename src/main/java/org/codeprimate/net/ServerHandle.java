@@ -0,0 +1,189 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.codeprimate.lang.Assert;
+
+/**
+ * The ServerHandle class controls the lifecycle of one server embedded in a JVM, which may run any number of servers
+ * side by side, each with its own ServerEngine, port and ServerMetrics.  A server bound to port 0 listens on an
+ * ephemeral port chosen by the operating system, reported by getBoundAddress once the server has started, so that
+ * tests and sharded load tests can start many servers in parallel without coordinating ports.
+ *
+ * A ServerHandle is started once and stopped once; await returns once stop (or close) has been called.  The handle
+ * registers no shutdown hook; an application wanting the server stopped on JVM shutdown registers its own hook
+ * calling stop.
+ *
+ * @author John J. Blum
+ * @see java.io.Closeable
+ * @see org.codeprimate.net.ServerEngine
+ * @see org.codeprimate.net.ServerMetrics
+ * @since 1.2.0
+ */
+@SuppressWarnings("unused")
+public class ServerHandle implements Closeable {
+
+  private final CountDownLatch stopped = new CountDownLatch(1);
+
+  private final ServerEngine serverEngine;
+
+  private final ServerMetrics metrics;
+
+  private final String name;
+
+  public ServerHandle(final String name, final ServerEngine serverEngine, final ServerMetrics metrics) {
+    Assert.notNull(serverEngine, "The ServerEngine must not be null!");
+    Assert.notNull(metrics, "The ServerMetrics must not be null!");
+
+    this.name = name;
+    this.serverEngine = serverEngine;
+    this.metrics = metrics;
+  }
+
+  /**
+   * Creates a ServerHandle for a NioServerEngine servicing client connections with the ChannelHandler.
+   *
+   * @param name a String indicating the name of the server.
+   * @param address the InetSocketAddress to bind the server to; port 0 binds to an ephemeral port.
+   * @param eventLoopCount the number of event loops multiplexing the client connections.
+   * @param handler the ChannelHandler servicing each client connection.
+   * @return an un-started ServerHandle of the NioServerEngine.
+   */
+  public static ServerHandle newNioServer(final String name, final InetSocketAddress address,
+                                          final int eventLoopCount, final ChannelHandler handler) {
+    NioServerEngine serverEngine = new NioServerEngine(name, address, eventLoopCount, handler);
+    return new ServerHandle(name, serverEngine, serverEngine.getMetrics());
+  }
+
+  /**
+   * Creates a ServerHandle for a BlockingServerEngine servicing each client connection with the SocketHandler on a
+   * Thread of the executor, which is shut down when the server stops.
+   *
+   * @param name a String indicating the name of the server.
+   * @param address the InetSocketAddress to bind the server to; port 0 binds to an ephemeral port.
+   * @param acceptorCount the number of Threads accepting client connections.
+   * @param executor the ExecutorService running the SocketHandler for each client connection.
+   * @param handler the SocketHandler servicing each client connection.
+   * @return an un-started ServerHandle of the BlockingServerEngine.
+   */
+  public static ServerHandle newBlockingServer(final String name, final InetSocketAddress address,
+                                               final int acceptorCount, final ExecutorService executor,
+                                               final SocketHandler handler) {
+    BlockingServerEngine serverEngine = new BlockingServerEngine(name, address, acceptorCount, executor, handler);
+    return new ServerHandle(name, serverEngine, serverEngine.getMetrics());
+  }
+
+  public InetSocketAddress getBoundAddress() {
+    return serverEngine.getBoundAddress();
+  }
+
+  public ServerMetrics getMetrics() {
+    return metrics;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Gets the port on which the server is listening, which is the ephemeral port chosen on start when the server was
+   * bound to port 0.
+   *
+   * @return the port the server is bound to, or -1 if the server has not been started.
+   */
+  public int getPort() {
+    InetSocketAddress boundAddress = getBoundAddress();
+    return (boundAddress != null ? boundAddress.getPort() : -1);
+  }
+
+  public ServerEngine getServerEngine() {
+    return serverEngine;
+  }
+
+  public boolean isRunning() {
+    return serverEngine.isRunning();
+  }
+
+  public boolean isStopped() {
+    return (stopped.getCount() == 0);
+  }
+
+  /**
+   * Starts the server, binding it to its address.
+   *
+   * @return this ServerHandle.
+   * @throws IllegalStateException if the server has already been started or stopped.
+   * @throws IOException if the server cannot be bound to its address.
+   */
+  public synchronized ServerHandle start() throws IOException {
+    Assert.legalState(!isStopped(), String.format("%1$s has been stopped!", getName()));
+    Assert.legalState(!isRunning(), String.format("%1$s is already running!", getName()));
+    serverEngine.start();
+    return this;
+  }
+
+  /**
+   * Stops the server, closing its client connections, and releases the Threads blocked in await.
+   */
+  public synchronized void stop() {
+    try {
+      serverEngine.stop();
+    }
+    finally {
+      stopped.countDown();
+    }
+  }
+
+  /**
+   * Blocks until the server has been stopped.
+   *
+   * @throws InterruptedException if the calling Thread is interrupted while waiting.
+   */
+  public void await() throws InterruptedException {
+    stopped.await();
+  }
+
+  /**
+   * Blocks until the server has been stopped or the timeout elapses.
+   *
+   * @param timeout the maximum time to wait.
+   * @param timeUnit the TimeUnit of the timeout.
+   * @return a boolean value indicating whether the server was stopped before the timeout elapsed.
+   * @throws InterruptedException if the calling Thread is interrupted while waiting.
+   */
+  public boolean await(final long timeout, final TimeUnit timeUnit) throws InterruptedException {
+    return stopped.await(timeout, timeUnit);
+  }
+
+  public void close() {
+    stop();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("{ name = %1$s, boundAddress = %2$s, running = %3$s, metrics = %4$s }", getName(),
+      getBoundAddress(), isRunning(), getMetrics());
+  }
+
+}
@@ -0,0 +1,382 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.codeprimate.lang.Assert;
+import org.codeprimate.lang.LatencyHistogram;
+import org.codeprimate.lang.concurrent.AdmissionControlledExecutor;
+
+/**
+ * The ServerMetrics class collects the connection, byte and latency metrics of a server engine and exposes them
+ * as a JMX MBean.  Server engines count connections as they are accepted and closed; the read, handle and write
+ * phases of each request are recorded by the NioServerEngine for non-blocking connections, and by the SocketHandler
+ * servicing a blocking connection, which alone knows where one request ends and the next begins.
+ *
+ * Metrics are recorded on the hot path with LongAdders and striped LatencyHistograms, so recording Threads never
+ * contend on a lock or a single counter.
+ *
+ * @author John J. Blum
+ * @see org.codeprimate.lang.LatencyHistogram
+ * @see org.codeprimate.net.ServerEngine
+ * @see org.codeprimate.net.ServerMetricsMBean
+ * @since 1.2.0
+ */
+@SuppressWarnings("unused")
+public class ServerMetrics implements ServerMetricsMBean {
+
+  public static final String OBJECT_NAME_DOMAIN = "org.codeprimate.net";
+
+  protected static final long ACCEPT_RATE_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+  private volatile ExecutorService executor;
+
+  private final LatencyHistogram handleTime = new LatencyHistogram();
+  private final LatencyHistogram readTime = new LatencyHistogram();
+  private final LatencyHistogram writeBatchSize = new LatencyHistogram();
+  private final LatencyHistogram writeTime = new LatencyHistogram();
+
+  private final AtomicReference<AcceptInterval> acceptInterval = new AtomicReference<AcceptInterval>(
+    new AcceptInterval(System.nanoTime(), 0l, 0.0d));
+
+  private final LongAdder activeConnections = new LongAdder();
+  private final LongAdder bytesRead = new LongAdder();
+  private final LongAdder bytesWritten = new LongAdder();
+  private final LongAdder totalConnections = new LongAdder();
+
+  private ObjectName objectName;
+
+  /**
+   * Gets the ExecutorService whose queue depth and active workers are reported.
+   *
+   * @return the ExecutorService servicing client connections, or null if not set.
+   */
+  public ExecutorService getExecutor() {
+    return executor;
+  }
+
+  public void setExecutor(final ExecutorService executor) {
+    this.executor = executor;
+  }
+
+  public LatencyHistogram getHandleTime() {
+    return handleTime;
+  }
+
+  public LatencyHistogram getReadTime() {
+    return readTime;
+  }
+
+  /**
+   * Gets the histogram of the number of buffers written by each gathering write, which shows how well the server
+   * engine coalesced small responses into fewer write system calls.
+   *
+   * @return the LatencyHistogram of write batch sizes.
+   */
+  public LatencyHistogram getWriteBatchSize() {
+    return writeBatchSize;
+  }
+
+  public LatencyHistogram getWriteTime() {
+    return writeTime;
+  }
+
+  /**
+   * Records a client connection accepted by the server engine.
+   */
+  public void connectionOpened() {
+    activeConnections.increment();
+    totalConnections.increment();
+
+    AcceptInterval interval = acceptInterval.get();
+    long now = System.nanoTime();
+
+    // the first connection accepted after the interval ends closes it, and one accepting Thread starts the next
+    if (now - interval.startTime >= ACCEPT_RATE_INTERVAL) {
+      acceptInterval.compareAndSet(interval, interval.next(now, getTotalConnections()));
+    }
+  }
+
+  /**
+   * Records a client connection closed; must be called exactly once for each call to connectionOpened.
+   */
+  public void connectionClosed() {
+    activeConnections.decrement();
+  }
+
+  /**
+   * Records the read phase of a request.
+   *
+   * @param bytes the number of bytes read.
+   * @param nanos the time in nanoseconds spent reading.
+   */
+  public void recordRead(final long bytes, final long nanos) {
+    bytesRead.add(bytes);
+    readTime.record(nanos);
+  }
+
+  /**
+   * Records the handle phase of a request, during which the request is processed and the response prepared.
+   *
+   * @param nanos the time in nanoseconds spent handling the request.
+   */
+  public void recordHandle(final long nanos) {
+    handleTime.record(nanos);
+  }
+
+  /**
+   * Records the write phase of a request.
+   *
+   * @param bytes the number of bytes written.
+   * @param nanos the time in nanoseconds spent writing.
+   */
+  public void recordWrite(final long bytes, final long nanos) {
+    bytesWritten.add(bytes);
+    writeTime.record(nanos);
+  }
+
+  /**
+   * Records the number of buffers written to a connection with a single gathering write.
+   *
+   * @param buffers the number of buffers in the batch.
+   */
+  public void recordWriteBatch(final int buffers) {
+    writeBatchSize.record(buffers);
+  }
+
+  public long getActiveConnections() {
+    return activeConnections.sum();
+  }
+
+  public long getTotalConnections() {
+    return totalConnections.sum();
+  }
+
+  /**
+   * Gets the rate at which connections were accepted over the last complete interval of at least a second.  An
+   * interval is closed by the first connection accepted after it ends, so while no connection has closed the current
+   * interval past its end, the rate over the current interval is reported instead.  Reading the rate changes nothing.
+   *
+   * @return the number of client connections accepted per second.
+   */
+  public double getAcceptRate() {
+    AcceptInterval interval = acceptInterval.get();
+    long now = System.nanoTime();
+
+    return (now - interval.startTime >= ACCEPT_RATE_INTERVAL ? interval.rateUntil(now, getTotalConnections())
+      : interval.previousRate);
+  }
+
+  public long getBytesRead() {
+    return bytesRead.sum();
+  }
+
+  public long getBytesWritten() {
+    return bytesWritten.sum();
+  }
+
+  public long getRequestCount() {
+    return handleTime.getCount();
+  }
+
+  public int getQueueDepth() {
+    ExecutorService executor = this.executor;
+
+    if (executor instanceof AdmissionControlledExecutor) {
+      return ((AdmissionControlledExecutor) executor).getQueueDepth();
+    }
+
+    return (executor instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) executor).getQueue().size() : -1);
+  }
+
+  public int getActiveWorkers() {
+    ExecutorService executor = this.executor;
+
+    if (executor instanceof AdmissionControlledExecutor) {
+      return ((AdmissionControlledExecutor) executor).getActiveCount();
+    }
+
+    return (executor instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) executor).getActiveCount() : -1);
+  }
+
+  private static long toMicros(final long nanos) {
+    return TimeUnit.NANOSECONDS.toMicros(nanos);
+  }
+
+  public long getReadTimeP50Micros() {
+    return toMicros(readTime.getValueAtPercentile(50.0d));
+  }
+
+  public long getReadTimeP99Micros() {
+    return toMicros(readTime.getValueAtPercentile(99.0d));
+  }
+
+  public long getReadTimeP999Micros() {
+    return toMicros(readTime.getValueAtPercentile(99.9d));
+  }
+
+  public long getReadTimeMaxMicros() {
+    return toMicros(readTime.getMax());
+  }
+
+  public long getHandleTimeP50Micros() {
+    return toMicros(handleTime.getValueAtPercentile(50.0d));
+  }
+
+  public long getHandleTimeP99Micros() {
+    return toMicros(handleTime.getValueAtPercentile(99.0d));
+  }
+
+  public long getHandleTimeP999Micros() {
+    return toMicros(handleTime.getValueAtPercentile(99.9d));
+  }
+
+  public long getHandleTimeMaxMicros() {
+    return toMicros(handleTime.getMax());
+  }
+
+  public long getWriteTimeP50Micros() {
+    return toMicros(writeTime.getValueAtPercentile(50.0d));
+  }
+
+  public long getWriteTimeP99Micros() {
+    return toMicros(writeTime.getValueAtPercentile(99.0d));
+  }
+
+  public long getWriteTimeP999Micros() {
+    return toMicros(writeTime.getValueAtPercentile(99.9d));
+  }
+
+  public long getWriteTimeMaxMicros() {
+    return toMicros(writeTime.getMax());
+  }
+
+  public double getWriteBatchSizeMean() {
+    return writeBatchSize.getMean();
+  }
+
+  public long getWriteBatchSizeP99() {
+    return writeBatchSize.getValueAtPercentile(99.0d);
+  }
+
+  public long getWriteBatchSizeMax() {
+    return writeBatchSize.getMax();
+  }
+
+  public synchronized void reset() {
+    bytesRead.reset();
+    bytesWritten.reset();
+    totalConnections.reset();
+    handleTime.reset();
+    readTime.reset();
+    writeBatchSize.reset();
+    writeTime.reset();
+    acceptInterval.set(new AcceptInterval(System.nanoTime(), 0l, 0.0d));
+  }
+
+  /**
+   * Registers these ServerMetrics with the platform MBeanServer under the name
+   * org.codeprimate.net:type=ServerMetrics,name=&lt;serverName&gt;.
+   *
+   * @param serverName a String indicating the name of the server.
+   * @return the ObjectName under which these ServerMetrics were registered.
+   * @throws IllegalStateException if these ServerMetrics are already registered or the registration fails.
+   */
+  public synchronized ObjectName register(final String serverName) {
+    Assert.legalState(objectName == null, String.format("ServerMetrics are already registered as (%1$s)!",
+      objectName));
+
+    try {
+      ObjectName objectName = new ObjectName(String.format("%1$s:type=ServerMetrics,name=%2$s", OBJECT_NAME_DOMAIN,
+        ObjectName.quote(String.valueOf(serverName))));
+
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+      this.objectName = objectName;
+
+      return objectName;
+    }
+    catch (JMException e) {
+      throw new IllegalStateException(String.format("Failed to register the ServerMetrics of (%1$s)!", serverName), e);
+    }
+  }
+
+  /**
+   * Unregisters these ServerMetrics from the platform MBeanServer, if registered.
+   */
+  public synchronized void unregister() {
+    if (objectName != null) {
+      MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+
+      try {
+        if (mbeanServer.isRegistered(objectName)) {
+          mbeanServer.unregisterMBean(objectName);
+        }
+      }
+      catch (JMException ignore) {
+      }
+      finally {
+        objectName = null;
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("{ activeConnections = %1$d, totalConnections = %2$d, bytesRead = %3$d, bytesWritten = %4$d,"
+      + " queueDepth = %5$d, readTimeNanos = %6$s, handleTimeNanos = %7$s, writeTimeNanos = %8$s,"
+      + " writeBatchSize = %9$s }", getActiveConnections(), getTotalConnections(), getBytesRead(), getBytesWritten(),
+        getQueueDepth(), readTime, handleTime, writeTime, writeBatchSize);
+  }
+
+  /**
+   * The AcceptInterval class is an immutable snapshot of the interval over which connections are being counted
+   * along with the accept rate of the previous interval, replaced as a whole when the interval ends.
+   */
+  protected static final class AcceptInterval {
+
+    private final double previousRate;
+
+    private final long startCount;
+    private final long startTime;
+
+    protected AcceptInterval(final long startTime, final long startCount, final double previousRate) {
+      this.startTime = startTime;
+      this.startCount = startCount;
+      this.previousRate = previousRate;
+    }
+
+    protected AcceptInterval next(final long now, final long totalConnections) {
+      return new AcceptInterval(now, totalConnections, rateUntil(now, totalConnections));
+    }
+
+    protected double rateUntil(final long now, final long totalConnections) {
+      double seconds = ((now - startTime) / (double) TimeUnit.SECONDS.toNanos(1));
+      return (seconds > 0.0d ? Math.max((totalConnections - startCount) / seconds, 0.0d) : 0.0d);
+    }
+  }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net;
+
+/**
+ * The ServerMetricsMBean interface defines the management interface of ServerMetrics, exposing the connection,
+ * byte, latency and executor metrics of a running server engine as JMX attributes.  Service times are reported in
+ * microseconds for each of the read, handle and write phases of a request.
+ *
+ * @author John J. Blum
+ * @see org.codeprimate.net.ServerMetrics
+ * @since 1.2.0
+ */
+public interface ServerMetricsMBean {
+
+  /**
+   * Gets the number of client connections currently open.
+   *
+   * @return the number of open client connections.
+   */
+  long getActiveConnections();
+
+  /**
+   * Gets the number of client connections accepted since the server engine started or the metrics were reset.
+   *
+   * @return the total number of accepted client connections.
+   */
+  long getTotalConnections();
+
+  /**
+   * Gets the number of client connections accepted per second over the last complete interval of about a second.
+   *
+   * @return the rate at which client connections are being accepted.
+   */
+  double getAcceptRate();
+
+  long getBytesRead();
+
+  long getBytesWritten();
+
+  /**
+   * Gets the number of requests handled, counting each completed handle phase.
+   *
+   * @return the number of requests handled.
+   */
+  long getRequestCount();
+
+  /**
+   * Gets the number of tasks waiting in the queue of the server engine's ExecutorService.
+   *
+   * @return the executor queue depth, or -1 if the engine has no queue to report.
+   */
+  int getQueueDepth();
+
+  /**
+   * Gets the number of worker Threads of the server engine's ExecutorService servicing clients.
+   *
+   * @return the number of active workers, or -1 if the engine has no executor to report.
+   */
+  int getActiveWorkers();
+
+  long getReadTimeP50Micros();
+
+  long getReadTimeP99Micros();
+
+  long getReadTimeP999Micros();
+
+  long getReadTimeMaxMicros();
+
+  long getHandleTimeP50Micros();
+
+  long getHandleTimeP99Micros();
+
+  long getHandleTimeP999Micros();
+
+  long getHandleTimeMaxMicros();
+
+  long getWriteTimeP50Micros();
+
+  long getWriteTimeP99Micros();
+
+  long getWriteTimeP999Micros();
+
+  long getWriteTimeMaxMicros();
+
+  /**
+   * Gets the mean number of buffers written by a gathering write of a non-blocking connection.
+   *
+   * @return the mean write batch size, or 0 if no gathering writes were recorded.
+   */
+  double getWriteBatchSizeMean();
+
+  long getWriteBatchSizeP99();
+
+  long getWriteBatchSizeMax();
+
+  /**
+   * Resets the counters and histograms; the number of active connections is retained.
+   */
+  void reset();
+
+}
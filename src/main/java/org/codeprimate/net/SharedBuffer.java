@@ -0,0 +1,124 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.codeprimate.lang.Assert;
+
+/**
+ * The SharedBuffer class is a reference-counted ByteBuffer whose contents are written to many connections, such as a
+ * message encoded once and fanned out to every subscriber.  Each connection writes its own read-only slice of the
+ * buffer, which shares the contents but has an independent position, so the bytes are never copied per connection.
+ *
+ * A SharedBuffer is created holding one reference.  Every holder retains a reference before handing the buffer to
+ * another holder and releases its own reference when done; the ByteBuffer is returned to its BufferPool, if any, when
+ * the last reference is released.  The contents must not be modified once the buffer is shared.
+ *
+ * @author John J. Blum
+ * @see java.nio.ByteBuffer#asReadOnlyBuffer()
+ * @see org.codeprimate.net.BufferPool
+ * @see org.codeprimate.net.ChannelConnection#write(SharedBuffer)
+ * @since 1.2.0
+ */
+@SuppressWarnings("unused")
+public class SharedBuffer {
+
+  private final AtomicInteger referenceCount = new AtomicInteger(1);
+
+  private final BufferPool bufferPool;
+
+  private final ByteBuffer buffer;
+
+  public SharedBuffer(final ByteBuffer buffer) {
+    this(buffer, null);
+  }
+
+  /**
+   * Constructs a SharedBuffer holding one reference to the contents of the ByteBuffer between its position and limit.
+   *
+   * @param buffer the ByteBuffer containing the bytes to share.
+   * @param bufferPool the BufferPool to which the ByteBuffer is released, or null if the ByteBuffer is not pooled.
+   */
+  public SharedBuffer(final ByteBuffer buffer, final BufferPool bufferPool) {
+    Assert.notNull(buffer, "The ByteBuffer must not be null!");
+
+    this.buffer = buffer;
+    this.bufferPool = bufferPool;
+  }
+
+  public int getReferenceCount() {
+    return referenceCount.get();
+  }
+
+  public int remaining() {
+    return buffer.remaining();
+  }
+
+  /**
+   * Acquires another reference to this buffer on behalf of a new holder.
+   *
+   * @return this SharedBuffer.
+   * @throws IllegalStateException if the last reference to this buffer has already been released.
+   */
+  public SharedBuffer retain() {
+    for (int count = referenceCount.get(); ; count = referenceCount.get()) {
+      Assert.legalState(count > 0, "The SharedBuffer has already been released!");
+
+      if (referenceCount.compareAndSet(count, count + 1)) {
+        return this;
+      }
+    }
+  }
+
+  /**
+   * Releases a reference to this buffer, returning the ByteBuffer to the BufferPool if it was the last reference.
+   *
+   * @return a boolean value indicating whether the last reference was released.
+   * @throws IllegalStateException if the last reference to this buffer has already been released.
+   */
+  public boolean release() {
+    int count = referenceCount.decrementAndGet();
+
+    Assert.legalState(count >= 0, "The SharedBuffer has already been released!");
+
+    if (count == 0 && bufferPool != null) {
+      bufferPool.release(buffer);
+    }
+
+    return (count == 0);
+  }
+
+  /**
+   * Creates a read-only view of the shared bytes with its own position and limit.  The slice is valid only while the
+   * caller holds a reference to this buffer.
+   *
+   * @return a read-only ByteBuffer sharing the contents of this buffer.
+   */
+  public ByteBuffer slice() {
+    Assert.legalState(getReferenceCount() > 0, "The SharedBuffer has already been released!");
+    return buffer.asReadOnlyBuffer();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("{ remaining = %1$d, direct = %2$s, referenceCount = %3$d }", remaining(),
+      buffer.isDirect(), getReferenceCount());
+  }
+
+}
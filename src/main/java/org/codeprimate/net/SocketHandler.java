@@ -0,0 +1,41 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net;
+
+import java.net.Socket;
+
+/**
+ * The SocketHandler interface defines a contract for servicing a client connection accepted by the
+ * BlockingServerEngine.  The returned Runnable performs blocking I/O on the client Socket and is run
+ * by a worker Thread.
+ *
+ * @author John J. Blum
+ * @see java.net.Socket
+ * @see org.codeprimate.net.BlockingServerEngine
+ * @since 1.2.0
+ */
+public interface SocketHandler {
+
+  /**
+   * Creates the Runnable servicing the accepted client Socket.
+   *
+   * @param clientSocket the Socket connected to the client.
+   * @return a Runnable servicing the client connection.
+   */
+  Runnable service(Socket clientSocket);
+
+}
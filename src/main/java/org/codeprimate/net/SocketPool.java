@@ -0,0 +1,522 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.codeprimate.lang.Assert;
+import org.codeprimate.lang.concurrent.HashedTimingWheel;
+
+/**
+ * The SocketPool class is an elastic pool of client Sockets connected to the same server.  Connections are opened
+ * lazily as Sockets are borrowed, up to the maximum pool size, and connections idle for longer than the idle timeout
+ * are closed, down to the minimum pool size, as Sockets are released and on a timeout of the shared HashedTimingWheel
+ * every idle timeout, so a pool that is no longer used still shrinks.  A pool must be closed to stop the timeout.
+ *
+ * The pool takes no locks on the borrow and release paths: idle Sockets are kept in a lock-free deque, borrowed
+ * last-in, first-out so the warmest connections are reused and the coldest age out, and the maximum number of
+ * borrowed Sockets is enforced with a non-fair Semaphore, which is a single compare-and-set while permits are
+ * available.  Borrowers only park when the pool is exhausted, waiting up to the borrow timeout.
+ *
+ * A Socket is checked before it is lent out.  A Socket that is closed, shut down or has unread bytes left over from
+ * a previous exchange is broken; a Socket idle for longer than the validation interval is also probed for the server
+ * having closed the connection.  Broken Sockets are closed and transparently replaced by new connections.  Borrowers
+ * must return every Socket with release, or with invalidate if the Socket failed while borrowed.
+ *
+ * @author John J. Blum
+ * @see java.net.Socket
+ * @see java.util.concurrent.ConcurrentLinkedDeque
+ * @see java.util.concurrent.Semaphore
+ * @see org.codeprimate.lang.concurrent.HashedTimingWheel
+ * @since 1.2.0
+ */
+@SuppressWarnings("unused")
+public class SocketPool implements Closeable {
+
+  public static final long DEFAULT_BORROW_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+  public static final long DEFAULT_IDLE_TIMEOUT = TimeUnit.SECONDS.toMillis(60);
+  public static final long DEFAULT_VALIDATION_INTERVAL = TimeUnit.SECONDS.toMillis(1);
+
+  protected static final int PROBE_TIMEOUT = 1;
+
+  private final AtomicInteger size = new AtomicInteger(0);
+
+  private final ConcurrentLinkedDeque<PooledSocket> idleSockets = new ConcurrentLinkedDeque<PooledSocket>();
+
+  private final ConcurrentMap<Socket, PooledSocket> pooledSockets = new ConcurrentHashMap<Socket, PooledSocket>();
+
+  private final Connector connector;
+
+  private final int maxSize;
+  private final int minSize;
+
+  private long borrowTimeout = DEFAULT_BORROW_TIMEOUT;
+  private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+  private long validationInterval = DEFAULT_VALIDATION_INTERVAL;
+
+  private final LongAdder borrowCount = new LongAdder();
+  private final LongAdder borrowTimeoutCount = new LongAdder();
+  private final LongAdder brokenCount = new LongAdder();
+  private final LongAdder connectCount = new LongAdder();
+  private final LongAdder evictionCount = new LongAdder();
+
+  private final Semaphore permits;
+
+  private volatile boolean closed = false;
+
+  private volatile HashedTimingWheel.Timeout evictionTimeout;
+
+  private final Runnable evictor = new Runnable() {
+    public void run() {
+      if (!isClosed()) {
+        evictIdle();
+        scheduleEviction();
+      }
+    }
+  };
+
+  public SocketPool(final Connector connector, final int minSize, final int maxSize) {
+    Assert.notNull(connector, "The Connector must not be null!");
+    Assert.legalArgument(minSize >= 0, String.format("The minimum pool size (%1$d) must be greater than or equal to 0!",
+      minSize));
+    Assert.legalArgument(maxSize > 0 && maxSize >= minSize, String.format(
+      "The maximum pool size (%1$d) must be greater than 0 and the minimum pool size (%2$d)!", maxSize, minSize));
+
+    this.connector = connector;
+    this.minSize = minSize;
+    this.maxSize = maxSize;
+    this.permits = new Semaphore(maxSize, false);
+
+    scheduleEviction();
+  }
+
+  // the idle timeout may change at any time, so the next eviction is scheduled after each run
+  private void scheduleEviction() {
+    long idleTimeout = getIdleTimeout();
+
+    evictionTimeout = HashedTimingWheel.getDefault().schedule(evictor, (idleTimeout > 0 ? idleTimeout
+      : DEFAULT_IDLE_TIMEOUT), TimeUnit.MILLISECONDS);
+  }
+
+  public long getBorrowTimeout() {
+    return borrowTimeout;
+  }
+
+  public void setBorrowTimeout(final long borrowTimeout) {
+    Assert.legalArgument(borrowTimeout >= 0, String.format(
+      "The borrow timeout (%1$d) must be greater than or equal to 0!", borrowTimeout));
+    this.borrowTimeout = borrowTimeout;
+  }
+
+  public long getIdleTimeout() {
+    return idleTimeout;
+  }
+
+  /**
+   * Sets the time in milliseconds after which an idle connection is closed, unless the pool is at its minimum size;
+   * 0 never closes idle connections.
+   *
+   * @param idleTimeout the idle timeout in milliseconds.
+   */
+  public void setIdleTimeout(final long idleTimeout) {
+    Assert.legalArgument(idleTimeout >= 0, String.format(
+      "The idle timeout (%1$d) must be greater than or equal to 0!", idleTimeout));
+    this.idleTimeout = idleTimeout;
+  }
+
+  public long getValidationInterval() {
+    return validationInterval;
+  }
+
+  /**
+   * Sets the time in milliseconds a connection may be idle before it is probed for the server having closed it when
+   * borrowed.  The probe waits up to a millisecond for a byte that should never arrive on an idle connection.
+   *
+   * @param validationInterval the validation interval in milliseconds.
+   */
+  public void setValidationInterval(final long validationInterval) {
+    Assert.legalArgument(validationInterval >= 0, String.format(
+      "The validation interval (%1$d) must be greater than or equal to 0!", validationInterval));
+    this.validationInterval = validationInterval;
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  public int getMinSize() {
+    return minSize;
+  }
+
+  /**
+   * Gets the number of open connections, whether borrowed or idle.
+   *
+   * @return the number of connections in the pool.
+   */
+  public int getSize() {
+    return size.get();
+  }
+
+  public int getBorrowedCount() {
+    return (maxSize - permits.availablePermits());
+  }
+
+  public int getIdleCount() {
+    return idleSockets.size();
+  }
+
+  /**
+   * Gets the fraction of the maximum pool size currently borrowed.
+   *
+   * @return a value between 0.0 and 1.0 indicating the utilization of the pool.
+   */
+  public double getUtilization() {
+    return ((double) getBorrowedCount() / maxSize);
+  }
+
+  public long getBorrowCount() {
+    return borrowCount.sum();
+  }
+
+  public long getBorrowTimeoutCount() {
+    return borrowTimeoutCount.sum();
+  }
+
+  public long getBrokenCount() {
+    return brokenCount.sum();
+  }
+
+  public long getConnectCount() {
+    return connectCount.sum();
+  }
+
+  public long getEvictionCount() {
+    return evictionCount.sum();
+  }
+
+  public boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   * Borrows a Socket, waiting up to the borrow timeout when all connections are borrowed.
+   *
+   * @return a healthy, connected Socket.
+   * @throws SocketTimeoutException if no Socket could be borrowed within the borrow timeout.
+   * @throws IOException if a new connection could not be opened.
+   * @see #borrow(long)
+   */
+  public Socket borrow() throws IOException {
+    return borrow(getBorrowTimeout());
+  }
+
+  /**
+   * Borrows a Socket, waiting up to the timeout when all connections are borrowed.  An idle connection is reused
+   * if healthy; otherwise, a new connection is opened.
+   *
+   * @param timeout the maximum time in milliseconds to wait for a connection to be released.
+   * @return a healthy, connected Socket.
+   * @throws SocketTimeoutException if no Socket could be borrowed within the timeout.
+   * @throws IOException if a new connection could not be opened.
+   */
+  public Socket borrow(final long timeout) throws IOException {
+    checkOpen();
+
+    try {
+      if (!(permits.tryAcquire() || permits.tryAcquire(timeout, TimeUnit.MILLISECONDS))) {
+        borrowTimeoutCount.increment();
+        throw new SocketTimeoutException(String.format("Timed out after (%1$d) ms waiting for one of (%2$d) Sockets!",
+          timeout, maxSize));
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SocketException("Interrupted while waiting to borrow a Socket!");
+    }
+
+    return lend();
+  }
+
+  /**
+   * Borrows a Socket without waiting, returning null rather than failing when all connections are borrowed.
+   *
+   * @return a healthy, connected Socket, or null if all connections are borrowed.
+   * @throws IOException if a new connection could not be opened.
+   * @see #borrow(long)
+   */
+  public Socket tryBorrow() throws IOException {
+    checkOpen();
+    return (permits.tryAcquire() ? lend() : null);
+  }
+
+  // lends an idle or a new Socket against the permit acquired by the borrower, returning the permit on failure
+  private Socket lend() throws IOException {
+    try {
+      checkOpen();
+      borrowCount.increment();
+
+      for (PooledSocket pooledSocket = idleSockets.pollFirst(); pooledSocket != null;
+           pooledSocket = idleSockets.pollFirst()) {
+
+        if (isHealthy(pooledSocket)) {
+          pooledSocket.borrowed.set(true);
+          return pooledSocket.socket;
+        }
+
+        brokenCount.increment();
+        discard(pooledSocket);
+      }
+
+      return connect();
+    }
+    catch (IOException e) {
+      permits.release();
+      throw e;
+    }
+    catch (RuntimeException e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  private void checkOpen() throws SocketException {
+    if (isClosed()) {
+      throw new SocketException("The SocketPool is closed!");
+    }
+  }
+
+  private Socket connect() throws IOException {
+    Socket socket = connector.connect();
+
+    connectCount.increment();
+    size.incrementAndGet();
+    PooledSocket pooledSocket = new PooledSocket(socket);
+
+    pooledSocket.borrowed.set(true);
+    pooledSockets.put(socket, pooledSocket);
+
+    return socket;
+  }
+
+  /**
+   * Determines whether the idle Socket can be lent out.
+   *
+   * @param pooledSocket the idle PooledSocket.
+   * @return a boolean value indicating whether the Socket is healthy.
+   */
+  protected boolean isHealthy(final PooledSocket pooledSocket) {
+    Socket socket = pooledSocket.socket;
+
+    try {
+      if (socket.isClosed() || !socket.isConnected() || socket.isInputShutdown() || socket.isOutputShutdown()
+          || socket.getInputStream().available() > 0) {
+        return false;
+      }
+
+      return (System.currentTimeMillis() - pooledSocket.idleSince < getValidationInterval() || probe(socket));
+    }
+    catch (IOException ignore) {
+      return false;
+    }
+  }
+
+  // an idle connection has nothing to read, so a byte or end-of-stream means the connection is no longer usable
+  private static boolean probe(final Socket socket) throws IOException {
+    int soTimeout = socket.getSoTimeout();
+
+    try {
+      socket.setSoTimeout(PROBE_TIMEOUT);
+      socket.getInputStream().read();
+      return false;
+    }
+    catch (SocketTimeoutException expected) {
+      return true;
+    }
+    finally {
+      if (!socket.isClosed()) {
+        socket.setSoTimeout(soTimeout);
+      }
+    }
+  }
+
+  /**
+   * Returns a borrowed Socket to the pool.  A Socket returned closed or shut down is discarded.
+   *
+   * @param socket the borrowed Socket.
+   * @throws IllegalArgumentException if the Socket is not currently borrowed from this pool, such as when it has
+   * already been released or invalidated.
+   */
+  public void release(final Socket socket) {
+    PooledSocket pooledSocket = returned(socket);
+
+    try {
+      if (isClosed() || socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown()) {
+        discard(pooledSocket);
+      }
+      else {
+        pooledSocket.idleSince = System.currentTimeMillis();
+        idleSockets.offerFirst(pooledSocket);
+        evictIdle();
+      }
+    }
+    finally {
+      permits.release();
+    }
+
+    // the pool may have been closed while this Socket was being returned
+    if (isClosed() && idleSockets.remove(pooledSocket)) {
+      discard(pooledSocket);
+    }
+  }
+
+  /**
+   * Closes and discards a borrowed Socket that failed while in use, such as on an I/O error; the next borrower gets
+   * a new connection in its place.
+   *
+   * @param socket the borrowed Socket.
+   * @throws IllegalArgumentException if the Socket is not currently borrowed from this pool, such as when it has
+   * already been released or invalidated.
+   */
+  public void invalidate(final Socket socket) {
+    PooledSocket pooledSocket = returned(socket);
+
+    try {
+      brokenCount.increment();
+      discard(pooledSocket);
+    }
+    finally {
+      permits.release();
+    }
+  }
+
+  // marks the borrowed Socket returned so that the borrower's permit is released only once
+  private PooledSocket returned(final Socket socket) {
+    PooledSocket pooledSocket = pooledSockets.get(socket);
+
+    Assert.legalArgument(pooledSocket != null && pooledSocket.borrowed.compareAndSet(true, false), String.format(
+      "The Socket (%1$s) is not borrowed from this pool!", socket));
+
+    return pooledSocket;
+  }
+
+  private void discard(final PooledSocket pooledSocket) {
+    if (pooledSockets.remove(pooledSocket.socket) != null) {
+      size.decrementAndGet();
+    }
+
+    SocketUtils.close(pooledSocket.socket);
+  }
+
+  /**
+   * Closes connections idle for longer than the idle timeout, oldest first, while the pool is larger than its
+   * minimum size.  Called as Sockets are released and every idle timeout by the shared HashedTimingWheel.
+   *
+   * @return the number of idle connections closed.
+   */
+  public int evictIdle() {
+    long idleTimeout = getIdleTimeout();
+    int evicted = 0;
+
+    if (idleTimeout > 0) {
+      long idleDeadline = (System.currentTimeMillis() - idleTimeout);
+
+      for (PooledSocket oldest = idleSockets.peekLast(); oldest != null && oldest.idleSince < idleDeadline
+           && getSize() > getMinSize(); oldest = idleSockets.peekLast()) {
+
+        // another Thread may have borrowed the oldest Socket in between, in which case there is nothing to evict
+        if (idleSockets.removeLastOccurrence(oldest)) {
+          discard(oldest);
+          evictionCount.increment();
+          evicted++;
+        }
+      }
+    }
+
+    return evicted;
+  }
+
+  /**
+   * Closes the pool and all idle connections; borrowed connections are closed as they are released.
+   */
+  public void close() {
+    closed = true;
+    evictionTimeout.cancel();
+
+    for (PooledSocket pooledSocket = idleSockets.pollFirst(); pooledSocket != null;
+         pooledSocket = idleSockets.pollFirst()) {
+      discard(pooledSocket);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("{ size = %1$d, minSize = %2$d, maxSize = %3$d, borrowed = %4$d, idle = %5$d,"
+      + " utilization = %6$.2f, borrows = %7$d, borrowTimeouts = %8$d, connects = %9$d, broken = %10$d,"
+      + " evictions = %11$d }", getSize(), getMinSize(), getMaxSize(), getBorrowedCount(), getIdleCount(),
+        getUtilization(), getBorrowCount(), getBorrowTimeoutCount(), getConnectCount(), getBrokenCount(),
+          getEvictionCount());
+  }
+
+  /**
+   * The Connector interface opens the connections of a SocketPool.
+   */
+  public static interface Connector {
+
+    /**
+     * Opens a new connection to the server.
+     *
+     * @return a connected Socket.
+     * @throws IOException if the connection could not be opened.
+     */
+    Socket connect() throws IOException;
+
+  }
+
+  /**
+   * The PooledSocket class tracks whether a pooled Socket is borrowed and when it became idle.
+   */
+  protected static final class PooledSocket {
+
+    private final AtomicBoolean borrowed = new AtomicBoolean(false);
+
+    private final Socket socket;
+
+    private volatile long idleSince;
+
+    protected PooledSocket(final Socket socket) {
+      this.socket = socket;
+      this.idleSince = System.currentTimeMillis();
+    }
+
+    public Socket getSocket() {
+      return socket;
+    }
+  }
+
+}
@@ -0,0 +1,393 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ProtocolException;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.codeprimate.lang.Assert;
+
+/**
+ * The StreamMultiplexer class carries independent, bidirectional MultiplexedStreams over a single Socket, so that
+ * many logical conversations with a server share one connection and its handshake.  Each FrameCodec frame on the
+ * connection carries a 5 byte header, the id of its stream followed by the frame type, and is either a chunk of
+ * data, a window update or the end of a stream's data in one direction.  Streams opened by the client side of the
+ * connection have odd ids and those opened by the server side even ids, so both sides open streams without
+ * coordinating; a stream is opened on the remote side by its first frame and accepted with acceptStream.
+ *
+ * Each stream is flow-controlled independently with a credit-based window: a sender may have at most the initial
+ * window of bytes outstanding that the receiving application has not yet read, and the receiver grants more credit
+ * with window updates as its application reads.  A slow reader therefore stalls only its own stream rather than
+ * the connection.  Both sides must use the same initial window.
+ *
+ * A single writer Thread writes the frames of all streams, taking one data frame from each stream with data to send
+ * in turn, so that a stream writing a large amount of data cannot starve the others, and flushes the Socket only
+ * when no stream has more to send.  A single reader Thread demultiplexes received frames to their streams.
+ *
+ * @author John J. Blum
+ * @see org.codeprimate.net.FrameStream
+ * @see org.codeprimate.net.MultiplexedStream
+ * @since 1.2.0
+ */
+@SuppressWarnings("unused")
+public class StreamMultiplexer implements Closeable {
+
+  public static final int DEFAULT_INITIAL_WINDOW = 65536;
+  public static final int HEADER_SIZE = 5;
+
+  static final byte CLOSE = 2;
+  static final byte DATA = 0;
+  static final byte WINDOW_UPDATE = 1;
+
+  private final AtomicInteger nextStreamId;
+
+  private final BlockingQueue<MultiplexedStream> acceptQueue = new LinkedBlockingQueue<MultiplexedStream>();
+
+  private final BlockingQueue<MultiplexedStream> readyStreams = new LinkedBlockingQueue<MultiplexedStream>();
+
+  private final BufferPool bufferPool;
+
+  private final boolean client;
+
+  private volatile boolean closed = false;
+
+  private final ConcurrentMap<Integer, MultiplexedStream> streams =
+    new ConcurrentHashMap<Integer, MultiplexedStream>();
+
+  private final FrameStream in;
+  private final FrameStream out;
+
+  private final int initialWindow;
+
+  // wakes Threads blocked in acceptStream and the writer Thread when the connection closes
+  private final MultiplexedStream closedSentinel;
+
+  private final Socket socket;
+
+  private final Thread readerThread;
+  private final Thread writerThread;
+
+  public StreamMultiplexer(final Socket socket, final boolean client) throws IOException {
+    this(socket, client, DEFAULT_INITIAL_WINDOW, new BufferPool());
+  }
+
+  public StreamMultiplexer(final Socket socket, final boolean client, final int initialWindow,
+                           final BufferPool bufferPool) throws IOException {
+
+    Assert.notNull(socket, "The Socket must not be null!");
+    Assert.notNull(bufferPool, "The BufferPool must not be null!");
+    Assert.legalArgument(bufferPool.getBufferSize() > HEADER_SIZE, String.format(
+      "The buffer size (%1$d) must be greater than the stream header (%2$d)!", bufferPool.getBufferSize(),
+        HEADER_SIZE));
+    Assert.legalArgument(initialWindow > 0, String.format("The initial window (%1$d) must be greater than 0!",
+      initialWindow));
+
+    FrameCodec codec = new FrameCodec();
+
+    this.socket = socket;
+    this.client = client;
+    this.initialWindow = initialWindow;
+    this.bufferPool = bufferPool;
+    this.nextStreamId = new AtomicInteger(client ? 1 : 2);
+    this.closedSentinel = new MultiplexedStream(this, 0, 0);
+    this.in = new FrameStream(socket, codec, bufferPool);
+    this.out = new FrameStream(socket, codec, bufferPool);
+    this.readerThread = newThread("Stream Multiplexer Reader", newReader());
+    this.writerThread = newThread("Stream Multiplexer Writer", newWriter());
+    this.readerThread.start();
+    this.writerThread.start();
+  }
+
+  // @see java.lang.Thread
+  private static Thread newThread(final String name, final Runnable task) {
+    Thread thread = new Thread(task, name);
+    thread.setDaemon(true);
+    return thread;
+  }
+
+  public BufferPool getBufferPool() {
+    return bufferPool;
+  }
+
+  public boolean isClient() {
+    return client;
+  }
+
+  public boolean isClosed() {
+    return closed;
+  }
+
+  public int getInitialWindow() {
+    return initialWindow;
+  }
+
+  /**
+   * Gets the maximum number of data bytes carried by a single frame, which fills a buffer of the BufferPool.
+   *
+   * @return the maximum data length of a frame.
+   */
+  public int getMaxDataLength() {
+    return (bufferPool.getBufferSize() - HEADER_SIZE);
+  }
+
+  public Socket getSocket() {
+    return socket;
+  }
+
+  /**
+   * Gets the number of streams open in at least one direction.
+   *
+   * @return the number of open streams.
+   */
+  public int getStreamCount() {
+    return streams.size();
+  }
+
+  /**
+   * Opens a new stream to the remote side of the connection, which receives the stream from acceptStream once the
+   * first data arrives.
+   *
+   * @return the new MultiplexedStream.
+   * @throws SocketException if the connection is closed.
+   */
+  public MultiplexedStream openStream() throws SocketException {
+    checkOpen();
+
+    MultiplexedStream stream = new MultiplexedStream(this, nextStreamId.getAndAdd(2), initialWindow);
+
+    streams.put(stream.getId(), stream);
+
+    return stream;
+  }
+
+  /**
+   * Waits for the remote side of the connection to open a stream.
+   *
+   * @return the MultiplexedStream opened by the remote side, or null if the connection has closed.
+   * @throws InterruptedIOException if the calling Thread is interrupted while waiting.
+   */
+  public MultiplexedStream acceptStream() throws InterruptedIOException {
+    try {
+      MultiplexedStream stream = acceptQueue.take();
+
+      if (stream == closedSentinel) {
+        acceptQueue.offer(closedSentinel);
+        return null;
+      }
+
+      return stream;
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting to accept a stream!");
+    }
+  }
+
+  private void checkOpen() throws SocketException {
+    if (isClosed()) {
+      throw new SocketException("The multiplexed connection is closed!");
+    }
+  }
+
+  /**
+   * Acquires a buffer for a frame of the stream with the header written, positioned for the frame's data.
+   */
+  ByteBuffer newFrame(final int streamId, final byte type) {
+    ByteBuffer frame = bufferPool.acquire();
+
+    frame.putInt(streamId).put(type);
+
+    return frame;
+  }
+
+  /**
+   * Queues the stream for the writer Thread, unless already queued.
+   */
+  void schedule(final MultiplexedStream stream) {
+    if (stream.markScheduled()) {
+      readyStreams.offer(stream);
+    }
+  }
+
+  void remove(final MultiplexedStream stream) {
+    streams.remove(stream.getId(), stream);
+  }
+
+  // @see java.lang.Runnable
+  private Runnable newReader() {
+    return new Runnable() {
+      public void run() {
+        IOException cause = null;
+
+        try {
+          for (ByteBuffer frame = in.readFrame(); frame != null; frame = in.readFrame()) {
+            receive(frame);
+          }
+
+          cause = new EOFException("The remote side closed the multiplexed connection!");
+        }
+        catch (IOException e) {
+          cause = e;
+        }
+        finally {
+          close(cause);
+          in.release();
+        }
+      }
+    };
+  }
+
+  private void receive(final ByteBuffer frame) throws IOException {
+    if (frame.remaining() < HEADER_SIZE) {
+      throw new ProtocolException(String.format("The frame length (%1$d) is less than the stream header (%2$d)!",
+        frame.remaining(), HEADER_SIZE));
+    }
+
+    int streamId = frame.getInt();
+    byte type = frame.get();
+
+    MultiplexedStream stream = streams.get(streamId);
+
+    // a stream closed before any data was written is opened remotely by its close
+    if (stream == null && type != WINDOW_UPDATE && isRemotelyOpened(streamId)) {
+      stream = new MultiplexedStream(this, streamId, initialWindow);
+      streams.put(streamId, stream);
+      acceptQueue.offer(stream);
+    }
+
+    // frames of streams already removed, such as late window updates, are dropped
+    if (stream != null) {
+      switch (type) {
+        case DATA:
+          stream.received(frame);
+          break;
+        case WINDOW_UPDATE:
+          stream.windowUpdated(frame.getInt());
+          break;
+        case CLOSE:
+          stream.remotelyClosed();
+          break;
+        default:
+          throw new ProtocolException(String.format("The frame type (%1$d) of stream (%2$d) is unknown!", type,
+            streamId));
+      }
+    }
+  }
+
+  private boolean isRemotelyOpened(final int streamId) {
+    return (streamId > 0 && (streamId % 2 == 0) == client);
+  }
+
+  // @see java.lang.Runnable
+  private Runnable newWriter() {
+    return new Runnable() {
+      public void run() {
+        ByteBuffer controlFrame = ByteBuffer.allocate(HEADER_SIZE + 4);
+
+        try {
+          while (true) {
+            MultiplexedStream stream = readyStreams.poll();
+
+            if (stream == null) {
+              out.flush();
+              stream = readyStreams.take();
+            }
+
+            if (stream == closedSentinel) {
+              break;
+            }
+
+            stream.clearScheduled();
+
+            // each turn writes at most one data frame of the stream, which is re-queued behind the others if it
+            // has more to send
+            if (stream.writeNext(out, controlFrame)) {
+              schedule(stream);
+            }
+          }
+        }
+        catch (IOException e) {
+          close(e);
+        }
+        catch (InterruptedException ignore) {
+          close();
+        }
+        finally {
+          out.release();
+        }
+      }
+    };
+  }
+
+  /**
+   * Writes a control frame of the stream with the writer Thread's reusable buffer.
+   */
+  void writeControlFrame(final FrameStream out, final ByteBuffer controlFrame, final int streamId, final byte type,
+                         final int value) throws IOException {
+
+    ((Buffer) controlFrame).clear();
+    controlFrame.putInt(streamId).put(type);
+
+    if (type == WINDOW_UPDATE) {
+      controlFrame.putInt(value);
+    }
+
+    ((Buffer) controlFrame).flip();
+    out.writeFrame(controlFrame);
+  }
+
+  /**
+   * Closes the connection; streams fail once the data already received has been read.
+   */
+  public void close() {
+    close(new SocketException("The multiplexed connection is closed!"));
+  }
+
+  private synchronized void close(final IOException cause) {
+    if (!closed) {
+      closed = true;
+      SocketUtils.close(socket);
+
+      for (MultiplexedStream stream : streams.values()) {
+        stream.failed(cause);
+      }
+
+      streams.clear();
+      acceptQueue.offer(closedSentinel);
+      readyStreams.offer(closedSentinel);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("{ socket = %1$s, client = %2$s, streams = %3$d, initialWindow = %4$d, closed = %5$s }",
+      socket, client, getStreamCount(), initialWindow, closed);
+  }
+
+}
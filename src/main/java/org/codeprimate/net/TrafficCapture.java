@@ -0,0 +1,257 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.codeprimate.lang.Assert;
+
+/**
+ * The TrafficCapture class reads a capture file written by a TrafficRecorder for replay.  The file is memory-mapped
+ * and indexed once when opened, recording the time, offset and length of each frame, so frames are read straight
+ * from the page cache without copying the file into the Java heap or parsing it while replaying.
+ *
+ * A TrafficCapture may be read by any number of Threads, each reading the payloads through its own view of the
+ * mapping.  A record truncated by a recorder that did not close the file, or any corrupt record, ends the capture.
+ *
+ * @author John J. Blum
+ * @see java.nio.MappedByteBuffer
+ * @see org.codeprimate.net.TrafficRecorder
+ * @since 1.2.0
+ */
+@SuppressWarnings("unused")
+public class TrafficCapture {
+
+  private final File file;
+
+  private final MappedByteBuffer mappedBuffer;
+
+  private final int recordCount;
+
+  private int maxLength;
+
+  private final int[] lengths;
+  private final int[] offsets;
+
+  private final long[] times;
+
+  private long totalBytes;
+
+  protected TrafficCapture(final File file, final MappedByteBuffer mappedBuffer) throws IOException {
+    this.file = file;
+    this.mappedBuffer = mappedBuffer;
+
+    if (mappedBuffer.limit() < TrafficRecorder.HEADER_SIZE || mappedBuffer.getInt(0) != TrafficRecorder.MAGIC) {
+      throw new IOException(String.format("(%1$s) is not a traffic capture file!", file));
+    }
+
+    if (mappedBuffer.getInt(4) != TrafficRecorder.VERSION) {
+      throw new IOException(String.format("The version (%1$d) of traffic capture file (%2$s) is not supported!",
+        mappedBuffer.getInt(4), file));
+    }
+
+    int capacity = 1024;
+
+    int[] lengths = new int[capacity];
+    int[] offsets = new int[capacity];
+
+    long[] times = new long[capacity];
+
+    int count = 0;
+    int position = TrafficRecorder.HEADER_SIZE;
+
+    long time = 0l;
+
+    while (position < mappedBuffer.limit()) {
+      long[] elapsedTime = getVarLong(mappedBuffer, position);
+      long[] length = (elapsedTime != null ? getVarLong(mappedBuffer, (int) elapsedTime[1]) : null);
+
+      // a truncated or corrupt record, whose length would overflow or run past the end of the file, ends the capture
+      if (length == null || elapsedTime[0] < 0 || length[0] < 0 || length[0] > mappedBuffer.limit() - length[1]) {
+        break;
+      }
+
+      int nextPosition = (int) (length[1] + length[0]);
+
+      if (nextPosition <= position) {
+        break;
+      }
+
+      if (count == capacity) {
+        capacity <<= 1;
+        lengths = Arrays.copyOf(lengths, capacity);
+        offsets = Arrays.copyOf(offsets, capacity);
+        times = Arrays.copyOf(times, capacity);
+      }
+
+      time += elapsedTime[0];
+      lengths[count] = (int) length[0];
+      offsets[count] = (int) length[1];
+      times[count] = time;
+      maxLength = Math.max(maxLength, lengths[count]);
+      totalBytes += lengths[count];
+      position = nextPosition;
+      count++;
+    }
+
+    this.recordCount = count;
+    this.lengths = lengths;
+    this.offsets = offsets;
+    this.times = times;
+  }
+
+  /**
+   * Memory-maps and indexes the capture file.
+   *
+   * @param file the capture File written by a TrafficRecorder.
+   * @return the TrafficCapture of the file.
+   * @throws IllegalArgumentException if the capture file is 2 GB or larger.
+   * @throws IOException if the file cannot be read or is not a traffic capture file.
+   */
+  public static TrafficCapture open(final File file) throws IOException {
+    Assert.notNull(file, "The capture File must not be null!");
+
+    FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+    try {
+      Assert.legalArgument(fileChannel.size() <= Integer.MAX_VALUE, String.format(
+        "The traffic capture file (%1$s) of (%2$d) bytes is too large to be mapped!", file, fileChannel.size()));
+
+      // the mapping remains valid after the FileChannel is closed
+      return new TrafficCapture(file, fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size()));
+    }
+    finally {
+      fileChannel.close();
+    }
+  }
+
+  // decodes the variable-length integer at position, returning the value and the position following it,
+  // or null if the integer is truncated
+  private static long[] getVarLong(final ByteBuffer buffer, int position) {
+    long value = 0l;
+
+    for (int shift = 0; position < buffer.limit() && shift < 64; shift += 7) {
+      byte current = buffer.get(position++);
+
+      value |= ((long) (current & 0x7F) << shift);
+
+      if ((current & 0x80) == 0) {
+        return new long[] { value, position };
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Gets the time between the first and the last frame of the capture.
+   *
+   * @param timeUnit the TimeUnit of the returned duration.
+   * @return the duration of the capture in the TimeUnit.
+   */
+  public long getDuration(final TimeUnit timeUnit) {
+    return timeUnit.convert(recordCount > 0 ? times[recordCount - 1] : 0l, TimeUnit.NANOSECONDS);
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * Gets the length of the payload of the frame at index.
+   *
+   * @param index the index of the frame in the capture.
+   * @return the length of the frame's payload in bytes.
+   */
+  public int getLength(final int index) {
+    return lengths[checkIndex(index)];
+  }
+
+  /**
+   * Gets the length of the largest payload in the capture, sizing the buffer of a replaying Thread.
+   *
+   * @return the length of the largest payload in bytes.
+   */
+  public int getMaxLength() {
+    return maxLength;
+  }
+
+  /**
+   * Positions the view on the payload of the frame at index, leaving the payload between its position and limit.
+   *
+   * @param index the index of the frame in the capture.
+   * @param view a view of the mapping returned by newView, which must not be shared between Threads.
+   * @return the view.
+   * @see #newView()
+   */
+  public ByteBuffer getPayload(final int index, final ByteBuffer view) {
+    checkIndex(index);
+    ((Buffer) view).limit(offsets[index] + lengths[index]);
+    ((Buffer) view).position(offsets[index]);
+    return view;
+  }
+
+  public int getRecordCount() {
+    return recordCount;
+  }
+
+  /**
+   * Gets the time of the frame at index, relative to the first frame of the capture.
+   *
+   * @param index the index of the frame in the capture.
+   * @return the nanoseconds elapsed between the first frame and the frame at index.
+   */
+  public long getTime(final int index) {
+    return times[checkIndex(index)];
+  }
+
+  public long getTotalBytes() {
+    return totalBytes;
+  }
+
+  private int checkIndex(final int index) {
+    Assert.legalArgument(index >= 0 && index < recordCount, String.format(
+      "The index (%1$d) must be greater than or equal to 0 and less than the record count (%2$d)!", index,
+        recordCount));
+    return index;
+  }
+
+  /**
+   * Creates a read-only view of the mapped capture file through which a single Thread reads payloads.
+   *
+   * @return a ByteBuffer sharing the mapped capture file with independent position and limit.
+   * @see #getPayload(int, java.nio.ByteBuffer)
+   */
+  public ByteBuffer newView() {
+    return mappedBuffer.asReadOnlyBuffer();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("{ file = %1$s, recordCount = %2$d, totalBytes = %3$d, maxLength = %4$d, duration = %5$d ms }",
+      file, recordCount, totalBytes, maxLength, getDuration(TimeUnit.MILLISECONDS));
+  }
+
+}
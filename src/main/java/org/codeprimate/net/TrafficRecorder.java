@@ -0,0 +1,180 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.codeprimate.lang.Assert;
+
+/**
+ * The TrafficRecorder class records the frames sent by a client to a compact binary capture file, which is read back
+ * by a TrafficCapture to replay the traffic.  The file starts with a header of the MAGIC number and the VERSION of the
+ * format, followed by one record per frame: the nanoseconds elapsed since the previous frame and the length of the
+ * payload, both as variable-length integers, then the payload bytes.
+ *
+ * Any number of Threads may record frames; the frames are ordered by the time they were recorded.
+ *
+ * @author John J. Blum
+ * @see java.io.Closeable
+ * @see org.codeprimate.net.TrafficCapture
+ * @since 1.2.0
+ */
+@SuppressWarnings("unused")
+public class TrafficRecorder implements Closeable {
+
+  public static final int MAGIC = 0x43415054;
+  public static final int VERSION = 1;
+
+  protected static final int HEADER_SIZE = 8;
+
+  // the longest encoding of the elapsed time (a long) and the payload length (an int) preceding each payload
+  protected static final int MAX_RECORD_HEADER_SIZE = 15;
+
+  protected static final int WRITE_BUFFER_SIZE = 65536;
+
+  private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+
+  private final File file;
+
+  private final FileChannel fileChannel;
+
+  private boolean closed;
+
+  private long lastRecordTime;
+  private long recordCount;
+  private long recordedBytes;
+
+  public TrafficRecorder(final File file) throws IOException {
+    Assert.notNull(file, "The capture File must not be null!");
+
+    this.file = file;
+    this.fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+      StandardOpenOption.TRUNCATE_EXISTING);
+
+    writeBuffer.putInt(MAGIC).putInt(VERSION);
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  public synchronized boolean isClosed() {
+    return closed;
+  }
+
+  public synchronized long getRecordCount() {
+    return recordCount;
+  }
+
+  public synchronized long getRecordedBytes() {
+    return recordedBytes;
+  }
+
+  /**
+   * Records the payload of a frame sent now.  The payload's position and limit are not modified.
+   *
+   * @param payload the ByteBuffer containing the payload, from its position to its limit.
+   * @throws IllegalStateException if the recorder has been closed.
+   * @throws IOException if an I/O error occurs writing to the capture file.
+   */
+  public synchronized void record(final ByteBuffer payload) throws IOException {
+    Assert.notNull(payload, "The payload to record must not be null!");
+    Assert.legalState(!closed, String.format("The TrafficRecorder of (%1$s) has been closed!", file));
+
+    long now = System.nanoTime();
+
+    if (writeBuffer.remaining() < MAX_RECORD_HEADER_SIZE) {
+      flush();
+    }
+
+    putVarLong(writeBuffer, (recordCount > 0 ? now - lastRecordTime : 0l));
+    putVarLong(writeBuffer, payload.remaining());
+
+    if (payload.remaining() <= writeBuffer.remaining()) {
+      writeBuffer.put(payload.duplicate());
+    }
+    else {
+      flush();
+      write(payload.duplicate());
+    }
+
+    lastRecordTime = now;
+    recordCount++;
+    recordedBytes += payload.remaining();
+  }
+
+  // writes an unsigned value 7 bits at a time, least significant bits first, setting the high bit of every byte
+  // but the last
+  protected static void putVarLong(final ByteBuffer buffer, long value) {
+    while ((value & ~0x7Fl) != 0) {
+      buffer.put((byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+
+    buffer.put((byte) value);
+  }
+
+  /**
+   * Writes all buffered records to the capture file.
+   *
+   * @throws IOException if an I/O error occurs writing to the capture file.
+   */
+  public synchronized void flush() throws IOException {
+    if (writeBuffer.position() > 0) {
+      ((Buffer) writeBuffer).flip();
+      write(writeBuffer);
+      ((Buffer) writeBuffer).clear();
+    }
+  }
+
+  private void write(final ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      fileChannel.write(buffer);
+    }
+  }
+
+  /**
+   * Flushes the buffered records and closes the capture file.
+   *
+   * @throws IOException if an I/O error occurs writing to the capture file.
+   */
+  public synchronized void close() throws IOException {
+    if (!closed) {
+      closed = true;
+
+      try {
+        flush();
+      }
+      finally {
+        fileChannel.close();
+      }
+    }
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("{ file = %1$s, recordCount = %2$d, recordedBytes = %3$d, closed = %4$s }", file,
+      recordCount, recordedBytes, closed);
+  }
+
+}
@@ -19,6 +19,13 @@ package org.codeprimate.net;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Map;
 
 import org.codeprimate.lang.StringUtils;
@@ -36,6 +43,12 @@ public abstract class UriUtils {
 
   public static final String DEFAULT_ENCODING = StringUtils.UTF_8;
 
+  private static final ThreadLocal<PercentDecoder> PERCENT_DECODER = new ThreadLocal<PercentDecoder>() {
+    @Override protected PercentDecoder initialValue() {
+      return new PercentDecoder();
+    }
+  };
+
   /**
    * Decodes the encoded String value using the default encoding, UTF-8.  It is assumed the String value was encoded
    * with the URLEncoder using the UTF-8 encoding.  This method handles UnsupportedEncodingException by just returning
@@ -44,6 +57,7 @@ public abstract class UriUtils {
    * 
    * @param encodedValue the encoded String value encoded to decode.
    * @return the decoded value of the String.  If UTF-8 is unsupported, then the encodedValue is returned.
+   * @see #decode(CharSequence)
    * @see #decode(String, String)
    * @see java.net.URLDecoder
    */
@@ -51,18 +65,43 @@ public abstract class UriUtils {
     return decode(encodedValue, DEFAULT_ENCODING);
   }
 
+  /**
+   * Decodes the UTF-8, percent-encoded value in a single pass, decoding a value encoded multiple times completely.
+   * A value encoded by applying the URLEncoder repeatedly decodes to the same value as decoding it repeatedly with
+   * the URLDecoder until the value stops changing.  This method is more lenient with other values: escaped bytes
+   * are decoded as UTF-8 only once every level of encoding has been decoded, so the bytes of one UTF-8 sequence
+   * escaped at different levels are combined.  For example, "%C3%25A9" decodes to U+00E9 (an e acute), whereas
+   * repeated URLDecoder decoding gives two replacement characters.  A value containing neither a '%' nor a '+' is
+   * returned as is, without copying.  Any other value is decoded into a buffer reused by the calling Thread, so the
+   * decoded String is the only object allocated.
+   *
+   * @param encodedValue the encoded value to decode.
+   * @return the decoded value as a String, or null if the encodedValue is null.
+   * @throws IllegalArgumentException if a '%' at any level of encoding is not followed by two hex digits.
+   * @see java.net.URLDecoder
+   */
+  public static String decode(final CharSequence encodedValue) {
+    return (encodedValue != null ? PERCENT_DECODER.get().decode(encodedValue) : null);
+  }
+
   /**
    * Decodes the encoded String value using the specified encoding (such as UTF-8).  It is assumed the String value
    * was encoded with the URLEncoder using the specified encoding.  This method handles UnsupportedEncodingException
    * by just returning the encodedValue.  Since it is possible for a String value to have been encoded multiple times,
    * the String value is decoded until the value stops changing (in other words, until the value is completely decoded).
+   * A value encoded with UTF-8 is decoded in a single pass by decode(CharSequence).
    * 
    * @param encodedValue the encoded String value to decode.
    * @param encoding a String value specifying the encoding.
    * @return the decoded value of the String.  If the encoding is unsupported, then the encodedValue is returned.
+   * @see #decode(CharSequence)
    * @see java.net.URLDecoder
    */
   public static String decode(String encodedValue, final String encoding) {
+    if (DEFAULT_ENCODING.equalsIgnoreCase(encoding)) {
+      return decode((CharSequence) encodedValue);
+    }
+
     try {
       if (encodedValue != null) {
         String previousEncodedValue;
@@ -254,4 +293,223 @@ public abstract class UriUtils {
     return form;
   }
 
+  /**
+   * The PercentDecoder class decodes a percent-encoded value in a single scan by treating its output as a stack:
+   * each character is pushed onto the output, and once the top of the output is a '%' followed by two hex digits,
+   * the escape is popped and the byte it encodes is pushed in its place, so a byte decoding to a '%' or a hex digit
+   * is decoded again as the next level of encoding.  Consecutive non-ASCII bytes are held until the run ends,
+   * whatever level of encoding each came from, then decoded as UTF-8, replacing malformed sequences the way the
+   * URLDecoder does.
+   */
+  protected static final class PercentDecoder {
+
+    // buffers grown to decode a larger value are discarded rather than retained by the Thread
+    private static final int MAX_RETAINED_CAPACITY = 8192;
+
+    private static final int INITIAL_CAPACITY = 128;
+
+    private static final int[] HEX_VALUES = new int[128];
+
+    static {
+      Arrays.fill(HEX_VALUES, -1);
+
+      for (char c = '0'; c <= '9'; c++) {
+        HEX_VALUES[c] = (c - '0');
+      }
+
+      for (char c = 'A'; c <= 'F'; c++) {
+        HEX_VALUES[c] = (c - 'A' + 10);
+        HEX_VALUES[Character.toLowerCase(c)] = (c - 'A' + 10);
+      }
+    }
+
+    private final CharsetDecoder utf8Decoder = StandardCharsets.UTF_8.newDecoder()
+      .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private byte[] bytes;
+    private char[] chars;
+
+    private ByteBuffer byteBuffer;
+    private CharBuffer charBuffer;
+
+    private int byteCount;
+    private int charCount;
+
+    // the position in the output of the run of undecoded bytes
+    private int bytesIndex;
+
+    protected PercentDecoder() {
+      allocate(INITIAL_CAPACITY, INITIAL_CAPACITY);
+    }
+
+    private void allocate(final int byteCapacity, final int charCapacity) {
+      bytes = new byte[byteCapacity];
+      chars = new char[charCapacity];
+      byteBuffer = ByteBuffer.wrap(bytes);
+      charBuffer = CharBuffer.wrap(chars);
+    }
+
+    protected String decode(final CharSequence value) {
+      int length = value.length();
+      int index = 0;
+
+      while (index < length && value.charAt(index) != '%' && value.charAt(index) != '+') {
+        index++;
+      }
+
+      if (index == length) {
+        return value.toString();
+      }
+
+      // the decoded value is never longer than the encoded value, nor the undecoded bytes
+      if (chars.length < length) {
+        allocate(Math.max(bytes.length, length), length);
+      }
+
+      byteCount = 0;
+      charCount = 0;
+
+      for (int prefixIndex = 0; prefixIndex < index; prefixIndex++) {
+        chars[charCount++] = value.charAt(prefixIndex);
+      }
+
+      try {
+        for ( ; index < length; index++) {
+          push(value, value.charAt(index));
+        }
+
+        // a completely decoded value contains no '%', since the URLDecoder rejects a '%' not starting an escape
+        for (int charIndex = 0; charIndex < charCount; charIndex++) {
+          if (chars[charIndex] == '%') {
+            throw newIllegalEscapeException(value);
+          }
+        }
+
+        decodeBytes();
+
+        return new String(chars, 0, charCount);
+      }
+      finally {
+        if (chars.length > MAX_RETAINED_CAPACITY) {
+          allocate(INITIAL_CAPACITY, INITIAL_CAPACITY);
+        }
+      }
+    }
+
+    private void push(final CharSequence value, char c) {
+      while (true) {
+        // a run of bytes ends unless the next character starts another escape
+        if (byteCount > 0 && charCount == bytesIndex && c != '%') {
+          decodeBytes();
+        }
+
+        // like the URLDecoder, which parses escapes with Integer.parseInt, a '+' is accepted as the sign of an escape
+        boolean escapeSign = (c == '+' && charCount > 0 && chars[charCount - 1] == '%');
+
+        chars[charCount++] = (c == '+' && !escapeSign ? ' ' : c);
+
+        if (charCount < 3 || chars[charCount - 3] != '%') {
+          return;
+        }
+
+        int high = (chars[charCount - 2] == '+' ? 0 : hexValue(chars[charCount - 2]));
+        int low = hexValue(chars[charCount - 1]);
+
+        if (high < 0 || low < 0) {
+          return;
+        }
+
+        int decodedByte = ((high << 4) | low);
+
+        charCount -= 3;
+
+        if (decodedByte >= 0x80) {
+          // a byte separated from the run by a '%' leaves the '%' without two hex digits at every level
+          if (byteCount > 0 && charCount != bytesIndex) {
+            throw newIllegalEscapeException(value);
+          }
+
+          bytesIndex = (byteCount > 0 ? bytesIndex : charCount);
+          bytes[byteCount++] = (byte) decodedByte;
+
+          return;
+        }
+
+        // the decoded character is pushed in turn, decoding the next level of encoding
+        c = (char) decodedByte;
+      }
+    }
+
+    private static IllegalArgumentException newIllegalEscapeException(final CharSequence value) {
+      return new IllegalArgumentException(String.format(
+        "The value (%1$s) contains a '%%' that is not followed by two hex digits!", value));
+    }
+
+    // like Integer.parseInt, accepts any Unicode digit, but looks up the ASCII hex digits in a table
+    private static int hexValue(final char c) {
+      return (c < HEX_VALUES.length ? HEX_VALUES[c] : Character.digit(c, 16));
+    }
+
+    // decodes the run of bytes as UTF-8 onto the top of the output, falling back to the CharsetDecoder to replace
+    // the malformed sequences of a run exactly as the URLDecoder does
+    private void decodeBytes() {
+      if (byteCount > 0) {
+        if (!decodeWellFormedBytes()) {
+          decodeMalformedBytes();
+        }
+
+        byteCount = 0;
+      }
+    }
+
+    // the run holds only bytes of 0x80 and above, so every sequence starts with a multi-byte lead byte
+    private boolean decodeWellFormedBytes() {
+      int position = charCount;
+
+      for (int index = 0; index < byteCount; ) {
+        int lead = (bytes[index++] & 0xFF);
+        int length = (lead >= 0xF0 ? 4 : (lead >= 0xE0 ? 3 : 2));
+
+        if (lead < 0xC2 || lead > 0xF4 || index + length - 1 > byteCount) {
+          return false;
+        }
+
+        int codePoint = (lead & (0x7F >> length));
+
+        for (int count = 1; count < length; count++) {
+          int continuation = bytes[index++];
+
+          if ((continuation & 0xC0) != 0x80) {
+            return false;
+          }
+
+          codePoint = ((codePoint << 6) | (continuation & 0x3F));
+        }
+
+        // overlong encodings, surrogates and code points beyond U+10FFFF are malformed
+        if ((length == 3 && (codePoint < 0x800 || Character.isSurrogate((char) codePoint)))
+            || (length == 4 && (codePoint < 0x10000 || codePoint > Character.MAX_CODE_POINT))) {
+          return false;
+        }
+
+        position += Character.toChars(codePoint, chars, position);
+      }
+
+      charCount = position;
+
+      return true;
+    }
+
+    private void decodeMalformedBytes() {
+      ((Buffer) byteBuffer).clear();
+      ((Buffer) byteBuffer).limit(byteCount);
+      ((Buffer) charBuffer).clear();
+      ((Buffer) charBuffer).position(charCount);
+      utf8Decoder.reset();
+      utf8Decoder.decode(byteBuffer, charBuffer, true);
+      utf8Decoder.flush(charBuffer);
+      charCount = charBuffer.position();
+    }
+  }
+
 }
@@ -16,23 +16,35 @@
 
 package org.codeprimate.net.sample;
 
-import java.io.DataInput;
-import java.io.DataOutput;
+import java.io.IOException;
 import java.net.Socket;
 import java.util.Scanner;
 
 import org.codeprimate.net.AbstractClientServerSupport;
-import org.codeprimate.net.SocketUtils;
+import org.codeprimate.net.BufferPool;
+import org.codeprimate.net.LineCodec;
+import org.codeprimate.net.LineStream;
 
 /**
+ * The EchoClient sends lines typed by the user to the EchoServer and prints the echoed lines.  When the
+ * 'messageCount' option is given, the client instead sends that many lines as fast as it can, while reading the echoed
+ * lines on a separate Thread, and reports the rate at which lines were echoed.
+ *
  * @author John J. Blum
  * @see org.codeprimate.net.AbstractClientServerSupport
+ * @see org.codeprimate.net.LineStream
  * @since 1.0.0
  */
 public class EchoClient extends AbstractClientServerSupport {
 
+  private static final BufferPool BUFFER_POOL = new BufferPool(BufferPool.DEFAULT_BUFFER_SIZE, 4, false);
+
+  private static final LineCodec LINE_CODEC = new LineCodec();
+
+  private static int messageCount;
+
   public static void main(final String... args) throws Exception {
-    parseCommandLineArguments(args);
+    customParseCommandLineArguments(args);
 
     assert (getServerAddress() != null && getServerAddress().isReachable(5000)) :
       formatMessage("The server address ({0}) cannot be null and must be reachable!", getServerAddress());
@@ -45,23 +57,98 @@ public class EchoClient extends AbstractClientServerSupport {
 
     System.out.printf("Connected to Echo Server @ (%1$s) on port (%2$d)...%n", getServerAddress().toString(), getPort());
 
-    DataInput in = getInputStream(clientSocket);
-    DataOutput out = getOutputStream(clientSocket);
+    LineStream lineStream = new LineStream(clientSocket, LINE_CODEC, BUFFER_POOL);
+
+    try {
+      if (messageCount > 0) {
+        runLoad(lineStream);
+      }
+      else {
+        runInteractive(lineStream);
+      }
+    }
+    finally {
+      lineStream.close();
+    }
+  }
+
+  private static void customParseCommandLineArguments(final String... args) throws Exception {
+    parseCommandLineArguments(true, args);
+
+    for (int index = 0; index < args.length; index++) {
+      if ("messageCount".equalsIgnoreCase(args[index])) {
+        messageCount = Integer.parseInt(args[++index]);
+      }
+      else if (getCommonCommandLineArgumentArity(args[index]) >= 0) {
+        index += getCommonCommandLineArgumentArity(args[index]);
+      }
+      else {
+        System.err.printf("Unknown command line argument (%1$s)!%n", args[index]);
+      }
+    }
+  }
 
+  private static void runInteractive(final LineStream lineStream) throws IOException {
     Scanner userIn = new Scanner(System.in);
 
     String line;
 
-    try {
-      while (!"exit".equalsIgnoreCase(line = userIn.nextLine().trim())) {
-        System.out.printf("Client says... \"%1$s\"%n", line);
-        out.writeBytes(line + "\n");
-        System.out.printf("Server says... \"%1$s\"%n", in.readLine());
+    // the echoed line is read after the LineStream flushes the line just written
+    while (!"exit".equalsIgnoreCase(line = userIn.nextLine().trim())) {
+      System.out.printf("Client says... \"%1$s\"%n", line);
+      lineStream.writeLine(line);
+      System.out.printf("Server says... \"%1$s\"%n", lineStream.readLine());
+    }
+  }
+
+  private static void runLoad(final LineStream lineStream) throws Exception {
+    final IOException[] writeFailure = new IOException[1];
+
+    // a LineStream is not thread-safe, so the writer Thread buffers its lines in a stream of its own
+    final LineStream writeStream = new LineStream(lineStream.getSocket(), LINE_CODEC, BUFFER_POOL);
+
+    Thread writer = new Thread(new Runnable() {
+      public void run() {
+        try {
+          StringBuilder message = new StringBuilder("echo message ");
+          int prefixLength = message.length();
+
+          for (int count = 0; count < messageCount; count++) {
+            message.setLength(prefixLength);
+            writeStream.writeLine(message.append(count));
+          }
+
+          writeStream.flush();
+        }
+        catch (IOException e) {
+          writeFailure[0] = e;
+        }
+        finally {
+          writeStream.release();
+        }
       }
+    }, "Echo Client Writer");
+
+    long t0 = System.currentTimeMillis();
+
+    writer.start();
+
+    int echoCount = 0;
+
+    while (echoCount < messageCount && lineStream.readLineBuffer() != null) {
+      echoCount++;
     }
-    finally {
-      SocketUtils.close(clientSocket);
+
+    long t1 = System.currentTimeMillis();
+
+    writer.join();
+
+    if (writeFailure[0] != null) {
+      throw writeFailure[0];
     }
+
+    System.out.printf("Echoed (%1$d) of (%2$d) messages in (%3$d) ms (%4$.0f messages/sec).%n", echoCount,
+      messageCount, (t1 - t0), (echoCount * 1000.0d / Math.max(t1 - t0, 1)));
   }
 
 }
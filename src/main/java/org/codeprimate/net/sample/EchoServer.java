@@ -16,78 +16,216 @@
 
 package org.codeprimate.net.sample;
 
-import java.io.DataInput;
-import java.io.DataOutput;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
 
+import org.codeprimate.lang.Assert;
+import org.codeprimate.lang.SampledAsyncLogger;
 import org.codeprimate.net.AbstractClientServerSupport;
+import org.codeprimate.net.BufferPool;
+import org.codeprimate.net.ChannelConnection;
+import org.codeprimate.net.ChannelHandler;
+import org.codeprimate.net.LineCodec;
+import org.codeprimate.net.LineStream;
+import org.codeprimate.net.ServerHandle;
+import org.codeprimate.net.ServerMetrics;
 import org.codeprimate.net.SocketUtils;
 
 /**
  * The EchoServer, along with the EchoClient, are used to test communications between two disparate nodes on network
- * using TCP/IP.
+ * using TCP/IP.  Messages are UTF-8 encoded lines.  Echoed lines are buffered and written once every line received
+ * from the client has been read, so lines sent back-to-back are echoed in a single write.  Logging of individual
+ * messages is off by default; the 'logSampleRate' option logs every Nth message asynchronously.
  * 
  * @author John J. Blum
+ * @see org.codeprimate.lang.SampledAsyncLogger
  * @see org.codeprimate.net.AbstractClientServerSupport
+ * @see org.codeprimate.net.LineStream
  * @since 1.0.0
  */
 public class EchoServer extends AbstractClientServerSupport {
 
+  // Sockets accepted by the blocking server engine have no SocketChannel, so heap buffers avoid a copy
+  private static final BufferPool BUFFER_POOL = new BufferPool(BufferPool.DEFAULT_BUFFER_SIZE,
+    BufferPool.DEFAULT_MAX_POOLED_BUFFERS, false);
+
+  private static final LineCodec LINE_CODEC = new LineCodec();
+
+  private static SampledAsyncLogger messageLogger = new SampledAsyncLogger(System.out, 0);
+
   public static void main(final String... args) throws Exception {
-    parseCommandLineArguments(args);
+    customParseCommandLineArguments(args);
 
-    startServer("Echo Server", new ClientRequestHandler() {
-      public Runnable service(final Socket clientSocket) {
-        return createEchoClientRunnable(clientSocket);
-      }
-    });
+    if (ServerEngineType.NIO.equals(getServerEngineType())) {
+      startServer("Echo Server", createEchoChannelHandler());
+    }
+    else {
+      startServer("Echo Server", new ClientRequestHandler() {
+        public Runnable service(final Socket clientSocket) {
+          return createEchoClientRunnable(clientSocket, getServerMetrics());
+        }
+      });
+    }
 
     waitForUserInput("exit", "Please enter 'exit' to stop the Echo Sever.");
     System.out.println("Exiting...");
     setRunning(false);
+    messageLogger.close();
+
+    if (messageLogger.getSampleRate() > 0) {
+      System.out.printf("Echo Server message log %1$s.%n", messageLogger);
+    }
+  }
+
+  /**
+   * Creates an Echo Server bound to the address, configured with the command line arguments parsed by main, if any,
+   * or the defaults.  Bind each Echo Server to port 0 to run several in one JVM.
+   *
+   * @param address the InetSocketAddress to bind the Echo Server to.
+   * @return an un-started ServerHandle of the Echo Server.
+   * @throws IllegalStateException if the configured server engine cannot be embedded.
+   */
+  public static ServerHandle newServer(final InetSocketAddress address) {
+    if (ServerEngineType.NIO.equals(getServerEngineType())) {
+      return newServer("Echo Server", address, createEchoChannelHandler());
+    }
+
+    Assert.legalState(ServerEngineType.BLOCKING.equals(getServerEngineType()), String.format(
+      "The (%1$s) server engine cannot be embedded!", getServerEngineType().getCode()));
+
+    final ServerMetrics metrics = new ServerMetrics();
+
+    return newServer("Echo Server", address, metrics, new ClientRequestHandler() {
+      public Runnable service(final Socket clientSocket) {
+        return createEchoClientRunnable(clientSocket, metrics);
+      }
+    });
   }
 
-  private static Runnable createEchoClientRunnable(final Socket clientSocket) {
+  private static void customParseCommandLineArguments(final String... args) throws Exception {
+    parseCommandLineArguments(true, args);
+
+    for (int index = 0; index < args.length; index++) {
+      if ("logSampleRate".equalsIgnoreCase(args[index])) {
+        messageLogger = new SampledAsyncLogger(System.out, Integer.parseInt(args[++index]));
+      }
+      else if (getCommonCommandLineArgumentArity(args[index]) >= 0) {
+        index += getCommonCommandLineArgumentArity(args[index]);
+      }
+      else {
+        System.err.printf("Unknown command line argument (%1$s)!%n", args[index]);
+      }
+    }
+  }
+
+  /**
+   * Services a client connection, recording the phases of each echoed line in the ServerMetrics.  A line stream cannot
+   * tell when a line starts arriving, so the read phase of a line includes any time spent waiting on the client, and
+   * the write phase covers buffering the echo, which is written to the Socket before the next read blocks.
+   */
+  private static Runnable createEchoClientRunnable(final Socket clientSocket, final ServerMetrics metrics) {
     assert !(clientSocket == null || clientSocket.isClosed()) : "The Echo Client connection cannot be null or closed!";
 
     return new Runnable() {
       public void run() {
-        System.out.printf("Receiving echo requests from client (%1$s) in Thread (%2$s)...%n",
-          clientSocket.getInetAddress().toString(), Thread.currentThread().getName());
+        String clientAddress = clientSocket.getInetAddress().toString();
+
+        System.out.printf("Receiving echo requests from client (%1$s) in Thread (%2$s)...%n", clientAddress,
+          Thread.currentThread().getName());
+
+        LineStream lineStream = null;
 
         try {
-          DataInput in = getInputStream(clientSocket);
-          DataOutput out = getOutputStream(clientSocket);
+          lineStream = new LineStream(clientSocket, LINE_CODEC, BUFFER_POOL);
 
-          boolean running = true;
+          long readStartTime = System.nanoTime();
 
-          while (running) {
-          //while (!clientSocket.isClosed() && clientSocket.isConnected()) {
-            try {
-              String echoMessage = in.readLine();
-              System.out.printf("%1$s: \"%2$s\"%n", clientSocket.getInetAddress().toString(), echoMessage);
-              out.writeBytes(echoMessage + "\n");
-            }
-            catch (IOException e) {
-              running = false;
-              if (isDebug()) {
-                System.err.printf("Failed to read message from echo client (%1$s): %2$s%n",
-                  clientSocket.getInetAddress().toString(), e.getMessage());
-              }
+          // echoed lines are flushed by the LineStream before it blocks waiting on the client
+          for (ByteBuffer echoMessage = lineStream.readLineBuffer(); echoMessage != null;
+               echoMessage = lineStream.readLineBuffer()) {
+            int lineLength = (echoMessage.remaining() + 1);
+            long handleStartTime = System.nanoTime();
+
+            metrics.recordRead(lineLength, handleStartTime - readStartTime);
+
+            if (messageLogger.sample()) {
+              messageLogger.log("%1$s: \"%2$s\"%n", clientAddress, LINE_CODEC.toString(echoMessage));
             }
+
+            long writeStartTime = System.nanoTime();
+
+            metrics.recordHandle(writeStartTime - handleStartTime);
+            lineStream.writeLine(echoMessage);
+            readStartTime = System.nanoTime();
+            metrics.recordWrite(lineLength, readStartTime - writeStartTime);
           }
+
+          lineStream.flush();
         }
         catch (IOException e) {
-          e.printStackTrace(System.err);
+          if (isDebug()) {
+            System.err.printf("Failed to read message from echo client (%1$s): %2$s%n", clientAddress,
+              e.getMessage());
+          }
         }
         finally {
-          SocketUtils.close(clientSocket);
-          System.out.printf("Echo client (%1$s) connection closed. Thread (%2$s) exiting.%n", clientSocket.getInetAddress().toString(),
+          if (lineStream != null) {
+            lineStream.close();
+          }
+          else {
+            SocketUtils.close(clientSocket);
+          }
+
+          System.out.printf("Echo client (%1$s) connection closed. Thread (%2$s) exiting.%n", clientAddress,
             Thread.currentThread().getName());
         }
       }
     };
   }
 
+  /**
+   * Echoes every complete line received in a read with a single write of the bytes of those lines.
+   */
+  private static ChannelHandler createEchoChannelHandler() {
+    return new ChannelHandler() {
+      public void onOpen(final ChannelConnection connection) {
+        System.out.printf("Receiving echo requests from client (%1$s) in Thread (%2$s)...%n",
+          connection.getRemoteAddress(), Thread.currentThread().getName());
+      }
+
+      public void onRead(final ChannelConnection connection, final ByteBuffer buffer) throws IOException {
+        int echoPosition = buffer.position();
+
+        for (int lineLength = LINE_CODEC.peekLineLength(buffer); lineLength >= 0;
+             lineLength = LINE_CODEC.peekLineLength(buffer)) {
+          if (messageLogger.sample()) {
+            messageLogger.log("%1$s: \"%2$s\"%n", connection.getRemoteAddress(),
+              LINE_CODEC.toString(LINE_CODEC.decode(buffer)));
+          }
+          else {
+            ((Buffer) buffer).position(buffer.position() + lineLength);
+          }
+        }
+
+        if (buffer.position() > echoPosition) {
+          ByteBuffer echoMessages = buffer.duplicate();
+
+          ((Buffer) echoMessages).limit(buffer.position());
+          ((Buffer) echoMessages).position(echoPosition);
+          ByteBuffer echoBuffer = ByteBuffer.allocate(echoMessages.remaining()).put(echoMessages);
+
+          ((Buffer) echoBuffer).flip();
+          connection.write(echoBuffer);
+        }
+      }
+
+      public void onClose(final ChannelConnection connection) {
+        System.out.printf("Echo client (%1$s) connection closed.%n", connection.getRemoteAddress());
+      }
+    };
+  }
+
 }
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net.sample;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.codeprimate.net.AbstractClientServerSupport;
+import org.codeprimate.net.FileTransferHandler;
+import org.codeprimate.net.SocketUtils;
+
+/**
+ * The FileClient requests ranges of a file, given by the 'file' option as a path relative to the directory served by
+ * the FileServer, and reports the rate at which the ranges were received.  Each request asks for the next 'rangeSize'
+ * bytes of the file, wrapping around at the end of the file, or for the whole file when no range size is given; the
+ * 'requests' option gives the number of requests.
+ *
+ * @author John J. Blum
+ * @see org.codeprimate.net.AbstractClientServerSupport
+ * @see org.codeprimate.net.FileTransferHandler
+ * @see org.codeprimate.net.sample.FileServer
+ * @since 1.2.0
+ */
+@SuppressWarnings("unused")
+public class FileClient extends AbstractClientServerSupport {
+
+  private static int requests = 10;
+
+  private static long rangeSize = -1;
+
+  private static String file;
+
+  public static void main(final String... args) throws Exception {
+    customParseCommandLineArguments(args);
+
+    assert file != null : "The 'file' to request must be specified!";
+
+    Socket socket = openSocket(getServerAddress(), getPort(), true);
+
+    try {
+      DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+      DataInputStream in = new DataInputStream(socket.getInputStream());
+
+      byte[] buffer = new byte[65536];
+
+      long bytesReceived = 0;
+      long offset = 0;
+      long t0 = System.nanoTime();
+
+      for (int count = 0; count < requests; count++) {
+        ByteBuffer request = FileTransferHandler.newRequest(file, offset, rangeSize);
+
+        out.writeInt(request.remaining());
+        out.write(request.array(), request.arrayOffset() + request.position(), request.remaining());
+        out.flush();
+
+        in.readInt();
+
+        FileTransferHandler.Status status = FileTransferHandler.Status.findBy(in.readByte());
+
+        in.readLong();
+
+        long length = in.readLong();
+
+        if (!FileTransferHandler.Status.OK.equals(status)) {
+          System.err.printf("Request for (%1$s) at offset (%2$d) failed: %3$s!%n", file, offset, status);
+          break;
+        }
+
+        for (long remaining = length; remaining > 0; ) {
+          int bytesRead = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+
+          if (bytesRead < 0) {
+            throw new EOFException(String.format("The server closed the connection with (%1$d) bytes of the range"
+              + " remaining!", remaining));
+          }
+
+          remaining -= bytesRead;
+        }
+
+        bytesReceived += length;
+        offset = (rangeSize > 0 && length == rangeSize ? offset + length : 0);
+      }
+
+      double seconds = (System.nanoTime() - t0) / (double) TimeUnit.SECONDS.toNanos(1);
+
+      System.out.printf("Received (%1$d) bytes of (%2$s) in (%3$d) requests in (%4$.3f) seconds (%5$.1f MB/s).%n",
+        bytesReceived, file, requests, seconds, bytesReceived / Math.max(seconds, 1e-9) / (1024 * 1024));
+    }
+    finally {
+      SocketUtils.close(socket);
+    }
+  }
+
+  private static void customParseCommandLineArguments(final String... args) throws Exception {
+    parseCommandLineArguments(true, args);
+
+    for (int index = 0; index < args.length; index++) {
+      if ("file".equalsIgnoreCase(args[index])) {
+        file = args[++index];
+      }
+      else if ("rangeSize".equalsIgnoreCase(args[index])) {
+        rangeSize = Long.parseLong(args[++index]);
+      }
+      else if ("requests".equalsIgnoreCase(args[index])) {
+        requests = Integer.parseInt(args[++index]);
+      }
+      else if (getCommonCommandLineArgumentArity(args[index]) >= 0) {
+        index += getCommonCommandLineArgumentArity(args[index]);
+      }
+      else {
+        System.err.printf("Unknown command line argument (%1$s)!%n", args[index]);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net.sample;
+
+import java.io.File;
+import java.net.Socket;
+
+import org.codeprimate.net.AbstractClientServerSupport;
+import org.codeprimate.net.ChannelHandler;
+import org.codeprimate.net.FileTransferHandler;
+
+/**
+ * The FileServer, along with the FileClient, serves ranges of the files in a directory, given by the 'directory'
+ * option and defaulting to the working directory, with the FileTransferHandler.  With the nio engine, the files are
+ * transferred to the clients' SocketChannels with sendfile, without copying the file contents through the Java heap.
+ * The server reports the number of ranges and bytes served along with the transfer throughput when it exits.
+ *
+ * @author John J. Blum
+ * @see org.codeprimate.net.AbstractClientServerSupport
+ * @see org.codeprimate.net.FileTransferHandler
+ * @see org.codeprimate.net.sample.FileClient
+ * @since 1.2.0
+ */
+@SuppressWarnings("unused")
+public class FileServer extends AbstractClientServerSupport {
+
+  private static File directory = new File(System.getProperty("user.dir"));
+
+  public static void main(final String... args) throws Exception {
+    customParseCommandLineArguments(args);
+
+    final FileTransferHandler handler = new FileTransferHandler(directory);
+
+    if (ServerEngineType.NIO.equals(getServerEngineType())) {
+      startServer("File Server", (ChannelHandler) handler);
+    }
+    else {
+      startServer("File Server", new ClientRequestHandler() {
+        public Runnable service(final Socket clientSocket) {
+          return handler.service(clientSocket);
+        }
+      });
+    }
+
+    System.out.printf("File Server serving files in directory (%1$s)...%n", handler.getDirectory());
+    waitForUserInput("exit", "Please enter 'exit' to stop the File Server.");
+    System.out.println("Exiting...");
+    setRunning(false);
+    System.out.printf("File Server served %1$s.%n", handler);
+  }
+
+  private static void customParseCommandLineArguments(final String... args) throws Exception {
+    parseCommandLineArguments(true, args);
+
+    for (int index = 0; index < args.length; index++) {
+      if ("directory".equalsIgnoreCase(args[index])) {
+        directory = new File(args[++index]);
+      }
+      else if (getCommonCommandLineArgumentArity(args[index]) >= 0) {
+        index += getCommonCommandLineArgumentArity(args[index]);
+      }
+      else {
+        System.err.printf("Unknown command line argument (%1$s)!%n", args[index]);
+      }
+    }
+  }
+
+}
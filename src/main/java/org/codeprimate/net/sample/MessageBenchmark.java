@@ -0,0 +1,639 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net.sample;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.codeprimate.io.IOUtils;
+import org.codeprimate.lang.LatencyHistogram;
+import org.codeprimate.net.AbstractClientServerSupport;
+import org.codeprimate.process.ProcessInputStreamListener;
+import org.codeprimate.process.ProcessWrapper;
+import org.codeprimate.process.execution.JavaProcessExecutor;
+
+/**
+ * The MessageBenchmark class runs the MessageClient against the MessageServer over a matrix of server engines,
+ * socket factory types, message threads, payload sizes and pool sizes.  For each server engine, the MessageServer
+ * is launched in a forked JVM; each combination is then run as warm-up trials, whose results are discarded, followed
+ * by measured trials, each in a fresh forked MessageClient JVM so that no trial inherits the JIT or heap state of
+ * another.  The results are written to CSV and JSON files with the mean, standard deviation, minimum, median and
+ * maximum throughput of the trials and the latency percentiles of the trials' latencies merged into one
+ * LatencyHistogram, since percentiles of separate trials cannot be averaged.
+ *
+ * Combinations that cannot run are skipped: the shared memory socket factory type runs only against the shared
+ * memory server engine and vice versa, the loopback socket factory type runs its own server in the client JVM and is
+ * run once regardless of engine, and the pool size is swept only for the pooled socket factory types.
+ *
+ * @author John J. Blum
+ * @see org.codeprimate.net.sample.MessageClient
+ * @see org.codeprimate.net.sample.MessageServer
+ * @see org.codeprimate.process.execution.JavaProcessExecutor
+ * @since 1.2.0
+ */
+@SuppressWarnings("unused")
+public class MessageBenchmark extends AbstractClientServerSupport {
+
+  protected static final String HISTOGRAM_KEY = "histogram";
+
+  protected static final String[] LATENCY_KEYS = { "p50", "p90", "p99", "p99.9", "max" };
+
+  private static final String SERVER_READY_MESSAGE = "listening on port";
+
+  private static final long SERVER_START_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+
+  private static int messageCount = 10000;
+  private static int trials = 3;
+  private static int warmupTrials = 1;
+
+  private static int[] messageThreads = { 1, 8 };
+  private static int[] payloadSizes = { 100, 10000 };
+  private static int[] poolSizes = { 2 };
+
+  private static long trialTimeout = TimeUnit.MINUTES.toMillis(5);
+
+  private static List<ServerEngineType> serverEngineTypes = Arrays.asList(ServerEngineType.BLOCKING,
+    ServerEngineType.NIO);
+
+  private static List<MessageClient.SocketFactoryType> socketFactoryTypes = Arrays.asList(
+    MessageClient.SocketFactoryType.NEW_SOCKET, MessageClient.SocketFactoryType.POOLED_SOCKET);
+
+  private static String output = "message-benchmark";
+
+  public static void main(final String... args) throws Exception {
+    customParseCommandLineArguments(args);
+
+    List<Scenario> results = new ArrayList<Scenario>();
+
+    for (ServerEngineType serverEngineType : serverEngineTypes) {
+      List<Scenario> scenarios = createScenarios(serverEngineType);
+
+      if (!scenarios.isEmpty()) {
+        ProcessWrapper server = launchServer(serverEngineType);
+
+        try {
+          run(scenarios);
+        }
+        finally {
+          stopServer(server);
+        }
+
+        results.addAll(scenarios);
+      }
+    }
+
+    if (socketFactoryTypes.contains(MessageClient.SocketFactoryType.LOOPBACK)) {
+      List<Scenario> scenarios = createScenarios(null);
+
+      run(scenarios);
+      results.addAll(scenarios);
+    }
+
+    writeCsv(new File(output + ".csv"), results);
+    writeJson(new File(output + ".json"), results);
+
+    System.out.printf("Wrote the results of (%1$d) benchmarks to (%2$s.csv) and (%2$s.json).%n", results.size(),
+      output);
+  }
+
+  private static void customParseCommandLineArguments(final String... args) throws Exception {
+    parseCommandLineArguments(true, args);
+
+    for (int index = 0; index < args.length; index++) {
+      if ("engines".equalsIgnoreCase(args[index])) {
+        serverEngineTypes = new ArrayList<ServerEngineType>();
+
+        for (String code : args[++index].split(",")) {
+          serverEngineTypes.add(ServerEngineType.findBy(code.trim()));
+        }
+      }
+      else if ("socketFactoryTypes".equalsIgnoreCase(args[index])) {
+        socketFactoryTypes = new ArrayList<MessageClient.SocketFactoryType>();
+
+        for (int id : parseIntegers(args[++index])) {
+          socketFactoryTypes.add(MessageClient.SocketFactoryType.findBy(id));
+        }
+      }
+      else if ("messageThreads".equalsIgnoreCase(args[index])) {
+        messageThreads = parseIntegers(args[++index]);
+      }
+      else if ("payloadSizes".equalsIgnoreCase(args[index])) {
+        payloadSizes = parseIntegers(args[++index]);
+      }
+      else if ("poolSizes".equalsIgnoreCase(args[index])) {
+        poolSizes = parseIntegers(args[++index]);
+      }
+      else if ("messageCount".equalsIgnoreCase(args[index])) {
+        messageCount = Integer.parseInt(args[++index]);
+      }
+      else if ("trials".equalsIgnoreCase(args[index])) {
+        trials = Integer.parseInt(args[++index]);
+      }
+      else if ("warmupTrials".equalsIgnoreCase(args[index])) {
+        warmupTrials = Integer.parseInt(args[++index]);
+      }
+      else if ("trialTimeout".equalsIgnoreCase(args[index])) {
+        trialTimeout = TimeUnit.SECONDS.toMillis(Long.parseLong(args[++index]));
+      }
+      else if ("output".equalsIgnoreCase(args[index])) {
+        output = args[++index];
+      }
+      else if (getCommonCommandLineArgumentArity(args[index]) >= 0) {
+        index += getCommonCommandLineArgumentArity(args[index]);
+      }
+      else {
+        System.err.printf("Ignoring command line argument (%1$s)!%n", args[index]);
+      }
+    }
+  }
+
+  private static int[] parseIntegers(final String values) {
+    String[] tokens = values.split(",");
+    int[] integers = new int[tokens.length];
+
+    for (int index = 0; index < tokens.length; index++) {
+      integers[index] = Integer.parseInt(tokens[index].trim());
+    }
+
+    return integers;
+  }
+
+  /**
+   * Creates the Scenarios of the matrix that run against the server engine.
+   *
+   * @param serverEngineType the server engine launched for the Scenarios, or null for the loopback Scenarios, which
+   * run their own server in the client JVM.
+   * @return a List of Scenarios to run against the server engine.
+   */
+  protected static List<Scenario> createScenarios(final ServerEngineType serverEngineType) {
+    List<Scenario> scenarios = new ArrayList<Scenario>();
+
+    for (MessageClient.SocketFactoryType socketFactoryType : socketFactoryTypes) {
+      if (isCompatible(serverEngineType, socketFactoryType)) {
+        boolean pooled = isPooled(socketFactoryType);
+
+        for (int threads : messageThreads) {
+          for (int payloadSize : payloadSizes) {
+            for (int poolSize : (pooled ? poolSizes : new int[] { 0 })) {
+              scenarios.add(new Scenario(serverEngineType, socketFactoryType, threads, payloadSize, poolSize));
+            }
+          }
+        }
+      }
+    }
+
+    return scenarios;
+  }
+
+  protected static boolean isCompatible(final ServerEngineType serverEngineType,
+                                        final MessageClient.SocketFactoryType socketFactoryType) {
+
+    if (MessageClient.SocketFactoryType.LOOPBACK.equals(socketFactoryType)) {
+      return (serverEngineType == null);
+    }
+
+    return (serverEngineType != null && (ServerEngineType.SHARED_MEMORY.equals(serverEngineType)
+      == MessageClient.SocketFactoryType.SHARED_MEMORY.equals(socketFactoryType)));
+  }
+
+  protected static boolean isPooled(final MessageClient.SocketFactoryType socketFactoryType) {
+    switch (socketFactoryType) {
+      case POOLED_SOCKET:
+      case SHARED_MEMORY:
+      case LOOPBACK:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private static ProcessWrapper launchServer(final ServerEngineType serverEngineType) throws IOException {
+    final CountDownLatch ready = new CountDownLatch(1);
+
+    // the listener is registered before the server's output is read so the ready message cannot be missed
+    ProcessWrapper server = JavaProcessExecutor.launch(MessageServer.class, new ProcessInputStreamListener() {
+      @Override public void onInput(final String input) {
+        if (input.contains(SERVER_READY_MESSAGE)) {
+          ready.countDown();
+        }
+      }
+    }, "port", String.valueOf(getPort()), "engine", serverEngineType.getCode());
+
+    try {
+      if (!ready.await(SERVER_START_TIMEOUT, TimeUnit.MILLISECONDS)) {
+        server.stop();
+        throw new IOException(String.format("The Message Server using the (%1$s) engine failed to start!",
+          serverEngineType.getCode()));
+      }
+    }
+    catch (InterruptedException e) {
+      server.stop();
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for the Message Server to start!");
+    }
+
+    return server;
+  }
+
+  // the Message Server exits when 'exit' is entered on its standard input
+  private static void stopServer(final ProcessWrapper server) {
+    OutputStream in = server.getProcess().getOutputStream();
+
+    try {
+      in.write(String.format("exit%n").getBytes());
+      in.flush();
+      server.getProcess().waitFor(10, TimeUnit.SECONDS);
+    }
+    catch (IOException ignore) {
+    }
+    catch (InterruptedException ignore) {
+      Thread.currentThread().interrupt();
+    }
+    finally {
+      IOUtils.close(in);
+      server.stop();
+    }
+  }
+
+  private static void run(final List<Scenario> scenarios) throws InterruptedException {
+    for (Scenario scenario : scenarios) {
+      System.out.printf("Running benchmark %1$s...%n", scenario);
+
+      for (int trial = 0; trial < warmupTrials; trial++) {
+        runTrial(scenario);
+      }
+
+      for (int trial = 0; trial < trials; trial++) {
+        String resultLine = runTrial(scenario);
+
+        if (resultLine != null) {
+          scenario.results.add(parseResult(resultLine));
+          scenario.addLatencies(parseLatencies(resultLine));
+        }
+        else {
+          scenario.failures++;
+        }
+      }
+
+      System.out.printf("Benchmark %1$s completed (%2$d) trials at (%3$.0f) messages/sec on average.%n", scenario,
+        scenario.results.size(), scenario.getStatistics("throughput").getMean());
+    }
+  }
+
+  /**
+   * Runs a single trial of the Scenario in a forked MessageClient JVM.
+   *
+   * @param scenario the Scenario to run.
+   * @return the MessageClient's result line, or null if the trial failed.
+   */
+  protected static String runTrial(final Scenario scenario) throws InterruptedException {
+    final AtomicReference<String> resultLine = new AtomicReference<String>();
+    final CountDownLatch resultReceived = new CountDownLatch(1);
+
+    ProcessWrapper client = null;
+
+    boolean succeeded = false;
+
+    try {
+      client = JavaProcessExecutor.launch(MessageClient.class, new ProcessInputStreamListener() {
+        @Override public void onInput(final String input) {
+          if (input.startsWith(MessageClient.RESULT_PREFIX)) {
+            resultLine.set(input);
+            resultReceived.countDown();
+          }
+        }
+      }, scenario.toArguments());
+
+      if (client.getProcess().waitFor(trialTimeout, TimeUnit.MILLISECONDS) && client.exitValue() == 0) {
+        // the result line may still be in transit from the Thread reading the exited process's output
+        succeeded = resultReceived.await(5, TimeUnit.SECONDS);
+      }
+      else {
+        System.err.printf("The Message Client for benchmark %1$s failed or timed out; discarding the trial.%n",
+          scenario);
+      }
+    }
+    catch (IOException e) {
+      System.err.printf("Failed to launch the Message Client for benchmark %1$s: %2$s%n", scenario, e);
+    }
+    finally {
+      if (client != null) {
+        client.stop();
+      }
+    }
+
+    // a result line printed by a client that then failed or was stopped does not describe a completed trial
+    return (succeeded ? resultLine.get() : null);
+  }
+
+  protected static Map<String, Double> parseResult(final String resultLine) {
+    Map<String, Double> result = new HashMap<String, Double>();
+
+    for (String pair : resultLine.substring(MessageClient.RESULT_PREFIX.length()).trim().split("\\s+")) {
+      int index = pair.indexOf('=');
+
+      // Double.valueOf does not depend on the default Locale, just as the MessageClient formats in the root Locale
+      if (index > 0 && !HISTOGRAM_KEY.equals(pair.substring(0, index))) {
+        result.put(pair.substring(0, index), Double.valueOf(pair.substring(index + 1)));
+      }
+    }
+
+    return result;
+  }
+
+  // the encoded LatencyHistogram of the result, or null when the MessageClient did not measure latencies
+  protected static LatencyHistogram parseLatencies(final String resultLine) {
+    String prefix = (HISTOGRAM_KEY + "=");
+
+    for (String pair : resultLine.substring(MessageClient.RESULT_PREFIX.length()).trim().split("\\s+")) {
+      if (pair.startsWith(prefix)) {
+        return LatencyHistogram.decode(pair.substring(prefix.length()));
+      }
+    }
+
+    return null;
+  }
+
+  private static void writeCsv(final File file, final List<Scenario> scenarios) throws IOException {
+    PrintWriter writer = new PrintWriter(new FileWriter(file));
+
+    try {
+      writer.print("engine,socketFactoryType,messageThreads,payloadSize,poolSize,messageCount,trials,failures,"
+        + "throughputMean,throughputStddev,throughputMin,throughputMedian,throughputMax");
+
+      for (String key : LATENCY_KEYS) {
+        writer.printf(",%1$sMicros", key);
+      }
+
+      writer.println();
+
+      for (Scenario scenario : scenarios) {
+        Statistics throughput = scenario.getStatistics("throughput");
+
+        writer.printf(Locale.ROOT, "%1$s,%2$s,%3$d,%4$d,%5$s,%6$d,%7$d,%8$d,%9$.1f,%10$.1f,%11$.1f,%12$.1f,%13$.1f",
+          scenario.getEngineCode(), scenario.socketFactoryType.getCode(), scenario.messageThreads,
+            scenario.payloadSize, (scenario.poolSize > 0 ? String.valueOf(scenario.poolSize) : ""), messageCount,
+              scenario.results.size(), scenario.failures, throughput.getMean(), throughput.getStandardDeviation(),
+                throughput.getMin(), throughput.getPercentile(50.0d), throughput.getMax());
+
+        for (String key : LATENCY_KEYS) {
+          Double latency = scenario.getLatency(key);
+          writer.print(latency == null ? "," : String.format(Locale.ROOT, ",%1$.1f", latency));
+        }
+
+        writer.println();
+      }
+    }
+    finally {
+      writer.close();
+    }
+  }
+
+  private static void writeJson(final File file, final List<Scenario> scenarios) throws IOException {
+    PrintWriter writer = new PrintWriter(new FileWriter(file));
+
+    try {
+      writer.println("[");
+
+      for (int index = 0; index < scenarios.size(); index++) {
+        Scenario scenario = scenarios.get(index);
+        Statistics throughput = scenario.getStatistics("throughput");
+
+        writer.printf(Locale.ROOT, "  { \"engine\": \"%1$s\", \"socketFactoryType\": \"%2$s\","
+          + " \"messageThreads\": %3$d, \"payloadSize\": %4$d, \"poolSize\": %5$s, \"messageCount\": %6$d,"
+          + " \"trials\": %7$d, \"failures\": %8$d,%n", scenario.getEngineCode(), scenario.socketFactoryType.getCode(),
+            scenario.messageThreads, scenario.payloadSize,
+              (scenario.poolSize > 0 ? String.valueOf(scenario.poolSize) : "null"), messageCount,
+                scenario.results.size(), scenario.failures);
+
+        writer.printf(Locale.ROOT, "    \"throughput\": { \"mean\": %1$.1f, \"stddev\": %2$.1f, \"min\": %3$.1f,"
+          + " \"median\": %4$.1f, \"max\": %5$.1f },%n", throughput.getMean(), throughput.getStandardDeviation(),
+            throughput.getMin(), throughput.getPercentile(50.0d), throughput.getMax());
+
+        writer.print("    \"latencyMicros\": {");
+
+        for (int keyIndex = 0; keyIndex < LATENCY_KEYS.length; keyIndex++) {
+          Double latency = scenario.getLatency(LATENCY_KEYS[keyIndex]);
+
+          writer.printf("%1$s \"%2$s\": %3$s", (keyIndex > 0 ? "," : ""), LATENCY_KEYS[keyIndex],
+            (latency == null ? "null" : String.format(Locale.ROOT, "%1$.1f", latency)));
+        }
+
+        writer.printf(" } }%1$s%n", (index < scenarios.size() - 1 ? "," : ""));
+      }
+
+      writer.println("]");
+    }
+    finally {
+      writer.close();
+    }
+  }
+
+  /**
+   * The Scenario class is one combination of the benchmark matrix along with the results of its trials.
+   */
+  protected static final class Scenario {
+
+    private final int messageThreads;
+    private final int payloadSize;
+    private final int poolSize;
+
+    private int failures;
+
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    private final List<Map<String, Double>> results = new ArrayList<Map<String, Double>>();
+
+    private final MessageClient.SocketFactoryType socketFactoryType;
+
+    private final ServerEngineType serverEngineType;
+
+    protected Scenario(final ServerEngineType serverEngineType,
+                       final MessageClient.SocketFactoryType socketFactoryType,
+                       final int messageThreads,
+                       final int payloadSize,
+                       final int poolSize) {
+      this.serverEngineType = serverEngineType;
+      this.socketFactoryType = socketFactoryType;
+      this.messageThreads = messageThreads;
+      this.payloadSize = payloadSize;
+      this.poolSize = poolSize;
+    }
+
+    public String getEngineCode() {
+      return (serverEngineType != null ? serverEngineType.getCode() : "in-jvm");
+    }
+
+    protected void addLatencies(final LatencyHistogram trialLatencies) {
+      if (trialLatencies != null) {
+        latencies.add(trialLatencies);
+      }
+    }
+
+    /**
+     * Gets a latency percentile, or the maximum latency, of all the Scenario's successful trials in microseconds.
+     *
+     * @param key one of the LATENCY_KEYS, such as p99 or max.
+     * @return the latency in microseconds, or null if no trial measured latencies.
+     */
+    public Double getLatency(final String key) {
+      if (latencies.getCount() == 0) {
+        return null;
+      }
+
+      long nanos = ("max".equals(key) ? latencies.getMax()
+        : latencies.getValueAtPercentile(Double.parseDouble(key.substring(1))));
+
+      return (nanos / 1000.0d);
+    }
+
+    /**
+     * Gets the Statistics of a value of the MessageClient's result over the Scenario's successful trials.
+     *
+     * @param key the key of the value in the MessageClient's result.
+     * @return the Statistics of the value, which are empty if no trial reported the value.
+     */
+    public Statistics getStatistics(final String key) {
+      List<Double> values = new ArrayList<Double>(results.size());
+
+      for (Map<String, Double> result : results) {
+        if (result.containsKey(key)) {
+          values.add(result.get(key));
+        }
+      }
+
+      return new Statistics(values);
+    }
+
+    public String[] toArguments() {
+      List<String> arguments = new ArrayList<String>(Arrays.asList("port", String.valueOf(getPort()),
+        "socketFactoryType", String.valueOf(socketFactoryType.getId()), "messageThreads",
+          String.valueOf(messageThreads), "messageCount", String.valueOf(messageCount), "payloadSize",
+            String.valueOf(payloadSize)));
+
+      if (poolSize > 0) {
+        arguments.add("poolSize");
+        arguments.add(String.valueOf(poolSize));
+      }
+
+      if (getServerAddress() != null) {
+        arguments.add("server");
+        arguments.add(getServerAddress().getHostAddress());
+      }
+
+      return arguments.toArray(new String[arguments.size()]);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("{ engine = %1$s, socketFactoryType = %2$s, messageThreads = %3$d, payloadSize = %4$d,"
+        + " poolSize = %5$s }", getEngineCode(), socketFactoryType.getCode(), messageThreads, payloadSize,
+          (poolSize > 0 ? String.valueOf(poolSize) : "n/a"));
+    }
+  }
+
+  /**
+   * The Statistics class summarizes the values measured over the trials of a Scenario.
+   */
+  protected static final class Statistics {
+
+    private final double[] values;
+
+    protected Statistics(final List<Double> values) {
+      this.values = new double[values.size()];
+
+      for (int index = 0; index < this.values.length; index++) {
+        this.values[index] = values.get(index);
+      }
+
+      Arrays.sort(this.values);
+    }
+
+    public boolean isEmpty() {
+      return (values.length == 0);
+    }
+
+    public double getMax() {
+      return (isEmpty() ? 0.0d : values[values.length - 1]);
+    }
+
+    public double getMean() {
+      double sum = 0.0d;
+
+      for (double value : values) {
+        sum += value;
+      }
+
+      return (isEmpty() ? 0.0d : sum / values.length);
+    }
+
+    public double getMin() {
+      return (isEmpty() ? 0.0d : values[0]);
+    }
+
+    /**
+     * Gets the value at the percentile, interpolating linearly between the closest ranked values.
+     *
+     * @param percentile the percentile, between 0.0 and 100.0.
+     * @return the value at the percentile, or 0.0 if there are no values.
+     */
+    public double getPercentile(final double percentile) {
+      if (isEmpty()) {
+        return 0.0d;
+      }
+
+      double rank = (Math.min(Math.max(percentile, 0.0d), 100.0d) / 100.0d * (values.length - 1));
+      int lowerIndex = (int) Math.floor(rank);
+      int upperIndex = (int) Math.ceil(rank);
+
+      return (values[lowerIndex] + (values[upperIndex] - values[lowerIndex]) * (rank - lowerIndex));
+    }
+
+    /**
+     * Gets the sample standard deviation of the values.
+     *
+     * @return the sample standard deviation, or 0.0 if there are fewer than two values.
+     */
+    public double getStandardDeviation() {
+      if (values.length < 2) {
+        return 0.0d;
+      }
+
+      double mean = getMean();
+      double sumOfSquares = 0.0d;
+
+      for (double value : values) {
+        sumOfSquares += ((value - mean) * (value - mean));
+      }
+
+      return Math.sqrt(sumOfSquares / (values.length - 1));
+    }
+  }
+
+}
@@ -16,17 +16,49 @@
 
 package org.codeprimate.net.sample;
 
-import java.io.DataInput;
-import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
 import java.util.Random;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
+import org.codeprimate.lang.AllocationMeter;
+import org.codeprimate.lang.LatencyHistogram;
 import org.codeprimate.net.AbstractClientServerSupport;
+import org.codeprimate.net.AsyncConnection;
+import org.codeprimate.net.BalancedSocketPool;
+import org.codeprimate.net.BufferPool;
+import org.codeprimate.net.FrameCodec;
+import org.codeprimate.net.FrameStream;
+import org.codeprimate.net.SocketPool;
 import org.codeprimate.net.SocketUtils;
+import org.codeprimate.net.TrafficCapture;
+import org.codeprimate.net.TrafficRecorder;
 
 /**
  * Created by IntelliJ IDEA. User: jblum Date: 11/14/11 Time: 3:58 PM To change this template use File | Settings | File
@@ -39,34 +71,189 @@ public class MessageClient extends AbstractClientServerSupport {
   private static final int DEFAULT_PAYLOAD_SIZE = 10000;
   private static final int DEFAULT_POOl_SIZE = 2;
 
+  private static final long DEFAULT_DURATION = 10l;
+  private static final long DEFAULT_WARMUP = 2l;
+
+  // prefixes the single line of key=value pairs summarizing a run, which is parsed by the MessageBenchmark
+  static final String RESULT_PREFIX = "MessageClient result:";
+
+  // waits shorter than this are spun, since parking overshoots by tens of microseconds
+  private static final long PARK_THRESHOLD = TimeUnit.MICROSECONDS.toNanos(100);
+
+  private static int ioThreads = Runtime.getRuntime().availableProcessors();
   private static int messageCount = DEFAULT_MESSAGE_COUNT;
   private static int messageThreads = DEFAULT_MESSAGE_THREADS;
   private static int payloadSize = DEFAULT_PAYLOAD_SIZE;
+  private static int minPoolSize;
   private static int poolSize = DEFAULT_POOl_SIZE;
+  private static int maxFailures = BalancedSocketPool.DEFAULT_MAX_FAILURES;
+  private static int rate;
+  private static int subscriberCount;
+  private static int window;
+
+  private static int[] windowSweep;
+
+  private static long borrowTimeout = SocketPool.DEFAULT_BORROW_TIMEOUT;
+  private static long duration = DEFAULT_DURATION;
+  private static long ejectionTime = BalancedSocketPool.DEFAULT_EJECTION_TIME;
+  private static long idleTimeout = SocketPool.DEFAULT_IDLE_TIMEOUT;
+  private static long warmup = DEFAULT_WARMUP;
+
+  // the replay speed as a multiple of the captured rate; 0 replays the capture as fast as possible
+  private static double speed = 1.0d;
 
-  private static byte[] payload;
+  private static final BufferPool BUFFER_POOL = new BufferPool(BufferPool.DEFAULT_BUFFER_SIZE,
+    BufferPool.DEFAULT_MAX_POOLED_BUFFERS, false);
+
+  private static final FrameCodec FRAME_CODEC = new FrameCodec();
+
+  private static volatile AllocationMeter allocationMeter = new AllocationMeter();
+
+  private static BalancedSocketPool.BalancePolicy balancePolicy = BalancedSocketPool.BalancePolicy.ROUND_ROBIN;
+
+  private static ByteBuffer payload;
+
+  private static String captureFile;
+  private static String replayFile;
+  private static String servers;
 
   private static SocketFactory socketFactory;
 
   private static SocketFactoryType socketFactoryType = SocketFactoryType.NEW_SOCKET;
 
+  private static TrafficRecorder recorder;
+
+  // the messages acknowledged by the server during a run, counted by the message client Threads
+  private static final LongAdder messagesAcked = new LongAdder();
+
   public static void main(final String... args) throws Exception {
     init(args);
 
+    try {
+      if (replayFile != null) {
+        runReplay();
+      }
+      else if (SocketFactoryType.ASYNC.equals(socketFactoryType)) {
+        runAsync();
+      }
+      else if (rate > 0) {
+        runOpenLoop();
+      }
+      else if (windowSweep != null) {
+        long[] allocations = new long[windowSweep.length];
+        long[] durations = new long[windowSweep.length];
+
+        for (int index = 0; index < windowSweep.length; index++) {
+          durations[index] = run(windowSweep[index]);
+          allocations[index] = allocationMeter.getAllocatedBytesPerOperation();
+        }
+
+        System.out.printf("%n%1$8s %2$14s %3$10s %4$14s%n", "window", "messages/sec", "MB/sec", "bytes/message");
+
+        for (int index = 0; index < windowSweep.length; index++) {
+          double seconds = (Math.max(durations[index], 1) / 1000.0d);
+          double messages = ((double) messageThreads * messageCount);
+
+          System.out.printf("%1$8d %2$14.0f %3$10.2f %4$14d%n", windowSweep[index], (messages / seconds),
+            (messages * payloadSize / seconds / 1048576.0d), allocations[index]);
+        }
+      }
+      else {
+        run(window);
+      }
+    }
+    catch (IOException e) {
+      // no result is printed for a run in which any message client failed
+      System.err.printf("The message client run failed: %1$s%n", e);
+      System.exit(1);
+    }
+
+    if (recorder != null) {
+      recorder.close();
+      System.out.printf("Captured (%1$d) messages of (%2$d) bytes to (%3$s).%n", recorder.getRecordCount(),
+        recorder.getRecordedBytes(), recorder.getFile());
+    }
+
+    if (SocketFactoryType.LOOPBACK.equals(socketFactoryType)) {
+      // the pooled connections must be closed before the in-JVM server can drain its handler Threads
+      socketFactory.destroy();
+      setRunning(false);
+    }
+  }
+
+  private static long run(final int window) throws IOException, InterruptedException {
+    allocationMeter = new AllocationMeter();
+    messagesAcked.reset();
+
+    final LatencyHistogram latencies = new LatencyHistogram();
+
+    final MessageSubscribers subscribers = (subscriberCount > 0 ? MessageSubscribers.subscribe(subscriberCount)
+      : null);
+
     final long t0 = System.currentTimeMillis();
 
-    ThreadCollection.spawn(messageThreads, createMessageClientRunnable(), "Message Client Thread").join();
+    ThreadCollection.spawn(messageThreads, (window > 0 ? createPipelinedMessageClientRunnable(window)
+      : createMessageClientRunnable(latencies)), "Message Client Thread").joinOrFail();
 
     final long t1 = System.currentTimeMillis();
 
-    System.out.printf("Ran (%1$d) messaging client each sending (%2$d) messages having a payload of (%3$d) bytes using (%4$s) socket connections in (%5$d) milliseconds.%n",
-      messageThreads, messageCount, payloadSize, socketFactoryType.equals(SocketFactoryType.NEW_SOCKET) ? "unlimited" : String.valueOf(poolSize), (t1 - t0));
+    if (subscribers != null) {
+      long published = ((long) messageThreads * messageCount);
+      long received = subscribers.awaitMessages(published * subscriberCount, 1000l);
+
+      System.out.printf("(%1$d) subscribers received (%2$d) of the (%3$d) messages published to them in (%4$d)"
+        + " milliseconds.%n", subscriberCount, received, (published * subscriberCount),
+          (System.currentTimeMillis() - t0));
+
+      subscribers.close();
+    }
+
+    if (window > 0) {
+      System.out.printf("Ran (%1$d) pipelined messaging client each sending (%2$d) messages having a payload of (%3$d) bytes with a window of (%4$d) messages in (%5$d) milliseconds.%n",
+        messageThreads, messageCount, payloadSize, window, (t1 - t0));
+    }
+    else {
+      System.out.printf("Ran (%1$d) messaging client each sending (%2$d) messages having a payload of (%3$d) bytes using (%4$s) socket connections in (%5$d) milliseconds.%n",
+        messageThreads, messageCount, payloadSize, socketFactoryType.equals(SocketFactoryType.NEW_SOCKET) ? "unlimited" : String.valueOf(poolSize), (t1 - t0));
+    }
+
+    System.out.printf("Message client allocation: %1$s.%n", allocationMeter);
+    printResult(messagesAcked.sum(), (t1 - t0) / 1000.0d, latencies);
+
+    return (t1 - t0);
+  }
+
+  /**
+   * Prints the result of a run on a single line of key=value pairs following the RESULT_PREFIX; latencies are in
+   * microseconds and omitted when the run did not measure the latency of individual messages, and the encoded
+   * LatencyHistogram lets the MessageBenchmark merge the latencies of several runs.  Values are formatted in the root
+   * Locale so that the MessageBenchmark parses them the same way whatever the default Locale.
+   */
+  private static void printResult(final long messages, final double seconds, final LatencyHistogram latencies) {
+    StringBuilder result = new StringBuilder(RESULT_PREFIX);
+
+    result.append(String.format(Locale.ROOT, " messages=%1$d seconds=%2$.3f throughput=%3$.1f", messages, seconds,
+      (messages / Math.max(seconds, 0.001d))));
+
+    if (latencies.getCount() > 0) {
+      result.append(String.format(Locale.ROOT, " p50=%1$.1f p90=%2$.1f p99=%3$.1f p99.9=%4$.1f max=%5$.1f",
+        toMicros(latencies.getValueAtPercentile(50.0d)), toMicros(latencies.getValueAtPercentile(90.0d)),
+          toMicros(latencies.getValueAtPercentile(99.0d)), toMicros(latencies.getValueAtPercentile(99.9d)),
+            toMicros(latencies.getMax())));
+      result.append(" histogram=").append(latencies.encode());
+    }
+
+    System.out.println(result);
   }
 
   private static void init(final String... args) throws Exception {
     customParseCommandLineArguments(args);
     initPayload();
     initSocketFactory();
+
+    if (captureFile != null) {
+      recorder = new TrafficRecorder(new File(captureFile));
+    }
   }
 
   private static void customParseCommandLineArguments(final String... args) throws Exception {
@@ -85,29 +272,476 @@ public class MessageClient extends AbstractClientServerSupport {
       else if ("poolSize".equalsIgnoreCase(args[index])) {
         poolSize = Integer.parseInt(args[++index]);
       }
+      else if ("ioThreads".equalsIgnoreCase(args[index])) {
+        ioThreads = Integer.parseInt(args[++index]);
+      }
+      else if ("minPoolSize".equalsIgnoreCase(args[index])) {
+        minPoolSize = Integer.parseInt(args[++index]);
+      }
+      else if ("borrowTimeout".equalsIgnoreCase(args[index])) {
+        borrowTimeout = Long.parseLong(args[++index]);
+      }
+      else if ("idleTimeout".equalsIgnoreCase(args[index])) {
+        idleTimeout = Long.parseLong(args[++index]);
+      }
       else if ("socketFactoryType".equalsIgnoreCase(args[index])) {
         socketFactoryType = SocketFactoryType.findBy(Integer.parseInt(args[++index]));
       }
+      else if ("rate".equalsIgnoreCase(args[index])) {
+        rate = Integer.parseInt(args[++index]);
+      }
+      else if ("duration".equalsIgnoreCase(args[index])) {
+        duration = Long.parseLong(args[++index]);
+      }
+      else if ("warmup".equalsIgnoreCase(args[index])) {
+        warmup = Long.parseLong(args[++index]);
+      }
+      else if ("servers".equalsIgnoreCase(args[index])) {
+        servers = args[++index];
+      }
+      else if ("balancePolicy".equalsIgnoreCase(args[index])) {
+        balancePolicy = BalancedSocketPool.BalancePolicy.findBy(args[++index]);
+      }
+      else if ("maxFailures".equalsIgnoreCase(args[index])) {
+        maxFailures = Integer.parseInt(args[++index]);
+      }
+      else if ("ejectionTime".equalsIgnoreCase(args[index])) {
+        ejectionTime = Long.parseLong(args[++index]);
+      }
+      else if ("capture".equalsIgnoreCase(args[index])) {
+        captureFile = args[++index];
+      }
+      else if ("replay".equalsIgnoreCase(args[index])) {
+        replayFile = args[++index];
+      }
+      else if ("speed".equalsIgnoreCase(args[index])) {
+        String value = args[++index];
+        speed = ("max".equalsIgnoreCase(value) ? 0.0d : Double.parseDouble(value));
+      }
+      else if ("subscribers".equalsIgnoreCase(args[index])) {
+        subscriberCount = Integer.parseInt(args[++index]);
+      }
+      else if ("window".equalsIgnoreCase(args[index])) {
+        window = Integer.parseInt(args[++index]);
+      }
+      else if ("windowSweep".equalsIgnoreCase(args[index])) {
+        String[] windows = args[++index].split(",");
+
+        windowSweep = new int[windows.length];
+
+        for (int windowIndex = 0; windowIndex < windows.length; windowIndex++) {
+          windowSweep[windowIndex] = Integer.parseInt(windows[windowIndex].trim());
+        }
+      }
+      else if (getCommonCommandLineArgumentArity(args[index]) >= 0) {
+        index += getCommonCommandLineArgumentArity(args[index]);
+      }
       else {
         System.err.printf("Ignoring command line argument (%1$s)!%n", args[index]);
       }
     }
   }
 
+  /**
+   * Runs an open-loop load, sending messages at the target rate from a fixed schedule regardless of how quickly
+   * the server responds, and prints the latency percentiles and the achieved throughput of the measurement phase.
+   * The latency of each message is measured from the time it was scheduled to be sent, not from the time it was
+   * actually sent, so a stalled server is charged for every message the stall delayed (avoiding coordinated omission).
+   */
+  private static void runOpenLoop() throws IOException, InterruptedException {
+    final LatencyHistogram latencies = new LatencyHistogram();
+
+    final AtomicLong lastAckTime = new AtomicLong(0l);
+    final AtomicLong maxSendLag = new AtomicLong(0l);
+
+    final long startTime = (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100));
+    final long measurementStartTime = (startTime + TimeUnit.SECONDS.toNanos(warmup));
+    final long endTime = (measurementStartTime + TimeUnit.SECONDS.toNanos(duration));
+
+    System.out.printf("Running open-loop load of (%1$d) messages/sec having a payload of (%2$d) bytes over (%3$d)"
+      + " connections with a (%4$d) second warm-up and a (%5$d) second measurement...%n", rate, payloadSize,
+        messageThreads, warmup, duration);
+
+    ThreadCollection.spawn(messageThreads, createOpenLoopMessageClientRunnable(latencies, lastAckTime, maxSendLag,
+      startTime, measurementStartTime, endTime), "Message Client Thread").joinOrFail();
+
+    // messages still queued at the end of the schedule are acknowledged late, lowering the achieved throughput
+    double seconds = ((Math.max(lastAckTime.get(), endTime) - measurementStartTime) / 1000000000.0d);
+
+    System.out.printf("%nLatency (microseconds) from the scheduled send time of (%1$d) messages:%n",
+      latencies.getCount());
+    System.out.printf("%1$10s %2$10s %3$10s %4$10s %5$10s%n", "p50", "p90", "p99", "p99.9", "max");
+    System.out.printf("%1$10.1f %2$10.1f %3$10.1f %4$10.1f %5$10.1f%n", toMicros(latencies.getValueAtPercentile(50.0d)),
+      toMicros(latencies.getValueAtPercentile(90.0d)), toMicros(latencies.getValueAtPercentile(99.0d)),
+        toMicros(latencies.getValueAtPercentile(99.9d)), toMicros(latencies.getMax()));
+    System.out.printf("Achieved throughput (%1$.0f) messages/sec of the target (%2$d) messages/sec;"
+      + " the client fell behind its schedule by at most (%3$.1f) microseconds.%n", (latencies.getCount() / seconds),
+        rate, toMicros(maxSendLag.get()));
+    printResult(latencies.getCount(), seconds, latencies);
+  }
+
+  /**
+   * Replays the messages of a capture file, written with the capture option, at the captured rate multiplied by the
+   * speed option, or as fast as possible with a speed of max, and prints the latency percentiles and the achieved
+   * throughput.  The messages are dealt in turn to (messageThreads) pipelined connections, each reading its payloads
+   * straight from the memory-mapped capture, so the replay is not slowed by reading or parsing the capture file.
+   */
+  private static void runReplay() throws IOException, InterruptedException {
+    final TrafficCapture capture = TrafficCapture.open(new File(replayFile));
+
+    final LatencyHistogram latencies = new LatencyHistogram();
+
+    final AtomicLong lastAckTime = new AtomicLong(0l);
+
+    final long startTime = (System.nanoTime() + (speed > 0.0d ? TimeUnit.MILLISECONDS.toNanos(100) : 0l));
+
+    System.out.printf("Replaying (%1$d) messages of (%2$d) bytes captured over (%3$d) milliseconds at %4$s over (%5$d)"
+      + " connections...%n", capture.getRecordCount(), capture.getTotalBytes(),
+        capture.getDuration(TimeUnit.MILLISECONDS), (speed > 0.0d ? String.format("(%1$s)x speed", speed)
+          : "max speed"), messageThreads);
+
+    ThreadCollection.spawn(messageThreads, createReplayMessageClientRunnable(capture, latencies, lastAckTime,
+      startTime), "Message Replay Thread").joinOrFail();
+
+    double seconds = (Math.max(lastAckTime.get() - startTime, 1l) / 1000000000.0d);
+
+    System.out.printf("%nLatency (microseconds) of (%1$d) replayed messages:%n", latencies.getCount());
+    System.out.printf("%1$10s %2$10s %3$10s %4$10s %5$10s%n", "p50", "p90", "p99", "p99.9", "max");
+    System.out.printf("%1$10.1f %2$10.1f %3$10.1f %4$10.1f %5$10.1f%n", toMicros(latencies.getValueAtPercentile(50.0d)),
+      toMicros(latencies.getValueAtPercentile(90.0d)), toMicros(latencies.getValueAtPercentile(99.0d)),
+        toMicros(latencies.getValueAtPercentile(99.9d)), toMicros(latencies.getMax()));
+    System.out.printf("Replayed (%1$.0f) messages/sec in (%2$.3f) seconds.%n", (latencies.getCount() / seconds),
+      seconds);
+    printResult(latencies.getCount(), seconds, latencies);
+  }
+
+  /**
+   * Creates a Runnable that replays every (messageThreads)th message of the capture over a dedicated pipelined
+   * connection, while an ack reader Thread records the latency of each acknowledged message.  The latency is measured
+   * from the time the message was scheduled to be sent, or from the time it was sent when replaying as fast as
+   * possible.
+   */
+  protected static Runnable createReplayMessageClientRunnable(final TrafficCapture capture,
+                                                              final LatencyHistogram latencies,
+                                                              final AtomicLong lastAckTime, final long startTime) {
+
+    final AtomicInteger connectionIndex = new AtomicInteger(0);
+
+    return new Runnable() {
+      public void run() {
+        final int first = connectionIndex.getAndIncrement();
+        final int count = ((capture.getRecordCount() - first + messageThreads - 1) / messageThreads);
+
+        // the time from which the latency of each message is measured, indexed by its sequence number less 1
+        final AtomicLongArray sendTimes = new AtomicLongArray(count);
+
+        ByteBuffer message = ByteBuffer.allocate(MessageServer.SEQUENCE_SIZE + capture.getMaxLength());
+        ByteBuffer view = capture.newView();
+
+        FrameStream frameStream = null;
+
+        try {
+          Socket clientSocket = openClientSocket(socketFactoryType);
+
+          frameStream = new FrameStream(clientSocket, FRAME_CODEC, BUFFER_POOL);
+          frameStream.writeFrame(MessageServer.encodeSequence(MessageServer.PIPELINE_HELLO));
+          frameStream.flush();
+
+          final FrameStream ackStream = new FrameStream(clientSocket, FRAME_CODEC, BUFFER_POOL);
+
+          ThreadCollection ackReader = ThreadCollection.spawn(1, new Runnable() {
+            public void run() {
+              try {
+                int acked = 0;
+                long now = 0;
+
+                for (ByteBuffer ack = ackStream.readFrame(); ack != null; ack = ackStream.readFrame()) {
+                  long sequence = ack.getLong(ack.position());
+
+                  now = System.nanoTime();
+
+                  while (acked < sequence) {
+                    latencies.record(now - sendTimes.get(acked++));
+                  }
+                }
+
+                if (acked < count) {
+                  throw new EOFException(String.format(
+                    "The server closed the connection with (%1$d) messages unacknowledged!", (count - acked)));
+                }
+
+                updateMax(lastAckTime, now);
+              }
+              catch (IOException e) {
+                throw new RuntimeException(e);
+              }
+              finally {
+                ackStream.release();
+              }
+            }
+          }, String.format("%1$s Ack Reader", Thread.currentThread().getName()));
+
+          for (int sent = 0; sent < count; sent++) {
+            int index = (first + sent * messageThreads);
+
+            long sendTime = System.nanoTime();
+
+            if (speed > 0.0d) {
+              long scheduledTime = (startTime + (long) (capture.getTime(index) / speed));
+
+              for (long delay = (scheduledTime - sendTime); delay > 0; delay = (scheduledTime - System.nanoTime())) {
+                if (delay > PARK_THRESHOLD) {
+                  LockSupport.parkNanos(delay - PARK_THRESHOLD);
+                }
+              }
+
+              sendTime = scheduledTime;
+            }
+
+            sendTimes.lazySet(sent, sendTime);
+            ((Buffer) message).clear();
+            message.putLong(sent + 1).put(capture.getPayload(index, view));
+            ((Buffer) message).flip();
+            frameStream.writeFrame(message);
+            frameStream.flush();
+          }
+
+          // the server closes the connection once it has read and acknowledged every message
+          clientSocket.shutdownOutput();
+          ackReader.joinOrFail();
+        }
+        catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        finally {
+          if (frameStream != null) {
+            frameStream.close();
+          }
+        }
+      }
+    };
+  }
+
+  /**
+   * Runs (messageThreads) logical clients, each sending its messages stop-and-wait over its own AsyncConnection,
+   * multiplexed over an AsynchronousChannelGroup of (ioThreads) Threads, and prints the throughput and the latency
+   * percentiles of all messages.  Since no Thread is blocked per client, the number of clients is bounded by the
+   * file descriptor limit rather than the number of Threads the JVM can run.
+   */
+  private static void runAsync() throws Exception {
+    final LatencyHistogram latencies = new LatencyHistogram();
+
+    AsynchronousChannelGroup group = AsynchronousChannelGroup.withFixedThreadPool(ioThreads, new ThreadFactory() {
+      private final AtomicInteger threadNumber = new AtomicInteger(0);
+
+      public Thread newThread(final Runnable runnable) {
+        Thread thread = new Thread(runnable, "Async Message Client Thread " + threadNumber.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+
+    try {
+      SocketAddress address = new InetSocketAddress(resolveServerAddress(), getPort());
+
+      CompletableFuture<?>[] clients = new CompletableFuture<?>[messageThreads];
+
+      final long t0 = System.currentTimeMillis();
+
+      for (int index = 0; index < clients.length; index++) {
+        clients[index] = AsyncMessageClient.start(group, address, latencies);
+      }
+
+      try {
+        CompletableFuture.allOf(clients).get();
+      }
+      catch (ExecutionException e) {
+        throw new IOException("An asynchronous messaging client failed!", e.getCause());
+      }
+
+      final long t1 = System.currentTimeMillis();
+
+      System.out.printf("Ran (%1$d) asynchronous messaging clients over (%2$d) I/O Threads each sending (%3$d)"
+        + " messages having a payload of (%4$d) bytes in (%5$d) milliseconds; (%6$.0f) messages/sec.%n",
+          messageThreads, ioThreads, messageCount, payloadSize, (t1 - t0),
+            (latencies.getCount() * 1000.0d / Math.max(t1 - t0, 1)));
+      System.out.printf("%nLatency (microseconds) of (%1$d) messages:%n", latencies.getCount());
+      System.out.printf("%1$10s %2$10s %3$10s %4$10s %5$10s%n", "p50", "p90", "p99", "p99.9", "max");
+      System.out.printf("%1$10.1f %2$10.1f %3$10.1f %4$10.1f %5$10.1f%n",
+        toMicros(latencies.getValueAtPercentile(50.0d)), toMicros(latencies.getValueAtPercentile(90.0d)),
+          toMicros(latencies.getValueAtPercentile(99.0d)), toMicros(latencies.getValueAtPercentile(99.9d)),
+            toMicros(latencies.getMax()));
+      printResult(latencies.getCount(), (t1 - t0) / 1000.0d, latencies);
+    }
+    finally {
+      group.shutdownNow();
+      group.awaitTermination(5, TimeUnit.SECONDS);
+    }
+  }
+
+  // records the payload of a message sent when the capture option was given
+  private static void capture(final ByteBuffer payload) throws IOException {
+    if (recorder != null) {
+      recorder.record(payload);
+    }
+  }
+
+  private static double toMicros(final long nanos) {
+    return (nanos / 1000.0d);
+  }
+
+  private static void updateMax(final AtomicLong max, final long value) {
+    for (long currentMax = max.get(); value > currentMax; currentMax = max.get()) {
+      if (max.compareAndSet(currentMax, value)) {
+        break;
+      }
+    }
+  }
+
+  /**
+   * Creates a Runnable that sends pipelined messages over a dedicated connection at its share of the target rate,
+   * while an ack reader Thread records the latency of each acknowledged message scheduled during the measurement
+   * phase.  The schedules of the connections are staggered so their messages are spread evenly in time.
+   */
+  protected static Runnable createOpenLoopMessageClientRunnable(final LatencyHistogram latencies,
+                                                                final AtomicLong lastAckTime,
+                                                                final AtomicLong maxSendLag, final long startTime,
+                                                                final long measurementStartTime, final long endTime) {
+
+    final AtomicInteger connectionIndex = new AtomicInteger(0);
+
+    final double interval = (TimeUnit.SECONDS.toNanos(messageThreads) / (double) rate);
+
+    return new Runnable() {
+      public void run() {
+        final long connectionStartTime = (startTime
+          + (long) (interval * connectionIndex.getAndIncrement() / messageThreads));
+
+        ByteBuffer message = ByteBuffer.allocate(MessageServer.SEQUENCE_SIZE + payloadSize);
+
+        message.putLong(0l).put(payload.duplicate());
+        ((Buffer) message).flip();
+
+        FrameStream frameStream = null;
+
+        try {
+          Socket clientSocket = openClientSocket(socketFactoryType);
+
+          frameStream = new FrameStream(clientSocket, FRAME_CODEC, BUFFER_POOL);
+          frameStream.writeFrame(MessageServer.encodeSequence(MessageServer.PIPELINE_HELLO));
+          frameStream.flush();
+
+          final FrameStream ackStream = new FrameStream(clientSocket, FRAME_CODEC, BUFFER_POOL);
+
+          final AtomicLong ackedCount = new AtomicLong(0l);
+
+          ThreadCollection ackReader = ThreadCollection.spawn(1, new Runnable() {
+            public void run() {
+              try {
+                long acked = 0;
+                long now = 0;
+
+                for (ByteBuffer ack = ackStream.readFrame(); ack != null; ack = ackStream.readFrame()) {
+                  long sequence = ack.getLong(ack.position());
+
+                  now = System.nanoTime();
+
+                  while (acked < sequence) {
+                    long scheduledTime = (connectionStartTime + (long) (interval * acked++));
+
+                    if (scheduledTime >= measurementStartTime) {
+                      latencies.record(now - scheduledTime);
+                    }
+                  }
+                }
+
+                ackedCount.set(acked);
+                updateMax(lastAckTime, now);
+              }
+              catch (IOException e) {
+                throw new RuntimeException(e);
+              }
+              finally {
+                ackStream.release();
+              }
+            }
+          }, String.format("%1$s Ack Reader", Thread.currentThread().getName()));
+
+          long maxLag = 0;
+          long sent = 0;
+
+          for (long scheduledTime = connectionStartTime; scheduledTime < endTime;
+               scheduledTime = (connectionStartTime + (long) (interval * sent))) {
+
+            for (long delay = (scheduledTime - System.nanoTime()); delay > 0;
+                 delay = (scheduledTime - System.nanoTime())) {
+              if (delay > PARK_THRESHOLD) {
+                LockSupport.parkNanos(delay - PARK_THRESHOLD);
+              }
+            }
+
+            message.putLong(0, ++sent);
+            frameStream.writeFrame(message);
+            frameStream.flush();
+            capture(payload);
+
+            if (scheduledTime >= measurementStartTime) {
+              maxLag = Math.max(maxLag, System.nanoTime() - scheduledTime);
+            }
+          }
+
+          updateMax(maxSendLag, maxLag);
+
+          // the server closes the connection once it has read and acknowledged every message
+          clientSocket.shutdownOutput();
+          ackReader.joinOrFail();
+
+          if (ackedCount.get() < sent) {
+            throw new EOFException(String.format(
+              "The server closed the connection with (%1$d) messages unacknowledged!", (sent - ackedCount.get())));
+          }
+        }
+        catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        finally {
+          if (frameStream != null) {
+            frameStream.close();
+          }
+        }
+      }
+    };
+  }
+
   protected static void initPayload() {
     Random random = new Random(Calendar.getInstance().getTimeInMillis());
 
-    payload = new byte[payloadSize];
+    byte[] payload = new byte[payloadSize];
 
     for (int index = 0; index < payload.length; index++) {
       payload[index] = (byte) random.nextInt(64);
     }
+
+    MessageClient.payload = ByteBuffer.wrap(payload);
   }
 
   private static void initSocketFactory() throws IOException {
     switch (socketFactoryType) {
+      case LOOPBACK:
+        startLoopbackServer("Message Server", MessageServer.createClientRequestHandler());
+        // falls through to the pooled socket factory, which opens LoopbackSockets to the server just started
       case POOLED_SOCKET:
-        socketFactory = new PooledSocketFactory(poolSize);
+      case SHARED_MEMORY:
+        socketFactory = new PooledSocketFactory(socketFactoryType, minPoolSize, poolSize);
+        break;
+      case BALANCED:
+        socketFactory = new BalancedSocketFactory(parseServerAddresses(servers), minPoolSize, poolSize);
         break;
       case NEW_SOCKET:
       default:
@@ -121,39 +755,358 @@ public class MessageClient extends AbstractClientServerSupport {
     });
   }
 
-  protected static Runnable createMessageClientRunnable() {
+  /**
+   * Parses a comma-separated list of server addresses, each a host name or IP address optionally followed by a colon
+   * and the port; addresses without a port use the port option.
+   */
+  protected static List<InetSocketAddress> parseServerAddresses(final String servers) throws IOException {
+    List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+
+    if (servers == null) {
+      addresses.add(new InetSocketAddress(resolveServerAddress(), getPort()));
+    }
+    else {
+      for (String server : servers.split(",")) {
+        int colonIndex = server.lastIndexOf(':');
+
+        String host = (colonIndex < 0 ? server : server.substring(0, colonIndex)).trim();
+        int port = (colonIndex < 0 ? getPort() : Integer.parseInt(server.substring(colonIndex + 1).trim()));
+
+        addresses.add(new InetSocketAddress(InetAddress.getByName(host), port));
+      }
+    }
+
+    return addresses;
+  }
+
+  protected static Socket openClientSocket(final SocketFactoryType socketFactoryType) throws IOException {
+    switch (socketFactoryType) {
+      case LOOPBACK:
+        return openLoopbackSocket();
+      case SHARED_MEMORY:
+        return openSharedMemorySocket();
+      default:
+        return openSocket(getServerAddress(), getPort(), true);
+    }
+  }
+
+  protected static Runnable createMessageClientRunnable(final LatencyHistogram latencies) {
     return new Runnable() {
       public void run() {
         int logCount = Math.max(messageCount / 10, 1);
 
+        allocationMeter.mark();
+
         try {
           for (int count = 0; count < messageCount; count++) {
+            long sendTime = System.nanoTime();
+
             Socket clientSocket = socketFactory.getSocket();
 
-            DataInput in = getInputStream(clientSocket);
-            DataOutput out = getOutputStream(clientSocket);
+            FrameStream frameStream = new FrameStream(clientSocket, FRAME_CODEC, BUFFER_POOL);
 
-            out.writeInt(payloadSize);
-            out.write(payload);
-            in.readByte();
+            try {
+              frameStream.writeFrame(payload);
+              frameStream.flush();
+              capture(payload);
+
+              if (frameStream.readByte() < 0) {
+                throw new EOFException("The server closed the connection before sending an ack!");
+              }
+            }
+            catch (IOException e) {
+              socketFactory.invalidateSocket(clientSocket);
+              throw e;
+            }
+            finally {
+              frameStream.release();
+            }
 
             if (count % logCount == 0) {
               System.out.printf("(%1$s) sent (%2$s) messages...%n", Thread.currentThread().getName(), count);
             }
 
             socketFactory.releaseSocket(clientSocket);
+            latencies.record(System.nanoTime() - sendTime);
+            messagesAcked.increment();
+          }
+
+          allocationMeter.sample(messageCount);
+        }
+        catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+  }
+
+  /**
+   * Creates a Runnable that sends messages over a dedicated connection, keeping up to the window of messages
+   * in-flight.  Each message is prefixed with a sequence number and the server acknowledges the messages it has read
+   * with a cumulative ack carrying the sequence number of the last message read.  A window of 1 degenerates into
+   * the stop-and-wait protocol.
+   *
+   * @param window the maximum number of messages sent but not yet acknowledged.
+   * @return a Runnable sending pipelined messages to the server.
+   */
+  protected static Runnable createPipelinedMessageClientRunnable(final int window) {
+    return new Runnable() {
+      public void run() {
+        int logCount = Math.max(messageCount / 10, 1);
+
+        ByteBuffer message = ByteBuffer.allocate(MessageServer.SEQUENCE_SIZE + payloadSize);
+
+        message.putLong(0l).put(payload.duplicate());
+        ((Buffer) message).flip();
+
+        FrameStream frameStream = null;
+
+        try {
+          frameStream = new FrameStream(openClientSocket(socketFactoryType), FRAME_CODEC, BUFFER_POOL);
+          frameStream.writeFrame(MessageServer.encodeSequence(MessageServer.PIPELINE_HELLO));
+
+          allocationMeter.mark();
+
+          long acked = 0;
+          long sent = 0;
+
+          while (acked < messageCount) {
+            while (sent < messageCount && sent - acked < window) {
+              message.putLong(0, ++sent);
+              frameStream.writeFrame(message);
+              capture(payload);
+
+              if (sent % logCount == 0) {
+                System.out.printf("(%1$s) sent (%2$s) messages...%n", Thread.currentThread().getName(), sent);
+              }
+            }
+
+            frameStream.flush();
+
+            ByteBuffer ack = frameStream.readFrame();
+
+            if (ack == null) {
+              throw new EOFException(String.format(
+                "The server closed the connection with (%1$d) messages unacknowledged!", (sent - acked)));
+            }
+
+            long sequence = ack.getLong(ack.position());
+
+            messagesAcked.add(sequence - acked);
+            acked = sequence;
           }
+
+          allocationMeter.sample(messageCount);
         }
         catch (IOException e) {
           throw new RuntimeException(e);
         }
+        finally {
+          if (frameStream != null) {
+            frameStream.close();
+          }
+        }
+      }
+    };
+  }
+
+  /**
+   * The AsyncMessageClient class is a logical messaging client sending its messages stop-and-wait over an
+   * AsyncConnection: each message is written as a frame and the next is sent from the completion of the server's
+   * one byte ack, on whichever group Thread completed it.  The frame header, payload and ack buffers, and the
+   * Functions chaining the send to the ack, are allocated once per client and reused for every message.
+   */
+  protected static final class AsyncMessageClient {
+
+    private final AsyncConnection connection;
+
+    private final ByteBuffer ack = ByteBuffer.allocate(1);
+    private final ByteBuffer header = ByteBuffer.allocate(FrameCodec.HEADER_SIZE);
+    private final ByteBuffer message = payload.duplicate();
+
+    private final CompletableFuture<Void> done;
+
+    private final LatencyHistogram latencies;
+
+    private int count;
+
+    private long sendTime;
+
+    private final Function<Void, CompletionStage<ByteBuffer>> readAck =
+      new Function<Void, CompletionStage<ByteBuffer>>() {
+        public CompletionStage<ByteBuffer> apply(final Void ignore) {
+          ((Buffer) ack).clear();
+          return connection.readFully(ack);
+        }
+      };
+
+    private final BiConsumer<ByteBuffer, Throwable> ackReceived = new BiConsumer<ByteBuffer, Throwable>() {
+      public void accept(final ByteBuffer ack, final Throwable cause) {
+        if (cause != null) {
+          connection.close();
+          done.completeExceptionally(cause);
+        }
+        else {
+          latencies.record(System.nanoTime() - sendTime);
+          send();
+        }
       }
     };
+
+    private AsyncMessageClient(final AsyncConnection connection, final LatencyHistogram latencies,
+                               final CompletableFuture<Void> done) throws IOException {
+      this.connection = connection;
+      this.latencies = latencies;
+      this.done = done;
+
+      FRAME_CODEC.encodeHeader(header, message.remaining());
+    }
+
+    /**
+     * Connects a new AsyncMessageClient to the server and starts sending its messages.
+     *
+     * @return a CompletableFuture completed once all messages are acknowledged, or exceptionally if the connection
+     * fails.
+     */
+    protected static CompletableFuture<Void> start(final AsynchronousChannelGroup group, final SocketAddress address,
+                                                   final LatencyHistogram latencies) {
+
+      final CompletableFuture<Void> done = new CompletableFuture<Void>();
+
+      AsyncConnection.connect(group, address).whenComplete(new BiConsumer<AsyncConnection, Throwable>() {
+        public void accept(final AsyncConnection connection, final Throwable cause) {
+          if (cause != null) {
+            done.completeExceptionally(cause);
+          }
+          else {
+            try {
+              new AsyncMessageClient(connection, latencies, done).send();
+            }
+            catch (IOException e) {
+              connection.close();
+              done.completeExceptionally(e);
+            }
+          }
+        }
+      });
+
+      return done;
+    }
+
+    private void send() {
+      if (count++ < messageCount) {
+        ((Buffer) header).rewind();
+        ((Buffer) message).rewind();
+        sendTime = System.nanoTime();
+        connection.write(header, message).thenCompose(readAck).whenComplete(ackReceived);
+      }
+      else {
+        connection.close();
+        done.complete(null);
+      }
+    }
+  }
+
+  /**
+   * The MessageSubscribers class holds the subscriber connections to a Message Server publishing the messages it
+   * receives (the server's publish receive mode), each read by its own Thread, and counts the messages delivered to
+   * them.  The subscribe hello frame is echoed by the server once the subscription is registered, so no message
+   * published after subscribe returns is missed.
+   */
+  protected static final class MessageSubscribers {
+
+    private final AtomicLong messagesReceived = new AtomicLong(0l);
+
+    private final Queue<Socket> sockets = new ConcurrentLinkedQueue<Socket>();
+
+    private MessageSubscribers() {
+    }
+
+    protected static MessageSubscribers subscribe(final int count) throws InterruptedException {
+      final MessageSubscribers subscribers = new MessageSubscribers();
+      final CountDownLatch subscribed = new CountDownLatch(count);
+
+      ThreadCollection.spawn(count, new Runnable() {
+        public void run() {
+          FrameStream frameStream = null;
+
+          boolean confirmed = false;
+
+          try {
+            Socket socket = openSocket(getServerAddress(), getPort(), true);
+
+            subscribers.sockets.add(socket);
+            frameStream = new FrameStream(socket, FRAME_CODEC, BUFFER_POOL);
+            frameStream.writeFrame(MessageServer.encodeSequence(MessageServer.SUBSCRIBE_HELLO));
+            frameStream.flush();
+            frameStream.readFrame();
+            confirmed = true;
+            subscribed.countDown();
+
+            while (frameStream.skipFrame() >= 0) {
+              subscribers.messagesReceived.incrementAndGet();
+            }
+          }
+          catch (IOException ignore) {
+            // the subscription ended when the connection was closed
+          }
+          finally {
+            if (!confirmed) {
+              subscribed.countDown();
+            }
+
+            if (frameStream != null) {
+              frameStream.close();
+            }
+          }
+        }
+      }, "Message Subscriber Thread");
+
+      subscribed.await();
+
+      return subscribers;
+    }
+
+    public long getMessagesReceived() {
+      return messagesReceived.get();
+    }
+
+    /**
+     * Waits until the subscribers have received the expected number of messages, or have received none for the
+     * quiet period, since messages dropped by the server for a slow subscriber never arrive.
+     */
+    protected long awaitMessages(final long expected, final long quietPeriod) throws InterruptedException {
+      long received = getMessagesReceived();
+      long lastProgressTime = System.currentTimeMillis();
+
+      while (received < expected && System.currentTimeMillis() - lastProgressTime < quietPeriod) {
+        Thread.sleep(10);
+
+        long current = getMessagesReceived();
+
+        if (current > received) {
+          received = current;
+          lastProgressTime = System.currentTimeMillis();
+        }
+      }
+
+      return received;
+    }
+
+    public void close() {
+      for (Socket socket = sockets.poll(); socket != null; socket = sockets.poll()) {
+        SocketUtils.close(socket);
+      }
+    }
   }
 
   protected static enum SocketFactoryType {
     NEW_SOCKET(1, "newsock", "Create New Socket for Each Request"),
-    POOLED_SOCKET(2, "poolsock", "Use Pooled Socket for Each Request");
+    POOLED_SOCKET(2, "poolsock", "Use Pooled Socket for Each Request"),
+    SHARED_MEMORY(3, "shmsock", "Use Pooled Shared Memory Connection for Each Request"),
+    LOOPBACK(4, "loopsock", "Use Pooled Loopback Connection to a Message Server in this JVM for Each Request"),
+    ASYNC(5, "asyncsock", "Multiplex a Connection per Client over a Small Pool of Asynchronous I/O Threads"),
+    BALANCED(6, "balsock", "Balance Pooled Sockets across Several Message Servers for Each Request");
 
     private final int id;
 
@@ -212,6 +1165,8 @@ public class MessageClient extends AbstractClientServerSupport {
 
     public SocketFactoryType getType();
 
+    public void invalidateSocket(Socket socket);
+
     public void releaseSocket(Socket socket) throws IOException;
 
   }
@@ -229,6 +1184,10 @@ public class MessageClient extends AbstractClientServerSupport {
       return SocketFactoryType.NEW_SOCKET;
     }
 
+    public void invalidateSocket(final Socket socket) {
+      SocketUtils.close(socket);
+    }
+
     public void releaseSocket(final Socket socket) {
       SocketUtils.close(socket);
     }
@@ -236,37 +1195,94 @@ public class MessageClient extends AbstractClientServerSupport {
 
   protected static final class PooledSocketFactory implements SocketFactory {
 
-    private final BlockingQueue<Socket> socketPool;
+    private final SocketPool socketPool;
 
-    public PooledSocketFactory(int numberOfConnections) throws IOException {
-      socketPool = new ArrayBlockingQueue<Socket>(numberOfConnections, true);
+    private final SocketFactoryType type;
 
-      while (numberOfConnections-- > 0) {
-        socketPool.add(openSocket(getServerAddress(), getPort(), true));
-      }
+    public PooledSocketFactory(final int maxConnections) {
+      this(SocketFactoryType.POOLED_SOCKET, 0, maxConnections);
+    }
+
+    public PooledSocketFactory(final SocketFactoryType type, final int minConnections, final int maxConnections) {
+      this.type = type;
+
+      this.socketPool = new SocketPool(new SocketPool.Connector() {
+        public Socket connect() throws IOException {
+          return openClientSocket(PooledSocketFactory.this.type);
+        }
+      }, minConnections, maxConnections);
+
+      this.socketPool.setBorrowTimeout(borrowTimeout);
+      this.socketPool.setIdleTimeout(idleTimeout);
     }
 
     public void destroy() {
-      for (Socket socket = socketPool.poll(); socket != null; socket = socketPool.poll()) {
-        SocketUtils.close(socket);
+      if (!socketPool.isClosed()) {
+        socketPool.close();
+        System.out.printf("Socket pool: %1$s.%n", socketPool);
       }
     }
 
     public Socket getSocket() throws IOException {
-      try {
-        return socketPool.take();
-      }
-      catch (InterruptedException e) {
-        throw new RuntimeException(e);
+      return socketPool.borrow();
+    }
+
+    public SocketFactoryType getType() {
+      return type;
+    }
+
+    public void invalidateSocket(final Socket socket) {
+      socketPool.invalidate(socket);
+    }
+
+    public void releaseSocket(final Socket socket) {
+      socketPool.release(socket);
+    }
+  }
+
+  /**
+   * The BalancedSocketFactory class spreads the requests across several Message Servers, listed by the servers option,
+   * with a BalancedSocketPool selecting the server of each request by the balancePolicy option.  The traffic of each
+   * server is reported when the factory is destroyed.
+   */
+  protected static final class BalancedSocketFactory implements SocketFactory {
+
+    private final BalancedSocketPool socketPool;
+
+    public BalancedSocketFactory(final List<InetSocketAddress> addresses, final int minConnections,
+                                 final int maxConnections) {
+      this.socketPool = new BalancedSocketPool(addresses, balancePolicy, minConnections, maxConnections);
+      this.socketPool.setBorrowTimeout(borrowTimeout);
+      this.socketPool.setIdleTimeout(idleTimeout);
+      this.socketPool.setEjectionTime(ejectionTime);
+      this.socketPool.setMaxFailures(maxFailures);
+    }
+
+    public synchronized void destroy() {
+      if (!socketPool.isClosed()) {
+        socketPool.close();
+        System.out.printf("Balanced socket pool (%1$s):%n", socketPool.getBalancePolicy().getCode());
+
+        for (BalancedSocketPool.Endpoint endpoint : socketPool.getEndpoints()) {
+          System.out.printf("  %1$s%n", endpoint);
+        }
       }
     }
 
+    public Socket getSocket() throws IOException {
+      return socketPool.borrow();
+    }
+
     public SocketFactoryType getType() {
-      return SocketFactoryType.POOLED_SOCKET;
+      return SocketFactoryType.BALANCED;
     }
 
-    public void releaseSocket(final Socket socket) throws IOException {
-      socketPool.add(socket);
+    public void invalidateSocket(final Socket socket) {
+      socketPool.invalidate(socket);
+    }
+
+    public void releaseSocket(final Socket socket) {
+      socketPool.release(socket);
     }
   }
 
@@ -16,69 +16,632 @@
 
 package org.codeprimate.net.sample;
 
-import java.io.DataInput;
-import java.io.DataOutput;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
+import org.codeprimate.lang.AllocationMeter;
+import org.codeprimate.lang.Assert;
 import org.codeprimate.net.AbstractClientServerSupport;
+import org.codeprimate.net.BufferPool;
+import org.codeprimate.net.ChannelConnection;
+import org.codeprimate.net.ChannelHandler;
+import org.codeprimate.net.FrameChannelHandler;
+import org.codeprimate.net.FrameCodec;
+import org.codeprimate.net.FrameStream;
+import org.codeprimate.net.ServerHandle;
+import org.codeprimate.net.ServerMetrics;
+import org.codeprimate.net.SharedBuffer;
 import org.codeprimate.net.SocketUtils;
 
 public class MessageServer extends AbstractClientServerSupport {
 
+  // the handlers read their Thread's allocated bytes once per batch of messages when allocations are metered
+  private static final AllocationMeter ALLOCATION_METER = new AllocationMeter(1024);
+
+  // Sockets accepted by the blocking server engine have no SocketChannel, so heap buffers avoid a copy
+  private static final BufferPool BUFFER_POOL = new BufferPool(BufferPool.DEFAULT_BUFFER_SIZE,
+    BufferPool.DEFAULT_MAX_POOLED_BUFFERS, false);
+
+  private static final FrameCodec FRAME_CODEC = new FrameCodec();
+
+  // the 1-byte acks of stop-and-wait messages, written to non-blocking connections as read-only duplicates
+  private static final ByteBuffer STOP_AND_WAIT_ACKS = newStopAndWaitAcks(1024);
+
+  // published messages are encoded once into a direct buffer shared by the subscribers' SocketChannel writes
+  private static final BufferPool PUBLISH_BUFFER_POOL = new BufferPool(64 * 1024, 256, true);
+
+  private static final LongAdder DELIVERED_COUNT = new LongAdder();
+  private static final LongAdder DISCONNECTED_COUNT = new LongAdder();
+  private static final LongAdder DROPPED_COUNT = new LongAdder();
+  private static final LongAdder PUBLISHED_COUNT = new LongAdder();
+
+  private static final int DEFAULT_SUBSCRIBER_QUEUE_SIZE = 1024;
+
+  // a pipelining client opens the connection with this 8-byte hello frame ("PIPELINE"); until a connection is
+  // pipelined, any 8-byte frame carrying this value is taken as the hello rather than a message
+  static final long PIPELINE_HELLO = 0x504950454C494E45l;
+
+  // a subscriber opens the connection with this 8-byte hello frame ("SUBSCRIB") when the server publishes messages
+  static final long SUBSCRIBE_HELLO = 0x5355425343524942l;
+
+  static final int SEQUENCE_SIZE = 8;
+  static final int ACK_FRAME_LENGTH = (FrameCodec.HEADER_SIZE + SEQUENCE_SIZE);
+  static final int HELLO_FRAME_LENGTH = (FrameCodec.HEADER_SIZE + SEQUENCE_SIZE);
+
+  private static boolean meterAllocations = false;
+
+  private static int subscriberQueueSize = DEFAULT_SUBSCRIBER_QUEUE_SIZE;
+
+  private static ReceiveMode receiveMode = ReceiveMode.CONSUME;
+
+  private static SlowSubscriberPolicy slowSubscriberPolicy = SlowSubscriberPolicy.DROP;
+
   public static void main(final String... args) throws Exception {
-    parseCommandLineArguments(args);
+    customParseCommandLineArguments(args);
 
-    startServer("Message Server", new ClientRequestHandler() {
-      public Runnable service(final Socket clientSocket) {
-        return createMessageClientRunnable(clientSocket);
-      }
-    });
+    if (ReceiveMode.PUBLISH.equals(receiveMode) && !ServerEngineType.NIO.equals(getServerEngineType())) {
+      System.err.printf("The (%1$s) receive mode requires the (%2$s) server engine!%n", receiveMode.getCode(),
+        ServerEngineType.NIO.getCode());
+      return;
+    }
+
+    if (ServerEngineType.NIO.equals(getServerEngineType())) {
+      startServer("Message Server", createChannelHandler());
+    }
+    else {
+      startServer("Message Server", createClientRequestHandler());
+    }
 
     waitForUserInput("exit", "Please enter 'exit' to stop the Message Server.");
     System.out.println("Exiting...");
     setRunning(false);
+    System.out.printf("Message Server received messages in (%1$s) mode with %2$s.%n", receiveMode.getCode(),
+      (meterAllocations ? ALLOCATION_METER : "allocations not metered"));
+
+    if (ReceiveMode.PUBLISH.equals(receiveMode)) {
+      System.out.printf("Message Server published (%1$d) messages, delivering (%2$d) and dropping (%3$d),"
+        + " and disconnected (%4$d) slow subscribers.%n", PUBLISHED_COUNT.sum(), DELIVERED_COUNT.sum(),
+          DROPPED_COUNT.sum(), DISCONNECTED_COUNT.sum());
+    }
+  }
+
+  /**
+   * Creates a Message Server bound to the address, configured with the command line arguments parsed by main, if any,
+   * or the defaults.  Each server has its own engine, port and ServerMetrics, so a sharded load test can run several
+   * Message Servers in one JVM by binding each to port 0.
+   *
+   * @param address the InetSocketAddress to bind the Message Server to.
+   * @return an un-started ServerHandle of the Message Server.
+   * @throws IllegalStateException if the configured server engine does not support the receive mode.
+   */
+  public static ServerHandle newServer(final InetSocketAddress address) {
+    if (ServerEngineType.NIO.equals(getServerEngineType())) {
+      return newServer("Message Server", address, createChannelHandler());
+    }
+
+    Assert.legalState(ServerEngineType.BLOCKING.equals(getServerEngineType()), String.format(
+      "The (%1$s) server engine cannot be embedded!", getServerEngineType().getCode()));
+    Assert.legalState(!ReceiveMode.PUBLISH.equals(receiveMode), String.format(
+      "The (%1$s) receive mode requires the (%2$s) server engine!", receiveMode.getCode(),
+        ServerEngineType.NIO.getCode()));
+
+    ServerMetrics metrics = new ServerMetrics();
+
+    return newServer("Message Server", address, metrics, createClientRequestHandler(metrics));
+  }
+
+  private static void customParseCommandLineArguments(final String... args) throws Exception {
+    parseCommandLineArguments(true, args);
+
+    for (int index = 0; index < args.length; index++) {
+      if ("receive".equalsIgnoreCase(args[index])) {
+        receiveMode = ReceiveMode.findBy(args[++index]);
+      }
+      else if ("slowSubscriber".equalsIgnoreCase(args[index])) {
+        slowSubscriberPolicy = SlowSubscriberPolicy.findBy(args[++index]);
+      }
+      else if ("subscriberQueue".equalsIgnoreCase(args[index])) {
+        subscriberQueueSize = Integer.parseInt(args[++index]);
+      }
+      else if ("meterAllocations".equalsIgnoreCase(args[index])) {
+        meterAllocations = true;
+      }
+      else if (getCommonCommandLineArgumentArity(args[index]) >= 0) {
+        index += getCommonCommandLineArgumentArity(args[index]);
+      }
+      else {
+        System.err.printf("Unknown command line argument (%1$s)!%n", args[index]);
+      }
+    }
+  }
+
+  static boolean isPipelineHello(final ByteBuffer payload) {
+    return (payload.remaining() == SEQUENCE_SIZE && payload.getLong(payload.position()) == PIPELINE_HELLO);
+  }
+
+  static boolean isSubscribeHello(final ByteBuffer payload) {
+    return (payload.remaining() == SEQUENCE_SIZE && payload.getLong(payload.position()) == SUBSCRIBE_HELLO);
+  }
+
+  static ByteBuffer encodeSequence(final long sequence) {
+    ByteBuffer buffer = ByteBuffer.allocate(SEQUENCE_SIZE);
+    buffer.putLong(0, sequence);
+    return buffer;
+  }
+
+  /**
+   * Creates the handler servicing each client connection with blocking I/O; MessageClient also runs it in its own JVM
+   * over loopback connections.
+   */
+  static ClientRequestHandler createClientRequestHandler() {
+    return new ClientRequestHandler() {
+      public Runnable service(final Socket clientSocket) {
+        return createMessageClientRunnable(clientSocket, getServerMetrics());
+      }
+    };
+  }
+
+  static ClientRequestHandler createClientRequestHandler(final ServerMetrics metrics) {
+    return new ClientRequestHandler() {
+      public Runnable service(final Socket clientSocket) {
+        return createMessageClientRunnable(clientSocket, metrics);
+      }
+    };
   }
 
-  private static Runnable createMessageClientRunnable(final Socket clientSocket) {
+  /**
+   * Services a client connection.  A stop-and-wait client receives a 1-byte ack per message.  A pipelining client
+   * numbers its messages consecutively from 1 and receives a cumulative ack frame carrying the sequence number of the
+   * last message read, written once all messages already received have been read.  Messages are received into the
+   * connection's pooled read buffer, or skipped through it without buffering the payload, so no memory is allocated
+   * per message.  The read phase of a message recorded in the ServerMetrics starts once its frame header has arrived,
+   * excluding the time spent waiting on the client.
+   */
+  private static Runnable createMessageClientRunnable(final Socket clientSocket, final ServerMetrics metrics) {
     return new Runnable() {
       public void run() {
+        FrameStream frameStream;
+
+        try {
+          frameStream = new FrameStream(clientSocket, FRAME_CODEC, BUFFER_POOL);
+        }
+        catch (IOException e) {
+          SocketUtils.close(clientSocket);
+          throw new RuntimeException(e);
+        }
+
         try {
-          DataInput in = getInputStream(clientSocket);
-          DataOutput out = getOutputStream(clientSocket);
+          ByteBuffer ack = ByteBuffer.allocate(SEQUENCE_SIZE);
 
-          boolean reading = true;
+          boolean pipelined = false;
 
-          while (reading) {
-            try {
-              final int payloadSize = in.readInt();
+          long sequence = 0;
 
-              if (isDebug()) {
-                System.out.printf("Reading (%1$d) bytes from client (%2$s)...%n", payloadSize,
-                  clientSocket.getInetAddress().toString());
+          if (meterAllocations) {
+            ALLOCATION_METER.mark();
+          }
+
+          for (int frameLength = frameStream.peekFrameLength(); frameLength >= 0;
+               frameLength = frameStream.peekFrameLength()) {
+
+            long readStartTime = System.nanoTime();
+
+            if (!pipelined && frameLength == HELLO_FRAME_LENGTH) {
+              if (isPipelineHello(frameStream.readFrame())) {
+                metrics.recordRead(frameLength, System.nanoTime() - readStartTime);
+                pipelined = true;
+                continue;
               }
+            }
+            else if (ReceiveMode.SKIP.equals(receiveMode)) {
+              frameStream.skipFrame();
+            }
+            else {
+              frameStream.readFrame();
+            }
+
+            long handleStartTime = System.nanoTime();
+
+            metrics.recordRead(frameLength, handleStartTime - readStartTime);
 
-              in.readFully(new byte[payloadSize]);
+            if (isDebug()) {
+              System.out.printf("Read (%1$d) bytes from client (%2$s)...%n", (frameLength - FrameCodec.HEADER_SIZE),
+                clientSocket.getInetAddress().toString());
+            }
+
+            if (pipelined) {
+              sequence++;
+
+              boolean ackDue = !frameStream.isFrameBuffered();
+              long writeStartTime = System.nanoTime();
+
+              metrics.recordHandle(writeStartTime - handleStartTime);
+
+              if (ackDue) {
+                if (isDebug()) {
+                  System.out.printf("Sending ack up to sequence (%1$d)...%n", sequence);
+                }
+
+                ack.putLong(0, sequence);
+                frameStream.writeFrame(ack);
+                frameStream.flush();
+                metrics.recordWrite(ACK_FRAME_LENGTH, System.nanoTime() - writeStartTime);
+              }
+            }
+            else {
+              long writeStartTime = System.nanoTime();
+
+              metrics.recordHandle(writeStartTime - handleStartTime);
 
               if (isDebug()) {
                 System.out.println("Sending ack...");
               }
 
-              out.writeByte(1);
+              frameStream.writeByte(1);
+              frameStream.flush();
+              metrics.recordWrite(1, System.nanoTime() - writeStartTime);
             }
-            catch (IOException ignore) {
-              reading = false;
+
+            if (meterAllocations) {
+              ALLOCATION_METER.sample(1);
             }
           }
         }
-        catch (IOException e) {
-          throw new RuntimeException(e);
+        catch (IOException ignore) {
         }
         finally {
-          SocketUtils.close(clientSocket);
+          frameStream.close();
         }
       }
     };
   }
 
+  private static ByteBuffer newStopAndWaitAcks(final int capacity) {
+    byte[] acks = new byte[capacity];
+    Arrays.fill(acks, (byte) 1);
+    return ByteBuffer.wrap(acks).asReadOnlyBuffer();
+  }
+
+  /**
+   * Writes the acks for the messages received by a single read of a non-blocking connection, which are flushed
+   * together once the handler returns.
+   */
+  private static void writeAcks(final ChannelConnection connection, final ConnectionState state,
+                                final int messageCount) throws IOException {
+    if (messageCount > 0) {
+      if (state.pipelined) {
+        state.sequence += messageCount;
+
+        // the connection owns a queued ack until it has been written, so an ack still queued is not reused
+        if (state.ack == null || state.ack.hasRemaining()) {
+          state.ack = ByteBuffer.allocate(ACK_FRAME_LENGTH);
+        }
+
+        ((Buffer) state.ack).clear();
+        FRAME_CODEC.encodeHeader(state.ack, SEQUENCE_SIZE);
+        state.ack.putLong(state.sequence);
+        ((Buffer) state.ack).flip();
+        connection.write(state.ack);
+      }
+      else {
+        for (int remaining = messageCount; remaining > 0; remaining -= STOP_AND_WAIT_ACKS.capacity()) {
+          ByteBuffer acks = STOP_AND_WAIT_ACKS.duplicate();
+          ((Buffer) acks).limit(Math.min(remaining, acks.capacity()));
+          connection.write(acks);
+        }
+      }
+
+      if (meterAllocations) {
+        ALLOCATION_METER.sample(messageCount);
+      }
+    }
+  }
+
+  // creates the ChannelHandler of a new server for the receive mode
+  private static ChannelHandler createChannelHandler() {
+    switch (receiveMode) {
+      case PUBLISH:
+        return createPublishingMessageChannelHandler();
+      case SKIP:
+        return createSkippingMessageChannelHandler();
+      case CONSUME:
+      default:
+        return createMessageChannelHandler();
+    }
+  }
+
+  /**
+   * Creates a ChannelHandler receiving each message in full into the connection's pooled, direct read buffer.
+   */
+  private static ChannelHandler createMessageChannelHandler() {
+    return new FrameChannelHandler(FRAME_CODEC) {
+      @Override public void onOpen(final ChannelConnection connection) {
+        connection.setAttachment(new ConnectionState());
+      }
+
+      @Override protected void onFrame(final ChannelConnection connection, final ByteBuffer payload) {
+        if (isDebug()) {
+          System.out.printf("Read (%1$d) bytes from client (%2$s)...%n", payload.remaining(),
+            connection.getRemoteAddress());
+        }
+
+        ConnectionState state = (ConnectionState) connection.getAttachment();
+
+        if (!state.pipelined && isPipelineHello(payload)) {
+          state.pipelined = true;
+        }
+        else {
+          state.messageCount++;
+        }
+      }
+
+      // coalesce the acks for all messages received in a single read into one write
+      @Override protected void onReadComplete(final ChannelConnection connection, final int frameCount)
+        throws IOException
+      {
+        ConnectionState state = (ConnectionState) connection.getAttachment();
+
+        writeAcks(connection, state, state.messageCount);
+        state.messageCount = 0;
+      }
+    };
+  }
+
+  /**
+   * Creates a ChannelHandler skipping over message payloads as they arrive, so that the connection's read buffer
+   * never grows to hold a whole message.
+   */
+  private static ChannelHandler createSkippingMessageChannelHandler() {
+    return new ChannelHandler() {
+      public void onOpen(final ChannelConnection connection) {
+        connection.setAttachment(new ConnectionState());
+      }
+
+      public void onRead(final ChannelConnection connection, final ByteBuffer buffer) throws IOException {
+        ConnectionState state = (ConnectionState) connection.getAttachment();
+
+        int messageCount = 0;
+
+        while (true) {
+          if (state.skipRemaining < 0) {
+            int frameLength = FRAME_CODEC.peekFrameLength(buffer);
+
+            if (frameLength < 0) {
+              break;
+            }
+
+            if (!state.pipelined && frameLength == HELLO_FRAME_LENGTH) {
+              if (buffer.remaining() < frameLength) {
+                break;
+              }
+
+              if (buffer.getLong(buffer.position() + FrameCodec.HEADER_SIZE) == PIPELINE_HELLO) {
+                ((Buffer) buffer).position(buffer.position() + frameLength);
+                state.pipelined = true;
+                continue;
+              }
+            }
+
+            ((Buffer) buffer).position(buffer.position() + FrameCodec.HEADER_SIZE);
+            state.skipRemaining = (frameLength - FrameCodec.HEADER_SIZE);
+          }
+
+          int length = Math.min(state.skipRemaining, buffer.remaining());
+
+          ((Buffer) buffer).position(buffer.position() + length);
+          state.skipRemaining -= length;
+
+          if (state.skipRemaining > 0) {
+            break;
+          }
+
+          state.skipRemaining = -1;
+          messageCount++;
+        }
+
+        writeAcks(connection, state, messageCount);
+      }
+
+      public void onClose(final ChannelConnection connection) {
+      }
+    };
+  }
+
+  /**
+   * Creates a ChannelHandler publishing each message received to all subscribed connections.  A connection subscribes
+   * with the subscribe hello frame, which the server echoes to confirm the subscription, and from then on receives
+   * every message published, framed as it was sent.  Publishers are acked as with the other receive modes, so
+   * MessageClient publishes unchanged.
+   */
+  private static ChannelHandler createPublishingMessageChannelHandler() {
+    final Set<ChannelConnection> subscribers = Collections.newSetFromMap(
+      new ConcurrentHashMap<ChannelConnection, Boolean>());
+
+    return new FrameChannelHandler(FRAME_CODEC) {
+      @Override public void onOpen(final ChannelConnection connection) {
+        connection.setAttachment(new ConnectionState());
+      }
+
+      @Override protected void onFrame(final ChannelConnection connection, final ByteBuffer payload)
+        throws IOException
+      {
+        ConnectionState state = (ConnectionState) connection.getAttachment();
+
+        if (!state.pipelined && isPipelineHello(payload)) {
+          state.pipelined = true;
+        }
+        else if (!state.subscribed && isSubscribeHello(payload)) {
+          state.subscribed = true;
+          subscribers.add(connection);
+          writeFrame(connection, encodeSequence(SUBSCRIBE_HELLO));
+        }
+        else {
+          publish(payload, subscribers);
+          state.messageCount++;
+        }
+      }
+
+      @Override protected void onReadComplete(final ChannelConnection connection, final int frameCount)
+        throws IOException
+      {
+        ConnectionState state = (ConnectionState) connection.getAttachment();
+
+        writeAcks(connection, state, state.messageCount);
+        state.messageCount = 0;
+      }
+
+      @Override public void onClose(final ChannelConnection connection) {
+        subscribers.remove(connection);
+      }
+    };
+  }
+
+  /**
+   * Encodes the message once into a pooled, direct SharedBuffer and writes a read-only slice of it to each subscriber.
+   * A subscriber whose outbound queue already holds the maximum number of writes is too slow to keep up and either
+   * misses the message or is disconnected, according to the SlowSubscriberPolicy, so that a slow subscriber never
+   * holds an unbounded number of buffers.
+   */
+  private static void publish(final ByteBuffer payload, final Set<ChannelConnection> subscribers)
+    throws IOException
+  {
+    int payloadLength = payload.remaining();
+
+    ByteBuffer buffer = PUBLISH_BUFFER_POOL.acquire(FrameCodec.HEADER_SIZE + payloadLength);
+
+    FRAME_CODEC.encodeHeader(buffer, payloadLength);
+    buffer.put(payload);
+    ((Buffer) buffer).flip();
+
+    SharedBuffer message = new SharedBuffer(buffer, PUBLISH_BUFFER_POOL);
+
+    try {
+      for (ChannelConnection subscriber : subscribers) {
+        if (subscriber.getPendingWriteCount() < subscriberQueueSize) {
+          subscriber.write(message.retain());
+          DELIVERED_COUNT.increment();
+        }
+        else if (SlowSubscriberPolicy.DISCONNECT.equals(slowSubscriberPolicy)) {
+          subscribers.remove(subscriber);
+          subscriber.close();
+          DISCONNECTED_COUNT.increment();
+        }
+        else {
+          DROPPED_COUNT.increment();
+        }
+      }
+    }
+    finally {
+      message.release();
+    }
+
+    PUBLISHED_COUNT.increment();
+  }
+
+  /**
+   * The ConnectionState class tracks the protocol, the message being skipped and the acks owed to the client
+   * of a non-blocking connection.
+   */
+  private static final class ConnectionState {
+
+    // the cumulative ack frame of a pipelined connection, reused once the connection has written it
+    private ByteBuffer ack;
+
+    private boolean pipelined;
+    private boolean subscribed;
+
+    private int messageCount;
+    private int skipRemaining = -1;
+
+    private long sequence;
+
+  }
+
+  /**
+   * The ReceiveMode enum defines how the server receives the payload of each message.
+   */
+  protected static enum ReceiveMode {
+    CONSUME("consume", "Read Each Payload in Full into a Reused, Pooled Buffer"),
+    SKIP("skip", "Discard Each Payload as it Arrives without Buffering it"),
+    PUBLISH("publish", "Publish Each Payload to the Subscribed Clients");
+
+    private final String code;
+    private final String description;
+
+    ReceiveMode(final String code, final String description) {
+      this.code = code;
+      this.description = description;
+    }
+
+    public static ReceiveMode findBy(final String code) {
+      for (ReceiveMode mode : values()) {
+        if (mode.getCode().equalsIgnoreCase(code)) {
+          return mode;
+        }
+      }
+
+      throw new IllegalArgumentException("(" + code + ") is not a valid ReceiveMode code!");
+    }
+
+    public String getCode() {
+      return code;
+    }
+
+    public String getDescription() {
+      return description;
+    }
+
+    @Override
+    public String toString() {
+      return getDescription();
+    }
+  }
+
+  /**
+   * The SlowSubscriberPolicy enum defines how the server treats a subscriber whose outbound queue is full.
+   */
+  protected static enum SlowSubscriberPolicy {
+    DROP("drop", "Drop the Messages Published while the Subscriber's Queue is Full"),
+    DISCONNECT("disconnect", "Disconnect the Subscriber once its Queue is Full");
+
+    private final String code;
+    private final String description;
+
+    SlowSubscriberPolicy(final String code, final String description) {
+      this.code = code;
+      this.description = description;
+    }
+
+    public static SlowSubscriberPolicy findBy(final String code) {
+      for (SlowSubscriberPolicy policy : values()) {
+        if (policy.getCode().equalsIgnoreCase(code)) {
+          return policy;
+        }
+      }
+
+      throw new IllegalArgumentException("(" + code + ") is not a valid SlowSubscriberPolicy code!");
+    }
+
+    public String getCode() {
+      return code;
+    }
+
+    public String getDescription() {
+      return description;
+    }
+
+    @Override
+    public String toString() {
+      return getDescription();
+    }
+  }
+
 }
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net.shm;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.codeprimate.lang.Assert;
+import org.codeprimate.net.ServerEngine;
+import org.codeprimate.net.ServerMetrics;
+import org.codeprimate.net.SocketHandler;
+import org.codeprimate.net.SocketUtils;
+
+/**
+ * The LoopbackServerEngine class is a ServerEngine for clients running in the same JVM.  A started engine registers
+ * itself under its port number; connecting to that port creates a LoopbackSocket pair, dispatches the server side to
+ * the SocketHandler on a worker Thread of the ExecutorService and returns the client side.  No Threads, sockets or
+ * file descriptors are used for accepting connections.
+ *
+ * Stopping the engine unregisters it immediately, then drains the in-flight client requests, waiting up to the drain
+ * timeout before closing the client connections that remain open.
+ *
+ * @author John J. Blum
+ * @see org.codeprimate.net.ServerEngine
+ * @see org.codeprimate.net.SocketHandler
+ * @see org.codeprimate.net.shm.LoopbackSocket
+ * @since 1.2.0
+ */
+@SuppressWarnings("unused")
+public class LoopbackServerEngine implements ServerEngine {
+
+  public static final long DEFAULT_DRAIN_TIMEOUT = TimeUnit.SECONDS.toMillis(5);
+
+  private static final ConcurrentMap<Integer, LoopbackServerEngine> ENGINES =
+    new ConcurrentHashMap<Integer, LoopbackServerEngine>();
+
+  private volatile boolean running;
+
+  private final ExecutorService executor;
+
+  private final int port;
+  private final int ringCapacity;
+
+  private long drainTimeout = DEFAULT_DRAIN_TIMEOUT;
+
+  private final Set<LoopbackSocket> connections = Collections.newSetFromMap(
+    new ConcurrentHashMap<LoopbackSocket, Boolean>());
+
+  private final SocketHandler handler;
+
+  private ServerMetrics metrics = new ServerMetrics();
+
+  private final String name;
+
+  private final WaitStrategy waitStrategy;
+
+  public LoopbackServerEngine(final String name, final int port, final int ringCapacity,
+                              final WaitStrategy waitStrategy, final ExecutorService executor,
+                              final SocketHandler handler) {
+    Assert.legalArgument(ringCapacity > 0 && Integer.bitCount(ringCapacity) == 1, String.format(
+      "The ring capacity (%1$d) must be a positive power of two!", ringCapacity));
+    Assert.notNull(waitStrategy, "The WaitStrategy must not be null!");
+    Assert.notNull(executor, "The ExecutorService must not be null!");
+    Assert.notNull(handler, "The SocketHandler must not be null!");
+
+    this.name = name;
+    this.port = port;
+    this.ringCapacity = ringCapacity;
+    this.waitStrategy = waitStrategy;
+    this.executor = executor;
+    this.handler = handler;
+  }
+
+  /**
+   * Connects to the LoopbackServerEngine running in this JVM under the given port number.
+   *
+   * @param port the port number under which the server engine is registered.
+   * @return the client side of a LoopbackSocket pair whose server side is being serviced by the engine.
+   * @throws ConnectException if no engine is running under the port number.
+   */
+  public static LoopbackSocket connect(final int port) throws IOException {
+    LoopbackServerEngine serverEngine = ENGINES.get(port);
+
+    if (serverEngine == null) {
+      throw new ConnectException(String.format("No loopback server is running on port (%1$d) in this JVM!", port));
+    }
+
+    return serverEngine.accept();
+  }
+
+  /**
+   * Loopback connections are not bound to a network address; returns the loopback address and the port number
+   * while running.
+   *
+   * @return the loopback InetSocketAddress, or null if the engine has not been started.
+   */
+  public InetSocketAddress getBoundAddress() {
+    return (isRunning() ? new InetSocketAddress(InetAddress.getLoopbackAddress(), port) : null);
+  }
+
+  public int getConnectionCount() {
+    return connections.size();
+  }
+
+  public long getDrainTimeout() {
+    return drainTimeout;
+  }
+
+  public void setDrainTimeout(final long drainTimeout) {
+    Assert.legalArgument(drainTimeout >= 0, String.format(
+      "The drain timeout (%1$d) must be greater than or equal to 0!", drainTimeout));
+    this.drainTimeout = drainTimeout;
+  }
+
+  public ExecutorService getExecutor() {
+    return executor;
+  }
+
+  public SocketHandler getHandler() {
+    return handler;
+  }
+
+  /**
+   * Gets the ServerMetrics counting the client connections accepted and closed by this server engine.
+   *
+   * @return the ServerMetrics of this server engine.
+   */
+  public ServerMetrics getMetrics() {
+    return metrics;
+  }
+
+  public void setMetrics(final ServerMetrics metrics) {
+    Assert.notNull(metrics, "The ServerMetrics must not be null!");
+    Assert.legalState(!isRunning(), "The ServerMetrics cannot be changed while the server engine is running!");
+    this.metrics = metrics;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public int getPort() {
+    return port;
+  }
+
+  public int getRingCapacity() {
+    return ringCapacity;
+  }
+
+  public boolean isRunning() {
+    return running;
+  }
+
+  public WaitStrategy getWaitStrategy() {
+    return waitStrategy;
+  }
+
+  public synchronized void start() throws IOException {
+    Assert.legalState(!isRunning(), String.format("%1$s is already running!", getName()));
+
+    if (ENGINES.putIfAbsent(port, this) != null) {
+      throw new BindException(String.format("A loopback server is already running on port (%1$d)!", port));
+    }
+
+    metrics.setExecutor(executor);
+    running = true;
+  }
+
+  /**
+   * Stops accepting client connections immediately, then waits up to the drain timeout for in-flight client requests
+   * to complete before closing the remaining client connections and interrupting the worker Threads.
+   */
+  public void stop() {
+    synchronized (this) {
+      if (!isRunning()) {
+        return;
+      }
+
+      running = false;
+      ENGINES.remove(port, this);
+    }
+
+    executor.shutdown();
+
+    try {
+      executor.awaitTermination(getDrainTimeout(), TimeUnit.MILLISECONDS);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    for (LoopbackSocket connection : connections) {
+      SocketUtils.close(connection);
+    }
+
+    executor.shutdownNow();
+  }
+
+  protected LoopbackSocket accept() throws IOException {
+    if (!isRunning()) {
+      throw new ConnectException(String.format("%1$s is not running!", getName()));
+    }
+
+    LoopbackSocket[] pair = LoopbackSocket.newPair(ringCapacity, waitStrategy);
+
+    dispatch(pair[1]);
+
+    return pair[0];
+  }
+
+  protected void dispatch(final LoopbackSocket serverSocket) throws IOException {
+    final Runnable delegate = handler.service(serverSocket);
+
+    Assert.notNull(delegate, "The Runnable servicing the client cannot be null!");
+
+    connections.add(serverSocket);
+    metrics.connectionOpened();
+
+    try {
+      executor.execute(new Runnable() {
+        public void run() {
+          try {
+            delegate.run();
+          }
+          finally {
+            remove(serverSocket);
+          }
+        }
+      });
+    }
+    catch (RejectedExecutionException e) {
+      remove(serverSocket);
+      SocketUtils.close(serverSocket);
+      throw new ConnectException(String.format("%1$s rejected the connection: %2$s", getName(), e.getMessage()));
+    }
+  }
+
+  private void remove(final LoopbackSocket connection) {
+    if (connections.remove(connection)) {
+      metrics.connectionClosed();
+    }
+  }
+
+}
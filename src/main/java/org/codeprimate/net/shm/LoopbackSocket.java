@@ -0,0 +1,84 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net.shm;
+
+import java.nio.ByteBuffer;
+
+import org.codeprimate.lang.Assert;
+
+/**
+ * The LoopbackSocket class is a RingSocket connecting two Threads of the same JVM through a pair of lock-free
+ * RingBuffers in direct memory, bypassing the kernel entirely.  Running a client and a SocketHandler over a
+ * LoopbackSocket pair measures the cost of the protocol and the handler logic apart from the cost of the TCP/IP stack.
+ *
+ * @author John J. Blum
+ * @see org.codeprimate.net.shm.LoopbackServerEngine
+ * @see org.codeprimate.net.shm.RingSocket
+ * @since 1.2.0
+ */
+@SuppressWarnings("unused")
+public class LoopbackSocket extends RingSocket {
+
+  private LoopbackSocket peer;
+
+  protected LoopbackSocket(final RingBuffer inbound, final RingBuffer outbound, final WaitStrategy waitStrategy) {
+    super(inbound, outbound, waitStrategy);
+  }
+
+  /**
+   * Creates a pair of connected LoopbackSockets; bytes written to either Socket are read from the other.
+   *
+   * @param ringCapacity the capacity in bytes of each RingBuffer; must be a power of two.
+   * @param waitStrategy the WaitStrategy used while waiting to read or write.
+   * @return an array containing the client-side and server-side LoopbackSockets, in that order.
+   */
+  public static LoopbackSocket[] newPair(final int ringCapacity, final WaitStrategy waitStrategy) {
+    Assert.legalArgument(ringCapacity > 0 && Integer.bitCount(ringCapacity) == 1, String.format(
+      "The ring capacity (%1$d) must be a positive power of two!", ringCapacity));
+
+    ByteBuffer clientToServer = newRegion(ringCapacity);
+    ByteBuffer serverToClient = newRegion(ringCapacity);
+
+    // a RingBuffer object is used by one side only, so each side gets its own view of the shared regions
+    LoopbackSocket client = new LoopbackSocket(new RingBuffer(serverToClient), new RingBuffer(clientToServer),
+      waitStrategy);
+
+    LoopbackSocket server = new LoopbackSocket(new RingBuffer(clientToServer), new RingBuffer(serverToClient),
+      waitStrategy);
+
+    client.peer = server;
+    server.peer = client;
+
+    return new LoopbackSocket[] { client, server };
+  }
+
+  private static ByteBuffer newRegion(final int ringCapacity) {
+    ByteBuffer region = ByteBuffer.allocateDirect(RingBuffer.requiredSize(ringCapacity));
+    new RingBuffer(region).initialize();
+    return region;
+  }
+
+  /**
+   * Gets the other LoopbackSocket of the pair.
+   *
+   * @return the LoopbackSocket connected to this LoopbackSocket.
+   */
+  public LoopbackSocket getPeer() {
+    return peer;
+  }
+
+}
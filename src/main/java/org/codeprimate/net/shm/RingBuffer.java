@@ -0,0 +1,334 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net.shm;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+import org.codeprimate.lang.Assert;
+import org.codeprimate.lang.concurrent.Fences;
+
+/**
+ * The RingBuffer class is a single-producer, single-consumer byte queue laid out in a region of a ByteBuffer, such as
+ * a MappedByteBuffer shared by two processes or a direct ByteBuffer shared by the two sides of a LoopbackSocket pair.
+ * The region starts with a header holding the head (read) sequence and the tail (write) sequence, each on a cache line
+ * of its own so the producer and consumer do not contend for the same line, followed by the data area, whose capacity
+ * is a power of two.
+ *
+ * Sequences only increase; a sequence modulo the capacity is the offset of the next byte.  The producer copies bytes
+ * into the data area before publishing the tail, and the consumer copies bytes out before publishing the head,
+ * with memory fences between the copy and the publication.  Each side keeps a cached copy of the other side's
+ * sequence and only re-reads it when the cached value indicates the buffer is full or empty.
+ *
+ * A RingBuffer object is used by one side only, and by one Thread at a time on that side.
+ *
+ * @author John J. Blum
+ * @see java.nio.MappedByteBuffer
+ * @see org.codeprimate.lang.concurrent.Fences
+ * @see org.codeprimate.net.shm.RingSocket
+ * @since 1.2.0
+ */
+@SuppressWarnings("unused")
+public class RingBuffer {
+
+  // 128 bytes per sequence avoids false sharing from adjacent cache line prefetching
+  protected static final int CACHE_LINE_PAD = 128;
+
+  protected static final int HEAD_OFFSET = 0;
+  protected static final int CONSUMER_CLOSED_OFFSET = 8;
+  protected static final int TAIL_OFFSET = CACHE_LINE_PAD;
+  protected static final int PRODUCER_CLOSED_OFFSET = (TAIL_OFFSET + 8);
+
+  public static final int HEADER_SIZE = (2 * CACHE_LINE_PAD);
+
+  private final ByteBuffer data;
+  private final ByteBuffer header;
+
+  private final int capacity;
+  private final int mask;
+
+  private long cachedHead;
+  private long cachedTail;
+
+  /**
+   * Constructs a RingBuffer over the region of the ByteBuffer from its position to its limit.
+   *
+   * @param region the ByteBuffer region containing the header and data area of the RingBuffer.
+   * @throws IllegalArgumentException if the region is not direct or its data area is not a power of two in size.
+   */
+  public RingBuffer(final ByteBuffer region) {
+    Assert.notNull(region, "The ByteBuffer region must not be null!");
+    Assert.legalArgument(region.isDirect(), "The ByteBuffer region must be direct!");
+
+    int capacity = (region.remaining() - HEADER_SIZE);
+
+    Assert.legalArgument(capacity > 0 && Integer.bitCount(capacity) == 1, String.format(
+      "The data area capacity (%1$d) must be a positive power of two!", capacity));
+
+    ByteBuffer header = region.duplicate();
+    ByteBuffer data = region.duplicate();
+
+    ((Buffer) header).limit(region.position() + HEADER_SIZE);
+    ((Buffer) data).position(region.position() + HEADER_SIZE);
+
+    this.header = header.slice();
+    this.data = data.slice();
+    this.capacity = capacity;
+    this.mask = (capacity - 1);
+    this.cachedHead = this.header.getLong(HEAD_OFFSET);
+    this.cachedTail = this.header.getLong(TAIL_OFFSET);
+  }
+
+  /**
+   * Determines the size of the region required for a RingBuffer with the given data area capacity.
+   *
+   * @param capacity the capacity of the data area; must be a power of two.
+   * @return the size of the header plus the data area.
+   */
+  public static int requiredSize(final int capacity) {
+    return (HEADER_SIZE + capacity);
+  }
+
+  /**
+   * Resets the header of a new RingBuffer shared with another process.  Must be called before either side uses it.
+   */
+  public void initialize() {
+    for (int index = 0; index < HEADER_SIZE; index += 8) {
+      header.putLong(index, 0l);
+    }
+
+    Fences.storeFence();
+    cachedHead = 0l;
+    cachedTail = 0l;
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Gets the number of bytes published by the producer and not yet consumed.
+   *
+   * @return the number of bytes available to the consumer.
+   */
+  public int available() {
+    return (int) (readTail() - header.getLong(HEAD_OFFSET));
+  }
+
+  private long readHead() {
+    long head = header.getLong(HEAD_OFFSET);
+    Fences.loadFence();
+    return head;
+  }
+
+  private long readTail() {
+    long tail = header.getLong(TAIL_OFFSET);
+    Fences.loadFence();
+    return tail;
+  }
+
+  // determines how many of the requested bytes can be written at the current tail
+  private int writable(final long tail, final int length) {
+    int free = (int) (capacity - (tail - cachedHead));
+
+    if (free < length) {
+      cachedHead = readHead();
+      free = (int) (capacity - (tail - cachedHead));
+    }
+
+    return Math.min(free, length);
+  }
+
+  // determines how many of the requested bytes can be read at the current head
+  private int readable(final long head, final int length) {
+    int available = (int) (cachedTail - head);
+
+    if (available < length) {
+      cachedTail = readTail();
+      available = (int) (cachedTail - head);
+    }
+
+    return Math.min(available, length);
+  }
+
+  private void publishTail(final long tail) {
+    Fences.storeFence();
+    header.putLong(TAIL_OFFSET, tail);
+  }
+
+  private void publishHead(final long head) {
+    // the copy must complete before the producer is allowed to overwrite the bytes
+    Fences.storeFence();
+    header.putLong(HEAD_OFFSET, head);
+  }
+
+  /**
+   * Copies as many bytes as fit into the RingBuffer without waiting.  Called by the producer.
+   *
+   * @param source the byte array containing the bytes to write.
+   * @param offset the offset in the array of the first byte to write.
+   * @param length the number of bytes to write.
+   * @return the number of bytes written, which is 0 when the RingBuffer is full.
+   */
+  public int offer(final byte[] source, final int offset, final int length) {
+    long tail = header.getLong(TAIL_OFFSET);
+    int count = writable(tail, length);
+
+    if (count > 0) {
+      int index = (int) (tail & mask);
+      int firstPart = Math.min(count, capacity - index);
+
+      ((Buffer) data).position(index);
+      data.put(source, offset, firstPart);
+
+      if (firstPart < count) {
+        ((Buffer) data).position(0);
+        data.put(source, offset + firstPart, count - firstPart);
+      }
+
+      publishTail(tail + count);
+    }
+
+    return count;
+  }
+
+  /**
+   * Copies as many of the remaining bytes of the ByteBuffer as fit into the RingBuffer without waiting, advancing
+   * the source's position by the number of bytes written.  Called by the producer.
+   *
+   * @param source the ByteBuffer containing the bytes to write, from its position to its limit.
+   * @return the number of bytes written, which is 0 when the RingBuffer is full.
+   */
+  public int offer(final ByteBuffer source) {
+    long tail = header.getLong(TAIL_OFFSET);
+    int count = writable(tail, source.remaining());
+
+    if (count > 0) {
+      int index = (int) (tail & mask);
+      int firstPart = Math.min(count, capacity - index);
+      int sourceLimit = source.limit();
+
+      ((Buffer) source).limit(source.position() + firstPart);
+      ((Buffer) data).position(index);
+      data.put(source);
+
+      if (firstPart < count) {
+        ((Buffer) source).limit(source.position() + count - firstPart);
+        ((Buffer) data).position(0);
+        data.put(source);
+      }
+
+      ((Buffer) source).limit(sourceLimit);
+      publishTail(tail + count);
+    }
+
+    return count;
+  }
+
+  /**
+   * Copies as many bytes as are available out of the RingBuffer without waiting.  Called by the consumer.
+   *
+   * @param target the byte array into which the bytes are read.
+   * @param offset the offset in the array at which to store the first byte.
+   * @param length the maximum number of bytes to read.
+   * @return the number of bytes read, which is 0 when the RingBuffer is empty.
+   */
+  public int poll(final byte[] target, final int offset, final int length) {
+    long head = header.getLong(HEAD_OFFSET);
+    int count = readable(head, length);
+
+    if (count > 0) {
+      int index = (int) (head & mask);
+      int firstPart = Math.min(count, capacity - index);
+
+      ((Buffer) data).position(index);
+      data.get(target, offset, firstPart);
+
+      if (firstPart < count) {
+        ((Buffer) data).position(0);
+        data.get(target, offset + firstPart, count - firstPart);
+      }
+
+      publishHead(head + count);
+    }
+
+    return count;
+  }
+
+  /**
+   * Copies as many bytes as are available out of the RingBuffer into the remaining space of the ByteBuffer without
+   * waiting, advancing the target's position by the number of bytes read.  Called by the consumer.
+   *
+   * @param target the ByteBuffer into which the bytes are read.
+   * @return the number of bytes read, which is 0 when the RingBuffer is empty.
+   */
+  public int poll(final ByteBuffer target) {
+    long head = header.getLong(HEAD_OFFSET);
+    int count = readable(head, target.remaining());
+
+    if (count > 0) {
+      int index = (int) (head & mask);
+      int firstPart = Math.min(count, capacity - index);
+
+      ((Buffer) data).limit(index + firstPart);
+      ((Buffer) data).position(index);
+      target.put(data);
+
+      if (firstPart < count) {
+        ((Buffer) data).limit(count - firstPart);
+        ((Buffer) data).position(0);
+        target.put(data);
+      }
+
+      ((Buffer) data).limit(capacity);
+      publishHead(head + count);
+    }
+
+    return count;
+  }
+
+  public boolean isConsumerClosed() {
+    boolean closed = (header.getInt(CONSUMER_CLOSED_OFFSET) != 0);
+    Fences.loadFence();
+    return closed;
+  }
+
+  public boolean isProducerClosed() {
+    boolean closed = (header.getInt(PRODUCER_CLOSED_OFFSET) != 0);
+    Fences.loadFence();
+    return closed;
+  }
+
+  /**
+   * Marks the consumer side closed; the producer fails writes rather than waiting for space that will never free up.
+   */
+  public void closeConsumer() {
+    Fences.storeFence();
+    header.putInt(CONSUMER_CLOSED_OFFSET, 1);
+    Fences.fullFence();
+  }
+
+  /**
+   * Marks the producer side closed; once the published bytes are consumed, the consumer reaches end-of-stream.
+   */
+  public void closeProducer() {
+    Fences.storeFence();
+    header.putInt(PRODUCER_CLOSED_OFFSET, 1);
+    Fences.fullFence();
+  }
+
+}
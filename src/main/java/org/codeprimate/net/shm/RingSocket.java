@@ -0,0 +1,458 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net.shm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.codeprimate.lang.Assert;
+
+/**
+ * The RingSocket class is a Socket whose bytes travel through a pair of single-producer, single-consumer RingBuffers,
+ * one for each direction, rather than through the TCP/IP stack.  Code written against Socket streams, such as
+ * a SocketHandler or a FrameStream, works unchanged; socket options have no effect, and getChannel returns null.
+ * The bytes can also be read and written through the ReadableByteChannel and WritableByteChannel views.
+ *
+ * Closing either side is seen by the other as end-of-stream.  Reads and writes that cannot proceed wait using
+ * the WaitStrategy.
+ *
+ * @author John J. Blum
+ * @see java.net.Socket
+ * @see org.codeprimate.net.shm.LoopbackSocket
+ * @see org.codeprimate.net.shm.RingBuffer
+ * @see org.codeprimate.net.shm.SharedMemorySocket
+ * @see org.codeprimate.net.shm.WaitStrategy
+ * @since 1.2.0
+ */
+@SuppressWarnings("unused")
+public class RingSocket extends Socket {
+
+  private volatile boolean closed = false;
+  private volatile boolean inputShutdown = false;
+  private volatile boolean outputShutdown = false;
+
+  private volatile int soTimeout = 0;
+
+  private final InputStream in;
+
+  private final OutputStream out;
+
+  private final ReadableByteChannel readableChannel;
+
+  private final RingBuffer inbound;
+  private final RingBuffer outbound;
+
+  private final WaitStrategy waitStrategy;
+
+  private final WritableByteChannel writableChannel;
+
+  protected RingSocket(final RingBuffer inbound, final RingBuffer outbound, final WaitStrategy waitStrategy) {
+    Assert.notNull(inbound, "The inbound RingBuffer must not be null!");
+    Assert.notNull(outbound, "The outbound RingBuffer must not be null!");
+    Assert.notNull(waitStrategy, "The WaitStrategy must not be null!");
+
+    this.inbound = inbound;
+    this.outbound = outbound;
+    this.waitStrategy = waitStrategy;
+    this.in = new RingInputStream();
+    this.out = new RingOutputStream();
+    this.readableChannel = new RingReadableChannel();
+    this.writableChannel = new RingWritableChannel();
+  }
+
+  protected RingBuffer getInbound() {
+    return inbound;
+  }
+
+  protected RingBuffer getOutbound() {
+    return outbound;
+  }
+
+  public WaitStrategy getWaitStrategy() {
+    return waitStrategy;
+  }
+
+  @Override
+  public InputStream getInputStream() throws IOException {
+    if (isClosed()) {
+      throw new SocketException("Socket is closed");
+    }
+
+    return in;
+  }
+
+  @Override
+  public OutputStream getOutputStream() throws IOException {
+    if (isClosed()) {
+      throw new SocketException("Socket is closed");
+    }
+
+    return out;
+  }
+
+  /**
+   * Gets a channel view reading the same bytes as the InputStream; use one or the other on a RingSocket.
+   *
+   * @return a ReadableByteChannel reading from the inbound RingBuffer.
+   * @throws SocketException if this Socket is closed.
+   */
+  public ReadableByteChannel getReadableChannel() throws SocketException {
+    if (isClosed()) {
+      throw new SocketException("Socket is closed");
+    }
+
+    return readableChannel;
+  }
+
+  /**
+   * Gets a channel view writing to the same bytes as the OutputStream.
+   *
+   * @return a WritableByteChannel writing to the outbound RingBuffer.
+   * @throws SocketException if this Socket is closed.
+   */
+  public WritableByteChannel getWritableChannel() throws SocketException {
+    if (isClosed()) {
+      throw new SocketException("Socket is closed");
+    }
+
+    return writableChannel;
+  }
+
+  @Override
+  public InetAddress getInetAddress() {
+    return InetAddress.getLoopbackAddress();
+  }
+
+  @Override
+  public InetAddress getLocalAddress() {
+    return InetAddress.getLoopbackAddress();
+  }
+
+  @Override
+  public int getPort() {
+    return 0;
+  }
+
+  @Override
+  public int getLocalPort() {
+    return 0;
+  }
+
+  @Override
+  public SocketAddress getRemoteSocketAddress() {
+    return new InetSocketAddress(getInetAddress(), getPort());
+  }
+
+  @Override
+  public SocketAddress getLocalSocketAddress() {
+    return new InetSocketAddress(getLocalAddress(), getLocalPort());
+  }
+
+  @Override
+  public boolean isBound() {
+    return true;
+  }
+
+  @Override
+  public boolean isConnected() {
+    return true;
+  }
+
+  @Override
+  public boolean isClosed() {
+    return closed;
+  }
+
+  @Override
+  public boolean isInputShutdown() {
+    return (inputShutdown || isClosed());
+  }
+
+  @Override
+  public boolean isOutputShutdown() {
+    return (outputShutdown || isClosed());
+  }
+
+  @Override
+  public int getSoTimeout() {
+    return soTimeout;
+  }
+
+  @Override
+  public void setSoTimeout(final int timeout) throws SocketException {
+    Assert.legalArgument(timeout >= 0, String.format("The timeout (%1$d) must be greater than or equal to 0!",
+      timeout));
+    this.soTimeout = timeout;
+  }
+
+  @Override
+  public boolean getTcpNoDelay() {
+    return true;
+  }
+
+  @Override
+  public void setTcpNoDelay(final boolean on) {
+  }
+
+  @Override
+  public boolean getKeepAlive() {
+    return false;
+  }
+
+  @Override
+  public void setKeepAlive(final boolean on) {
+  }
+
+  @Override
+  public void shutdownInput() throws IOException {
+    inputShutdown = true;
+    inbound.closeConsumer();
+  }
+
+  @Override
+  public void shutdownOutput() throws IOException {
+    outputShutdown = true;
+    outbound.closeProducer();
+  }
+
+  @Override
+  public synchronized void close() {
+    if (!closed) {
+      closed = true;
+      inbound.closeConsumer();
+      outbound.closeProducer();
+    }
+  }
+
+  /**
+   * Waits until the inbound RingBuffer has bytes available or the peer has closed its output.
+   *
+   * @return 1 when bytes are available, or -1 at end-of-stream.
+   * @throws SocketException if this Socket is closed while waiting.
+   * @throws SocketTimeoutException if the read timeout expires.
+   */
+  protected int awaitInput() throws IOException {
+    long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(getSoTimeout());
+    long startTime = (timeoutNanos > 0 ? System.nanoTime() : 0l);
+
+    for (int attempts = 0; true; attempts = waitStrategy.idle(attempts)) {
+      if (isClosed()) {
+        throw new SocketException("Socket closed");
+      }
+
+      if (inputShutdown) {
+        return -1;
+      }
+
+      if (inbound.available() > 0) {
+        return 1;
+      }
+
+      if (inbound.isProducerClosed()) {
+        // bytes published before the producer closed must still be delivered
+        return (inbound.available() > 0 ? 1 : -1);
+      }
+
+      if (timeoutNanos > 0 && System.nanoTime() - startTime >= timeoutNanos) {
+        throw new SocketTimeoutException("Read timed out");
+      }
+    }
+  }
+
+  /**
+   * Waits once for space in the outbound RingBuffer after a write made no progress.
+   *
+   * @param attempts the number of times the caller has already waited.
+   * @return the number of attempts to pass on the next call.
+   * @throws SocketException if the output is shutdown or the peer has closed its input.
+   */
+  protected int awaitOutputSpace(final int attempts) throws IOException {
+    if (isOutputShutdown()) {
+      throw new SocketException("Socket output is shutdown");
+    }
+
+    if (outbound.isConsumerClosed()) {
+      // like TCP, a closed peer is only detected once the bytes written can no longer be buffered
+      throw new SocketException("Connection closed by peer");
+    }
+
+    return waitStrategy.idle(attempts);
+  }
+
+  private void checkOutput() throws IOException {
+    if (isOutputShutdown()) {
+      throw new SocketException("Socket output is shutdown");
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%1$s[capacity=%2$d,waitStrategy=%3$s]", getClass().getSimpleName(), outbound.getCapacity(),
+      waitStrategy.getCode());
+  }
+
+  /**
+   * The RingInputStream class reads bytes from the inbound RingBuffer.
+   */
+  protected class RingInputStream extends InputStream {
+
+    private final byte[] singleByte = new byte[1];
+
+    @Override
+    public int available() throws IOException {
+      return (isInputShutdown() ? 0 : inbound.available());
+    }
+
+    @Override
+    public int read() throws IOException {
+      return (read(singleByte, 0, 1) < 0 ? -1 : (singleByte[0] & 0xFF));
+    }
+
+    @Override
+    public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+      if (length == 0) {
+        return 0;
+      }
+
+      int count = (inputShutdown || isClosed() ? 0 : inbound.poll(buffer, offset, length));
+
+      return (count > 0 ? count : (awaitInput() < 0 ? -1 : inbound.poll(buffer, offset, length)));
+    }
+
+    @Override
+    public void close() throws IOException {
+      RingSocket.this.close();
+    }
+  }
+
+  /**
+   * The RingOutputStream class writes bytes to the outbound RingBuffer.  Bytes are visible to the peer as soon as
+   * they are written, so flush does nothing.
+   */
+  protected class RingOutputStream extends OutputStream {
+
+    private final byte[] singleByte = new byte[1];
+
+    @Override
+    public void write(final int value) throws IOException {
+      singleByte[0] = (byte) value;
+      write(singleByte, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] buffer, final int offset, final int length) throws IOException {
+      checkOutput();
+
+      for (int written = 0, attempts = 0; written < length; ) {
+        int count = outbound.offer(buffer, offset + written, length - written);
+
+        if (count > 0) {
+          written += count;
+          attempts = 0;
+        }
+        else {
+          attempts = awaitOutputSpace(attempts);
+        }
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      RingSocket.this.close();
+    }
+  }
+
+  /**
+   * The RingReadableChannel class reads bytes from the inbound RingBuffer directly into ByteBuffers.
+   */
+  protected class RingReadableChannel implements ReadableByteChannel {
+
+    public boolean isOpen() {
+      return !isClosed();
+    }
+
+    public int read(final ByteBuffer target) throws IOException {
+      if (isClosed()) {
+        throw new ClosedChannelException();
+      }
+
+      if (!target.hasRemaining()) {
+        return 0;
+      }
+
+      int count = (inputShutdown ? 0 : inbound.poll(target));
+
+      return (count > 0 ? count : (awaitInput() < 0 ? -1 : inbound.poll(target)));
+    }
+
+    public void close() {
+      RingSocket.this.close();
+    }
+  }
+
+  /**
+   * The RingWritableChannel class writes bytes from ByteBuffers directly to the outbound RingBuffer, blocking until
+   * all remaining bytes have been written.
+   */
+  protected class RingWritableChannel implements WritableByteChannel {
+
+    public boolean isOpen() {
+      return !isClosed();
+    }
+
+    public int write(final ByteBuffer source) throws IOException {
+      if (isClosed()) {
+        throw new ClosedChannelException();
+      }
+
+      checkOutput();
+
+      int written = 0;
+
+      for (int attempts = 0; source.hasRemaining(); ) {
+        int count = outbound.offer(source);
+
+        if (count > 0) {
+          written += count;
+          attempts = 0;
+        }
+        else {
+          attempts = awaitOutputSpace(attempts);
+        }
+      }
+
+      return written;
+    }
+
+    public void close() {
+      RingSocket.this.close();
+    }
+  }
+
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net.shm;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.codeprimate.lang.Assert;
+import org.codeprimate.lang.concurrent.ThreadUtils;
+import org.codeprimate.net.ServerEngine;
+import org.codeprimate.net.ServerMetrics;
+import org.codeprimate.net.SocketHandler;
+import org.codeprimate.net.SocketUtils;
+
+/**
+ * The SharedMemoryServerEngine class is a ServerEngine for clients running in other processes on the same host.
+ * Instead of listening on a ServerSocket, an acceptor Thread polls a directory for the connection files published by
+ * SharedMemorySocket.connect, and each accepted SharedMemorySocket is serviced with blocking I/O on a worker Thread of
+ * an ExecutorService by the same SocketHandler a BlockingServerEngine would use.
+ *
+ * Stopping the engine stops the acceptor immediately, then drains the in-flight client requests, waiting up to
+ * the drain timeout before closing the client connections that remain open.
+ *
+ * @author John J. Blum
+ * @see org.codeprimate.net.BlockingServerEngine
+ * @see org.codeprimate.net.ServerEngine
+ * @see org.codeprimate.net.SocketHandler
+ * @see org.codeprimate.net.shm.SharedMemorySocket
+ * @since 1.2.0
+ */
+@SuppressWarnings("unused")
+public class SharedMemoryServerEngine implements ServerEngine {
+
+  public static final long DEFAULT_DRAIN_TIMEOUT = TimeUnit.SECONDS.toMillis(5);
+
+  protected static final long ACCEPT_POLL_INTERVAL = 2l;
+
+  private static final FileFilter CONNECTION_FILE_FILTER = new FileFilter() {
+    public boolean accept(final File pathname) {
+      return pathname.getName().endsWith(SharedMemorySocket.CONNECTION_FILE_EXTENSION);
+    }
+  };
+
+  private volatile boolean running;
+
+  private final ExecutorService executor;
+
+  private final File directory;
+
+  private long drainTimeout = DEFAULT_DRAIN_TIMEOUT;
+
+  private final Set<SharedMemorySocket> connections = Collections.newSetFromMap(
+    new ConcurrentHashMap<SharedMemorySocket, Boolean>());
+
+  private final SocketHandler handler;
+
+  private ServerMetrics metrics = new ServerMetrics();
+
+  private final String name;
+
+  private final WaitStrategy waitStrategy;
+
+  public SharedMemoryServerEngine(final String name, final File directory, final WaitStrategy waitStrategy,
+                                  final ExecutorService executor, final SocketHandler handler) {
+    Assert.notNull(directory, "The directory to watch for connections must not be null!");
+    Assert.notNull(waitStrategy, "The WaitStrategy must not be null!");
+    Assert.notNull(executor, "The ExecutorService must not be null!");
+    Assert.notNull(handler, "The SocketHandler must not be null!");
+
+    this.name = name;
+    this.directory = directory;
+    this.waitStrategy = waitStrategy;
+    this.executor = executor;
+    this.handler = handler;
+  }
+
+  /**
+   * Gets the directory used by default for connections to a server identified by a port number, so clients can find
+   * a server with the same port number they would use for TCP/IP.
+   *
+   * @param port the port number identifying the server.
+   * @return a File for the directory in the system temporary directory.
+   */
+  public static File getDefaultDirectory(final int port) {
+    return new File(System.getProperty("java.io.tmpdir"), String.format("codeprimate-shm-%1$d", port));
+  }
+
+  /**
+   * Shared memory connections are not bound to a network address; returns the loopback address while running.
+   *
+   * @return the loopback InetSocketAddress, or null if the engine has not been started.
+   */
+  public InetSocketAddress getBoundAddress() {
+    return (isRunning() ? new InetSocketAddress(InetAddress.getLoopbackAddress(), 0) : null);
+  }
+
+  public int getConnectionCount() {
+    return connections.size();
+  }
+
+  public File getDirectory() {
+    return directory;
+  }
+
+  public long getDrainTimeout() {
+    return drainTimeout;
+  }
+
+  public void setDrainTimeout(final long drainTimeout) {
+    Assert.legalArgument(drainTimeout >= 0, String.format(
+      "The drain timeout (%1$d) must be greater than or equal to 0!", drainTimeout));
+    this.drainTimeout = drainTimeout;
+  }
+
+  public ExecutorService getExecutor() {
+    return executor;
+  }
+
+  public SocketHandler getHandler() {
+    return handler;
+  }
+
+  /**
+   * Gets the ServerMetrics counting the client connections accepted and closed by this server engine.
+   *
+   * @return the ServerMetrics of this server engine.
+   */
+  public ServerMetrics getMetrics() {
+    return metrics;
+  }
+
+  public void setMetrics(final ServerMetrics metrics) {
+    Assert.notNull(metrics, "The ServerMetrics must not be null!");
+    Assert.legalState(!isRunning(), "The ServerMetrics cannot be changed while the server engine is running!");
+    this.metrics = metrics;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public boolean isRunning() {
+    return running;
+  }
+
+  public WaitStrategy getWaitStrategy() {
+    return waitStrategy;
+  }
+
+  /**
+   * Creates the Thread on which the acceptor runs.  Subclasses may override this method to customize the Thread,
+   * such as setting the ThreadGroup.
+   *
+   * @param acceptor the Runnable acceptor.
+   * @param threadName a String indicating the name of the Thread.
+   * @return a new, un-started Thread to run the acceptor.
+   */
+  protected Thread newThread(final Runnable acceptor, final String threadName) {
+    Thread thread = new Thread(acceptor, threadName);
+    thread.setDaemon(false);
+    thread.setPriority(Thread.NORM_PRIORITY);
+    return thread;
+  }
+
+  public synchronized void start() throws IOException {
+    Assert.legalState(!isRunning(), String.format("%1$s is already running!", getName()));
+
+    if (!(directory.isDirectory() || directory.mkdirs())) {
+      throw new IOException(String.format("Failed to create the directory (%1$s) to watch for connections!",
+        directory));
+    }
+
+    // connection files left behind by clients of a previous server are never going to be accepted
+    for (File staleConnectionFile : listConnectionFiles()) {
+      staleConnectionFile.delete();
+    }
+
+    metrics.setExecutor(executor);
+    running = true;
+
+    newThread(new Acceptor(), String.format("%1$s Acceptor", getName())).start();
+  }
+
+  private File[] listConnectionFiles() {
+    File[] connectionFiles = directory.listFiles(CONNECTION_FILE_FILTER);
+    return (connectionFiles != null ? connectionFiles : new File[0]);
+  }
+
+  /**
+   * Stops accepting client connections immediately, then waits up to the drain timeout for in-flight client requests
+   * to complete before closing the remaining client connections and interrupting the worker Threads.
+   */
+  public void stop() {
+    synchronized (this) {
+      if (!isRunning()) {
+        return;
+      }
+
+      running = false;
+    }
+
+    executor.shutdown();
+
+    try {
+      executor.awaitTermination(getDrainTimeout(), TimeUnit.MILLISECONDS);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    for (SharedMemorySocket connection : connections) {
+      SocketUtils.close(connection);
+    }
+
+    executor.shutdownNow();
+  }
+
+  protected void dispatch(final SharedMemorySocket clientSocket) {
+    final Runnable delegate = handler.service(clientSocket);
+
+    Assert.notNull(delegate, "The Runnable servicing the client cannot be null!");
+
+    connections.add(clientSocket);
+    metrics.connectionOpened();
+
+    try {
+      executor.execute(new Runnable() {
+        public void run() {
+          try {
+            delegate.run();
+          }
+          finally {
+            remove(clientSocket);
+          }
+        }
+      });
+    }
+    catch (RejectedExecutionException e) {
+      remove(clientSocket);
+      SocketUtils.close(clientSocket);
+    }
+  }
+
+  private void remove(final SharedMemorySocket connection) {
+    if (connections.remove(connection)) {
+      metrics.connectionClosed();
+    }
+  }
+
+  /**
+   * The Acceptor class is a Runnable that polls the directory for connection files, accepting and dispatching each
+   * connection to the ExecutorService, until the engine is stopped.
+   */
+  protected class Acceptor implements Runnable {
+
+    public void run() {
+      while (isRunning()) {
+        File[] connectionFiles = listConnectionFiles();
+
+        for (int index = 0; index < connectionFiles.length && isRunning(); index++) {
+          try {
+            dispatch(SharedMemorySocket.accept(connectionFiles[index], waitStrategy));
+          }
+          catch (IOException e) {
+            if (isRunning()) {
+              e.printStackTrace(System.err);
+            }
+          }
+        }
+
+        if (connectionFiles.length == 0) {
+          ThreadUtils.sleep(ACCEPT_POLL_INTERVAL);
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net.shm;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.ConnectException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.codeprimate.lang.Assert;
+
+/**
+ * The SharedMemorySocket class is a RingSocket whose RingBuffers are laid out in a memory-mapped file shared by two
+ * processes on the same host, so bytes travel between the processes without passing through the TCP/IP stack.
+ *
+ * A client connects by creating and initializing a connection file in the directory watched by a
+ * SharedMemoryServerEngine, then atomically renaming it so the server only sees complete files.  The server maps the
+ * file, marks it accepted and deletes it; the mapping stays valid in both processes until they close the Socket.
+ * Closing either side is seen by the other as end-of-stream, but the death of the peer process is not detected,
+ * so a read timeout should be set where a peer may exit without closing its Socket.
+ *
+ * @author John J. Blum
+ * @see java.nio.MappedByteBuffer
+ * @see org.codeprimate.net.shm.RingSocket
+ * @see org.codeprimate.net.shm.SharedMemoryServerEngine
+ * @since 1.2.0
+ */
+@SuppressWarnings("unused")
+public class SharedMemorySocket extends RingSocket {
+
+  public static final int DEFAULT_RING_CAPACITY = 1048576;
+
+  public static final long DEFAULT_CONNECT_TIMEOUT = TimeUnit.SECONDS.toMillis(5);
+
+  protected static final int MAGIC = 0x52494E47;
+
+  protected static final int MAGIC_OFFSET = 0;
+  protected static final int RING_CAPACITY_OFFSET = 4;
+  protected static final int ACCEPTED_OFFSET = 8;
+
+  protected static final int FILE_HEADER_SIZE = RingBuffer.CACHE_LINE_PAD;
+
+  protected static final String CONNECTION_FILE_EXTENSION = ".ring";
+  protected static final String TEMPORARY_FILE_EXTENSION = ".tmp";
+
+  private final File connectionFile;
+
+  private final MappedByteBuffer mappedBuffer;
+
+  protected SharedMemorySocket(final File connectionFile, final MappedByteBuffer mappedBuffer, final boolean client,
+                               final WaitStrategy waitStrategy) {
+    super(ring(mappedBuffer, !client), ring(mappedBuffer, client), waitStrategy);
+    this.connectionFile = connectionFile;
+    this.mappedBuffer = mappedBuffer;
+  }
+
+  // the client-to-server RingBuffer is laid out first, followed by the server-to-client RingBuffer
+  private static RingBuffer ring(final MappedByteBuffer mappedBuffer, final boolean clientToServer) {
+    int ringSize = RingBuffer.requiredSize(mappedBuffer.getInt(RING_CAPACITY_OFFSET));
+    return new RingBuffer(region(mappedBuffer, FILE_HEADER_SIZE + (clientToServer ? 0 : ringSize), ringSize));
+  }
+
+  private static ByteBuffer region(final ByteBuffer buffer, final int offset, final int length) {
+    ByteBuffer region = buffer.duplicate();
+    ((Buffer) region).position(offset);
+    ((Buffer) region).limit(offset + length);
+    return region.slice();
+  }
+
+  /**
+   * Connects to the SharedMemoryServerEngine watching the given directory.
+   *
+   * @param directory the directory watched by the server for connection files.
+   * @param ringCapacity the capacity in bytes of each RingBuffer; must be a power of two.
+   * @param waitStrategy the WaitStrategy used while waiting to read or write.
+   * @param connectTimeout the number of milliseconds to wait for the server to accept the connection.
+   * @return a connected SharedMemorySocket.
+   * @throws ConnectException if the server does not accept the connection before the timeout expires.
+   * @throws IOException if the connection file cannot be created.
+   */
+  public static SharedMemorySocket connect(final File directory, final int ringCapacity,
+                                           final WaitStrategy waitStrategy, final long connectTimeout)
+      throws IOException {
+
+    Assert.notNull(directory, "The directory must not be null!");
+    Assert.legalArgument(ringCapacity > 0 && Integer.bitCount(ringCapacity) == 1, String.format(
+      "The ring capacity (%1$d) must be a positive power of two!", ringCapacity));
+
+    if (!directory.isDirectory()) {
+      throw new ConnectException(String.format("No shared memory server is listening in directory (%1$s)!",
+        directory));
+    }
+
+    String connectionName = UUID.randomUUID().toString();
+
+    File temporaryFile = new File(directory, connectionName + TEMPORARY_FILE_EXTENSION);
+    File connectionFile = new File(directory, connectionName + CONNECTION_FILE_EXTENSION);
+
+    try {
+      MappedByteBuffer mappedBuffer = map(temporaryFile, FILE_HEADER_SIZE + 2 * RingBuffer.requiredSize(ringCapacity));
+      mappedBuffer.putInt(MAGIC_OFFSET, MAGIC);
+      mappedBuffer.putInt(RING_CAPACITY_OFFSET, ringCapacity);
+      mappedBuffer.putInt(ACCEPTED_OFFSET, 0);
+
+      SharedMemorySocket socket = new SharedMemorySocket(connectionFile, mappedBuffer, true, waitStrategy);
+
+      socket.getInbound().initialize();
+      socket.getOutbound().initialize();
+
+      if (!temporaryFile.renameTo(connectionFile)) {
+        throw new IOException(String.format("Failed to publish connection file (%1$s)!", connectionFile));
+      }
+
+      long deadline = (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(connectTimeout));
+
+      while (!socket.isAccepted()) {
+        if (System.nanoTime() - deadline >= 0) {
+          socket.close();
+          throw new ConnectException(String.format(
+            "No shared memory server accepted the connection in directory (%1$s) within (%2$d) ms!", directory,
+              connectTimeout));
+        }
+
+        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+      }
+
+      return socket;
+    }
+    finally {
+      temporaryFile.delete();
+    }
+  }
+
+  /**
+   * Accepts the connection described by a connection file published by a client.
+   *
+   * @param connectionFile the connection file published by the client.
+   * @param waitStrategy the WaitStrategy used while waiting to read or write.
+   * @return a connected SharedMemorySocket for the server side of the connection.
+   * @throws IOException if the connection file cannot be mapped or is invalid.
+   */
+  static SharedMemorySocket accept(final File connectionFile, final WaitStrategy waitStrategy) throws IOException {
+    try {
+      MappedByteBuffer mappedBuffer = map(connectionFile, -1);
+
+      if (mappedBuffer.capacity() < FILE_HEADER_SIZE || mappedBuffer.getInt(MAGIC_OFFSET) != MAGIC) {
+        throw new IOException(String.format("(%1$s) is not a valid connection file!", connectionFile));
+      }
+
+      SharedMemorySocket socket = new SharedMemorySocket(connectionFile, mappedBuffer, false, waitStrategy);
+
+      mappedBuffer.putInt(ACCEPTED_OFFSET, 1);
+
+      return socket;
+    }
+    finally {
+      // both processes have mapped the file, so its name is no longer needed
+      connectionFile.delete();
+    }
+  }
+
+  // @see java.nio.channels.FileChannel#map(java.nio.channels.FileChannel.MapMode, long, long)
+  private static MappedByteBuffer map(final File file, final int size) throws IOException {
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+
+    try {
+      if (size >= 0) {
+        randomAccessFile.setLength(size);
+      }
+
+      FileChannel channel = randomAccessFile.getChannel();
+
+      return channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+    }
+    finally {
+      randomAccessFile.close();
+    }
+  }
+
+  protected boolean isAccepted() {
+    return (mappedBuffer.getInt(ACCEPTED_OFFSET) != 0);
+  }
+
+  public File getConnectionFile() {
+    return connectionFile;
+  }
+
+  @Override
+  public synchronized void close() {
+    super.close();
+    connectionFile.delete();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("SharedMemorySocket[file=%1$s,capacity=%2$d,waitStrategy=%3$s]", connectionFile.getName(),
+      getOutbound().getCapacity(), getWaitStrategy().getCode());
+  }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net.shm;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The WaitStrategy enum defines how a Thread waits for the other side of a shared memory RingBuffer to publish bytes
+ * or free space.  Spinning gives the lowest latency but occupies a CPU for as long as the Thread waits; backing off
+ * trades some latency for idle CPU when the connection is quiet.  Spinning needs a CPU for each waiting Thread as
+ * well as for the peer it waits on; with fewer CPUs, spinning Threads starve the peer and throughput collapses.
+ *
+ * @author John J. Blum
+ * @see org.codeprimate.net.shm.RingBuffer
+ * @since 1.2.0
+ */
+@SuppressWarnings("unused")
+public enum WaitStrategy {
+  BUSY_SPIN("spin", "Spin on the Ring Buffer Sequence Counters"),
+  YIELD("yield", "Spin Briefly, then Yield the CPU between Checks"),
+  BACKOFF("backoff", "Spin, then Yield, then Park for Increasing Intervals up to 1 ms");
+
+  protected static final int SPIN_TRIES = 100;
+  protected static final int YIELD_TRIES = 200;
+
+  protected static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final String code;
+  private final String description;
+
+  WaitStrategy(final String code, final String description) {
+    this.code = code;
+    this.description = description;
+  }
+
+  public static WaitStrategy findBy(final String code) {
+    for (WaitStrategy waitStrategy : values()) {
+      if (waitStrategy.getCode().equalsIgnoreCase(code)) {
+        return waitStrategy;
+      }
+    }
+
+    throw new IllegalArgumentException("(" + code + ") is not a valid WaitStrategy code!");
+  }
+
+  public String getCode() {
+    return code;
+  }
+
+  public String getDescription() {
+    return description;
+  }
+
+  /**
+   * Waits once before the caller checks the RingBuffer again.
+   *
+   * @param attempts the number of times the caller has already waited for the current condition.
+   * @return the number of attempts to pass on the next call.
+   */
+  public int idle(final int attempts) {
+    switch (this) {
+      case BUSY_SPIN:
+        break;
+      case YIELD:
+        if (attempts >= SPIN_TRIES) {
+          Thread.yield();
+        }
+        break;
+      case BACKOFF:
+      default:
+        if (attempts >= YIELD_TRIES) {
+          LockSupport.parkNanos(Math.min(1000l << Math.min(attempts - YIELD_TRIES, 10), MAX_PARK_NANOS));
+        }
+        else if (attempts >= SPIN_TRIES) {
+          Thread.yield();
+        }
+    }
+
+    return (attempts < Integer.MAX_VALUE ? attempts + 1 : attempts);
+  }
+
+  @Override
+  public String toString() {
+    return getDescription();
+  }
+
+}
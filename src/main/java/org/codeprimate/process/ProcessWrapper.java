@@ -76,6 +76,19 @@ public class ProcessWrapper implements Initable {
   private final ProcessConfiguration processConfiguration;
 
   public ProcessWrapper(final Process process, final ProcessConfiguration processConfiguration) {
+    this(process, processConfiguration, new ProcessInputStreamListener[0]);
+  }
+
+  /**
+   * Constructs a ProcessWrapper with listeners registered before the process's output streams are read, so no line
+   * written by the process, however early, is missed by the listeners.
+   *
+   * @param process the Process to wrap.
+   * @param processConfiguration the ProcessConfiguration describing how the process was configured.
+   * @param listeners the ProcessInputStreamListeners notified of each line written by the process.
+   */
+  public ProcessWrapper(final Process process, final ProcessConfiguration processConfiguration,
+                        final ProcessInputStreamListener... listeners) {
     Assert.notNull(process, "The Process object backing this wrapper must not be null!");
 
     Assert.notNull(processConfiguration, "The context and configuration meta-data providing details about"
@@ -84,6 +97,10 @@ public class ProcessWrapper implements Initable {
     this.process = process;
     this.processConfiguration = processConfiguration;
 
+    for (ProcessInputStreamListener listener : listeners) {
+      register(listener);
+    }
+
     init();
   }
 
@@ -105,23 +122,22 @@ public class ProcessWrapper implements Initable {
   protected Runnable newProcessInputStreamReader(final InputStream in) {
     return new Runnable() {
       @Override public void run() {
-        if (isRunning()) {
-          BufferedReader inputReader = new BufferedReader(new InputStreamReader(in));
+        // the output of a process that has already exited is still buffered in the pipe and read to the end
+        BufferedReader inputReader = new BufferedReader(new InputStreamReader(in));
 
-          try {
-            for (String input = inputReader.readLine(); input != null; input = inputReader.readLine()) {
-              for (ProcessInputStreamListener listener : listeners) {
-                listener.onInput(input);
-              }
+        try {
+          for (String input = inputReader.readLine(); input != null; input = inputReader.readLine()) {
+            for (ProcessInputStreamListener listener : listeners) {
+              listener.onInput(input);
             }
           }
-          catch (IOException ignore) {
-            // ignore IO error and just stop reading from the process input stream
-            // IO error occurred most likely because the process was terminated
-          }
-          finally {
-            FileSystemUtils.close(inputReader);
-          }
+        }
+        catch (IOException ignore) {
+          // ignore IO error and just stop reading from the process input stream
+          // IO error occurred most likely because the process was terminated
+        }
+        finally {
+          FileSystemUtils.close(inputReader);
         }
       }
     };
@@ -49,6 +49,28 @@ public abstract class JavaProcessExecutor {
 
   public static ProcessWrapper launch(final File workingDirectory, final Class<?> type, final String... args)
     throws IOException
+  {
+    return launch(workingDirectory, type, null, args);
+  }
+
+  /**
+   * Launches the Java process with the listener registered before the process's output is read, so the listener
+   * sees every line written by the process, including lines written before launch returns.
+   *
+   * @param type the main Class of the Java process.
+   * @param listener the ProcessInputStreamListener notified of each line written by the process.
+   * @param args the JVM options and program arguments of the Java process.
+   * @return a ProcessWrapper wrapping the launched process.
+   * @throws IOException if the process cannot be launched.
+   */
+  public static ProcessWrapper launch(final Class<?> type, final ProcessInputStreamListener listener,
+                                      final String... args) throws IOException {
+    return launch(FileSystemUtils.USER_WORKING_DIRECTORY, type, listener, args);
+  }
+
+  public static ProcessWrapper launch(final File workingDirectory, final Class<?> type,
+                                      final ProcessInputStreamListener listener, final String... args)
+    throws IOException
   {
     ProcessBuilder processBuilder = new ProcessBuilder()
       .command(buildCommand(type, args))
@@ -57,15 +79,15 @@ public abstract class JavaProcessExecutor {
 
     Process process = processBuilder.start();
 
-    ProcessWrapper processWrapper = new ProcessWrapper(process, ProcessConfiguration.create(processBuilder));
-
-    processWrapper.register(new ProcessInputStreamListener() {
+    ProcessInputStreamListener forkOutputListener = new ProcessInputStreamListener() {
       @Override public void onInput(final String input) {
         System.err.printf("[FORK-OUT] - %1$s%n", input);
       }
-    });
+    };
 
-    return processWrapper;
+    return (listener != null
+      ? new ProcessWrapper(process, ProcessConfiguration.create(processBuilder), forkOutputListener, listener)
+      : new ProcessWrapper(process, ProcessConfiguration.create(processBuilder), forkOutputListener));
   }
 
   protected static String[] buildCommand(final Class<?> type, final String... args) {
@@ -16,13 +16,22 @@
 
 package org.codeprimate.util.zip;
 
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
 
 import org.codeprimate.io.FileUtils;
 import org.codeprimate.io.IOUtils;
@@ -35,11 +44,29 @@ import org.codeprimate.util.CollectionUtils;
  * @author John J. Blum
  * @see java.io.File
  * @see java.util.zip.ZipFile
+ * @see java.util.zip.ZipInputStream
  * @since 1.0.0
  */
 @SuppressWarnings("unused")
 public abstract class ZipUtils {
 
+  protected static final int CENTRAL_DIRECTORY_HEADER_SIGNATURE = 0x02014b50;
+  protected static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+  protected static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE = 0x07064b50;
+  protected static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06064b50;
+  protected static final int ZIP64_EXTENDED_INFORMATION_EXTRA_FIELD_ID = 0x0001;
+
+  protected static final int CENTRAL_DIRECTORY_HEADER_LENGTH = 46;
+  protected static final int END_OF_CENTRAL_DIRECTORY_LENGTH = 22;
+  protected static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_LENGTH = 20;
+
+  // the number of trailing bytes retained while entries are being extracted; java.util.zip.ZipInputStream reads
+  // at most a few hundred bytes ahead of the entry it is inflating, so the start of the central directory is
+  // guaranteed to still be in the window when the last local file header has been processed
+  protected static final int TAIL_WINDOW_SIZE = 65536;
+
+  protected static final Charset ZIP_ENTRY_NAME_CHARSET = Charset.forName("UTF-8");
+
   /**
    * Unzips the specified ZIP file to the target directory.
    *
@@ -79,4 +106,365 @@ public abstract class ZipUtils {
     }
   }
 
+  /**
+   * Unzips the ZIP archive read from the specified InputStream to the target directory as the bytes arrive, without
+   * first buffering the archive in memory or on disk.  Each local file header is processed as soon as it is read,
+   * so that the download (e.g. from a Socket or HTTP response body) overlaps with inflating and writing the entries
+   * to the file system.  Entries having a trailing data descriptor are supported.  Once all entries have been
+   * extracted, the remainder of the stream is consumed and the central directory is verified against the entries
+   * that were actually extracted.  The InputStream is not closed by this method.
+   *
+   * @param in the InputStream from which the bytes of the ZIP archive are read.
+   * @param directory a File indicating the directory (path/location) in which to unzip the ZIP archive.
+   * @throws IOException if the ZIP archive could not be read, the contents unzipped or the central directory
+   * does not agree with the extracted entries.
+   * @see #unzip(java.io.File, java.io.File)
+   * @see java.util.zip.ZipInputStream
+   */
+  public static void unzip(final InputStream in, final File directory) throws IOException {
+    Assert.notNull(in, "The InputStream from which to read the ZIP archive must not be null!");
+
+    Assert.legalArgument(FileUtils.createDirectory(directory), String.format(
+      "The file system pathname (%1$s) is not a valid directory!", directory));
+
+    File canonicalDirectory = directory.getCanonicalFile();
+
+    TailCapturingInputStream archiveInputStream = new TailCapturingInputStream(in, TAIL_WINDOW_SIZE);
+
+    ZipInputStream zipInputStream = new ZipInputStream(archiveInputStream, ZIP_ENTRY_NAME_CHARSET);
+
+    Map<String, ZipEntry> extractedEntries = new LinkedHashMap<String, ZipEntry>();
+
+    byte[] buffer = new byte[IOUtils.BUFFER_SIZE];
+
+    for (ZipEntry entry = zipInputStream.getNextEntry(); entry != null; entry = zipInputStream.getNextEntry()) {
+      File entryFile = resolveEntryFile(canonicalDirectory, entry);
+
+      if (entry.isDirectory()) {
+        Assert.legalState(FileUtils.createDirectory(entryFile), String.format(
+          "Failed to create directory (%1$s) for ZIP entry!", entry.getName()));
+      }
+      else {
+        Assert.legalState(FileUtils.createDirectory(entryFile.getParentFile()), String.format(
+          "Failed to create parent directory for ZIP entry (%1$s)!", entry.getName()));
+
+        OutputStream entryOutputStream = new FileOutputStream(entryFile);
+
+        try {
+          for (int length = zipInputStream.read(buffer); length != -1; length = zipInputStream.read(buffer)) {
+            entryOutputStream.write(buffer, 0, length);
+          }
+        }
+        finally {
+          IOUtils.close(entryOutputStream);
+        }
+      }
+
+      // ZipInputStream fills in the CRC and sizes from the data descriptor when the entry is closed
+      zipInputStream.closeEntry();
+      extractedEntries.put(entry.getName(), entry);
+    }
+
+    archiveInputStream.capture();
+    archiveInputStream.drain();
+
+    verifyCentralDirectory(archiveInputStream.getCapturedBytes(), extractedEntries);
+  }
+
+  private static File resolveEntryFile(final File canonicalDirectory, final ZipEntry entry) throws IOException {
+    File entryFile = new File(canonicalDirectory, entry.getName()).getCanonicalFile();
+
+    if (!entryFile.getPath().startsWith(canonicalDirectory.getPath() + File.separator)) {
+      throw new ZipException(String.format("ZIP entry (%1$s) resolves outside of the target directory (%2$s)!",
+        entry.getName(), canonicalDirectory));
+    }
+
+    return entryFile;
+  }
+
+  /**
+   * Verifies the central directory contained in the trailing bytes of a ZIP archive against the entries extracted
+   * from the local file headers of the archive.
+   *
+   * @param tail the trailing bytes of the ZIP archive, which must contain the entire central directory
+   * along with the end of central directory record(s).
+   * @param extractedEntries a mapping of entry names to the ZipEntries extracted from the archive.
+   * @throws ZipException if the central directory is missing, malformed or does not agree with the extracted entries.
+   * @see java.util.zip.ZipEntry
+   */
+  protected static void verifyCentralDirectory(final byte[] tail, final Map<String, ZipEntry> extractedEntries)
+    throws ZipException
+  {
+    int endOfCentralDirectoryIndex = findEndOfCentralDirectory(tail);
+
+    if (endOfCentralDirectoryIndex < 0) {
+      throw new ZipException("The end of central directory record could not be found!");
+    }
+
+    long entryCount = readUnsignedShort(tail, endOfCentralDirectoryIndex + 10);
+    long centralDirectorySize = readUnsignedInt(tail, endOfCentralDirectoryIndex + 12);
+    int centralDirectoryEndIndex = endOfCentralDirectoryIndex;
+
+    int zip64LocatorIndex = (endOfCentralDirectoryIndex - ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_LENGTH);
+
+    if (zip64LocatorIndex >= 0
+        && readInt(tail, zip64LocatorIndex) == ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE) {
+
+      long zip64RecordOffset = readLong(tail, zip64LocatorIndex + 8);
+      long zip64RecordSize = -1;
+      int zip64RecordIndex = zip64LocatorIndex;
+
+      // the ZIP64 end of central directory record immediately precedes the locator, but may carry extensible data
+      // of variable length, so scan backwards for its signature rather than relying on the absolute offset
+      for (int index = zip64LocatorIndex - 56; index >= 0; index--) {
+        if (readInt(tail, index) == ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE
+            && index + 12 + readLong(tail, index + 4) == zip64LocatorIndex) {
+          zip64RecordIndex = index;
+          zip64RecordSize = readLong(tail, index + 4);
+          break;
+        }
+      }
+
+      if (zip64RecordSize < 0) {
+        throw new ZipException(String.format(
+          "The ZIP64 end of central directory record at offset (%1$d) could not be found!", zip64RecordOffset));
+      }
+
+      entryCount = readLong(tail, zip64RecordIndex + 32);
+      centralDirectorySize = readLong(tail, zip64RecordIndex + 40);
+      centralDirectoryEndIndex = zip64RecordIndex;
+    }
+
+    long centralDirectoryIndex = (centralDirectoryEndIndex - centralDirectorySize);
+
+    if (centralDirectoryIndex < 0) {
+      throw new ZipException(String.format(
+        "The central directory (%1$d bytes) could not be verified in its entirety!", centralDirectorySize));
+    }
+
+    if (entryCount != extractedEntries.size()) {
+      throw new ZipException(String.format(
+        "The central directory lists (%1$d) entries but (%2$d) entries were extracted!",
+          entryCount, extractedEntries.size()));
+    }
+
+    int index = (int) centralDirectoryIndex;
+
+    for (long count = 0; count < entryCount; count++) {
+      if (index + CENTRAL_DIRECTORY_HEADER_LENGTH > centralDirectoryEndIndex
+          || readInt(tail, index) != CENTRAL_DIRECTORY_HEADER_SIGNATURE) {
+        throw new ZipException(String.format("Invalid central directory file header for entry (%1$d)!", count));
+      }
+
+      long crc = readUnsignedInt(tail, index + 16);
+      long compressedSize = readUnsignedInt(tail, index + 20);
+      long size = readUnsignedInt(tail, index + 24);
+
+      int nameLength = readUnsignedShort(tail, index + 28);
+      int extraLength = readUnsignedShort(tail, index + 30);
+      int commentLength = readUnsignedShort(tail, index + 32);
+
+      if (index + CENTRAL_DIRECTORY_HEADER_LENGTH + nameLength + extraLength + commentLength
+          > centralDirectoryEndIndex) {
+        throw new ZipException(String.format(
+          "The central directory file header for entry (%1$d) extends past the end of the central directory!", count));
+      }
+
+      String name = new String(tail, index + CENTRAL_DIRECTORY_HEADER_LENGTH, nameLength, ZIP_ENTRY_NAME_CHARSET);
+
+      int extraIndex = (index + CENTRAL_DIRECTORY_HEADER_LENGTH + nameLength);
+      int extraEndIndex = (extraIndex + extraLength);
+
+      while (extraIndex + 4 <= extraEndIndex) {
+        int headerId = readUnsignedShort(tail, extraIndex);
+        int dataSize = readUnsignedShort(tail, extraIndex + 2);
+        int dataEndIndex = (extraIndex + 4 + dataSize);
+
+        if (dataEndIndex > extraEndIndex) {
+          throw new ZipException(String.format("The extra field of entry (%1$s) is malformed!", name));
+        }
+
+        if (headerId == ZIP64_EXTENDED_INFORMATION_EXTRA_FIELD_ID) {
+          int dataIndex = (extraIndex + 4);
+
+          if (size == 0xFFFFFFFFL) {
+            size = readZip64Field(tail, dataIndex, dataEndIndex, name);
+            dataIndex += 8;
+          }
+
+          if (compressedSize == 0xFFFFFFFFL) {
+            compressedSize = readZip64Field(tail, dataIndex, dataEndIndex, name);
+          }
+        }
+
+        extraIndex += (4 + dataSize);
+      }
+
+      ZipEntry extractedEntry = extractedEntries.get(name);
+
+      if (extractedEntry == null) {
+        throw new ZipException(String.format(
+          "The central directory lists entry (%1$s) that was not found in the archive!", name));
+      }
+
+      if (!extractedEntry.isDirectory() && (extractedEntry.getCrc() != crc || extractedEntry.getSize() != size
+          || extractedEntry.getCompressedSize() != compressedSize)) {
+        throw new ZipException(String.format(
+          "The central directory record for entry (%1$s) [crc = %2$x, size = %3$d, compressed size = %4$d]"
+            + " does not match the extracted entry [crc = %5$x, size = %6$d, compressed size = %7$d]!",
+          name, crc, size, compressedSize, extractedEntry.getCrc(), extractedEntry.getSize(),
+            extractedEntry.getCompressedSize()));
+      }
+
+      index = (extraEndIndex + commentLength);
+    }
+  }
+
+  // reads a size from the ZIP64 extended information extra field, which must contain it
+  private static long readZip64Field(final byte[] bytes, final int index, final int endIndex, final String name)
+    throws ZipException
+  {
+    if (index + 8 > endIndex) {
+      throw new ZipException(String.format("The ZIP64 extra field of entry (%1$s) is missing a size!", name));
+    }
+
+    return readLong(bytes, index);
+  }
+
+  private static int findEndOfCentralDirectory(final byte[] tail) {
+    for (int index = tail.length - END_OF_CENTRAL_DIRECTORY_LENGTH; index >= 0; index--) {
+      if (readInt(tail, index) == END_OF_CENTRAL_DIRECTORY_SIGNATURE
+          && index + END_OF_CENTRAL_DIRECTORY_LENGTH + readUnsignedShort(tail, index + 20) == tail.length) {
+        return index;
+      }
+    }
+
+    return -1;
+  }
+
+  private static int readUnsignedShort(final byte[] bytes, final int index) {
+    return ((bytes[index] & 0xFF) | ((bytes[index + 1] & 0xFF) << 8));
+  }
+
+  private static int readInt(final byte[] bytes, final int index) {
+    return (readUnsignedShort(bytes, index) | (readUnsignedShort(bytes, index + 2) << 16));
+  }
+
+  private static long readUnsignedInt(final byte[] bytes, final int index) {
+    return (readInt(bytes, index) & 0xFFFFFFFFL);
+  }
+
+  private static long readLong(final byte[] bytes, final int index) {
+    return (readUnsignedInt(bytes, index) | (readUnsignedInt(bytes, index + 4) << 32));
+  }
+
+  /**
+   * The TailCapturingInputStream class is a FilterInputStream that retains a bounded window of the most recent bytes
+   * read from the underlying InputStream, and, once capturing is enabled, every byte read thereafter.  This allows
+   * the trailing central directory of a streamed ZIP archive to be inspected without buffering the entire archive.
+   *
+   * @see java.io.FilterInputStream
+   */
+  protected static class TailCapturingInputStream extends FilterInputStream {
+
+    private boolean capturing;
+
+    private final byte[] window;
+
+    private final ByteArrayOutputStream captured = new ByteArrayOutputStream();
+
+    private int windowIndex;
+
+    private long position;
+
+    protected TailCapturingInputStream(final InputStream in, final int windowSize) {
+      super(in);
+      this.window = new byte[windowSize];
+    }
+
+    public long getPosition() {
+      return position;
+    }
+
+    public byte[] getCapturedBytes() {
+      return captured.toByteArray();
+    }
+
+    /**
+     * Seeds the capture with the bytes in the trailing window and captures every byte read from this point forward.
+     */
+    public void capture() {
+      if (!capturing) {
+        int windowLength = (int) Math.min(position, window.length);
+        int start = (windowIndex - windowLength + window.length) % window.length;
+        int firstLength = Math.min(windowLength, window.length - start);
+
+        captured.write(window, start, firstLength);
+        captured.write(window, 0, windowLength - firstLength);
+        capturing = true;
+      }
+    }
+
+    /**
+     * Reads the remaining bytes of the underlying InputStream until EOF.
+     *
+     * @throws IOException if an I/O error occurs while reading the underlying InputStream.
+     */
+    public void drain() throws IOException {
+      byte[] buffer = new byte[IOUtils.BUFFER_SIZE];
+      while (read(buffer, 0, buffer.length) != -1) {
+      }
+    }
+
+    @Override
+    public int read() throws IOException {
+      int value = super.read();
+
+      if (value != -1) {
+        record(new byte[] { (byte) value }, 0, 1);
+      }
+
+      return value;
+    }
+
+    @Override
+    public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+      int bytesRead = super.read(buffer, offset, length);
+
+      if (bytesRead > 0) {
+        record(buffer, offset, bytesRead);
+      }
+
+      return bytesRead;
+    }
+
+    @Override
+    public long skip(final long length) throws IOException {
+      byte[] buffer = new byte[(int) Math.min(Math.max(length, 0), IOUtils.BUFFER_SIZE)];
+      int bytesRead = (buffer.length > 0 ? read(buffer, 0, buffer.length) : 0);
+      return Math.max(bytesRead, 0);
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    private void record(final byte[] buffer, final int offset, final int length) {
+      position += length;
+
+      if (capturing) {
+        captured.write(buffer, offset, length);
+      }
+      else {
+        int start = Math.max(offset, offset + length - window.length);
+
+        for (int index = start, end = offset + length; index < end; index++) {
+          window[windowIndex] = buffer[index];
+          windowIndex = (windowIndex + 1) % window.length;
+        }
+      }
+    }
+  }
+
 }
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.lang.concurrent;
+
+import java.lang.invoke.VarHandle;
+
+/**
+ * The Fences class is an abstract utility class for memory fences ordering plain reads and writes, such as those of
+ * a ByteBuffer shared between Threads or processes.  This is the Java 21 version of the class packaged in
+ * META-INF/versions/21 of the Multi-Release JAR, which uses the VarHandle fences rather than AtomicInteger accesses.
+ *
+ * @author John J. Blum
+ * @see java.lang.invoke.VarHandle#acquireFence()
+ * @see java.lang.invoke.VarHandle#fullFence()
+ * @see java.lang.invoke.VarHandle#releaseFence()
+ * @since 1.2.0
+ */
+@SuppressWarnings("unused")
+public abstract class Fences {
+
+  public static void fullFence() {
+    VarHandle.fullFence();
+  }
+
+  public static void loadFence() {
+    VarHandle.acquireFence();
+  }
+
+  public static void storeFence() {
+    VarHandle.releaseFence();
+  }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.lang.concurrent;
+
+import java.lang.Thread.UncaughtExceptionHandler;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The VirtualThreads class is an abstract utility class for creating virtual Threads.  This is the Java 21 version
+ * of the class packaged in META-INF/versions/21 of the Multi-Release JAR.
+ *
+ * Blocking Socket I/O does not pin a virtual Thread to its carrier Thread since Java 13 re-implemented the Socket API
+ * on NIO (JEP 353), which parks on a ReentrantLock rather than blocking in a monitor.  Pinning occurs when a virtual
+ * Thread blocks inside a synchronized block or method; enable pinning diagnostics to have such occurrences reported.
+ *
+ * @author John J. Blum
+ * @see java.lang.Thread#ofVirtual()
+ * @see java.util.concurrent.Executors#newThreadPerTaskExecutor(ThreadFactory)
+ * @since 1.2.0
+ */
+@SuppressWarnings("unused")
+public abstract class VirtualThreads {
+
+  protected static final String TRACE_PINNED_THREADS_PROPERTY = "jdk.tracePinnedThreads";
+
+  public static boolean isSupported() {
+    return true;
+  }
+
+  /**
+   * Enables diagnostics reporting a stack trace when a virtual Thread blocks while pinned to its carrier Thread.
+   * This must be called before the first virtual Thread is created to have any effect.
+   */
+  public static void enablePinningDiagnostics() {
+    if (System.getProperty(TRACE_PINNED_THREADS_PROPERTY) == null) {
+      System.setProperty(TRACE_PINNED_THREADS_PROPERTY, "short");
+    }
+  }
+
+  public static Thread newThread(final String name, final Runnable task, final UncaughtExceptionHandler handler) {
+    Thread.Builder.OfVirtual builder = Thread.ofVirtual().name(name);
+    return (handler != null ? builder.uncaughtExceptionHandler(handler) : builder).unstarted(task);
+  }
+
+  public static ThreadFactory newThreadFactory(final String basename, final UncaughtExceptionHandler handler) {
+    Thread.Builder.OfVirtual builder = Thread.ofVirtual().name(basename + " ", 0);
+    return (handler != null ? builder.uncaughtExceptionHandler(handler) : builder).factory();
+  }
+
+  public static ExecutorService newThreadPerTaskExecutor(final String basename,
+                                                         final UncaughtExceptionHandler handler) {
+    return Executors.newThreadPerTaskExecutor(newThreadFactory(basename, handler));
+  }
+
+}
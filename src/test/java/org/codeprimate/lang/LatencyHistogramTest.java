@@ -0,0 +1,118 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.lang;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * The LatencyHistogramTest class is a test suite of test cases testing the contract and functionality
+ * of the LatencyHistogram class.
+ *
+ * @author John J. Blum
+ * @see org.codeprimate.lang.LatencyHistogram
+ * @see org.junit.Test
+ * @since 1.2.0
+ */
+public class LatencyHistogramTest {
+
+  @Test
+  public void bucketsCoverAllValuesContiguously() {
+    assertThat(LatencyHistogram.indexOf(0l), is(equalTo(0)));
+    assertThat(LatencyHistogram.indexOf(Long.MAX_VALUE), is(equalTo(LatencyHistogram.BUCKET_COUNT - 1)));
+
+    for (int index = 1; index < LatencyHistogram.BUCKET_COUNT; index++) {
+      long lowestValue = (LatencyHistogram.highestValueOf(index - 1) + 1);
+
+      assertThat(LatencyHistogram.indexOf(lowestValue), is(equalTo(index)));
+      assertThat(LatencyHistogram.indexOf(LatencyHistogram.highestValueOf(index)), is(equalTo(index)));
+    }
+  }
+
+  @Test
+  public void percentilesWithinRelativeError() {
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    for (long value = 1; value <= 100000; value++) {
+      histogram.record(value);
+    }
+
+    assertThat(histogram.getCount(), is(equalTo(100000l)));
+    assertThat(histogram.getMax(), is(equalTo(100000l)));
+    assertThat(histogram.getMean(), is(equalTo(50000.5d)));
+    assertThat(histogram.getValueAtPercentile(100.0d), is(equalTo(100000l)));
+
+    for (double percentile : new double[] { 50.0d, 90.0d, 99.0d, 99.9d }) {
+      long expectedValue = (long) (percentile * 1000);
+      long actualValue = histogram.getValueAtPercentile(percentile);
+
+      assertThat(actualValue >= expectedValue, is(true));
+      assertThat(actualValue <= expectedValue * 1.0625d, is(true));
+    }
+  }
+
+  @Test
+  public void addAndReset() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    LatencyHistogram otherHistogram = new LatencyHistogram();
+
+    histogram.record(5l);
+    otherHistogram.record(7l);
+    otherHistogram.record(-3l);
+    histogram.add(otherHistogram);
+
+    assertThat(histogram.getCount(), is(equalTo(3l)));
+    assertThat(histogram.getMax(), is(equalTo(7l)));
+    assertThat(histogram.getValueAtPercentile(0.0d), is(equalTo(0l)));
+    assertThat(histogram.getValueAtPercentile(50.0d), is(equalTo(5l)));
+
+    histogram.reset();
+
+    assertThat(histogram.getCount(), is(equalTo(0l)));
+    assertThat(histogram.getValueAtPercentile(99.0d), is(equalTo(0l)));
+  }
+
+  @Test
+  public void encodeAndDecode() {
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    for (long value = 1l; value <= 100000l; value += 7l) {
+      histogram.record(value);
+    }
+
+    LatencyHistogram decodedHistogram = LatencyHistogram.decode(histogram.encode());
+
+    assertThat(decodedHistogram.getCount(), is(equalTo(histogram.getCount())));
+    assertThat(decodedHistogram.getMax(), is(equalTo(histogram.getMax())));
+    assertThat(decodedHistogram.getMean(), is(equalTo(histogram.getMean())));
+
+    for (double percentile : new double[] { 0.0d, 50.0d, 90.0d, 99.0d, 99.9d, 100.0d }) {
+      assertThat(decodedHistogram.getValueAtPercentile(percentile),
+        is(equalTo(histogram.getValueAtPercentile(percentile))));
+    }
+
+    assertThat(LatencyHistogram.decode(new LatencyHistogram().encode()).getCount(), is(equalTo(0l)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void decodeMalformed() {
+    LatencyHistogram.decode("10,5,1000000:1");
+  }
+
+}
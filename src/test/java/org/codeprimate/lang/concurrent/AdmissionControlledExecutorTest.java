@@ -0,0 +1,175 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.lang.concurrent;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.Closeable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * The AdmissionControlledExecutorTest class is a test suite of test cases testing the contract and functionality
+ * of the AdmissionControlledExecutor class.
+ *
+ * @author John J. Blum
+ * @see org.codeprimate.lang.concurrent.AdmissionControlledExecutor
+ * @see org.junit.Test
+ * @since 1.2.0
+ */
+public class AdmissionControlledExecutorTest {
+
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  private AdmissionControlledExecutor executor;
+
+  @After
+  public void tearDown() throws InterruptedException {
+    release.countDown();
+
+    if (executor != null) {
+      executor.shutdownNow();
+      executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+  }
+
+  // a Thread per task, as virtual Threads would be on Java 21
+  protected AdmissionControlledExecutor newExecutor(final int queueSize,
+                                                    final BoundedExecutor.RejectionPolicy rejectionPolicy) {
+    return (executor = new AdmissionControlledExecutor(1, queueSize, rejectionPolicy,
+      Executors.newCachedThreadPool()));
+  }
+
+  protected Runnable newBlockingTask(final CountDownLatch started) {
+    return new Runnable() {
+      public void run() {
+        started.countDown();
+
+        try {
+          release.await();
+        }
+        catch (InterruptedException ignore) {
+        }
+      }
+    };
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void constructWithNoWorkers() {
+    new AdmissionControlledExecutor(0, 0, BoundedExecutor.RejectionPolicy.BLOCK, Executors.newCachedThreadPool());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void constructWithShedOldest() {
+    newExecutor(1, BoundedExecutor.RejectionPolicy.SHED_OLDEST);
+  }
+
+  @Test
+  public void admitsUpToMaxWorkersPlusQueueSize() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+
+    newExecutor(1, BoundedExecutor.RejectionPolicy.REJECT_WITH_CLOSE).execute(newBlockingTask(started));
+    assertThat(started.await(5, TimeUnit.SECONDS), is(true));
+
+    TestTask waitingTask = new TestTask();
+    TestTask rejectedTask = new TestTask();
+
+    executor.execute(waitingTask);
+    executor.execute(rejectedTask);
+
+    assertThat(rejectedTask.closed.get(), is(true));
+    assertThat(executor.getActiveCount(), is(equalTo(1)));
+    assertThat(executor.getQueueDepth(), is(equalTo(1)));
+    assertThat(executor.getRejectedTaskCount(), is(equalTo(1l)));
+
+    release.countDown();
+    executor.shutdown();
+
+    assertThat(executor.awaitTermination(5, TimeUnit.SECONDS), is(true));
+    assertThat(waitingTask.runs.get(), is(equalTo(1)));
+    assertThat(waitingTask.closed.get(), is(false));
+    assertThat(rejectedTask.runs.get(), is(equalTo(0)));
+    assertThat(executor.getCompletedTaskCount(), is(equalTo(2l)));
+  }
+
+  @Test
+  public void blockWaitsForAdmission() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+
+    newExecutor(0, BoundedExecutor.RejectionPolicy.BLOCK).execute(newBlockingTask(started));
+    assertThat(started.await(5, TimeUnit.SECONDS), is(true));
+
+    final TestTask blockedTask = new TestTask();
+    final CountDownLatch submitted = new CountDownLatch(1);
+
+    Thread submitter = new Thread(new Runnable() {
+      public void run() {
+        executor.execute(blockedTask);
+        submitted.countDown();
+      }
+    });
+
+    submitter.start();
+
+    assertThat(submitted.await(200, TimeUnit.MILLISECONDS), is(false));
+
+    release.countDown();
+
+    assertThat(submitted.await(5, TimeUnit.SECONDS), is(true));
+
+    executor.shutdown();
+
+    assertThat(executor.awaitTermination(5, TimeUnit.SECONDS), is(true));
+    assertThat(blockedTask.runs.get(), is(equalTo(1)));
+    assertThat(executor.getRejectedTaskCount(), is(equalTo(0l)));
+  }
+
+  @Test
+  public void rejectsTasksAfterShutdown() {
+    newExecutor(1, BoundedExecutor.RejectionPolicy.BLOCK).shutdown();
+
+    TestTask task = new TestTask();
+
+    executor.execute(task);
+
+    assertThat(task.closed.get(), is(true));
+    assertThat(executor.getRejectedTaskCount(), is(equalTo(1l)));
+  }
+
+  protected static final class TestTask implements Closeable, Runnable {
+
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    private final AtomicInteger runs = new AtomicInteger(0);
+
+    public void close() {
+      closed.set(true);
+    }
+
+    public void run() {
+      runs.incrementAndGet();
+    }
+  }
+
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.lang.concurrent;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.Closeable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * The BoundedExecutorTest class is a test suite of test cases testing the contract and functionality
+ * of the BoundedExecutor class.
+ *
+ * @author John J. Blum
+ * @see org.codeprimate.lang.concurrent.BoundedExecutor
+ * @see org.junit.Test
+ * @since 1.2.0
+ */
+public class BoundedExecutorTest {
+
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  private BoundedExecutor executor;
+
+  @After
+  public void tearDown() throws InterruptedException {
+    release.countDown();
+
+    if (executor != null) {
+      executor.shutdownNow();
+      executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+  }
+
+  protected BoundedExecutor newExecutor(final int queueSize, final BoundedExecutor.RejectionPolicy rejectionPolicy) {
+    return (executor = new BoundedExecutor(1, queueSize, rejectionPolicy, Executors.defaultThreadFactory()));
+  }
+
+  protected Runnable newBlockingTask(final CountDownLatch started) {
+    return new Runnable() {
+      public void run() {
+        started.countDown();
+
+        try {
+          release.await();
+        }
+        catch (InterruptedException ignore) {
+        }
+      }
+    };
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void constructWithNegativeQueueSize() {
+    newExecutor(-1, BoundedExecutor.RejectionPolicy.BLOCK);
+  }
+
+  @Test
+  public void findRejectionPolicyByCode() {
+    assertThat(BoundedExecutor.RejectionPolicy.findBy("close"),
+      is(equalTo(BoundedExecutor.RejectionPolicy.REJECT_WITH_CLOSE)));
+    assertThat(BoundedExecutor.RejectionPolicy.findBy("BLOCK"), is(equalTo(BoundedExecutor.RejectionPolicy.BLOCK)));
+    assertThat(BoundedExecutor.RejectionPolicy.findBy("shed"),
+      is(equalTo(BoundedExecutor.RejectionPolicy.SHED_OLDEST)));
+  }
+
+  @Test
+  public void rejectClosesCloseableTask() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+
+    newExecutor(1, BoundedExecutor.RejectionPolicy.REJECT_WITH_CLOSE).execute(newBlockingTask(started));
+    assertThat(started.await(5, TimeUnit.SECONDS), is(true));
+
+    executor.execute(new TestTask());
+
+    TestTask rejectedTask = new TestTask();
+
+    executor.execute(rejectedTask);
+
+    assertThat(rejectedTask.closed.get(), is(true));
+    assertThat(executor.getQueueDepth(), is(equalTo(1)));
+    assertThat(executor.getRejectedTaskCount(), is(equalTo(1l)));
+    assertThat(executor.getShedTaskCount(), is(equalTo(0l)));
+  }
+
+  @Test
+  public void shedOldestClosesOldestQueuedTask() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+
+    newExecutor(1, BoundedExecutor.RejectionPolicy.SHED_OLDEST).execute(newBlockingTask(started));
+    assertThat(started.await(5, TimeUnit.SECONDS), is(true));
+
+    TestTask oldestTask = new TestTask();
+    TestTask newestTask = new TestTask();
+
+    executor.execute(oldestTask);
+    executor.execute(newestTask);
+
+    assertThat(oldestTask.closed.get(), is(true));
+    assertThat(newestTask.closed.get(), is(false));
+    assertThat(executor.getShedTaskCount(), is(equalTo(1l)));
+
+    release.countDown();
+    executor.shutdown();
+
+    assertThat(executor.awaitTermination(5, TimeUnit.SECONDS), is(true));
+    assertThat(oldestTask.runs.get(), is(equalTo(0)));
+    assertThat(newestTask.runs.get(), is(equalTo(1)));
+  }
+
+  @Test
+  public void blockWaitsForRoomInTheQueue() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+
+    newExecutor(1, BoundedExecutor.RejectionPolicy.BLOCK).execute(newBlockingTask(started));
+    assertThat(started.await(5, TimeUnit.SECONDS), is(true));
+
+    executor.execute(new TestTask());
+
+    final TestTask blockedTask = new TestTask();
+    final CountDownLatch submitted = new CountDownLatch(1);
+
+    Thread submitter = new Thread(new Runnable() {
+      public void run() {
+        executor.execute(blockedTask);
+        submitted.countDown();
+      }
+    });
+
+    submitter.start();
+
+    assertThat(submitted.await(200, TimeUnit.MILLISECONDS), is(false));
+
+    release.countDown();
+
+    assertThat(submitted.await(5, TimeUnit.SECONDS), is(true));
+
+    executor.shutdown();
+
+    assertThat(executor.awaitTermination(5, TimeUnit.SECONDS), is(true));
+    assertThat(blockedTask.runs.get(), is(equalTo(1)));
+    assertThat(executor.getRejectedTaskCount(), is(equalTo(0l)));
+    assertThat(executor.getMaxQueueWaitTime(TimeUnit.MILLISECONDS) >= 200l, is(true));
+  }
+
+  protected static final class TestTask implements Closeable, Runnable {
+
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    private final AtomicInteger runs = new AtomicInteger(0);
+
+    public void close() {
+      closed.set(true);
+    }
+
+    public void run() {
+      runs.incrementAndGet();
+    }
+  }
+
+}
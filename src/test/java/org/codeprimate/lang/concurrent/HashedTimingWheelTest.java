@@ -0,0 +1,143 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.lang.concurrent;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * The HashedTimingWheelTest class is a test suite of test cases testing the contract and functionality
+ * of the HashedTimingWheel class.
+ *
+ * @author John J. Blum
+ * @see org.codeprimate.lang.concurrent.HashedTimingWheel
+ * @see org.junit.Test
+ * @since 1.2.0
+ */
+public class HashedTimingWheelTest {
+
+  private HashedTimingWheel timingWheel;
+
+  @After
+  public void tearDown() {
+    if (timingWheel != null) {
+      timingWheel.close();
+    }
+  }
+
+  @Test
+  public void timeoutsExpireNoSoonerThanTheirDeadlines() throws Exception {
+    // with a 20 microsecond tick, the longer delays are scheduled on the second and third levels of the wheel
+    timingWheel = new HashedTimingWheel("Test Timing Wheel Ticker", 20, TimeUnit.MICROSECONDS);
+
+    long[] delays = { 120, 0, 50, 3, 1 };
+
+    final CountDownLatch expired = new CountDownLatch(delays.length);
+
+    List<AtomicLong> expiredTimes = new ArrayList<AtomicLong>(delays.length);
+    List<HashedTimingWheel.Timeout> timeouts = new ArrayList<HashedTimingWheel.Timeout>(delays.length);
+
+    long startTime = System.nanoTime();
+
+    for (long delay : delays) {
+      final AtomicLong expiredTime = new AtomicLong(0l);
+
+      expiredTimes.add(expiredTime);
+
+      timeouts.add(timingWheel.schedule(new Runnable() {
+        public void run() {
+          expiredTime.set(System.nanoTime());
+          expired.countDown();
+        }
+      }, delay, TimeUnit.MILLISECONDS));
+    }
+
+    assertThat(expired.await(10, TimeUnit.SECONDS), is(true));
+    assertThat(timingWheel.getPendingCount(), is(equalTo(0)));
+
+    for (int index = 0; index < delays.length; index++) {
+      assertThat(timeouts.get(index).isExpired(), is(true));
+      assertThat(timeouts.get(index).cancel(), is(false));
+      assertThat(expiredTimes.get(index).get() - startTime >= TimeUnit.MILLISECONDS.toNanos(delays[index]),
+        is(true));
+    }
+  }
+
+  @Test
+  public void cancelledTimeoutsNeverExpire() throws Exception {
+    timingWheel = new HashedTimingWheel("Test Timing Wheel Ticker", 1, TimeUnit.MILLISECONDS);
+
+    final AtomicInteger expiredCount = new AtomicInteger(0);
+
+    Runnable task = new Runnable() {
+      public void run() {
+        expiredCount.incrementAndGet();
+      }
+    };
+
+    List<HashedTimingWheel.Timeout> timeouts = new ArrayList<HashedTimingWheel.Timeout>();
+
+    for (int count = 0; count < 100000; count++) {
+      timeouts.add(timingWheel.schedule(task, 5000 + (count % 100), TimeUnit.MILLISECONDS));
+    }
+
+    assertThat(timingWheel.getPendingCount(), is(equalTo(100000)));
+
+    for (HashedTimingWheel.Timeout timeout : timeouts) {
+      assertThat(timeout.cancel(), is(true));
+      assertThat(timeout.isCancelled(), is(true));
+    }
+
+    assertThat(timingWheel.getPendingCount(), is(equalTo(0)));
+
+    HashedTimingWheel.Timeout survivor = timingWheel.schedule(task, 30, TimeUnit.MILLISECONDS);
+
+    for (int attempt = 0; attempt < 100 && !survivor.isExpired(); attempt++) {
+      Thread.sleep(20);
+    }
+
+    Thread.sleep(150);
+
+    assertThat(survivor.isExpired(), is(true));
+    assertThat(expiredCount.get(), is(equalTo(1)));
+    assertThat(timingWheel.getPendingCount(), is(equalTo(0)));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void scheduleOnClosedTimingWheel() {
+    timingWheel = new HashedTimingWheel("Test Timing Wheel Ticker");
+    timingWheel.close();
+
+    assertThat(timingWheel.isClosed(), is(true));
+
+    timingWheel.schedule(new Runnable() {
+      public void run() {
+      }
+    }, 1, TimeUnit.SECONDS);
+  }
+
+}
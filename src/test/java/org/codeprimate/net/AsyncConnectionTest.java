@@ -0,0 +1,126 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The AsyncConnectionTest class is a test suite of test cases testing the contract and functionality
+ * of the AsyncConnection class.
+ *
+ * @author John J. Blum
+ * @see org.codeprimate.net.AsyncConnection
+ * @see org.junit.Test
+ * @since 1.2.0
+ */
+public class AsyncConnectionTest {
+
+  private AsynchronousChannelGroup group;
+
+  private ServerSocket serverSocket;
+
+  private Thread serverThread;
+
+  @Before
+  public void setup() throws IOException {
+    group = AsynchronousChannelGroup.withFixedThreadPool(1, Executors.defaultThreadFactory());
+    serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+
+    // echoes the bytes of a single client until the client sends a zero byte, then closes the connection
+    serverThread = new Thread(new Runnable() {
+      public void run() {
+        Socket clientSocket = null;
+
+        try {
+          clientSocket = serverSocket.accept();
+
+          InputStream in = clientSocket.getInputStream();
+          OutputStream out = clientSocket.getOutputStream();
+
+          for (int value = in.read(); value > 0; value = in.read()) {
+            out.write(value);
+          }
+        }
+        catch (IOException ignore) {
+        }
+        finally {
+          SocketUtils.close(clientSocket);
+        }
+      }
+    }, "Echo Server Thread");
+
+    serverThread.start();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    SocketUtils.close(serverSocket);
+    serverThread.join(TimeUnit.SECONDS.toMillis(5));
+    group.shutdownNow();
+  }
+
+  @Test
+  public void writeAndReadFully() throws Exception {
+    AsyncConnection connection = AsyncConnection.connect(group, new InetSocketAddress(
+      InetAddress.getLoopbackAddress(), serverSocket.getLocalPort())).get(5, TimeUnit.SECONDS);
+
+    try {
+      connection.write(ByteBuffer.wrap(new byte[] { 1, 2 }), ByteBuffer.wrap(new byte[] { 3 }))
+        .get(5, TimeUnit.SECONDS);
+
+      ByteBuffer buffer = connection.readFully(ByteBuffer.allocate(3)).get(5, TimeUnit.SECONDS);
+
+      assertThat(buffer.hasRemaining(), is(false));
+      assertThat(buffer.array(), is(equalTo(new byte[] { 1, 2, 3 })));
+
+      connection.write(ByteBuffer.wrap(new byte[] { 4, 0 })).get(5, TimeUnit.SECONDS);
+
+      try {
+        connection.readFully(ByteBuffer.allocate(2)).get(5, TimeUnit.SECONDS);
+        fail("Reading past the end of the stream should fail!");
+      }
+      catch (ExecutionException expected) {
+        assertThat(expected.getCause(), is(instanceOf(EOFException.class)));
+      }
+    }
+    finally {
+      connection.close();
+    }
+
+    assertThat(connection.isOpen(), is(false));
+  }
+
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * The BalancedSocketPoolTest class is a test suite of test cases testing the contract and functionality
+ * of the BalancedSocketPool class.
+ *
+ * @author John J. Blum
+ * @see org.codeprimate.net.BalancedSocketPool
+ * @see org.junit.Test
+ * @since 1.2.0
+ */
+public class BalancedSocketPoolTest {
+
+  private BalancedSocketPool socketPool;
+
+  private final List<ServerHandle> servers = new ArrayList<ServerHandle>();
+
+  @After
+  public void tearDown() {
+    if (socketPool != null) {
+      socketPool.close();
+    }
+
+    for (ServerHandle server : servers) {
+      server.stop();
+    }
+  }
+
+  protected List<InetSocketAddress> startServers(final int count) throws IOException {
+    List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>(count);
+
+    for (int index = 0; index < count; index++) {
+      ServerHandle server = ServerHandle.newNioServer("Test Server " + index,
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1, new ChannelHandler() {
+          public void onOpen(final ChannelConnection connection) {
+          }
+
+          public void onRead(final ChannelConnection connection, final ByteBuffer buffer) {
+            buffer.position(buffer.limit());
+          }
+
+          public void onClose(final ChannelConnection connection) {
+          }
+        });
+
+      servers.add(server.start());
+      addresses.add(server.getBoundAddress());
+    }
+
+    return addresses;
+  }
+
+  // an address on which nothing is listening
+  protected static InetSocketAddress closedAddress() throws IOException {
+    ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    InetSocketAddress address = (InetSocketAddress) serverSocket.getLocalSocketAddress();
+    serverSocket.close();
+    return address;
+  }
+
+  @Test
+  public void roundRobinSpreadsRequestsEvenly() throws IOException {
+    socketPool = new BalancedSocketPool(startServers(3), BalancedSocketPool.BalancePolicy.ROUND_ROBIN, 0, 2);
+
+    for (int count = 0; count < 30; count++) {
+      socketPool.release(socketPool.borrow());
+    }
+
+    for (BalancedSocketPool.Endpoint endpoint : socketPool.getEndpoints()) {
+      assertThat(endpoint.getRequestCount(), is(equalTo(10l)));
+      assertThat(endpoint.getOutstandingCount(), is(equalTo(0)));
+      assertThat(endpoint.getLatency(TimeUnit.NANOSECONDS) > 0.0d, is(true));
+    }
+  }
+
+  @Test
+  public void leastOutstandingSelectsIdleEndpoints() throws IOException {
+    socketPool = new BalancedSocketPool(startServers(3), BalancedSocketPool.BalancePolicy.LEAST_OUTSTANDING, 0, 2);
+
+    List<Socket> sockets = new ArrayList<Socket>();
+
+    for (int count = 0; count < 3; count++) {
+      sockets.add(socketPool.borrow());
+    }
+
+    for (BalancedSocketPool.Endpoint endpoint : socketPool.getEndpoints()) {
+      assertThat(endpoint.getOutstandingCount(), is(equalTo(1)));
+    }
+
+    for (Socket socket : sockets) {
+      socketPool.release(socket);
+    }
+  }
+
+  @Test
+  public void powerOfTwoChoicesAvoidsLoadedEndpoint() throws IOException {
+    socketPool = new BalancedSocketPool(startServers(2), BalancedSocketPool.BalancePolicy.POWER_OF_TWO_CHOICES,
+      0, 2);
+
+    Socket first = socketPool.borrow();
+    Socket second = socketPool.borrow();
+
+    // with two endpoints both are sampled, so the second request goes to the endpoint without an outstanding request
+    for (BalancedSocketPool.Endpoint endpoint : socketPool.getEndpoints()) {
+      assertThat(endpoint.getOutstandingCount(), is(equalTo(1)));
+    }
+
+    socketPool.release(first);
+    socketPool.release(second);
+  }
+
+  @Test
+  public void ejectsFailingEndpoint() throws IOException {
+    List<InetSocketAddress> addresses = startServers(1);
+
+    addresses.add(closedAddress());
+
+    socketPool = new BalancedSocketPool(addresses, BalancedSocketPool.BalancePolicy.ROUND_ROBIN, 0, 2);
+    socketPool.setMaxFailures(2);
+
+    // every request succeeds on the live endpoint, even when the dead endpoint was selected first
+    for (int count = 0; count < 10; count++) {
+      socketPool.release(socketPool.borrow());
+    }
+
+    BalancedSocketPool.Endpoint live = socketPool.getEndpoints().get(0);
+    BalancedSocketPool.Endpoint dead = socketPool.getEndpoints().get(1);
+
+    assertThat(live.getRequestCount(), is(equalTo(10l)));
+    assertThat(live.isEjected(), is(false));
+    assertThat(dead.getRequestCount(), is(equalTo(0l)));
+    assertThat(dead.getFailureCount(), is(equalTo(2l)));
+    assertThat(dead.getEjectionCount(), is(equalTo(1l)));
+    assertThat(dead.isEjected(), is(true));
+    assertThat(dead.getOutstandingCount(), is(equalTo(0)));
+  }
+
+  @Test
+  public void exhaustedEndpointIsNotFailing() throws IOException {
+    socketPool = new BalancedSocketPool(startServers(2), BalancedSocketPool.BalancePolicy.ROUND_ROBIN, 0, 1);
+    socketPool.setBorrowTimeout(50);
+    socketPool.setMaxFailures(1);
+
+    // with one connection per endpoint, the second request finds its selected endpoint exhausted or idle
+    Socket first = socketPool.borrow();
+    Socket second = socketPool.borrow();
+
+    try {
+      socketPool.borrow();
+      fail("Expected a SocketTimeoutException with every connection borrowed!");
+    }
+    catch (SocketTimeoutException expected) {
+    }
+
+    for (BalancedSocketPool.Endpoint endpoint : socketPool.getEndpoints()) {
+      assertThat(endpoint.getOutstandingCount(), is(equalTo(1)));
+      assertThat(endpoint.getFailureCount(), is(equalTo(0l)));
+      assertThat(endpoint.isEjected(), is(false));
+    }
+
+    socketPool.release(first);
+    socketPool.release(second);
+  }
+
+}
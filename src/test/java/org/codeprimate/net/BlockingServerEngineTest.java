@@ -0,0 +1,177 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * The BlockingServerEngineTest class is a test suite of test cases testing the contract and functionality
+ * of the BlockingServerEngine class.
+ *
+ * @author John J. Blum
+ * @see org.codeprimate.net.BlockingServerEngine
+ * @see org.junit.Test
+ * @since 1.2.0
+ */
+public class BlockingServerEngineTest {
+
+  private BlockingServerEngine serverEngine;
+
+  @After
+  public void tearDown() {
+    if (serverEngine != null) {
+      serverEngine.stop();
+    }
+  }
+
+  protected BlockingServerEngine startServerEngine(final SocketHandler handler) throws IOException {
+    serverEngine = new BlockingServerEngine("Test Server", new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+      2, Executors.newCachedThreadPool(), handler);
+    serverEngine.start();
+    return serverEngine;
+  }
+
+  protected Socket connect() throws IOException {
+    Socket socket = new Socket();
+    socket.connect(serverEngine.getBoundAddress(), 5000);
+    socket.setSoTimeout(5000);
+    return socket;
+  }
+
+  protected static SocketHandler newEchoHandler() {
+    return new SocketHandler() {
+      public Runnable service(final Socket clientSocket) {
+        return new Runnable() {
+          public void run() {
+            try {
+              DataInputStream in = new DataInputStream(clientSocket.getInputStream());
+              DataOutputStream out = new DataOutputStream(clientSocket.getOutputStream());
+
+              while (true) {
+                out.writeInt(in.readInt());
+              }
+            }
+            catch (IOException ignore) {
+            }
+            finally {
+              SocketUtils.close(clientSocket);
+            }
+          }
+        };
+      }
+    };
+  }
+
+  @Test
+  public void acceptorsServiceConnections() throws Exception {
+    startServerEngine(newEchoHandler());
+
+    assertThat(serverEngine.isRunning(), is(true));
+    assertThat(serverEngine.getBoundAddress().getPort() > 0, is(true));
+
+    for (int count = 0; count < 8; count++) {
+      Socket socket = connect();
+
+      try {
+        new DataOutputStream(socket.getOutputStream()).writeInt(count);
+        assertThat(new DataInputStream(socket.getInputStream()).readInt(), is(equalTo(count)));
+      }
+      finally {
+        SocketUtils.close(socket);
+      }
+    }
+  }
+
+  @Test
+  public void stopClosesConnectionsRemainingAfterTheDrainTimeout() throws Exception {
+    startServerEngine(newEchoHandler()).setDrainTimeout(100);
+
+    Socket socket = connect();
+
+    try {
+      new DataOutputStream(socket.getOutputStream()).writeInt(1);
+      assertThat(new DataInputStream(socket.getInputStream()).readInt(), is(equalTo(1)));
+
+      long t0 = System.currentTimeMillis();
+
+      serverEngine.stop();
+
+      assertThat(System.currentTimeMillis() - t0 < 5000, is(true));
+      assertThat(serverEngine.isRunning(), is(false));
+      assertThat(serverEngine.getConnectionCount(), is(equalTo(0)));
+      assertThat(socket.getInputStream().read(), is(equalTo(-1)));
+    }
+    finally {
+      SocketUtils.close(socket);
+    }
+  }
+
+  @Test
+  public void stopDrainsInFlightRequests() throws Exception {
+    final AtomicBoolean completed = new AtomicBoolean(false);
+    final CountDownLatch started = new CountDownLatch(1);
+
+    startServerEngine(new SocketHandler() {
+      public Runnable service(final Socket clientSocket) {
+        return new Runnable() {
+          public void run() {
+            started.countDown();
+
+            try {
+              Thread.sleep(250);
+              completed.set(true);
+            }
+            catch (InterruptedException ignore) {
+            }
+            finally {
+              SocketUtils.close(clientSocket);
+            }
+          }
+        };
+      }
+    }).setDrainTimeout(5000);
+
+    Socket socket = connect();
+
+    try {
+      assertThat(started.await(5, TimeUnit.SECONDS), is(true));
+
+      serverEngine.stop();
+
+      assertThat(completed.get(), is(true));
+    }
+    finally {
+      SocketUtils.close(socket);
+    }
+  }
+
+}
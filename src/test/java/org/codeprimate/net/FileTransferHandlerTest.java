@@ -0,0 +1,205 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * The FileTransferHandlerTest class is a test suite of test cases testing the contract and functionality
+ * of the FileTransferHandler class with both the NioServerEngine and the BlockingServerEngine.
+ *
+ * @author John J. Blum
+ * @see org.codeprimate.net.FileTransferHandler
+ * @see org.junit.Test
+ * @since 1.2.0
+ */
+public class FileTransferHandlerTest {
+
+  // larger than the socket send buffer, so the region is transferred over several writable events
+  private static final int FILE_SIZE = 3 * 1024 * 1024;
+
+  private byte[] contents;
+
+  private FileTransferHandler handler;
+
+  private ServerEngine serverEngine;
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Before
+  public void setup() throws IOException {
+    contents = new byte[FILE_SIZE];
+
+    for (int index = 0; index < contents.length; index++) {
+      contents[index] = (byte) (index * 31);
+    }
+
+    File directory = temporaryFolder.newFolder("files");
+    FileOutputStream out = new FileOutputStream(new File(directory, "data.bin"));
+
+    try {
+      out.write(contents);
+    }
+    finally {
+      out.close();
+    }
+
+    temporaryFolder.newFile("secret.txt");
+    handler = new FileTransferHandler(directory);
+  }
+
+  @After
+  public void tearDown() {
+    if (serverEngine != null) {
+      serverEngine.stop();
+    }
+  }
+
+  protected Socket connect(final InetSocketAddress address) throws IOException {
+    Socket socket = new Socket();
+    socket.connect(address, 5000);
+    socket.setSoTimeout(5000);
+    return socket;
+  }
+
+  protected static void request(final DataOutputStream out, final String path, final long offset, final long length)
+    throws IOException
+  {
+    ByteBuffer request = FileTransferHandler.newRequest(path, offset, length);
+
+    out.writeInt(request.remaining());
+    out.write(request.array(), request.arrayOffset() + request.position(), request.remaining());
+  }
+
+  protected static byte[] readResponse(final DataInputStream in, final FileTransferHandler.Status expectedStatus,
+                                       final long expectedOffset) throws IOException {
+
+    assertThat(in.readInt(), is(equalTo(FileTransferHandler.RESPONSE_SIZE)));
+    assertThat(FileTransferHandler.Status.findBy(in.readByte()), is(equalTo(expectedStatus)));
+    assertThat(in.readLong(), is(equalTo(expectedOffset)));
+
+    byte[] range = new byte[(int) in.readLong()];
+
+    in.readFully(range);
+
+    return range;
+  }
+
+  protected void assertServesRanges(final InetSocketAddress address) throws IOException {
+    Socket socket = connect(address);
+
+    try {
+      DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+      DataInputStream in = new DataInputStream(socket.getInputStream());
+
+      // pipelined requests are answered in order
+      request(out, "data.bin", 0, -1);
+      request(out, "data.bin", 1000, 5000);
+      request(out, "data.bin", FILE_SIZE - 10, 100);
+      request(out, "data.bin", FILE_SIZE + 1, 10);
+      request(out, "missing.bin", 0, 10);
+      request(out, "../secret.txt", 0, -1);
+      request(out, "data.bin", 7, 3);
+      out.flush();
+
+      assertThat(readResponse(in, FileTransferHandler.Status.OK, 0), is(equalTo(contents)));
+      assertThat(readResponse(in, FileTransferHandler.Status.OK, 1000),
+        is(equalTo(Arrays.copyOfRange(contents, 1000, 6000))));
+      assertThat(readResponse(in, FileTransferHandler.Status.OK, FILE_SIZE - 10),
+        is(equalTo(Arrays.copyOfRange(contents, FILE_SIZE - 10, FILE_SIZE))));
+      assertThat(readResponse(in, FileTransferHandler.Status.INVALID_RANGE, FILE_SIZE + 1).length, is(equalTo(0)));
+      assertThat(readResponse(in, FileTransferHandler.Status.NOT_FOUND, 0).length, is(equalTo(0)));
+      assertThat(readResponse(in, FileTransferHandler.Status.NOT_FOUND, 0).length, is(equalTo(0)));
+      assertThat(readResponse(in, FileTransferHandler.Status.OK, 7),
+        is(equalTo(Arrays.copyOfRange(contents, 7, 10))));
+    }
+    finally {
+      SocketUtils.close(socket);
+    }
+
+    assertThat(handler.getTransferCount(), is(equalTo(4l)));
+    assertThat(handler.getBytesTransferred(), is(equalTo(FILE_SIZE + 5000l + 10l + 3l)));
+    assertThat(handler.getFailedRequestCount(), is(equalTo(3l)));
+    assertThat(handler.getThroughput() > 0.0d, is(true));
+  }
+
+  @Test
+  public void opensFileWhenRegionIsTransferred() throws IOException {
+    ByteBuffer response = ByteBuffer.allocate(FileTransferHandler.RESPONSE_SIZE);
+    FileRegion region = handler.openRegion(FileTransferHandler.newRequest("data.bin", 100, 10), response);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    try {
+      assertThat(region.getFileChannel(), is(nullValue()));
+
+      region.transferFully(Channels.newChannel(out));
+
+      assertThat(region.getFileChannel().isOpen(), is(true));
+      assertThat(out.toByteArray(), is(equalTo(Arrays.copyOfRange(contents, 100, 110))));
+    }
+    finally {
+      region.close();
+    }
+
+    assertThat(region.getFileChannel().isOpen(), is(false));
+  }
+
+  @Test
+  public void servesRangesWithNioServerEngine() throws IOException {
+    NioServerEngine nioServerEngine = new NioServerEngine("Test File Server",
+      new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1, handler);
+
+    serverEngine = nioServerEngine;
+    nioServerEngine.start();
+
+    assertServesRanges(nioServerEngine.getBoundAddress());
+  }
+
+  @Test
+  public void servesRangesWithBlockingServerEngine() throws IOException {
+    BlockingServerEngine blockingServerEngine = new BlockingServerEngine("Test File Server",
+      new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1, Executors.newCachedThreadPool(), handler);
+
+    serverEngine = blockingServerEngine;
+    blockingServerEngine.start();
+
+    assertServesRanges(blockingServerEngine.getBoundAddress());
+  }
+
+}
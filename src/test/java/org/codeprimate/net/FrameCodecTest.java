@@ -0,0 +1,166 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.net.InetAddress;
+import java.net.ProtocolException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+/**
+ * The FrameCodecTest class is a test suite of test cases testing the contract and functionality of the FrameCodec
+ * and FrameStream classes.
+ *
+ * @author John J. Blum
+ * @see org.codeprimate.net.FrameCodec
+ * @see org.codeprimate.net.FrameStream
+ * @see org.junit.Test
+ * @since 1.2.0
+ */
+public class FrameCodecTest {
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final FrameCodec codec = new FrameCodec(16);
+
+  protected static ByteBuffer toBuffer(final String value) {
+    return ByteBuffer.wrap(value.getBytes(UTF_8));
+  }
+
+  protected static String toString(final ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.duplicate().get(bytes);
+    return new String(bytes, UTF_8);
+  }
+
+  @Test
+  public void decodeMultipleFramesAsSlices() throws Exception {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(64);
+
+    buffer.putInt(5).put("hello".getBytes(UTF_8)).putInt(0).putInt(5).put("world".getBytes(UTF_8));
+    buffer.flip();
+
+    ByteBuffer hello = codec.decode(buffer);
+    ByteBuffer empty = codec.decode(buffer);
+    ByteBuffer world = codec.decode(buffer);
+
+    assertThat(toString(hello), is(equalTo("hello")));
+    assertThat(hello.isDirect(), is(true));
+    assertThat(empty.remaining(), is(equalTo(0)));
+    assertThat(toString(world), is(equalTo("world")));
+    assertThat(buffer.hasRemaining(), is(false));
+    assertThat(codec.decode(buffer), is(nullValue()));
+
+    // the payload shares the source buffer's content rather than copying it
+    buffer.put(4, (byte) 'j');
+    assertThat(toString(hello), is(equalTo("jello")));
+  }
+
+  @Test
+  public void decodePartialFrameLeavesBufferUntouched() throws Exception {
+    ByteBuffer buffer = ByteBuffer.allocate(64);
+
+    buffer.putInt(5).put("hel".getBytes(UTF_8)).flip();
+
+    assertThat(codec.decode(buffer), is(nullValue()));
+    assertThat(buffer.position(), is(equalTo(0)));
+    assertThat(codec.peekFrameLength(buffer), is(equalTo(9)));
+
+    buffer.position(buffer.limit()).limit(buffer.capacity());
+    buffer.put("lo".getBytes(UTF_8)).flip();
+
+    assertThat(toString(codec.decode(buffer)), is(equalTo("hello")));
+  }
+
+  @Test(expected = ProtocolException.class)
+  public void decodeFrameExceedingMaxFrameSize() throws Exception {
+    ByteBuffer buffer = ByteBuffer.allocate(64);
+    buffer.putInt(17).flip();
+    codec.decode(buffer);
+  }
+
+  @Test(expected = ProtocolException.class)
+  public void decodeFrameWithNegativeLength() throws Exception {
+    ByteBuffer buffer = ByteBuffer.allocate(64);
+    buffer.putInt(-1).flip();
+    codec.decode(buffer);
+  }
+
+  @Test
+  public void encodeReturnsHeaderAndPayload() throws Exception {
+    ByteBuffer payload = toBuffer("hello");
+    ByteBuffer[] frame = codec.encode(payload);
+
+    assertThat(frame.length, is(equalTo(2)));
+    assertThat(frame[0].remaining(), is(equalTo(FrameCodec.HEADER_SIZE)));
+    assertThat(frame[0].getInt(0), is(equalTo(5)));
+    assertThat(toString(frame[1]), is(equalTo("hello")));
+    assertThat(payload.remaining(), is(equalTo(5)));
+  }
+
+  @Test(expected = ProtocolException.class)
+  public void encodePayloadExceedingMaxFrameSize() throws Exception {
+    codec.encode(ByteBuffer.allocate(17));
+  }
+
+  @Test
+  public void frameStreamRoundTrip() throws Exception {
+    BufferPool bufferPool = new BufferPool(8, 4, false);
+    FrameCodec codec = new FrameCodec();
+    ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+
+    try {
+      Socket clientSocket = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+      Socket acceptedSocket = serverSocket.accept();
+
+      FrameStream client = new FrameStream(clientSocket, codec, bufferPool);
+      FrameStream server = new FrameStream(acceptedSocket, codec, bufferPool);
+
+      try {
+        client.writeFrame(toBuffer("hi"));
+        client.writeFrame(toBuffer("a payload larger than the pooled buffers"));
+        client.writeByte(7);
+        client.flush();
+
+        assertThat(toString(server.readFrame()), is(equalTo("hi")));
+        assertThat(toString(server.readFrame()), is(equalTo("a payload larger than the pooled buffers")));
+        assertThat(server.readByte(), is(equalTo(7)));
+
+        client.close();
+
+        assertThat(server.readFrame(), is(nullValue()));
+      }
+      finally {
+        client.close();
+        server.close();
+      }
+
+      assertThat(bufferPool.getPooledCount() > 0, is(true));
+    }
+    finally {
+      SocketUtils.close(serverSocket);
+    }
+  }
+
+}
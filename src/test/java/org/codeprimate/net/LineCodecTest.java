@@ -0,0 +1,127 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ProtocolException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * The LineCodecTest class is a test suite of test cases testing the contract and functionality of the LineCodec
+ * and LineStream classes.
+ *
+ * @author John J. Blum
+ * @see org.codeprimate.net.LineCodec
+ * @see org.codeprimate.net.LineStream
+ * @see org.junit.Test
+ * @since 1.2.0
+ */
+public class LineCodecTest {
+
+  private final LineCodec codec = new LineCodec(LineCodec.UTF_8, 16);
+
+  protected static ByteBuffer toBuffer(final String value) {
+    return ByteBuffer.wrap(value.getBytes(LineCodec.UTF_8));
+  }
+
+  @Test
+  public void decodeLinesWithAndWithoutCarriageReturn() throws Exception {
+    ByteBuffer buffer = toBuffer("hello\r\n\nworld\npartial");
+
+    assertThat(codec.toString(codec.decode(buffer)), is(equalTo("hello")));
+    assertThat(codec.decode(buffer).remaining(), is(equalTo(0)));
+    assertThat(codec.toString(codec.decode(buffer)), is(equalTo("world")));
+    assertThat(codec.decode(buffer), is(nullValue()));
+    assertThat(buffer.remaining(), is(equalTo("partial".length())));
+  }
+
+  @Test
+  public void decodeMultiByteCharacters() throws Exception {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(32);
+
+    buffer.put("h\u00e9llo \u20ac\n".getBytes(LineCodec.UTF_8)).flip();
+
+    assertThat(codec.peekLineLength(buffer), is(equalTo(11)));
+    assertThat(codec.toString(codec.decode(buffer)), is(equalTo("h\u00e9llo \u20ac")));
+  }
+
+  @Test(expected = ProtocolException.class)
+  public void decodeLineExceedingMaxLineLength() throws Exception {
+    codec.decode(toBuffer("this line is far too long\n"));
+  }
+
+  @Test
+  public void encodeAppendsLineFeed() {
+    ByteBuffer buffer = codec.encode("\u20ac");
+
+    assertThat(buffer.remaining(), is(equalTo(4)));
+    assertThat(buffer.get(3), is(equalTo(LineCodec.LINE_FEED)));
+  }
+
+  @Test
+  public void lineStreamFlushesWhenInputDrained() throws Exception {
+    BufferPool bufferPool = new BufferPool(8, 4, false);
+    ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+
+    try {
+      Socket clientSocket = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+      Socket acceptedSocket = serverSocket.accept();
+
+      LineStream server = new LineStream(acceptedSocket, new LineCodec(), bufferPool);
+
+      try {
+        clientSocket.getOutputStream().write("one\ntwo \u00e9\nthree is a longer line\n".getBytes(LineCodec.UTF_8));
+        clientSocket.shutdownOutput();
+
+        for (String line = server.readLine(); line != null; line = server.readLine()) {
+          server.writeLine(line.toUpperCase());
+        }
+
+        acceptedSocket.shutdownOutput();
+
+        InputStream in = clientSocket.getInputStream();
+        byte[] echo = new byte[64];
+        int length = 0;
+
+        for (int bytesRead = in.read(echo); bytesRead > 0; bytesRead = in.read(echo, length, echo.length - length)) {
+          length += bytesRead;
+        }
+
+        assertThat(new String(echo, 0, length, LineCodec.UTF_8),
+          is(equalTo("ONE\nTWO \u00c9\nTHREE IS A LONGER LINE\n")));
+      }
+      finally {
+        server.close();
+        SocketUtils.close(clientSocket);
+      }
+
+      assertThat(bufferPool.getPooledCount() > 0, is(true));
+    }
+    finally {
+      SocketUtils.close(serverSocket);
+    }
+  }
+
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The NioServerEngineTest class is a test suite of test cases testing the contract and functionality
+ * of the NioServerEngine class.
+ *
+ * @author John J. Blum
+ * @see org.codeprimate.net.NioServerEngine
+ * @see org.junit.Test
+ * @since 1.2.0
+ */
+public class NioServerEngineTest {
+
+  private final CountDownLatch closeLatch = new CountDownLatch(2);
+
+  private ChannelHandler handler;
+
+  private NioServerEngine serverEngine;
+
+  @Before
+  public void setup() throws IOException {
+    handler = new ChannelHandler() {
+      public void onOpen(final ChannelConnection connection) {
+      }
+
+      public void onRead(final ChannelConnection connection, final ByteBuffer buffer) {
+        // echo complete 4-byte words only, leaving partial words in the buffer for the next read
+        while (buffer.remaining() >= 4) {
+          ByteBuffer word = ByteBuffer.allocate(4);
+          word.putInt(buffer.getInt()).flip();
+          connection.write(word);
+        }
+      }
+
+      public void onClose(final ChannelConnection connection) {
+        closeLatch.countDown();
+      }
+    };
+
+    serverEngine = new NioServerEngine("Test Server", new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 2,
+      handler);
+
+    serverEngine.start();
+  }
+
+  @After
+  public void tearDown() {
+    serverEngine.stop();
+  }
+
+  protected Socket connect() throws IOException {
+    Socket socket = new Socket();
+    socket.connect(serverEngine.getBoundAddress(), 5000);
+    socket.setSoTimeout(5000);
+    return socket;
+  }
+
+  @Test
+  public void bindsToEphemeralPort() {
+    assertThat(serverEngine.isRunning(), is(true));
+    assertThat(serverEngine.getBoundAddress().getPort() > 0, is(true));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void setMaxReadBufferSizeToZero() {
+    serverEngine.setMaxReadBufferSize(0);
+  }
+
+  @Test
+  public void servicesConnectionsAcrossEventLoops() throws Exception {
+    Socket socketOne = connect();
+    Socket socketTwo = connect();
+
+    try {
+      for (Socket socket : new Socket[] { socketOne, socketTwo }) {
+        OutputStream out = socket.getOutputStream();
+
+        // write a word split across two TCP segments
+        out.write(new byte[] { 0, 0 });
+        out.flush();
+        Thread.sleep(50);
+        out.write(new byte[] { 1, 2, 0, 0, 0, 7 });
+        out.flush();
+
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+
+        assertThat(in.readInt(), is(equalTo(258)));
+        assertThat(in.readInt(), is(equalTo(7)));
+      }
+    }
+    finally {
+      SocketUtils.close(socketOne);
+      SocketUtils.close(socketTwo);
+    }
+
+    assertThat(closeLatch.await(5, TimeUnit.SECONDS), is(true));
+    assertThat(serverEngine.getMetrics().getTotalConnections(), is(equalTo(2l)));
+    assertThat(serverEngine.getMetrics().getActiveConnections(), is(equalTo(0l)));
+    assertThat(serverEngine.getMetrics().getBytesRead(), is(equalTo(16l)));
+    assertThat(serverEngine.getMetrics().getBytesWritten(), is(equalTo(16l)));
+    assertThat(serverEngine.getMetrics().getRequestCount(), is(equalTo(4l)));
+  }
+
+  @Test
+  public void stopClosesConnectionsBeforeReturning() throws Exception {
+    serverEngine.stop();
+    serverEngine = new NioServerEngine("Test Server", new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 2,
+      new ChannelHandler() {
+        public void onOpen(final ChannelConnection connection) {
+        }
+
+        public void onRead(final ChannelConnection connection, final ByteBuffer buffer) throws IOException {
+          handler.onRead(connection, buffer);
+        }
+
+        // a slow close keeps the event loops from exiting as soon as they are woken
+        public void onClose(final ChannelConnection connection) {
+          try {
+            Thread.sleep(100);
+          }
+          catch (InterruptedException ignore) {
+          }
+
+          handler.onClose(connection);
+        }
+      });
+
+    serverEngine.start();
+
+    Socket socketOne = connect();
+    Socket socketTwo = connect();
+
+    try {
+      for (Socket socket : new Socket[] { socketOne, socketTwo }) {
+        socket.getOutputStream().write(new byte[] { 0, 0, 0, 1 });
+        assertThat(new DataInputStream(socket.getInputStream()).readInt(), is(equalTo(1)));
+      }
+
+      serverEngine.stop();
+
+      // the event loops have exited, closing both connections, by the time stop returns
+      assertThat(closeLatch.getCount(), is(equalTo(0l)));
+      assertThat(serverEngine.getMetrics().getActiveConnections(), is(equalTo(0l)));
+      assertThat(socketOne.getInputStream().read(), is(equalTo(-1)));
+      assertThat(socketTwo.getInputStream().read(), is(equalTo(-1)));
+    }
+    finally {
+      SocketUtils.close(socketOne);
+      SocketUtils.close(socketTwo);
+    }
+  }
+
+  @Test
+  public void coalescesWritesAcrossReadsWithinDelay() throws Exception {
+    serverEngine.stop();
+    serverEngine = new NioServerEngine("Test Server", new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1,
+      handler);
+    serverEngine.setWriteCoalescingDelay(TimeUnit.MILLISECONDS.toMicros(500));
+    serverEngine.start();
+
+    Socket socket = connect();
+
+    try {
+      OutputStream out = socket.getOutputStream();
+
+      for (int word = 1; word <= 4; word++) {
+        out.write(new byte[] { 0, 0, 0, (byte) word });
+        out.flush();
+        Thread.sleep(10);
+      }
+
+      DataInputStream in = new DataInputStream(socket.getInputStream());
+
+      for (int word = 1; word <= 4; word++) {
+        assertThat(in.readInt(), is(equalTo(word)));
+      }
+    }
+    finally {
+      SocketUtils.close(socket);
+    }
+
+    // the echoes of all four reads were held until the delay passed and written together
+    assertThat(serverEngine.getMetrics().getWriteBatchSize().getCount(), is(equalTo(1l)));
+    assertThat(serverEngine.getMetrics().getWriteBatchSizeMax(), is(equalTo(4l)));
+  }
+
+  @Test
+  public void stopClosesConnections() throws Exception {
+    Socket socket = connect();
+
+    try {
+      socket.getOutputStream().write(new byte[] { 0, 0, 0, 1 });
+      assertThat(new DataInputStream(socket.getInputStream()).readInt(), is(equalTo(1)));
+
+      serverEngine.stop();
+
+      assertThat(serverEngine.isRunning(), is(false));
+      assertThat(socket.getInputStream().read(), is(equalTo(-1)));
+    }
+    finally {
+      SocketUtils.close(socket);
+    }
+  }
+
+}
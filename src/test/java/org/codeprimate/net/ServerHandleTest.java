@@ -0,0 +1,181 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * The ServerHandleTest class is a test suite of test cases testing the contract and functionality
+ * of the ServerHandle class.
+ *
+ * @author John J. Blum
+ * @see org.codeprimate.net.ServerHandle
+ * @see org.junit.Test
+ * @since 1.2.0
+ */
+public class ServerHandleTest {
+
+  private final List<ServerHandle> servers = new ArrayList<ServerHandle>();
+
+  @After
+  public void tearDown() {
+    for (ServerHandle server : servers) {
+      server.stop();
+    }
+  }
+
+  protected static InetSocketAddress ephemeralAddress() {
+    return new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+  }
+
+  protected static ChannelHandler newEchoChannelHandler() {
+    return new ChannelHandler() {
+      public void onOpen(final ChannelConnection connection) {
+      }
+
+      public void onRead(final ChannelConnection connection, final ByteBuffer buffer) {
+        ByteBuffer echo = ByteBuffer.allocate(buffer.remaining());
+        echo.put(buffer).flip();
+        connection.write(echo);
+      }
+
+      public void onClose(final ChannelConnection connection) {
+      }
+    };
+  }
+
+  protected static SocketHandler newEchoSocketHandler() {
+    return new SocketHandler() {
+      public Runnable service(final Socket clientSocket) {
+        return new Runnable() {
+          public void run() {
+            try {
+              InputStream in = clientSocket.getInputStream();
+              OutputStream out = clientSocket.getOutputStream();
+
+              for (int value = in.read(); value >= 0; value = in.read()) {
+                out.write(value);
+              }
+            }
+            catch (IOException ignore) {
+            }
+            finally {
+              SocketUtils.close(clientSocket);
+            }
+          }
+        };
+      }
+    };
+  }
+
+  protected static void assertEchoes(final ServerHandle server, final int value) throws IOException {
+    Socket socket = new Socket();
+
+    try {
+      socket.connect(server.getBoundAddress(), 5000);
+      socket.setSoTimeout(5000);
+      socket.getOutputStream().write(new byte[] { 0, 0, 0, (byte) value });
+      assertThat(new DataInputStream(socket.getInputStream()).readInt(), is(equalTo(value)));
+    }
+    finally {
+      SocketUtils.close(socket);
+    }
+  }
+
+  @Test
+  public void runsManyServersOnEphemeralPorts() throws IOException {
+    for (int count = 0; count < 3; count++) {
+      servers.add(ServerHandle.newNioServer("Test NIO Server " + count, ephemeralAddress(), 1,
+        newEchoChannelHandler()).start());
+    }
+
+    servers.add(ServerHandle.newBlockingServer("Test Blocking Server", ephemeralAddress(), 1,
+      Executors.newCachedThreadPool(), newEchoSocketHandler()).start());
+
+    Set<Integer> ports = new HashSet<Integer>();
+
+    for (int index = 0; index < servers.size(); index++) {
+      ServerHandle server = servers.get(index);
+
+      assertThat(server.isRunning(), is(true));
+      assertThat(server.getPort() > 0, is(true));
+      assertThat(server.getPort(), is(equalTo(server.getBoundAddress().getPort())));
+      ports.add(server.getPort());
+      assertEchoes(server, index + 1);
+    }
+
+    assertThat(ports.size(), is(equalTo(servers.size())));
+
+    // each server records its own connections
+    for (ServerHandle server : servers) {
+      assertThat(server.getMetrics().getTotalConnections(), is(equalTo(1l)));
+    }
+  }
+
+  @Test
+  public void awaitReturnsOnceStopped() throws Exception {
+    final ServerHandle server = ServerHandle.newNioServer("Test NIO Server", ephemeralAddress(), 1,
+      newEchoChannelHandler()).start();
+
+    servers.add(server);
+
+    assertThat(server.await(10, TimeUnit.MILLISECONDS), is(false));
+
+    Thread stopper = new Thread(new Runnable() {
+      public void run() {
+        server.stop();
+      }
+    });
+
+    stopper.start();
+    server.await();
+
+    assertThat(server.isStopped(), is(true));
+    assertThat(server.isRunning(), is(false));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void startAfterStop() throws IOException {
+    ServerHandle server = ServerHandle.newNioServer("Test NIO Server", ephemeralAddress(), 1,
+      newEchoChannelHandler());
+
+    servers.add(server);
+    server.start();
+    server.stop();
+    server.start();
+  }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+/**
+ * The ServerMetricsTest class is a test suite of test cases testing the contract and functionality
+ * of the ServerMetrics class.
+ *
+ * @author John J. Blum
+ * @see org.codeprimate.net.ServerMetrics
+ * @see org.junit.Test
+ * @since 1.2.0
+ */
+public class ServerMetricsTest {
+
+  @Test
+  public void exposedAsMBean() throws Exception {
+    MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+    ServerMetrics metrics = new ServerMetrics();
+
+    metrics.connectionOpened();
+    metrics.connectionOpened();
+    metrics.connectionClosed();
+    metrics.recordRead(100, TimeUnit.MICROSECONDS.toNanos(20));
+    metrics.recordHandle(TimeUnit.MICROSECONDS.toNanos(5));
+    metrics.recordWrite(1, TimeUnit.MICROSECONDS.toNanos(10));
+
+    ObjectName objectName = metrics.register("Test Server");
+
+    try {
+      assertThat(objectName.getKeyProperty("type"), is(equalTo("ServerMetrics")));
+      assertThat(mbeanServer.getAttribute(objectName, "ActiveConnections"), is(equalTo((Object) 1l)));
+      assertThat(mbeanServer.getAttribute(objectName, "TotalConnections"), is(equalTo((Object) 2l)));
+      assertThat(mbeanServer.getAttribute(objectName, "BytesRead"), is(equalTo((Object) 100l)));
+      assertThat(mbeanServer.getAttribute(objectName, "BytesWritten"), is(equalTo((Object) 1l)));
+      assertThat(mbeanServer.getAttribute(objectName, "RequestCount"), is(equalTo((Object) 1l)));
+      assertThat(mbeanServer.getAttribute(objectName, "ReadTimeMaxMicros"), is(equalTo((Object) 20l)));
+      assertThat(mbeanServer.getAttribute(objectName, "QueueDepth"), is(equalTo((Object) (-1))));
+
+      mbeanServer.invoke(objectName, "reset", null, null);
+
+      assertThat(metrics.getActiveConnections(), is(equalTo(1l)));
+      assertThat(metrics.getTotalConnections(), is(equalTo(0l)));
+      assertThat(metrics.getHandleTimeP99Micros(), is(equalTo(0l)));
+    }
+    finally {
+      metrics.unregister();
+    }
+
+    assertThat(mbeanServer.isRegistered(objectName), is(false));
+  }
+
+  @Test
+  public void readingAcceptRateDoesNotResetIt() throws InterruptedException {
+    ServerMetrics metrics = new ServerMetrics();
+
+    for (int count = 0; count < 10; count++) {
+      metrics.connectionOpened();
+    }
+
+    Thread.sleep(TimeUnit.NANOSECONDS.toMillis(ServerMetrics.ACCEPT_RATE_INTERVAL) + 100);
+
+    double acceptRate = metrics.getAcceptRate();
+
+    assertThat(acceptRate > 0.0d, is(true));
+    assertThat(acceptRate <= 10.0d, is(true));
+    assertThat(metrics.getAcceptRate() > 0.0d, is(true));
+
+    // the next connection closes the interval
+    metrics.connectionOpened();
+
+    assertThat(metrics.getAcceptRate() > 0.0d, is(true));
+    assertThat(metrics.getAcceptRate() <= 11.0d, is(true));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void registerTwice() {
+    ServerMetrics metrics = new ServerMetrics();
+
+    metrics.register("Other Server");
+
+    try {
+      metrics.register("Other Server");
+    }
+    finally {
+      metrics.unregister();
+    }
+  }
+
+}
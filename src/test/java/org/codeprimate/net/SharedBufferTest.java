@@ -0,0 +1,93 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+
+import org.junit.Test;
+
+/**
+ * The SharedBufferTest class is a test suite of test cases testing the contract and functionality
+ * of the SharedBuffer class.
+ *
+ * @author John J. Blum
+ * @see org.codeprimate.net.SharedBuffer
+ * @see org.junit.Test
+ * @since 1.2.0
+ */
+public class SharedBufferTest {
+
+  @Test
+  public void lastReleaseReturnsBufferToPool() {
+    BufferPool bufferPool = new BufferPool(64, 4, true);
+    ByteBuffer buffer = bufferPool.acquire();
+
+    buffer.putLong(42l).flip();
+
+    SharedBuffer sharedBuffer = new SharedBuffer(buffer, bufferPool);
+
+    assertThat(sharedBuffer.getReferenceCount(), is(equalTo(1)));
+    assertThat(sharedBuffer.retain(), is(sameInstance(sharedBuffer)));
+    assertThat(sharedBuffer.retain().getReferenceCount(), is(equalTo(3)));
+    assertThat(sharedBuffer.release(), is(false));
+    assertThat(sharedBuffer.release(), is(false));
+    assertThat(bufferPool.getPooledCount(), is(equalTo(0)));
+    assertThat(sharedBuffer.release(), is(true));
+    assertThat(sharedBuffer.getReferenceCount(), is(equalTo(0)));
+    assertThat(bufferPool.getPooledCount(), is(equalTo(1)));
+  }
+
+  @Test
+  public void slicesShareContentsWithIndependentPositions() {
+    ByteBuffer buffer = ByteBuffer.allocate(16);
+
+    buffer.putLong(1l).putLong(2l).flip();
+
+    SharedBuffer sharedBuffer = new SharedBuffer(buffer);
+
+    ByteBuffer slice1 = sharedBuffer.slice();
+    ByteBuffer slice2 = sharedBuffer.slice();
+
+    assertThat(slice1.isReadOnly(), is(true));
+    assertThat(slice1.getLong(), is(equalTo(1l)));
+    assertThat(slice1.remaining(), is(equalTo(8)));
+    assertThat(slice2.remaining(), is(equalTo(16)));
+    assertThat(slice2.getLong(8), is(equalTo(2l)));
+    assertThat(sharedBuffer.remaining(), is(equalTo(16)));
+
+    try {
+      slice2.put((byte) 0);
+      fail("Expected a ReadOnlyBufferException!");
+    }
+    catch (ReadOnlyBufferException expected) {
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void retainAfterLastRelease() {
+    SharedBuffer sharedBuffer = new SharedBuffer(ByteBuffer.allocate(8));
+
+    assertThat(sharedBuffer.release(), is(true));
+
+    sharedBuffer.retain();
+  }
+
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.codeprimate.net.shm.LoopbackSocket;
+import org.codeprimate.net.shm.WaitStrategy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The SocketPoolTest class is a test suite of test cases testing the contract and functionality
+ * of the SocketPool class.
+ *
+ * @author John J. Blum
+ * @see org.codeprimate.net.SocketPool
+ * @see org.junit.Test
+ * @since 1.2.0
+ */
+public class SocketPoolTest {
+
+  private final Map<Socket, Socket> serverSockets = new ConcurrentHashMap<Socket, Socket>();
+
+  private SocketPool socketPool;
+
+  private SocketPool newSocketPool(final int minSize, final int maxSize) {
+    socketPool = new SocketPool(new SocketPool.Connector() {
+      public Socket connect() throws IOException {
+        LoopbackSocket[] pair = LoopbackSocket.newPair(64, WaitStrategy.YIELD);
+        serverSockets.put(pair[0], pair[1]);
+        return pair[0];
+      }
+    }, minSize, maxSize);
+
+    return socketPool;
+  }
+
+  @Before
+  public void setup() {
+    serverSockets.clear();
+  }
+
+  @After
+  public void tearDown() {
+    if (socketPool != null) {
+      socketPool.close();
+    }
+
+    for (Socket serverSocket : serverSockets.values()) {
+      SocketUtils.close(serverSocket);
+    }
+  }
+
+  @Test
+  public void growsLazilyUpToMaxSize() throws IOException {
+    newSocketPool(0, 2);
+
+    assertThat(socketPool.getSize(), is(equalTo(0)));
+
+    Socket socket = socketPool.borrow();
+
+    socketPool.release(socket);
+
+    assertThat(socketPool.borrow(), is(sameInstance(socket)));
+    assertThat(socketPool.getConnectCount(), is(equalTo(1l)));
+
+    Socket otherSocket = socketPool.borrow();
+
+    assertThat(otherSocket, is(not(sameInstance(socket))));
+    assertThat(socketPool.getSize(), is(equalTo(2)));
+    assertThat(socketPool.getUtilization(), is(equalTo(1.0d)));
+
+    try {
+      socketPool.borrow(10l);
+      fail("Borrowing from an exhausted pool should time out!");
+    }
+    catch (SocketTimeoutException expected) {
+      assertThat(socketPool.getBorrowTimeoutCount(), is(equalTo(1l)));
+    }
+
+    assertThat(socketPool.tryBorrow(), is(nullValue()));
+    assertThat(socketPool.getBorrowTimeoutCount(), is(equalTo(1l)));
+
+    socketPool.release(otherSocket);
+
+    assertThat(socketPool.borrow(10l), is(sameInstance(otherSocket)));
+  }
+
+  @Test
+  public void replacesBrokenSockets() throws IOException {
+    newSocketPool(0, 1);
+    socketPool.setValidationInterval(0l);
+
+    Socket socket = socketPool.borrow();
+
+    socketPool.release(socket);
+    serverSockets.get(socket).close();
+
+    Socket replacementSocket = socketPool.borrow();
+
+    assertThat(replacementSocket, is(not(sameInstance(socket))));
+    assertThat(socket.isClosed(), is(true));
+
+    socketPool.invalidate(replacementSocket);
+
+    assertThat(replacementSocket.isClosed(), is(true));
+    assertThat(socketPool.getSize(), is(equalTo(0)));
+    assertThat(socketPool.getBrokenCount(), is(equalTo(2l)));
+    assertThat(socketPool.getBorrowedCount(), is(equalTo(0)));
+  }
+
+  @Test
+  public void evictsIdleSocketsDownToMinSize() throws Exception {
+    newSocketPool(1, 3);
+    socketPool.setIdleTimeout(1l);
+
+    Socket[] sockets = { socketPool.borrow(), socketPool.borrow(), socketPool.borrow() };
+
+    for (Socket socket : sockets) {
+      socketPool.release(socket);
+    }
+
+    Thread.sleep(10l);
+    socketPool.evictIdle();
+
+    assertThat(socketPool.getSize(), is(equalTo(1)));
+    assertThat(socketPool.getIdleCount(), is(equalTo(1)));
+    assertThat(socketPool.getEvictionCount(), is(equalTo(2l)));
+  }
+
+  @Test
+  public void rejectsSocketReturnedTwice() throws IOException {
+    newSocketPool(0, 1);
+
+    Socket socket = socketPool.borrow();
+
+    socketPool.release(socket);
+
+    try {
+      socketPool.release(socket);
+      fail("Releasing a Socket twice should be rejected!");
+    }
+    catch (IllegalArgumentException expected) {
+      assertThat(socketPool.getBorrowedCount(), is(equalTo(0)));
+    }
+
+    try {
+      socketPool.invalidate(socket);
+      fail("Invalidating a released Socket should be rejected!");
+    }
+    catch (IllegalArgumentException expected) {
+      assertThat(socket.isClosed(), is(false));
+      assertThat(socketPool.getIdleCount(), is(equalTo(1)));
+    }
+
+    // the pool of one still lends a single Socket at a time
+    assertThat(socketPool.borrow(), is(sameInstance(socket)));
+    assertThat(socketPool.tryBorrow(), is(nullValue()));
+  }
+
+  @Test(expected = SocketException.class)
+  public void borrowFromClosedPool() throws IOException {
+    newSocketPool(0, 1).close();
+    socketPool.borrow();
+  }
+
+}
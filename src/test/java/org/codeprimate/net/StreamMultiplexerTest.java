@@ -0,0 +1,233 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * The StreamMultiplexerTest class is a test suite of test cases testing the contract and functionality
+ * of the StreamMultiplexer and MultiplexedStream classes.
+ *
+ * @author John J. Blum
+ * @see org.codeprimate.net.MultiplexedStream
+ * @see org.codeprimate.net.StreamMultiplexer
+ * @see org.junit.Test
+ * @since 1.2.0
+ */
+public class StreamMultiplexerTest {
+
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+
+  private StreamMultiplexer clientMultiplexer;
+  private StreamMultiplexer serverMultiplexer;
+
+  private void connect(final int initialWindow) throws Exception {
+    final ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+
+    try {
+      Future<Socket> acceptedSocket = executor.submit(new Callable<Socket>() {
+        public Socket call() throws Exception {
+          return serverSocket.accept();
+        }
+      });
+
+      Socket clientSocket = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+
+      BufferPool bufferPool = new BufferPool(1024, 64, false);
+
+      clientMultiplexer = new StreamMultiplexer(clientSocket, true, initialWindow, bufferPool);
+      serverMultiplexer = new StreamMultiplexer(acceptedSocket.get(5, TimeUnit.SECONDS), false, initialWindow,
+        bufferPool);
+    }
+    finally {
+      SocketUtils.close(serverSocket);
+    }
+  }
+
+  @After
+  public void tearDown() {
+    if (clientMultiplexer != null) {
+      clientMultiplexer.close();
+    }
+
+    if (serverMultiplexer != null) {
+      serverMultiplexer.close();
+    }
+
+    executor.shutdownNow();
+  }
+
+  private static byte[] readFully(final MultiplexedStream stream) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(300);
+    List<Byte> bytes = new ArrayList<Byte>();
+
+    for (int length = stream.read(buffer); length >= 0; length = stream.read(buffer)) {
+      buffer.flip();
+
+      while (buffer.hasRemaining()) {
+        bytes.add(buffer.get());
+      }
+
+      buffer.clear();
+    }
+
+    byte[] array = new byte[bytes.size()];
+
+    for (int index = 0; index < array.length; index++) {
+      array[index] = bytes.get(index);
+    }
+
+    return array;
+  }
+
+  private void echoAcceptedStreams() {
+    executor.submit(new Callable<Void>() {
+      public Void call() throws Exception {
+        for (MultiplexedStream stream = serverMultiplexer.acceptStream(); stream != null;
+             stream = serverMultiplexer.acceptStream()) {
+
+          final MultiplexedStream acceptedStream = stream;
+
+          executor.submit(new Callable<Void>() {
+            public Void call() throws Exception {
+              ByteBuffer buffer = ByteBuffer.allocate(500);
+
+              for (int length = acceptedStream.read(buffer); length >= 0; length = acceptedStream.read(buffer)) {
+                buffer.flip();
+                acceptedStream.write(buffer);
+                buffer.clear();
+              }
+
+              acceptedStream.close();
+
+              return null;
+            }
+          });
+        }
+
+        return null;
+      }
+    });
+  }
+
+  @Test
+  public void echoesManyStreamsOverOneConnection() throws Exception {
+    connect(4096);
+    echoAcceptedStreams();
+
+    List<Future<byte[]>> echoes = new ArrayList<Future<byte[]>>();
+    final byte[] data = new byte[20000];
+
+    for (int index = 0; index < data.length; index++) {
+      data[index] = (byte) index;
+    }
+
+    for (int count = 0; count < 8; count++) {
+      final MultiplexedStream stream = clientMultiplexer.openStream();
+
+      assertThat(stream.getId() % 2, is(equalTo(1)));
+
+      echoes.add(executor.submit(new Callable<byte[]>() {
+        public byte[] call() throws Exception {
+          Future<byte[]> echo = executor.submit(new Callable<byte[]>() {
+            public byte[] call() throws Exception {
+              return readFully(stream);
+            }
+          });
+
+          stream.write(ByteBuffer.wrap(data));
+          stream.close();
+
+          return echo.get(10, TimeUnit.SECONDS);
+        }
+      }));
+    }
+
+    for (Future<byte[]> echo : echoes) {
+      assertThat(echo.get(20, TimeUnit.SECONDS), is(equalTo(data)));
+    }
+
+    for (int attempt = 0; attempt < 100 && clientMultiplexer.getStreamCount() > 0; attempt++) {
+      Thread.sleep(10);
+    }
+
+    assertThat(clientMultiplexer.getStreamCount(), is(equalTo(0)));
+  }
+
+  @Test
+  public void slowReaderStallsOnlyItsOwnStream() throws Exception {
+    connect(1024);
+
+    MultiplexedStream slowStream = clientMultiplexer.openStream();
+    MultiplexedStream fastStream = clientMultiplexer.openStream();
+
+    slowStream.write(ByteBuffer.allocate(1024));
+
+    assertThat(slowStream.getSendWindow(), is(equalTo(0)));
+
+    fastStream.write(ByteBuffer.wrap(new byte[] { 1, 2, 3 }));
+    fastStream.close();
+
+    MultiplexedStream acceptedSlowStream = serverMultiplexer.acceptStream();
+    MultiplexedStream acceptedFastStream = serverMultiplexer.acceptStream();
+
+    assertThat(acceptedSlowStream.getId(), is(equalTo(slowStream.getId())));
+    assertThat(readFully(acceptedFastStream), is(equalTo(new byte[] { 1, 2, 3 })));
+
+    ByteBuffer buffer = ByteBuffer.allocate(1024);
+
+    while (buffer.hasRemaining()) {
+      acceptedSlowStream.read(buffer);
+    }
+
+    for (int attempt = 0; attempt < 100 && slowStream.getSendWindow() == 0; attempt++) {
+      Thread.sleep(10);
+    }
+
+    assertThat(slowStream.getSendWindow(), is(equalTo(1024)));
+  }
+
+  @Test(expected = IOException.class)
+  public void closedConnectionFailsStreams() throws Exception {
+    connect(1024);
+
+    MultiplexedStream stream = clientMultiplexer.openStream();
+
+    stream.write(ByteBuffer.wrap(new byte[] { 1 }));
+    serverMultiplexer.acceptStream();
+    serverMultiplexer.close();
+    stream.read(ByteBuffer.allocate(1));
+  }
+
+}
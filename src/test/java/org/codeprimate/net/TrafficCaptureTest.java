@@ -0,0 +1,167 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * The TrafficCaptureTest class is a test suite of test cases testing the contract and functionality
+ * of the TrafficRecorder and TrafficCapture classes.
+ *
+ * @author John J. Blum
+ * @see org.codeprimate.net.TrafficCapture
+ * @see org.codeprimate.net.TrafficRecorder
+ * @see org.junit.Test
+ * @since 1.2.0
+ */
+public class TrafficCaptureTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  protected static ByteBuffer newPayload(final int length) {
+    ByteBuffer payload = ByteBuffer.allocate(length);
+
+    for (int index = 0; index < length; index++) {
+      payload.put((byte) (index * 31 + length));
+    }
+
+    payload.flip();
+
+    return payload;
+  }
+
+  @Test
+  public void replaysRecordedFrames() throws Exception {
+    File file = temporaryFolder.newFile("traffic.cap");
+
+    // the last payload is larger than the recorder's write buffer
+    int[] lengths = { 0, 1, 127, 128, 4096, TrafficRecorder.WRITE_BUFFER_SIZE + 1 };
+
+    TrafficRecorder recorder = new TrafficRecorder(file);
+
+    for (int length : lengths) {
+      ByteBuffer payload = newPayload(length);
+
+      recorder.record(payload);
+
+      assertThat(payload.remaining(), is(equalTo(length)));
+      Thread.sleep(1);
+    }
+
+    recorder.close();
+
+    assertThat(recorder.getRecordCount(), is(equalTo((long) lengths.length)));
+
+    TrafficCapture capture = TrafficCapture.open(file);
+
+    assertThat(capture.getRecordCount(), is(equalTo(lengths.length)));
+    assertThat(capture.getMaxLength(), is(equalTo(TrafficRecorder.WRITE_BUFFER_SIZE + 1)));
+    assertThat(capture.getTotalBytes(), is(equalTo(recorder.getRecordedBytes())));
+    assertThat(capture.getTime(0), is(equalTo(0l)));
+
+    ByteBuffer view = capture.newView();
+
+    for (int index = 0; index < lengths.length; index++) {
+      assertThat(capture.getLength(index), is(equalTo(lengths[index])));
+      assertThat(capture.getPayload(index, view), is(equalTo(newPayload(lengths[index]))));
+
+      if (index > 0) {
+        assertThat(capture.getTime(index) >= capture.getTime(index - 1) + 1000000l, is(true));
+      }
+    }
+  }
+
+  @Test
+  public void ignoresTruncatedRecord() throws IOException {
+    File file = temporaryFolder.newFile("truncated.cap");
+
+    TrafficRecorder recorder = new TrafficRecorder(file);
+
+    recorder.record(newPayload(16));
+    recorder.record(newPayload(16));
+    recorder.close();
+
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+
+    try {
+      randomAccessFile.setLength(randomAccessFile.length() - 1);
+    }
+    finally {
+      randomAccessFile.close();
+    }
+
+    TrafficCapture capture = TrafficCapture.open(file);
+
+    assertThat(capture.getRecordCount(), is(equalTo(1)));
+    assertThat(capture.getPayload(0, capture.newView()), is(equalTo(newPayload(16))));
+  }
+
+  @Test
+  public void ignoresRecordWithCorruptLength() throws IOException {
+    File file = temporaryFolder.newFile("corrupt.cap");
+
+    TrafficRecorder recorder = new TrafficRecorder(file);
+
+    recorder.record(newPayload(16));
+    recorder.close();
+
+    FileOutputStream out = new FileOutputStream(file, true);
+
+    try {
+      // an elapsed time of 0 followed by a 10-byte length that decodes to a negative long, then a few payload bytes
+      out.write(new byte[] { 0, -1, -1, -1, -1, -1, -1, -1, -1, -1, 1, 1, 2, 3 });
+    }
+    finally {
+      out.close();
+    }
+
+    TrafficCapture capture = TrafficCapture.open(file);
+
+    assertThat(capture.getRecordCount(), is(equalTo(1)));
+    assertThat(capture.getTotalBytes(), is(equalTo(16l)));
+    assertThat(capture.getPayload(0, capture.newView()), is(equalTo(newPayload(16))));
+  }
+
+  @Test(expected = IOException.class)
+  public void openNonCaptureFile() throws IOException {
+    File file = temporaryFolder.newFile("not.cap");
+
+    FileOutputStream out = new FileOutputStream(file);
+
+    try {
+      out.write(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9 });
+    }
+    finally {
+      out.close();
+    }
+
+    TrafficCapture.open(file);
+  }
+
+}
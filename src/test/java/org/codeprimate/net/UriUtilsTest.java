@@ -18,7 +18,10 @@ package org.codeprimate.net;
 
 import static org.junit.Assert.*;
 
+import java.net.URLDecoder;
+import java.net.URLEncoder;
 import java.util.Map;
+import java.util.Random;
 
 import org.codeprimate.test.AbstractWebBasedTestCase;
 import org.junit.Test;
@@ -39,6 +42,80 @@ public class UriUtilsTest extends AbstractWebBasedTestCase {
     assertNull(UriUtils.decode((String) null));
   }
 
+  @Test
+  public void testDecodeUnencodedValue() {
+    String value = "/Customers/Accounts/Orders/Items";
+
+    assertSame(value, UriUtils.decode(value));
+    assertEquals(value, UriUtils.decode(new StringBuilder(value)));
+  }
+
+  @Test
+  public void testDecodeMultiplyEncodedValue() throws Exception {
+    // an encoded '+' is decoded as a space by the next level of decoding
+    assertEquals("a b c", UriUtils.decode("a+b%2Bc"));
+    assertEquals("a b c", UriUtils.decode("a%2Bb%252Bc"));
+    assertEquals("caf\u00e9 \ud83d\ude00", UriUtils.decode(encode(encode("caf\u00e9 \ud83d\ude00"))));
+    assertEquals("\ufffdA", UriUtils.decode("%C3%41"));
+  }
+
+  // the single-pass decoder decodes each value as repeatedly decoding it with the URLDecoder does
+  @Test
+  public void testDecodeMatchesRepeatedUrlDecoding() throws Exception {
+    Random random = new Random(20141118l);
+
+    String alphabet = "aZ09 +%/&=?~.-_\u00e9\u00df\u4e2d\ud83d\ude00";
+
+    for (int count = 0; count < 1000; count++) {
+      StringBuilder value = new StringBuilder();
+
+      for (int length = random.nextInt(24); length > 0; length--) {
+        value.append(alphabet.charAt(random.nextInt(alphabet.length())));
+      }
+
+      String encodedValue = value.toString();
+
+      for (int level = random.nextInt(4); level > 0; level--) {
+        encodedValue = URLEncoder.encode(encodedValue, UriUtils.DEFAULT_ENCODING);
+      }
+
+      String expectedValue;
+
+      try {
+        String previousValue = null;
+
+        for (expectedValue = encodedValue; !expectedValue.equals(previousValue); ) {
+          previousValue = expectedValue;
+          expectedValue = URLDecoder.decode(expectedValue, UriUtils.DEFAULT_ENCODING);
+        }
+      }
+      catch (IllegalArgumentException expected) {
+        expectedValue = null;
+      }
+
+      // the single-pass decoder accepts some malformed values rejected by the URLDecoder
+      if (expectedValue != null) {
+        assertEquals(encodedValue, expectedValue, UriUtils.decode(encodedValue));
+      }
+    }
+
+    // the bytes of a UTF-8 sequence escaped at different levels are decoded together rather than replaced
+    assertEquals("\ufffd\ufffd", URLDecoder.decode(URLDecoder.decode("%C3%25A9", UriUtils.DEFAULT_ENCODING),
+      UriUtils.DEFAULT_ENCODING));
+    assertEquals("\u00e9", UriUtils.decode("%C3%25A9"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDecodeIncompleteEscape() {
+    // completes the first level of decoding, leaving a trailing '%'
+    UriUtils.decode("100%25");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDecodeIllegalEscape() {
+    UriUtils.decode("%2G");
+  }
+
   @Test
   public void testDecodeStringArray() throws Exception {
     String[] encodedValues = {
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net.shm;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.ConnectException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executors;
+
+import org.codeprimate.net.BufferPool;
+import org.codeprimate.net.LineCodec;
+import org.codeprimate.net.LineStream;
+import org.codeprimate.net.SocketHandler;
+import org.codeprimate.net.SocketUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The LoopbackSocketTest class is a test suite of test cases testing the contract and functionality of the
+ * LoopbackSocket and LoopbackServerEngine classes.
+ *
+ * @author John J. Blum
+ * @see org.codeprimate.net.shm.LoopbackServerEngine
+ * @see org.codeprimate.net.shm.LoopbackSocket
+ * @see org.junit.Test
+ * @since 1.2.0
+ */
+public class LoopbackSocketTest {
+
+  private static final int PORT = 41414;
+
+  private static final BufferPool BUFFER_POOL = new BufferPool(256, 4, false);
+
+  private static final LineCodec LINE_CODEC = new LineCodec();
+
+  private LoopbackServerEngine serverEngine;
+
+  @Before
+  public void setup() throws IOException {
+    serverEngine = new LoopbackServerEngine("Echo Server", PORT, 64, WaitStrategy.YIELD,
+      Executors.newCachedThreadPool(), new SocketHandler() {
+        public Runnable service(final Socket clientSocket) {
+          return new Runnable() {
+            public void run() {
+              LineStream lineStream = null;
+
+              try {
+                lineStream = new LineStream(clientSocket, LINE_CODEC, BUFFER_POOL);
+
+                for (ByteBuffer line = lineStream.readLineBuffer(); line != null; line = lineStream.readLineBuffer()) {
+                  lineStream.writeLine(line);
+                }
+
+                lineStream.flush();
+              }
+              catch (IOException ignore) {
+              }
+              finally {
+                if (lineStream != null) {
+                  lineStream.close();
+                }
+                else {
+                  SocketUtils.close(clientSocket);
+                }
+              }
+            }
+          };
+        }
+      });
+
+    serverEngine.setDrainTimeout(100);
+    serverEngine.start();
+  }
+
+  @After
+  public void tearDown() {
+    serverEngine.stop();
+  }
+
+  @Test
+  public void pairChannelViews() throws Exception {
+    LoopbackSocket[] pair = LoopbackSocket.newPair(8, WaitStrategy.YIELD);
+
+    try {
+      ByteBuffer buffer = ByteBuffer.allocate(8);
+
+      assertThat(pair[0].getPeer(), is(sameInstance(pair[1])));
+      assertThat(pair[0].getWritableChannel().write(ByteBuffer.wrap(new byte[] { 1, 2, 3, 4, 5, 6 })), is(equalTo(6)));
+      assertThat(pair[1].getInputStream().read(), is(equalTo(1)));
+      assertThat(pair[1].getReadableChannel().read(buffer), is(equalTo(5)));
+
+      pair[1].getOutputStream().write(new byte[] { 7, 8, 9, 10, 11, 12, 13, 14 });
+      pair[1].shutdownOutput();
+      buffer.clear();
+
+      assertThat(pair[0].getReadableChannel().read(buffer), is(equalTo(8)));
+      assertThat(buffer.array(), is(equalTo(new byte[] { 7, 8, 9, 10, 11, 12, 13, 14 })));
+      assertThat(pair[0].getInputStream().read(), is(equalTo(-1)));
+    }
+    finally {
+      pair[0].close();
+      pair[1].close();
+    }
+  }
+
+  @Test
+  public void echoLinesThroughEngine() throws Exception {
+    LineStream lineStream = new LineStream(LoopbackServerEngine.connect(PORT), LINE_CODEC, BUFFER_POOL);
+
+    try {
+      // the lines are larger than the rings in total, so the server must echo while the client is still writing
+      for (int index = 0; index < 20; index++) {
+        lineStream.writeLine(String.format("line %1$d", index));
+      }
+
+      lineStream.flush();
+      lineStream.getSocket().shutdownOutput();
+
+      for (int index = 0; index < 20; index++) {
+        assertThat(lineStream.readLine(), is(equalTo(String.format("line %1$d", index))));
+      }
+
+      assertThat(lineStream.readLine(), is(nullValue()));
+    }
+    finally {
+      lineStream.close();
+    }
+  }
+
+  @Test(expected = BindException.class)
+  public void startOnPortInUse() throws IOException {
+    new LoopbackServerEngine("Other Server", PORT, 64, WaitStrategy.YIELD, Executors.newSingleThreadExecutor(),
+      serverEngine.getHandler()).start();
+  }
+
+  @Test(expected = ConnectException.class)
+  public void connectWithoutServer() throws IOException {
+    serverEngine.stop();
+    LoopbackServerEngine.connect(PORT);
+  }
+
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.net.shm;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executors;
+
+import org.codeprimate.net.SocketHandler;
+import org.codeprimate.net.SocketUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The SharedMemorySocketTest class is a test suite of test cases testing the contract and functionality of the
+ * RingBuffer, SharedMemorySocket and SharedMemoryServerEngine classes.
+ *
+ * @author John J. Blum
+ * @see org.codeprimate.net.shm.RingBuffer
+ * @see org.codeprimate.net.shm.SharedMemoryServerEngine
+ * @see org.codeprimate.net.shm.SharedMemorySocket
+ * @see org.junit.Test
+ * @since 1.2.0
+ */
+public class SharedMemorySocketTest {
+
+  private File directory;
+
+  private SharedMemoryServerEngine serverEngine;
+
+  @Before
+  public void setup() throws IOException {
+    directory = File.createTempFile("shm", "test");
+    directory.delete();
+
+    serverEngine = new SharedMemoryServerEngine("Echo Server", directory, WaitStrategy.YIELD,
+      Executors.newCachedThreadPool(), new SocketHandler() {
+        public Runnable service(final Socket clientSocket) {
+          return new Runnable() {
+            public void run() {
+              try {
+                InputStream in = clientSocket.getInputStream();
+                OutputStream out = clientSocket.getOutputStream();
+                byte[] buffer = new byte[100];
+
+                for (int length = in.read(buffer); length > 0; length = in.read(buffer)) {
+                  out.write(buffer, 0, length);
+                }
+              }
+              catch (IOException ignore) {
+              }
+              finally {
+                SocketUtils.close(clientSocket);
+              }
+            }
+          };
+        }
+      });
+
+    serverEngine.setDrainTimeout(100);
+    serverEngine.start();
+  }
+
+  @After
+  public void tearDown() {
+    serverEngine.stop();
+    directory.delete();
+  }
+
+  @Test
+  public void ringBufferWrapsAround() {
+    RingBuffer ringBuffer = new RingBuffer(ByteBuffer.allocateDirect(RingBuffer.requiredSize(8)));
+    byte[] bytes = new byte[8];
+
+    ringBuffer.initialize();
+
+    assertThat(ringBuffer.offer(new byte[] { 1, 2, 3, 4, 5, 6 }, 0, 6), is(equalTo(6)));
+    assertThat(ringBuffer.poll(bytes, 0, 4), is(equalTo(4)));
+    assertThat(ringBuffer.offer(new byte[] { 7, 8, 9, 10, 11, 12, 13 }, 0, 7), is(equalTo(6)));
+    assertThat(ringBuffer.available(), is(equalTo(8)));
+    assertThat(ringBuffer.offer(new byte[] { 14 }, 0, 1), is(equalTo(0)));
+    assertThat(ringBuffer.poll(bytes, 0, 8), is(equalTo(8)));
+    assertThat(bytes, is(equalTo(new byte[] { 5, 6, 7, 8, 9, 10, 11, 12 })));
+    assertThat(ringBuffer.poll(bytes, 0, 8), is(equalTo(0)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void ringBufferCapacityMustBePowerOfTwo() {
+    new RingBuffer(ByteBuffer.allocateDirect(RingBuffer.requiredSize(12)));
+  }
+
+  @Test
+  public void echoThroughSharedMemory() throws Exception {
+    final Socket socket = SharedMemorySocket.connect(directory, 64, WaitStrategy.YIELD, 5000);
+
+    try {
+      InputStream in = socket.getInputStream();
+
+      final byte[] message = new byte[1000];
+      byte[] echo = new byte[message.length];
+
+      for (int index = 0; index < message.length; index++) {
+        message[index] = (byte) index;
+      }
+
+      // the message is larger than the rings, so the server must echo parts while the rest is still being written
+      Thread writer = new Thread(new Runnable() {
+        public void run() {
+          try {
+            socket.getOutputStream().write(message);
+          }
+          catch (IOException e) {
+            throw new RuntimeException(e);
+          }
+        }
+      });
+
+      writer.start();
+
+      for (int length = 0; length < echo.length; ) {
+        length += in.read(echo, length, echo.length - length);
+      }
+
+      writer.join();
+
+      assertThat(echo, is(equalTo(message)));
+      assertThat(serverEngine.getConnectionCount(), is(equalTo(1)));
+      assertThat(directory.list().length, is(equalTo(0)));
+
+      socket.shutdownOutput();
+
+      assertThat(in.read(), is(equalTo(-1)));
+    }
+    finally {
+      socket.close();
+    }
+  }
+
+  @Test(expected = ConnectException.class)
+  public void connectWithoutServer() throws Exception {
+    serverEngine.stop();
+    SharedMemorySocket.connect(directory, 64, WaitStrategy.YIELD, 50);
+  }
+
+}
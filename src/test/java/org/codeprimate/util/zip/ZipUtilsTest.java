@@ -0,0 +1,181 @@
+/*
+ * Copyright 2014-present the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codeprimate.util.zip;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import org.codeprimate.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * The ZipUtilsTest class is a test suite of test cases testing the contract and functionality of the ZipUtils class.
+ *
+ * @author John J. Blum
+ * @see org.codeprimate.util.zip.ZipUtils
+ * @see org.junit.Test
+ * @since 1.2.0
+ */
+public class ZipUtilsTest {
+
+  private static final byte[] CENTRAL_DIRECTORY_HEADER_SIGNATURE = { 0x50, 0x4b, 0x01, 0x02 };
+
+  @Rule
+  public ExpectedException expectedException = ExpectedException.none();
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  protected static byte[] zip(final int method, final String... namesAndContents) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ZipOutputStream zipOut = new ZipOutputStream(out);
+
+    zipOut.setMethod(method);
+
+    for (int index = 0; index < namesAndContents.length; index += 2) {
+      ZipEntry entry = new ZipEntry(namesAndContents[index]);
+      byte[] content = namesAndContents[index + 1].getBytes("UTF-8");
+
+      if (method == ZipEntry.STORED) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        entry.setCrc(crc.getValue());
+        entry.setSize(content.length);
+        entry.setCompressedSize(content.length);
+      }
+
+      zipOut.putNextEntry(entry);
+      zipOut.write(content);
+      zipOut.closeEntry();
+    }
+
+    zipOut.close();
+
+    return out.toByteArray();
+  }
+
+  protected static InputStream trickle(final byte[] bytes) {
+    return new FilterInputStream(new ByteArrayInputStream(bytes)) {
+      @Override public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+        return super.read(buffer, offset, Math.min(length, 7));
+      }
+    };
+  }
+
+  protected static int indexOf(final byte[] bytes, final byte[] pattern) {
+    for (int index = 0; index <= bytes.length - pattern.length; index++) {
+      if (Arrays.equals(pattern, Arrays.copyOfRange(bytes, index, index + pattern.length))) {
+        return index;
+      }
+    }
+
+    return -1;
+  }
+
+  @Test
+  public void unzipStreamWithDataDescriptors() throws IOException {
+    File directory = temporaryFolder.newFolder("deflated");
+
+    byte[] archive = zip(ZipEntry.DEFLATED, "readme.txt", "Read me!", "docs/", "",
+      "docs/guide/intro.txt", "Streaming unzip overlaps the download with inflating and writing entries.");
+
+    ZipUtils.unzip(trickle(archive), directory);
+
+    assertThat(FileUtils.read(new File(directory, "readme.txt")), is(equalTo("Read me!")));
+    assertThat(new File(directory, "docs").isDirectory(), is(true));
+    assertThat(FileUtils.read(new File(directory, "docs/guide/intro.txt")),
+      is(equalTo("Streaming unzip overlaps the download with inflating and writing entries.")));
+  }
+
+  @Test
+  public void unzipStreamWithStoredEntries() throws IOException {
+    File directory = temporaryFolder.newFolder("stored");
+
+    ZipUtils.unzip(new ByteArrayInputStream(zip(ZipEntry.STORED, "one.txt", "1", "two.txt", "22")), directory);
+
+    assertThat(FileUtils.read(new File(directory, "one.txt")), is(equalTo("1")));
+    assertThat(FileUtils.read(new File(directory, "two.txt")), is(equalTo("22")));
+  }
+
+  @Test
+  public void unzipStreamWithCorruptCentralDirectory() throws IOException {
+    byte[] archive = zip(ZipEntry.DEFLATED, "corrupt.txt", "The CRC in the central directory is wrong.");
+    int centralDirectoryIndex = indexOf(archive, CENTRAL_DIRECTORY_HEADER_SIGNATURE);
+
+    assertThat(centralDirectoryIndex > 0, is(true));
+
+    archive[centralDirectoryIndex + 16] ^= 0xFF;
+
+    expectedException.expect(ZipException.class);
+    expectedException.expectMessage(containsString("corrupt.txt"));
+
+    ZipUtils.unzip(trickle(archive), temporaryFolder.newFolder("corrupt"));
+  }
+
+  @Test
+  public void unzipStreamWithOversizedFileNameLength() throws IOException {
+    byte[] archive = zip(ZipEntry.DEFLATED, "length.txt", "The file name length overruns the central directory.");
+    int centralDirectoryIndex = indexOf(archive, CENTRAL_DIRECTORY_HEADER_SIGNATURE);
+
+    assertThat(centralDirectoryIndex > 0, is(true));
+
+    archive[centralDirectoryIndex + 28] = (byte) 0xFF;
+    archive[centralDirectoryIndex + 29] = (byte) 0xFF;
+
+    expectedException.expect(ZipException.class);
+    expectedException.expectMessage(containsString("extends past the end of the central directory"));
+
+    ZipUtils.unzip(trickle(archive), temporaryFolder.newFolder("length"));
+  }
+
+  @Test
+  public void unzipStreamWithTruncatedArchive() throws IOException {
+    byte[] archive = zip(ZipEntry.DEFLATED, "truncated.txt", "The central directory is missing.");
+    int centralDirectoryIndex = indexOf(archive, CENTRAL_DIRECTORY_HEADER_SIGNATURE);
+
+    expectedException.expect(ZipException.class);
+    expectedException.expectMessage(containsString("end of central directory"));
+
+    ZipUtils.unzip(new ByteArrayInputStream(Arrays.copyOf(archive, centralDirectoryIndex)),
+      temporaryFolder.newFolder("truncated"));
+  }
+
+  @Test
+  public void unzipStreamWithEntryOutsideTargetDirectory() throws IOException {
+    expectedException.expect(ZipException.class);
+    expectedException.expectMessage(containsString("../escape.txt"));
+
+    ZipUtils.unzip(new ByteArrayInputStream(zip(ZipEntry.DEFLATED, "../escape.txt", "Zip Slip")),
+      temporaryFolder.newFolder("slip"));
+  }
+
+}